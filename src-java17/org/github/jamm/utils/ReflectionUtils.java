@@ -0,0 +1,140 @@
+package org.github.jamm.utils;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility methods giving access to the reflection APIs introduced after Java 8.
+ *
+ * <p>This version is the Java 17 one: all the APIs are called directly.</p>
+ */
+public final class ReflectionUtils {
+
+    /**
+     * The type of the getters created by {@link #varHandleGetter}.
+     */
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Checks if the JVM has a Module System, in which case {@link #trySetAccessible} and {@link #privateLookupIn} can
+     * be used.
+     *
+     * @return {@code true}
+     */
+    public static boolean supportsModules() {
+        return true;
+    }
+
+    /**
+     * Checks if the JVM supports records.
+     *
+     * @return {@code true}
+     */
+    public static boolean supportsRecords() {
+        return true;
+    }
+
+    /**
+     * Checks if the JVM supports hidden classes. Hidden classes were introduced in Java 15, at the same time as the new
+     * field layout, which makes this method also a way to detect the field layout used by the JVM.
+     *
+     * @return {@code true}
+     */
+    public static boolean supportsHiddenClasses() {
+        return true;
+    }
+
+    /**
+     * Calls {@code AccessibleObject.trySetAccessible} on the specified object.
+     *
+     * @param object the object to make accessible
+     * @return {@code true} if the object was made accessible, {@code false} otherwise.
+     */
+    public static boolean trySetAccessible(AccessibleObject object) {
+        return object.trySetAccessible();
+    }
+
+    /**
+     * Calls {@code MethodHandles.privateLookupIn} for the specified class.
+     *
+     * @param targetClass the class for which a private lookup is requested
+     * @param caller the caller lookup
+     * @return a private lookup in the specified class
+     * @throws IllegalAccessException if the package of the class is not open to the caller module
+     */
+    public static MethodHandles.Lookup privateLookupIn(Class<?> targetClass, MethodHandles.Lookup caller) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(targetClass, caller);
+    }
+
+    /**
+     * Creates a getter reading the specified instance field through a {@code VarHandle}. The final and volatile fields
+     * are read with volatile semantics.
+     *
+     * @param lookup a lookup with private access to the declaring class of the field
+     * @param field the instance field
+     * @return a getter of type {@code (Object)Object}
+     * @throws IllegalAccessException if the lookup does not give access to the field
+     */
+    public static MethodHandle varHandleGetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        VarHandle.AccessMode mode = Modifier.isFinal(field.getModifiers()) || Modifier.isVolatile(field.getModifiers()) ? VarHandle.AccessMode.GET_VOLATILE
+                                                                                                                        : VarHandle.AccessMode.GET;
+        return lookup.unreflectVarHandle(field).toMethodHandle(mode).asType(GETTER_TYPE);
+    }
+
+    /**
+     * Opens the packages of the modules of the boot layer to the module of Jamm, so that the fields of the JDK classes
+     * can be read without {@code Unsafe}.
+     *
+     * @param inst the {@code Instrumentation} instance used to redefine the modules
+     */
+    public static void openPackages(Instrumentation inst) {
+        Module jamm = ReflectionUtils.class.getModule();
+        for (Module module : ModuleLayer.boot().modules()) {
+
+            if (!inst.isModifiableModule(module))
+                continue;
+
+            Map<String, Set<Module>> opens = new HashMap<>();
+            for (String pkg : module.getPackages()) {
+                if (!module.isOpen(pkg, jamm))
+                    opens.put(pkg, Collections.singleton(jamm));
+            }
+
+            if (!opens.isEmpty())
+                inst.redefineModule(module, Collections.emptySet(), Collections.emptyMap(), opens, Collections.emptySet(), Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Checks if the specified class is a record.
+     *
+     * @param type the class to check
+     * @return {@code true} if the specified class is a record, {@code false} otherwise.
+     */
+    public static boolean isRecord(Class<?> type) {
+        return type.isRecord();
+    }
+
+    /**
+     * Checks if the specified class is a hidden class.
+     *
+     * @param type the class to check
+     * @return {@code true} if the specified class is a hidden class, {@code false} otherwise.
+     */
+    public static boolean isHidden(Class<?> type) {
+        return type.isHidden();
+    }
+
+    private ReflectionUtils() {
+    }
+}
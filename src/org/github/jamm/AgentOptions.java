@@ -0,0 +1,188 @@
+package org.github.jamm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.github.jamm.MemoryMeter.Guess;
+
+/**
+ * The options of the Jamm agent, specified after the path of the jar: {@code -javaagent:<path to>/jamm.jar=<options>}.
+ *
+ * <p>The options are comma separated {@code key=value} pairs:</p>
+ * <ul>
+ *     <li>{@code warmup}: the prefixes, separated by {@code :}, of the names of the classes that must be warmed up in
+ *     the background as they are loaded. No warm-up is performed if this option is not specified.</li>
+ *     <li>{@code threads}: the number of threads performing the warm-up, 1 by default.</li>
+ *     <li>{@code guess}: the strategy for which the classes must be warmed up, the best available one by default.</li>
+ * </ul>
+ * <pre>
+ * -javaagent:jamm.jar=warmup=com.acme.model.:com.acme.cache.,threads=2,guess=UNSAFE
+ * </pre>
+ * <p>The unknown keys are ignored, as the options are parsed when the JVM starts and an option added by a newer
+ * version of Jamm should not prevent it from starting.</p>
+ */
+final class AgentOptions {
+
+    /**
+     * The options used when none are specified.
+     */
+    static final AgentOptions NONE = new AgentOptions(Collections.emptyList(), 1, null, Collections.emptyList());
+
+    /**
+     * The prefixes of the names of the classes to warm up.
+     */
+    private final List<String> prefixes;
+
+    /**
+     * The number of warm-up threads.
+     */
+    private final int threads;
+
+    /**
+     * The strategy for which the classes must be warmed up or {@code null} for the best available one.
+     */
+    private final Guess guess;
+
+    /**
+     * The unknown keys, which have been ignored.
+     */
+    private final List<String> unknownKeys;
+
+    private AgentOptions(List<String> prefixes, int threads, Guess guess, List<String> unknownKeys) {
+        this.prefixes = prefixes;
+        this.threads = threads;
+        this.guess = guess;
+        this.unknownKeys = unknownKeys;
+    }
+
+    /**
+     * Parses the agent options.
+     *
+     * @param options the options string passed to the agent, can be {@code null}
+     * @return the agent options
+     * @throws IllegalArgumentException if the value of a known option is invalid
+     */
+    static AgentOptions parse(String options) {
+
+        if (options == null || options.trim().isEmpty())
+            return NONE;
+
+        List<String> prefixes = Collections.emptyList();
+        int threads = 1;
+        Guess guess = null;
+        List<String> unknownKeys = new ArrayList<>();
+
+        for (String option : options.split(",")) {
+
+            int index = option.indexOf('=');
+            if (index < 0)
+                throw new IllegalArgumentException(String.format("The agent options should be key=value pairs (was %s).", option));
+
+            String key = option.substring(0, index).trim();
+            String value = option.substring(index + 1).trim();
+
+            switch (key) {
+                case "warmup":
+                    prefixes = parsePrefixes(value);
+                    break;
+                case "threads":
+                    threads = parseThreads(value);
+                    break;
+                case "guess":
+                    guess = parseGuess(value);
+                    break;
+                default:
+                    unknownKeys.add(key);
+            }
+        }
+
+        return new AgentOptions(prefixes, threads, guess, Collections.unmodifiableList(unknownKeys));
+    }
+
+    private static List<String> parsePrefixes(String value) {
+        List<String> prefixes = new ArrayList<>();
+        for (String prefix : value.split(":")) {
+            if (!prefix.trim().isEmpty())
+                prefixes.add(prefix.trim());
+        }
+
+        if (prefixes.isEmpty())
+            throw new IllegalArgumentException(String.format("The warmup option should specify at least one class name prefix (was %s).", value));
+
+        return Collections.unmodifiableList(prefixes);
+    }
+
+    private static int parseThreads(String value) {
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0)
+                return threads;
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new IllegalArgumentException(String.format("The threads option should be a positive integer (was %s).", value));
+    }
+
+    private static Guess parseGuess(String value) {
+        try {
+            return Guess.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("The guess option should be one of %s (was %s).", Arrays.toString(Guess.values()), value));
+        }
+    }
+
+    /**
+     * Checks if a warm-up must be performed.
+     *
+     * @return {@code true} if some classes must be warmed up, {@code false} otherwise.
+     */
+    boolean warmUp() {
+        return !prefixes.isEmpty();
+    }
+
+    /**
+     * Checks if the class with the specified name must be warmed up.
+     *
+     * @param className the binary name of the class, the packages being separated by either {@code .} or {@code /}
+     * @return {@code true} if the class must be warmed up, {@code false} otherwise.
+     */
+    boolean matches(String className) {
+        if (className == null)
+            return false;
+
+        String name = className.replace('/', '.');
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    List<String> prefixes() {
+        return prefixes;
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    /**
+     * Returns the strategy for which the classes must be warmed up.
+     *
+     * @return the strategy for which the classes must be warmed up or {@code null} for the best available one.
+     */
+    Guess guess() {
+        return guess;
+    }
+
+    /**
+     * Returns the unknown keys, which have been ignored.
+     *
+     * @return the unknown keys, in the order in which they were specified
+     */
+    List<String> unknownKeys() {
+        return unknownKeys;
+    }
+}
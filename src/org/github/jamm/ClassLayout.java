@@ -0,0 +1,289 @@
+package org.github.jamm;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+import static org.github.jamm.utils.MathUtils.roundTo;
+
+/**
+ * The memory layout of the instances of a class: header, fields offsets and sizes, gaps and padding.
+ *
+ * <p>Layouts are computed by the {@code MemoryMeter} strategies (see {@link MemoryMeter#layoutOf(Class)}). The field
+ * offsets are the ones reported by the JVM when they are retrieved through {@code Unsafe} and are emulated otherwise.</p>
+ * <pre>
+ *  +------------------+-------------+---------------+--------------+-------------------+
+ *  | header (12 bytes)| 4 bytes gap | long (8 bytes)| int (4 bytes)| alignment padding | Total size: 32 bytes
+ *  +------------------+-------------+---------------+--------------+-------------------+
+ * </pre>
+ */
+public final class ClassLayout {
+
+    /**
+     * The class.
+     */
+    private final Class<?> type;
+
+    /**
+     * The size of the object header.
+     */
+    private final long headerSize;
+
+    /**
+     * The instance fields sorted by offset.
+     */
+    private final List<FieldLayout> fields;
+
+    /**
+     * The size of the padding added for the {@code @Contended} annotations.
+     */
+    private final long contendedPaddingSize;
+
+    /**
+     * The size of the padding added to align the instance size on the object alignment.
+     */
+    private final long alignmentPaddingSize;
+
+    /**
+     * The instance size.
+     */
+    private final long instanceSize;
+
+    /**
+     * Creates a new {@code ClassLayout}.
+     *
+     * @param type the class
+     * @param headerSize the size of the object header
+     * @param fields the instance fields layouts
+     * @param contendedPaddingSize the size of the padding added for the {@code @Contended} annotations
+     * @param instanceSize the size of the instances of the class
+     * @param objectAlignment the object alignment of the memory layout in which the layout was computed
+     */
+    public ClassLayout(Class<?> type,
+                       long headerSize,
+                       List<FieldLayout> fields,
+                       long contendedPaddingSize,
+                       long instanceSize,
+                       int objectAlignment) {
+
+        List<FieldLayout> sortedFields = new ArrayList<>(fields);
+        sortedFields.sort((f1, f2) -> Long.compare(f1.offset, f2.offset));
+
+        long end = headerSize;
+        for (FieldLayout field : sortedFields)
+            end = Math.max(end, field.offset + field.size);
+
+        this.type = type;
+        this.headerSize = headerSize;
+        this.fields = unmodifiableList(sortedFields);
+        this.instanceSize = instanceSize;
+        this.alignmentPaddingSize = Math.max(0, Math.min(roundTo(end, objectAlignment), instanceSize) - end);
+        this.contendedPaddingSize = Math.max(0, Math.min(contendedPaddingSize, instanceSize - headerSize - fieldsSize() - alignmentPaddingSize));
+    }
+
+    /**
+     * Returns the class.
+     *
+     * @return the class
+     */
+    public Class<?> type() {
+        return type;
+    }
+
+    /**
+     * Returns the size of the object header.
+     *
+     * @return the size of the object header
+     */
+    public long headerSize() {
+        return headerSize;
+    }
+
+    /**
+     * Returns the layouts of the instance fields, including the inherited ones, sorted by offset.
+     *
+     * @return the layouts of the instance fields sorted by offset
+     */
+    public List<FieldLayout> fields() {
+        return fields;
+    }
+
+    /**
+     * Returns the layout of the specified field.
+     *
+     * @param declaringClass the class declaring the field
+     * @param name the field name
+     * @return the layout of the specified field
+     * @throws IllegalArgumentException if the field is not an instance field of the class
+     */
+    public FieldLayout field(Class<?> declaringClass, String name) {
+        for (FieldLayout field : fields) {
+            if (field.declaringClass() == declaringClass && field.name().equals(name))
+                return field;
+        }
+        throw new IllegalArgumentException(String.format("%s.%s is not an instance field of %s.", declaringClass.getName(), name, type.getName()));
+    }
+
+    /**
+     * Returns the size taken by the instance fields.
+     *
+     * @return the size taken by the instance fields
+     */
+    public long fieldsSize() {
+        long size = 0;
+        for (FieldLayout field : fields)
+            size += field.size;
+        return size;
+    }
+
+    /**
+     * Returns the size of the gaps left between the header and the fields or between the fields, {@code @Contended}
+     * padding excluded.
+     *
+     * @return the size of the gaps left between the fields
+     */
+    public long gapsSize() {
+        return instanceSize - headerSize - fieldsSize() - contendedPaddingSize - alignmentPaddingSize;
+    }
+
+    /**
+     * Returns the size of the padding added for the {@code @Contended} annotations.
+     *
+     * @return the size of the padding added for the {@code @Contended} annotations
+     */
+    public long contendedPaddingSize() {
+        return contendedPaddingSize;
+    }
+
+    /**
+     * Returns the size of the padding added to align the instance size on the object alignment.
+     *
+     * @return the size of the padding added to align the instance size on the object alignment
+     */
+    public long alignmentPaddingSize() {
+        return alignmentPaddingSize;
+    }
+
+    /**
+     * Returns the shallow size of the instances of the class.
+     *
+     * @return the shallow size of the instances of the class
+     */
+    public long instanceSize() {
+        return instanceSize;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(type.getName()).append(" object internals:").append(System.lineSeparator())
+               .append(String.format("%8s %6s  %s%n", "OFFSET", "SIZE", "DESCRIPTION"))
+               .append(String.format("%8d %6d  %s%n", 0, headerSize, "(object header)"));
+
+        long offset = headerSize;
+        for (FieldLayout field : fields) {
+            if (field.offset > offset)
+                builder.append(String.format("%8d %6d  %s%n", offset, field.offset - offset, "(gap)"));
+
+            builder.append(String.format("%8d %6d  %s%n", field.offset, field.size, field));
+            offset = Math.max(offset, field.offset + field.size);
+        }
+
+        if (instanceSize > offset)
+            builder.append(String.format("%8d %6d  %s%n", offset, instanceSize - offset, "(padding)"));
+
+        return builder.append("Instance size: ").append(instanceSize).append(" bytes (")
+                      .append(gapsSize()).append(" bytes of gaps, ")
+                      .append(contendedPaddingSize).append(" bytes of contended padding, ")
+                      .append(alignmentPaddingSize).append(" bytes of alignment padding)")
+                      .toString();
+    }
+
+    /**
+     * The layout of an instance field.
+     */
+    public static final class FieldLayout {
+
+        /**
+         * The field.
+         */
+        private final Field field;
+
+        /**
+         * The field offset.
+         */
+        private final long offset;
+
+        /**
+         * The field size.
+         */
+        private final int size;
+
+        /**
+         * Creates a new {@code FieldLayout}.
+         *
+         * @param field the field
+         * @param offset the field offset
+         * @param size the field size
+         */
+        public FieldLayout(Field field, long offset, int size) {
+            this.field = field;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Returns the field.
+         *
+         * @return the field
+         */
+        public Field field() {
+            return field;
+        }
+
+        /**
+         * Returns the field name.
+         *
+         * @return the field name
+         */
+        public String name() {
+            return field.getName();
+        }
+
+        /**
+         * Returns the class declaring the field.
+         *
+         * @return the class declaring the field
+         */
+        public Class<?> declaringClass() {
+            return field.getDeclaringClass();
+        }
+
+        /**
+         * Returns the field offset from the start of the object.
+         *
+         * @return the field offset
+         */
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * Returns the field size.
+         *
+         * @return the field size
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            Class<?> fieldType = field.getType();
+            String fieldTypeAsString = fieldType.isArray() ? fieldType.getComponentType().getName() + "[]" : fieldType.getName();
+            return declaringClass().getName() + '.' + name() + " (" + fieldTypeAsString + ')';
+        }
+    }
+}
@@ -37,6 +37,19 @@ public final class Filters
         }
     }
 
+    /**
+     * The class of the {@code MemorySegment} implementations or {@code null} if the Foreign Memory API is not available.
+     */
+    private static final Class<?> MEMORY_SEGMENT_IMPL_CLASS = getMemorySegmentImplClass();
+
+    private static Class<?> getMemorySegmentImplClass() {
+        try {
+            return Class.forName("jdk.internal.foreign.AbstractMemorySegmentImpl");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     /**
      * Filter excluding static and primitive fields
      */
@@ -74,6 +87,12 @@ public final class Filters
      */
     public static final FieldFilter IGNORE_THREAD_FIELDS = (c, f) -> c.equals(Thread.class) && "group".equals(f.getName()) ;
 
+    /**
+     * Filter excluding the {@code scope} field from {@code MemorySegment} instances as the scope belongs to the arena that
+     * allocated the segment. It is shared by all the segments of that arena and refers to its owner thread and its cleanup actions.
+     */
+    public static final FieldFilter IGNORE_MEMORY_SEGMENT_SCOPE = (c, f) -> f.getDeclaringClass() == MEMORY_SEGMENT_IMPL_CLASS && "scope".equals(f.getName());
+
     /**
      * Filter excluding the outer class reference from non-static inner classes.
      * In practice that filter is only useful if the top class is an inner class, and we wish to ignore the outer class in the measurement.
@@ -143,6 +162,7 @@ public final class Filters
                         || getClassFilters(ignoreKnownSingletons).ignore(c, f)
                         || IGNORE_CLEANER_FIELDS.ignore(c, f)
                         || IGNORE_THREAD_FIELDS.ignore(c, f)
+                        || IGNORE_MEMORY_SEGMENT_SCOPE.ignore(c, f)
                         || IGNORE_NON_STRONG_REFERENCES.ignore(c, f)
                         || IGNORE_OUTER_CLASS_REFERENCES.ignore(c, f);
 
@@ -150,6 +170,7 @@ public final class Filters
                     || getClassFilters(ignoreKnownSingletons).ignore(c, f)
                     || IGNORE_CLEANER_FIELDS.ignore(c, f)
                     || IGNORE_THREAD_FIELDS.ignore(c, f)
+                    || IGNORE_MEMORY_SEGMENT_SCOPE.ignore(c, f)
                     || IGNORE_OUTER_CLASS_REFERENCES.ignore(c, f);
         }
 
@@ -158,12 +179,14 @@ public final class Filters
                     || getClassFilters(ignoreKnownSingletons).ignore(c, f)
                     || IGNORE_CLEANER_FIELDS.ignore(c, f)
                     || IGNORE_THREAD_FIELDS.ignore(c, f)
+                    || IGNORE_MEMORY_SEGMENT_SCOPE.ignore(c, f)
                     || IGNORE_NON_STRONG_REFERENCES.ignore(c, f);
 
         return (c, f) -> IGNORE_STATIC_AND_PRIMITIVE_FIELDS.ignore(c, f) 
                 || getClassFilters(ignoreKnownSingletons).ignore(c, f)
                 || IGNORE_CLEANER_FIELDS.ignore(c, f)
-                || IGNORE_THREAD_FIELDS.ignore(c, f);
+                || IGNORE_THREAD_FIELDS.ignore(c, f)
+                || IGNORE_MEMORY_SEGMENT_SCOPE.ignore(c, f);
     }
 
     /**
@@ -0,0 +1,320 @@
+package org.github.jamm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.github.jamm.strategies.MemoryLayoutBasedStrategy;
+
+/**
+ * Estimates the memory used by objects that have not been created, from the class layouts and the array sizes computed
+ * by a {@code MemoryMeter} strategy.
+ *
+ * <p>The collection estimates reproduce the growth and load factor policies of the JDK collections filled one element
+ * at a time after being created with their default constructor. The cost of the elements themselves (keys and values
+ * for the maps) is provided by the caller, for example:</p>
+ * <pre>
+ *     FootprintEstimator estimator = meter.footprintEstimator();
+ *     long entryBytes = estimator.instance(Long.class) + estimator.array(byte.class, 64);
+ *     long mapBytes = estimator.hashMap(10_000_000, entryBytes);
+ * </pre>
+ *
+ * <p>The objects shared between instances, like the empty arrays of the empty lists or the value of the
+ * {@code HashSet} entries, are not counted. The hash tables are assumed to hold keys with well distributed hash codes,
+ * so that no bin is converted into a tree.</p>
+ *
+ * @see MemoryMeter#footprintEstimator()
+ */
+public final class FootprintEstimator {
+
+    /**
+     * The default capacity of the {@code ArrayList} elements array.
+     */
+    private static final int ARRAY_LIST_DEFAULT_CAPACITY = 10;
+
+    /**
+     * The largest {@code ArrayList} capacity reached through the normal growth policy.
+     */
+    private static final int ARRAY_LIST_MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * The default capacity of the {@code HashMap} and {@code ConcurrentHashMap} tables.
+     */
+    private static final int HASH_TABLE_DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum capacity of the {@code HashMap} and {@code ConcurrentHashMap} tables.
+     */
+    private static final int HASH_TABLE_MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The default load factor of the {@code HashMap} tables.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * {@code true} if the {@code String} values are {@code byte} arrays (Java 9+), {@code false} if they are {@code char}
+     * arrays.
+     */
+    private static final boolean COMPACT_STRINGS = isCompactStrings();
+
+    private static final Class<?> LINKED_LIST_NODE = loadClass("java.util.LinkedList$Node");
+
+    private static final Class<?> HASH_MAP_NODE = loadClass("java.util.HashMap$Node");
+
+    private static final Class<?> LINKED_HASH_MAP_ENTRY = loadClass("java.util.LinkedHashMap$Entry");
+
+    private static final Class<?> TREE_MAP_ENTRY = loadClass("java.util.TreeMap$Entry");
+
+    private static final Class<?> CONCURRENT_HASH_MAP_NODE = loadClass("java.util.concurrent.ConcurrentHashMap$Node");
+
+    /**
+     * The strategy computing the class layouts and the array sizes.
+     */
+    private final MemoryLayoutBasedStrategy strategy;
+
+    FootprintEstimator(MemoryLayoutBasedStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the shallow size of an instance of the specified class.
+     *
+     * @param type the class
+     * @return the shallow size of an instance of the specified class
+     * @throws IllegalArgumentException if the specified type is an array, a primitive or an interface
+     */
+    public long instance(Class<?> type) {
+
+        if (type == null)
+            throw new IllegalArgumentException("The type parameter should not be null");
+
+        return strategy.layoutOf(type).instanceSize();
+    }
+
+    /**
+     * Returns the size of an array of the specified component type and length.
+     *
+     * @param componentType the type of the array elements
+     * @param length the array length
+     * @return the size of the array, excluding the objects referenced by its elements
+     */
+    public long array(Class<?> componentType, int length) {
+
+        if (componentType == null)
+            throw new IllegalArgumentException("The componentType parameter should not be null");
+
+        checkNotNegative("length", length);
+        return strategy.computeArraySize(length, strategy.sizeOfField(componentType));
+    }
+
+    /**
+     * Returns the size of a {@code String} of the specified length, including its value, assuming that all its
+     * characters can be encoded in Latin-1.
+     *
+     * @param length the number of characters
+     * @return the size of the {@code String} and of its value
+     */
+    public long string(int length) {
+        return string(length, true);
+    }
+
+    /**
+     * Returns the size of a {@code String} of the specified length, including its value.
+     * <p>Since Java 9, the characters are stored as one byte each if all of them can be encoded in Latin-1 and as two
+     * bytes each otherwise. Before Java 9, they are always stored as two bytes.</p>
+     *
+     * @param length the number of characters
+     * @param latin1 {@code true} if all the characters can be encoded in Latin-1, {@code false} otherwise
+     * @return the size of the {@code String} and of its value
+     */
+    public long string(int length, boolean latin1) {
+        checkNotNegative("length", length);
+
+        if (!COMPACT_STRINGS)
+            return instance(String.class) + array(char.class, length);
+
+        return instance(String.class) + array(byte.class, latin1 ? length : 2 * length);
+    }
+
+    /**
+     * Returns the size of an {@code ArrayList} holding the specified number of elements.
+     * <p>The elements array is created with 10 elements on the first addition and grows by half of its capacity
+     * when it is full.</p>
+     *
+     * @param size the number of elements
+     * @param elementBytes the size of each element, 0 if the elements are shared with other objects
+     * @return the size of the {@code ArrayList}, of its elements array and of its elements
+     */
+    public long arrayList(int size, long elementBytes) {
+        checkNotNegative("size", size);
+        checkNotNegative("elementBytes", elementBytes);
+
+        long bytes = instance(ArrayList.class) + size * elementBytes;
+        if (size == 0)
+            return bytes; // The empty elements array is shared by all the empty lists
+
+        return bytes + array(Object.class, arrayListCapacity(size));
+    }
+
+    /**
+     * Returns the size of a {@code LinkedList} holding the specified number of elements.
+     *
+     * @param size the number of elements
+     * @param elementBytes the size of each element, 0 if the elements are shared with other objects
+     * @return the size of the {@code LinkedList}, of its nodes and of its elements
+     */
+    public long linkedList(int size, long elementBytes) {
+        checkNotNegative("size", size);
+        checkNotNegative("elementBytes", elementBytes);
+
+        return instance(LinkedList.class) + size * (instance(LINKED_LIST_NODE) + elementBytes);
+    }
+
+    /**
+     * Returns the size of a {@code HashMap} holding the specified number of entries with the default load factor.
+     *
+     * @param size the number of entries
+     * @param entryBytes the size of the key and the value of each entry, 0 if they are shared with other objects
+     * @return the size of the {@code HashMap}, of its table, of its nodes and of its keys and values
+     */
+    public long hashMap(int size, long entryBytes) {
+        return hashMap(size, DEFAULT_LOAD_FACTOR, entryBytes);
+    }
+
+    /**
+     * Returns the size of a {@code HashMap} holding the specified number of entries.
+     * <p>The table is created with 16 buckets on the first addition and doubles when the number of entries exceeds
+     * its capacity multiplied by the load factor.</p>
+     *
+     * @param size the number of entries
+     * @param loadFactor the load factor of the {@code HashMap}
+     * @param entryBytes the size of the key and the value of each entry, 0 if they are shared with other objects
+     * @return the size of the {@code HashMap}, of its table, of its nodes and of its keys and values
+     */
+    public long hashMap(int size, float loadFactor, long entryBytes) {
+        return instance(HashMap.class) + hashTable(size, loadFactor, entryBytes, HASH_MAP_NODE);
+    }
+
+    /**
+     * Returns the size of a {@code LinkedHashMap} holding the specified number of entries with the default load factor.
+     *
+     * @param size the number of entries
+     * @param entryBytes the size of the key and the value of each entry, 0 if they are shared with other objects
+     * @return the size of the {@code LinkedHashMap}, of its table, of its entries and of its keys and values
+     */
+    public long linkedHashMap(int size, long entryBytes) {
+        return instance(LinkedHashMap.class) + hashTable(size, DEFAULT_LOAD_FACTOR, entryBytes, LINKED_HASH_MAP_ENTRY);
+    }
+
+    /**
+     * Returns the size of a {@code HashSet} holding the specified number of elements with the default load factor.
+     *
+     * @param size the number of elements
+     * @param elementBytes the size of each element, 0 if the elements are shared with other objects
+     * @return the size of the {@code HashSet}, of its backing {@code HashMap} and of its elements
+     */
+    public long hashSet(int size, long elementBytes) {
+        return instance(HashSet.class) + hashMap(size, elementBytes);
+    }
+
+    /**
+     * Returns the size of a {@code ConcurrentHashMap} holding the specified number of entries.
+     * <p>The table is created with 16 buckets on the first addition and doubles when the number of entries reaches
+     * three quarters of its capacity. The counter cells created under contention are not counted.</p>
+     *
+     * @param size the number of entries
+     * @param entryBytes the size of the key and the value of each entry, 0 if they are shared with other objects
+     * @return the size of the {@code ConcurrentHashMap}, of its table, of its nodes and of its keys and values
+     */
+    public long concurrentHashMap(int size, long entryBytes) {
+        checkNotNegative("size", size);
+        checkNotNegative("entryBytes", entryBytes);
+
+        long bytes = instance(ConcurrentHashMap.class) + size * (instance(CONCURRENT_HASH_MAP_NODE) + entryBytes);
+        if (size == 0)
+            return bytes; // The table is created on the first addition
+
+        int capacity = HASH_TABLE_DEFAULT_CAPACITY;
+        while (size >= capacity - (capacity >>> 2) && capacity < HASH_TABLE_MAX_CAPACITY)
+            capacity <<= 1;
+
+        return bytes + array(Object.class, capacity);
+    }
+
+    /**
+     * Returns the size of a {@code TreeMap} holding the specified number of entries.
+     *
+     * @param size the number of entries
+     * @param entryBytes the size of the key and the value of each entry, 0 if they are shared with other objects
+     * @return the size of the {@code TreeMap}, of its entries and of its keys and values
+     */
+    public long treeMap(int size, long entryBytes) {
+        checkNotNegative("size", size);
+        checkNotNegative("entryBytes", entryBytes);
+
+        return instance(TreeMap.class) + size * (instance(TREE_MAP_ENTRY) + entryBytes);
+    }
+
+    /**
+     * Returns the size of the table, the nodes and the entries of a {@code HashMap} or of a {@code LinkedHashMap}.
+     */
+    private long hashTable(int size, float loadFactor, long entryBytes, Class<?> nodeClass) {
+        checkNotNegative("size", size);
+        checkNotNegative("entryBytes", entryBytes);
+
+        if (!(loadFactor > 0) || Float.isInfinite(loadFactor))
+            throw new IllegalArgumentException(String.format("The load factor should be positive (was %s).", loadFactor));
+
+        long bytes = size * (instance(nodeClass) + entryBytes);
+        if (size == 0)
+            return bytes; // The table is created on the first addition
+
+        // HashMap.resize doubles the threshold with the capacity, once computed for the default capacity
+        int capacity = HASH_TABLE_DEFAULT_CAPACITY;
+        long threshold = (int) (HASH_TABLE_DEFAULT_CAPACITY * loadFactor);
+        while (size > threshold && capacity < HASH_TABLE_MAX_CAPACITY) {
+            capacity <<= 1;
+            threshold = threshold == 0 ? (long) (capacity * loadFactor) : threshold << 1;
+        }
+
+        return bytes + array(Object.class, capacity);
+    }
+
+    /**
+     * Returns the capacity of an {@code ArrayList} after the specified number of additions.
+     */
+    private static int arrayListCapacity(int size) {
+        int capacity = ARRAY_LIST_DEFAULT_CAPACITY;
+        while (capacity < size) {
+            int newCapacity = capacity + (capacity >> 1);
+            capacity = newCapacity < 0 || newCapacity > ARRAY_LIST_MAX_CAPACITY ? size : newCapacity;
+        }
+        return capacity;
+    }
+
+    private static void checkNotNegative(String name, long value) {
+        if (value < 0)
+            throw new IllegalArgumentException(String.format("The %s parameter should not be negative (was %s).", name, value));
+    }
+
+    private static boolean isCompactStrings() {
+        try {
+            return String.class.getDeclaredField("value").getType() == byte[].class;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The java.lang.String class has no 'value' field", e);
+        }
+    }
+
+    private static Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(String.format("The %s class cannot be found", name), e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.github.jamm;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up in the background the classes matching the agent {@code warmup} prefixes, so that the first measurement
+ * of their instances does not pay for the reflection and the layout computation (see {@link MemoryMeter#warmUp(Class)}).
+ *
+ * <p>The classes already loaded when the agent starts are warmed up immediately. The classes loaded afterward are
+ * detected through a {@code ClassFileTransformer} which does not transform anything: as a transformer is called
+ * before the class is defined, it only records the class name and schedules a delayed scan of the loaded classes
+ * performed by the warm-up threads. The scans triggered while another one is pending are coalesced and the names of
+ * the classes not yet defined at the time of a scan are looked up again by the following ones. As a scan goes through
+ * all the loaded classes, the delay between the scans doubles, up to {@link #MAX_SCAN_DELAY_MS}, while the matching
+ * classes keep being loaded, and is reset once a scan has found all of them.</p>
+ */
+final class LayoutWarmer implements ClassFileTransformer {
+
+    /**
+     * The delay between the loading of a class and the scan looking for it, in milliseconds.
+     */
+    private static final long SCAN_DELAY_MS = 50;
+
+    /**
+     * The maximum delay between two consecutive scans, in milliseconds.
+     */
+    static final long MAX_SCAN_DELAY_MS = 1600;
+
+    /**
+     * The number of scans after which a class that was reported by the transformer but has not been defined is
+     * forgotten, its definition having probably failed.
+     */
+    private static final int MAX_SCANS = 20;
+
+    private final Instrumentation inst;
+
+    private final AgentOptions options;
+
+    /**
+     * The warm-up threads.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The names of the classes reported by the transformer and not yet found by a scan, with the number of scans that
+     * missed them.
+     */
+    private final ConcurrentMap<String, Integer> pending = new ConcurrentHashMap<>();
+
+    /**
+     * {@code true} if a scan of the loaded classes has been scheduled but has not started yet.
+     */
+    private final AtomicBoolean scanPending = new AtomicBoolean();
+
+    /**
+     * The delay of the next scan, in milliseconds.
+     */
+    private volatile long scanDelayMs = SCAN_DELAY_MS;
+
+    /**
+     * Tracks the classes already scheduled for warm-up.
+     */
+    private final ClassValue<AtomicBoolean> scheduled = new ClassValue<AtomicBoolean>() {
+        @Override
+        protected AtomicBoolean computeValue(Class<?> type) {
+            return new AtomicBoolean();
+        }
+    };
+
+    /**
+     * Tracks the classes already warmed up.
+     */
+    private final ClassValue<AtomicBoolean> warmed = new ClassValue<AtomicBoolean>() {
+        @Override
+        protected AtomicBoolean computeValue(Class<?> type) {
+            return new AtomicBoolean();
+        }
+    };
+
+    /**
+     * The {@code MemoryMeter} used to warm up the classes, created by the first warm-up thread to avoid slowing down the
+     * agent startup.
+     */
+    private volatile MemoryMeter meter;
+
+    private LayoutWarmer(Instrumentation inst, AgentOptions options) {
+        this.inst = inst;
+        this.options = options;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(options.threads(), r -> {
+            Thread thread = new Thread(r, "jamm-warmup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts warming up the classes matching the specified options.
+     *
+     * @param inst the {@code Instrumentation} instance passed to the agent
+     * @param options the agent options
+     * @return the started {@code LayoutWarmer}
+     */
+    static LayoutWarmer start(Instrumentation inst, AgentOptions options) {
+        LayoutWarmer warmer = new LayoutWarmer(inst, options);
+        inst.addTransformer(warmer);
+        warmer.execute(warmer::scan);
+        return warmer;
+    }
+
+    /**
+     * Stops the warm-up. The classes being warmed up are completed.
+     */
+    void stop() {
+        inst.removeTransformer(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader,
+                            String className,
+                            Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain,
+                            byte[] classfileBuffer) {
+
+        if (options.matches(className)) {
+            pending.put(className.replace('/', '.'), 0);
+            scheduleScan();
+        }
+
+        return null; // the class is not transformed
+    }
+
+    /**
+     * Checks if the specified class has been warmed up.
+     *
+     * @param type the class to check
+     * @return {@code true} if the specified class has been warmed up, {@code false} otherwise.
+     */
+    boolean isWarmedUp(Class<?> type) {
+        return warmed.get(type).get();
+    }
+
+    private void scheduleScan() {
+        if (scanPending.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::scan, scanDelayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The warm-up has been stopped
+            }
+        }
+    }
+
+    private void scan() {
+        scanPending.set(false);
+
+        MemoryMeter m = meter();
+        if (m == null)
+            return;
+
+        for (Class<?> type : inst.getAllLoadedClasses()) {
+            if (options.matches(type.getName())) {
+                pending.remove(type.getName());
+                if (!scheduled.get(type).getAndSet(true))
+                    execute(() -> warmUp(m, type));
+            }
+        }
+
+        for (String name : pending.keySet())
+            pending.computeIfPresent(name, (k, scans) -> scans + 1 < MAX_SCANS ? scans + 1 : null);
+
+        if (pending.isEmpty()) {
+            scanDelayMs = SCAN_DELAY_MS;
+        } else {
+            scanDelayMs = Math.min(scanDelayMs * 2, MAX_SCAN_DELAY_MS);
+            scheduleScan();
+        }
+    }
+
+    /**
+     * Returns the delay of the next scan of the loaded classes.
+     *
+     * @return the delay of the next scan, in milliseconds
+     */
+    long scanDelayMs() {
+        return scanDelayMs;
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The warm-up has been stopped
+        }
+    }
+
+    private void warmUp(MemoryMeter m, Class<?> type) {
+        try {
+            m.warmUp(type);
+            warmed.get(type).set(true);
+        } catch (RuntimeException | LinkageError e) {
+            // The class will be measured the usual way, the warm-up is only an optimization
+        }
+    }
+
+    /**
+     * Returns the {@code MemoryMeter} used to warm up the classes, creating it if needed.
+     *
+     * @return the {@code MemoryMeter} used to warm up the classes or {@code null} if the requested strategy is not
+     * available, in which case the warm-up is stopped.
+     */
+    private MemoryMeter meter() {
+        MemoryMeter m = meter;
+        if (m == null) {
+            synchronized (this) {
+                m = meter;
+                if (m == null) {
+                    try {
+                        MemoryMeter.Builder builder = MemoryMeter.builder();
+                        if (options.guess() != null)
+                            builder.withGuessing(options.guess());
+                        meter = m = builder.build();
+                    } catch (IllegalStateException e) {
+                        System.out.println("WARNING: Jamm warm-up disabled: " + e.getMessage());
+                        stop();
+                    }
+                }
+            }
+        }
+        return m;
+    }
+}
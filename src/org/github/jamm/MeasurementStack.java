@@ -1,5 +1,6 @@
 package org.github.jamm;
 
+import java.lang.reflect.Field;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
@@ -47,14 +48,29 @@ public final class MeasurementStack {
         }
     }
 
+    /**
+     * Push the value of the specified field into the stack.
+     *
+     * @param parent the parent object
+     * @param field the field
+     * @param child the field value
+     */
+    void pushField(Object parent, Field field, Object child) {
+        if (tracker.add(child)) {
+            stack.push(child);
+            listener.fieldAdded(parent, field, child);
+        }
+    }
+
     /**
      * Push the root object into the stack.
+     * @param meter the meter measuring the object tree
      * @param object the root of the object tree to measure. 
      */
-    void pushRoot(Object object) {
+    void pushRoot(MemoryMeter meter, Object object) {
         stack.push(object);
         tracker.add(object);
-        listener.started(object);
+        listener.started(meter, object);
     }
 
     /**
@@ -71,6 +87,16 @@ public final class MeasurementStack {
         }
     }
 
+    /**
+     * Tracks the specified object without pushing it into the stack, so that it will not be measured again.
+     *
+     * @param object the object to track
+     * @return {@code true} if the object was not already tracked, {@code false} otherwise.
+     */
+    boolean track(Object object) {
+        return tracker.add(object);
+    }
+
     /**
      * Checks if this stack is empty.
      * @return {@code true} if the stack is empty, {@code false} otherwise.
@@ -1,6 +1,7 @@
 package org.github.jamm;
 
 import org.github.jamm.utils.MathUtils;
+import org.github.jamm.utils.ReflectionUtils;
 
 /**
  * Information about the memory layout used by the JVM running the code.
@@ -11,7 +12,11 @@ import org.github.jamm.utils.MathUtils;
  *
  * <p>For arrays, the header contains a 4-byte array length in addition to the mark and class word. Array headers
  *  might also contain some padding as array base is aligned (<a href="https://shipilev.net/jvm/objects-inside-out/#_observation_array_base_is_aligned">
- *  https://bugs.openjdk.org/browse/JDK-8139457)</a>,.</p> 
+ *  https://bugs.openjdk.org/browse/JDK-8139457)</a>,. Before Java 22, the array base is aligned on the heap word size.
+ *  From Java 22, it is only aligned on the size of the array elements.</p>
+ *
+ * <p>With compact object headers (<a href="https://openjdk.org/jeps/450">JEP 450</a>), the class pointer is stored in
+ *  the mark word: the object header only uses 8 bytes and the fields or the array length directly follow it.</p>
  *  
  * <p>Objects are aligned: they always start at some multiple of the alignment.</p>
  *
@@ -21,14 +26,15 @@ public interface MemoryLayoutSpecification {
     /**
      * Returns the size of the array header.
      * <p>The array header is composed of the object header + the array length.
-     * Its size in bytes is equal to {@code getObjectHeaderSize()} + 4</p>
+     * Its size in bytes is equal to {@code getObjectHeaderSize()} + 4, rounded up to the heap word size before Java 22.
+     * The array elements start at that offset rounded up to the size of an element.</p>
      * 
      * @return the size of the array header.
      */
     int getArrayHeaderSize();
 
     /**
-     * Returns the size of the object header (mark word + class word).
+     * Returns the size of the object header (mark word + class word, or only the mark word with compact object headers).
      * @return the size of the object header
      */
     int getObjectHeaderSize();
@@ -55,78 +61,193 @@ public interface MemoryLayoutSpecification {
      */
     int getContendedPaddingWidth();
 
+    /**
+     * Returns the memory layout used by the JVM running the code.
+     *
+     * @return the memory layout used by the JVM running the code
+     */
     static MemoryLayoutSpecification getEffectiveMemoryLayoutSpecification() {
+        return builder().build();
+    }
 
-        final int objectHeaderSize;
-        final int referenceSize;
-        final int heapWordSize;
+    /**
+     * Returns a builder of hypothetical memory layouts, initialized with the JVM options of the JVM running the code.
+     * <p>The layouts built by changing some options describe how the objects would be laid out if the JVM was started
+     * with those options. For example, the layout used past the 32 GB heap limit of the compressed references is:</p>
+     * <pre>
+     * MemoryLayoutSpecification.builder().withCompressedOops(false).build();
+     * </pre>
+     *
+     * @return a builder of memory layouts
+     */
+    static Builder builder() {
+        return new Builder();
+    }
 
-        if (VM.is32Bits()) {
+    /**
+     * Builder of memory layouts from the JVM options affecting them.
+     * <p>The compressed references and class pointers options are ignored on 32 bits JVMs.</p>
+     */
+    final class Builder {
 
-            // Running with 32-bit data model
-            objectHeaderSize = 8; // mark word (4 bytes) + class word (4 bytes)
-            referenceSize = 4; // reference size for 32 bit
-            heapWordSize = 4;
+        private boolean useCompressedOops = VM.useCompressedOops();
+        private boolean useCompressedClassPointers = VM.useCompressedClassPointers();
+        private boolean useCompactObjectHeaders = VM.useCompactObjectHeaders();
+        private int objectAlignment = VM.getObjectAlignmentInBytes();
+        private int contendedPaddingWidth = VM.contendedPaddingWidth();
 
-        } else {
+        private Builder() {
+        }
 
-            heapWordSize = 8;
-            referenceSize = VM.useCompressedOops() ? 4 // compressed reference
-                                                   : 8; // uncompressed reference (it's a 64-bit uncompressed OOPs object model)
+        /**
+         * Specifies if the references are compressed ({@code -XX:+/-UseCompressedOops}), which is only possible with
+         * heaps smaller than 32 GB.
+         * <p>Prior to Java 15, disabling compressed references also disables compressed class pointers.</p>
+         *
+         * @param useCompressedOops {@code true} if the references are compressed, {@code false} otherwise.
+         * @return this builder
+         */
+        public Builder withCompressedOops(boolean useCompressedOops) {
+            this.useCompressedOops = useCompressedOops;
+            return this;
+        }
 
-            // Prior to Java 15, the use of compressed class pointers assumed the use of compressed oops.
-            // This was changed in Java 15 by JDK-8241825 (https://bugs.openjdk.org/browse/JDK-8241825).
-            objectHeaderSize = VM.useCompressedClassPointers() ? 12  // mark word (8 bytes) + class word (4 bytes)
-                                                               : 16; // mark word (8 bytes) + class word (8 bytes)
+        /**
+         * Specifies if the class pointers are compressed ({@code -XX:+/-UseCompressedClassPointers}).
+         *
+         * @param useCompressedClassPointers {@code true} if the class pointers are compressed, {@code false} otherwise.
+         * @return this builder
+         */
+        public Builder withCompressedClassPointers(boolean useCompressedClassPointers) {
+            this.useCompressedClassPointers = useCompressedClassPointers;
+            return this;
         }
 
-        final int objectAlignment = VM.getObjectAlignmentInBytes();
-        final int arrayLength = 4; // space in bytes used to store the array length after the mark and class word
-        final int arrayHeaderSize = MathUtils.roundTo(objectHeaderSize + arrayLength, heapWordSize);
-        final int contendedPaddingWidth = VM.contendedPaddingWidth();
+        /**
+         * Specifies if the compact object headers are used ({@code -XX:+/-UseCompactObjectHeaders}).
+         *
+         * @param useCompactObjectHeaders {@code true} if the compact object headers are used, {@code false} otherwise.
+         * @return this builder
+         */
+        public Builder withCompactObjectHeaders(boolean useCompactObjectHeaders) {
+            this.useCompactObjectHeaders = useCompactObjectHeaders;
+            return this;
+        }
 
-        return new MemoryLayoutSpecification() {
+        /**
+         * Specifies the object alignment ({@code -XX:ObjectAlignmentInBytes}).
+         *
+         * @param objectAlignment the object alignment in bytes, a power of 2 between 8 and 256
+         * @return this builder
+         */
+        public Builder withObjectAlignment(int objectAlignment) {
+            if (objectAlignment < 8 || objectAlignment > 256 || Integer.bitCount(objectAlignment) != 1)
+                throw new IllegalArgumentException(String.format("The object alignment should be a power of 2 between 8 and 256 (was %s).", objectAlignment));
+
+            this.objectAlignment = objectAlignment;
+            return this;
+        }
 
-            @Override
-            public int getArrayHeaderSize() {
-                return arrayHeaderSize;
-            }
+        /**
+         * Specifies the number of bytes used to pad the fields/classes annotated with {@code Contended}
+         * ({@code -XX:ContendedPaddingWidth}).
+         *
+         * @param contendedPaddingWidth the padding width in bytes, a multiple of 8 between 0 and 8192
+         * @return this builder
+         */
+        public Builder withContendedPaddingWidth(int contendedPaddingWidth) {
+            if (contendedPaddingWidth < 0 || contendedPaddingWidth > 8192 || (contendedPaddingWidth & 7) != 0)
+                throw new IllegalArgumentException(String.format("The contended padding width should be a multiple of 8 between 0 and 8192 (was %s).", contendedPaddingWidth));
+
+            this.contendedPaddingWidth = contendedPaddingWidth;
+            return this;
+        }
 
-            @Override
-            public int getObjectHeaderSize() {
-                return objectHeaderSize;
-            }
+        /**
+         * Builds the memory layout.
+         *
+         * @return the memory layout
+         */
+        public MemoryLayoutSpecification build() {
 
-            @Override
-            public int getObjectAlignment() {
-                return objectAlignment;
-            }
+            final int objectHeaderSize;
+            final int referenceSize;
+            final int heapWordSize;
 
-            @Override
-            public int getReferenceSize() {
-                return referenceSize;
-            }
+            if (VM.is32Bits()) {
 
-            @Override
-            public int getContendedPaddingWidth() {
-                return contendedPaddingWidth;
-            }
+                // Running with 32-bit data model
+                objectHeaderSize = 8; // mark word (4 bytes) + class word (4 bytes)
+                referenceSize = 4; // reference size for 32 bit
+                heapWordSize = 4;
+
+            } else {
+
+                heapWordSize = 8;
+                referenceSize = useCompressedOops ? 4 // compressed reference
+                                                  : 8; // uncompressed reference (it's a 64-bit uncompressed OOPs object model)
+
+                // Prior to Java 15, the use of compressed class pointers assumed the use of compressed oops.
+                // This was changed in Java 15 by JDK-8241825 (https://bugs.openjdk.org/browse/JDK-8241825).
+                boolean compressedClassPointers = useCompressedClassPointers && (useCompressedOops || ReflectionUtils.supportsHiddenClasses());
 
-            @Override
-            public String toString() {
-                return new StringBuilder().append("Memory Layout: [objectHeaderSize=")
-                                          .append(objectHeaderSize)
-                                          .append(" , arrayHeaderSize=")
-                                          .append(arrayHeaderSize)
-                                          .append(", objectAlignment=")
-                                          .append(objectAlignment)
-                                          .append(", referenceSize=")
-                                          .append(referenceSize)
-                                          .append(", contendedPaddingWidth=")
-                                          .append(contendedPaddingWidth)
-                                          .append(']')
-                                          .toString();
+                if (useCompactObjectHeaders)
+                    objectHeaderSize = 8; // mark word including the class pointer (8 bytes)
+                else
+                    objectHeaderSize = compressedClassPointers ? 12  // mark word (8 bytes) + class word (4 bytes)
+                                                               : 16; // mark word (8 bytes) + class word (8 bytes)
             }
-        };
+
+            final int objectAlignment = this.objectAlignment;
+            final int arrayLength = 4; // space in bytes used to store the array length after the mark and class word
+            // The compact object headers only exist from Java 24, where the arrays base is not aligned on the heap word size
+            final int arrayHeaderSize = VM.isPreJava22JVM() && !useCompactObjectHeaders ? MathUtils.roundTo(objectHeaderSize + arrayLength, heapWordSize)
+                                                                                        : objectHeaderSize + arrayLength;
+            final int contendedPaddingWidth = this.contendedPaddingWidth;
+
+            return new MemoryLayoutSpecification() {
+
+                @Override
+                public int getArrayHeaderSize() {
+                    return arrayHeaderSize;
+                }
+
+                @Override
+                public int getObjectHeaderSize() {
+                    return objectHeaderSize;
+                }
+
+                @Override
+                public int getObjectAlignment() {
+                    return objectAlignment;
+                }
+
+                @Override
+                public int getReferenceSize() {
+                    return referenceSize;
+                }
+
+                @Override
+                public int getContendedPaddingWidth() {
+                    return contendedPaddingWidth;
+                }
+
+                @Override
+                public String toString() {
+                    return new StringBuilder().append("Memory Layout: [objectHeaderSize=")
+                                              .append(objectHeaderSize)
+                                              .append(" , arrayHeaderSize=")
+                                              .append(arrayHeaderSize)
+                                              .append(", objectAlignment=")
+                                              .append(objectAlignment)
+                                              .append(", referenceSize=")
+                                              .append(referenceSize)
+                                              .append(", contendedPaddingWidth=")
+                                              .append(contendedPaddingWidth)
+                                              .append(']')
+                                              .toString();
+                }
+            };
+        }
     }
 }
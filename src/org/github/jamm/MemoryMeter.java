@@ -1,17 +1,27 @@
 package org.github.jamm;
 
 import java.lang.instrument.Instrumentation;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import org.github.jamm.accessors.FieldAccessor;
 import org.github.jamm.listeners.NoopMemoryMeterListener;
 import org.github.jamm.listeners.TreePrinter;
+import org.github.jamm.strategies.AdaptiveStrategy;
+import org.github.jamm.strategies.MemoryLayoutBasedStrategy;
 import org.github.jamm.strategies.MemoryMeterStrategies;
 import org.github.jamm.string.StringMeter;
 import org.github.jamm.utils.ByteBufferMeasurementUtils;
+import org.github.jamm.utils.ReflectionUtils;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
@@ -23,11 +33,33 @@ import static java.util.Collections.unmodifiableList;
 public final class MemoryMeter {
 
     public static void premain(String options, Instrumentation inst) {
-        MemoryMeterStrategies.instrumentation = inst;
+        startAgent(options, inst);
     }
 
     public static void agentmain(String options, Instrumentation inst) {
+        startAgent(options, inst);
+    }
+
+    /**
+     * Registers the {@code Instrumentation} instance and starts the warm-up of the classes specified in the agent
+     * options, if any (see {@link AgentOptions}).
+     *
+     * @param options the agent options
+     * @param inst the {@code Instrumentation} instance
+     */
+    private static void startAgent(String options, Instrumentation inst) {
+        AgentOptions agentOptions = AgentOptions.parse(options);
+        if (!agentOptions.unknownKeys().isEmpty())
+            System.out.println("WARNING: Jamm ignored the unknown agent options " + agentOptions.unknownKeys());
+
         MemoryMeterStrategies.instrumentation = inst;
+
+        // Without Unsafe, the fields of the JDK classes can only be read if their packages are open to Jamm
+        if (!VM.hasUnsafe())
+            ReflectionUtils.openPackages(inst);
+
+        if (agentOptions.warmUp())
+            LayoutWarmer.start(inst, agentOptions);
     }
 
     public static boolean hasInstrumentation() {
@@ -86,14 +118,19 @@ public final class MemoryMeter {
          */
         SPECIFICATION {
 
-            public boolean requireUnsafe() {
-                return true;
-            }
-
             public boolean canBeUsedAsFallbackFrom(Guess guess) {
                 return true;
             }
-        };
+        },
+        /**
+         * Selects for each class the fastest strategy measuring its instances exactly. The first instance of each class
+         * is measured through {@code Instrumentation}, if available, and through the {@code Unsafe} and
+         * {@code Specification} strategies. The first of those matching the {@code Instrumentation} answer is used for
+         * the following instances, {@code Instrumentation} being kept if none does. From Java 16, where
+         * {@code Instrumentation.getObjectSize} is an intrinsic, {@code Instrumentation} is used for all the classes if
+         * it is available. The decisions can be retrieved through {@link MemoryMeter#adaptiveDecisions()}.
+         */
+        ADAPTIVE;
 
         /**
          * Checks if this strategy requires {@code Instrumentation} to be present.
@@ -183,6 +220,11 @@ public final class MemoryMeter {
      */
     private static final FieldAccessor ACCESSOR = FieldAccessor.newInstance();
 
+    /**
+     * The {@code Reference.referent} field.
+     */
+    private static final Field REFERENT_FIELD = getReferentField();
+
     /**
      * The strategy used to measure the objects.
      */
@@ -199,21 +241,41 @@ public final class MemoryMeter {
     private final FieldFilter fieldFilter;
 
     /**
-     * Utility used to optimize the deep measurement of String objects.
+     * Filter used to determine which field should be ignored when measuring by reachability: the {@code Reference}
+     * fields are always ignored, the referents being measured separately.
+     */
+    private final FieldFilter strongFieldFilter;
+
+    /**
+     * Utility used to optimize the deep measurement of String objects, {@code null} if the optimization is disabled.
      */
-    private final StringMeter STRING_METER = StringMeter.newInstance();
+    private final StringMeter STRING_METER;
 
     /**
      * The factory used to create the listener listening to the object graph traversal.
      */
     private final MemoryMeterListener.Factory listenerFactory;
 
+    /**
+     * {@code true} if the String values must be tracked so that the values shared by several strings are only measured once.
+     */
+    private final boolean trackStringValues;
+
+    /**
+     * {@code true} if the Strings can be measured directly from the length of their values. The optimization relies
+     * on the memory layout of the running JVM and is disabled when measuring with a hypothetical layout.
+     */
+    private final boolean optimizeStrings;
+
     private MemoryMeter(Builder builder) {
 
-        this(MemoryMeterStrategies.getInstance().getStrategy(builder.guesses),
+        this(builder.memoryLayout == null ? MemoryMeterStrategies.getInstance().getStrategy(builder.guesses)
+                                          : MemoryMeterStrategies.getInstance().getSpecStrategy(builder.memoryLayout),
              Filters.getClassFilters(builder.ignoreKnownSingletons),
              Filters.getFieldFilters(builder.ignoreKnownSingletons, builder.ignoreOuterClassReference, builder.ignoreNonStrongReferences),
-             builder.listenerFactory);
+             builder.listenerFactory,
+             builder.trackStringValues,
+             StringMeter.ENABLED && builder.memoryLayout == null);
     }
 
     /**
@@ -232,10 +294,46 @@ public final class MemoryMeter {
                        FieldFilter fieldFilter,
                        MemoryMeterListener.Factory listenerFactory) {
 
+        this(strategy, classFilter, fieldFilter, listenerFactory, false, StringMeter.ENABLED);
+    }
+
+    private MemoryMeter(MemoryMeterStrategy strategy,
+                        FieldAndClassFilter classFilter,
+                        FieldFilter fieldFilter,
+                        MemoryMeterListener.Factory listenerFactory,
+                        boolean trackStringValues,
+                        boolean optimizeStrings) {
+
         this.strategy = strategy;
         this.classFilter = classFilter;
         this.fieldFilter = fieldFilter;
+        this.strongFieldFilter = (c, f) -> Filters.IGNORE_NON_STRONG_REFERENCES.ignore(c, f) || fieldFilter.ignore(c, f);
         this.listenerFactory = listenerFactory;
+        this.trackStringValues = trackStringValues;
+        this.STRING_METER = optimizeStrings ? newStringMeter() : null;
+        this.optimizeStrings = STRING_METER != null;
+    }
+
+    /**
+     * Creates the utility used to optimize the deep measurement of String objects.
+     *
+     * @return the utility used to optimize the deep measurement of String objects or {@code null} if the String values
+     * cannot be accessed (without {@code Unsafe}, the {@code java.lang} package must be open to Jamm)
+     */
+    private static StringMeter newStringMeter() {
+        try {
+            return StringMeter.newInstance();
+        } catch (CannotAccessFieldException e) {
+            return null;
+        }
+    }
+
+    private static Field getReferentField() {
+        try {
+            return Reference.class.getDeclaredField("referent");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("The Reference.referent field could not be found", e);
+        }
     }
 
     public static Builder builder() {
@@ -250,6 +348,101 @@ public final class MemoryMeter {
         return MemoryMeterStrategy.MEMORY_LAYOUT;
     }
 
+    /**
+     * Returns the memory layout of the instances of the specified class: header size, field offsets and sizes, gaps,
+     * {@code @Contended} padding and instance size.
+     *
+     * <p>The layout is computed by the strategy used by this {@code MemoryMeter} and cached per class. As the
+     * {@code Instrumentation} based strategies cannot provide field offsets, the {@code Unsafe} strategy (or the
+     * {@code Specification} one if {@code Unsafe} is not available) is used in their place.</p>
+     *
+     * @param type the class for which the layout must be returned
+     * @return the memory layout of the instances of the specified class
+     * @throws IllegalArgumentException if the specified type is an array, a primitive or an interface
+     */
+    public ClassLayout layoutOf(Class<?> type) {
+
+        if (type == null)
+            throw new IllegalArgumentException("The type parameter should not be null");
+
+        return MemoryMeterStrategies.getInstance().getLayoutStrategy(strategy).layoutOf(type);
+    }
+
+    /**
+     * Checks if this {@code MemoryMeter} measures the strings and their value at once, from the length of their value.
+     * <p>In that case, the listeners are notified of the deep size of the strings and are not notified of their value.
+     * The optimization is disabled by the {@code org.github.jamm.string.Optimize} system property, when measuring
+     * with a hypothetical memory layout and when the String values cannot be accessed.</p>
+     *
+     * @return {@code true} if the strings are measured with their value, {@code false} otherwise
+     */
+    public boolean isStringOptimizationEnabled() {
+        return optimizeStrings;
+    }
+
+    /**
+     * Returns the memory layout used by the strategy of this {@code MemoryMeter}: the layout of the running JVM or, if
+     * this {@code MemoryMeter} was built with {@link Builder#withMemoryLayout(MemoryLayoutSpecification)}, the
+     * hypothetical one.
+     *
+     * @return the memory layout used by the strategy of this {@code MemoryMeter}
+     */
+    public MemoryLayoutSpecification memoryLayout() {
+        return MemoryMeterStrategies.getInstance().getLayoutStrategy(strategy).memoryLayout();
+    }
+
+    /**
+     * Returns an estimator computing the memory used by objects that have not been created, like collections of a
+     * given size, from the class layouts and array sizes of the strategy used by this {@code MemoryMeter}.
+     *
+     * <p>If this {@code MemoryMeter} uses a hypothetical memory layout, the estimates are computed for that layout.</p>
+     *
+     * @return an estimator computing the memory used by objects that have not been created
+     */
+    public FootprintEstimator footprintEstimator() {
+        return new FootprintEstimator(MemoryMeterStrategies.getInstance().getLayoutStrategy(strategy));
+    }
+
+    /**
+     * Returns the strategies selected so far per class when this {@code MemoryMeter} uses the {@code ADAPTIVE} guess.
+     *
+     * @return a snapshot of the strategies selected per class, empty if this {@code MemoryMeter} does not use the
+     * {@code ADAPTIVE} guess or if it uses {@code Instrumentation} for all the classes
+     */
+    public Map<Class<?>, Guess> adaptiveDecisions() {
+        return strategy instanceof AdaptiveStrategy ? ((AdaptiveStrategy) strategy).decisions()
+                                                    : Collections.emptyMap();
+    }
+
+    /**
+     * Computes ahead of time the information used to measure the instances of the specified class: their shallow size,
+     * if the strategy used by this {@code MemoryMeter} caches it, the declared fields of the class and its superclasses
+     * and the accessors used to read their values.
+     *
+     * <p>The first measurement of an instance of a class pays for that work. Warming up the classes at startup, or in
+     * the background through the {@code warmup} agent option, moves it out of the measurement path.</p>
+     *
+     * @param type the class to warm up
+     */
+    public void warmUp(Class<?> type) {
+
+        if (type == null)
+            throw new IllegalArgumentException("The type parameter should not be null");
+
+        if (type.isArray() || type.isPrimitive() || type.isInterface())
+            return;
+
+        if (strategy instanceof MemoryLayoutBasedStrategy)
+            ((MemoryLayoutBasedStrategy) strategy).warmUp(type);
+
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+            for (Field field : cls.getDeclaredFields()) {
+                if (!Filters.IGNORE_STATIC_AND_PRIMITIVE_FIELDS.ignore(cls, field))
+                    ACCESSOR.prepare(field);
+            }
+        }
+    }
+
     /**
      * Measures the shallow memory usage of the object.
      *
@@ -418,7 +611,7 @@ public final class MemoryMeter {
      */
     public long measureStringDeep(String s) {
 
-        if (StringMeter.ENABLED) {
+        if (optimizeStrings) {
 
             if (s == null)
                 return 0L;
@@ -428,6 +621,52 @@ public final class MemoryMeter {
         return measureDeep(s);
     }
 
+    /**
+     * Measures the deep memory usage of the specified {@code String} array: the array and its strings.
+     *
+     * <p>The strings are measured in a single loop, without going through the object graph traversal: each element is
+     * measured independently, a {@code String} present several times in the array being measured several times, and
+     * the listener is not notified.</p>
+     *
+     * @param array the array to measure
+     * @return the deep memory usage of the specified array
+     */
+    public long measureStringArrayDeep(String[] array) {
+
+        if (array == null)
+            return 0L;
+
+        if (optimizeStrings)
+            return strategy.measureArray(array) + STRING_METER.measureDeep(memoryLayout(), array);
+
+        return measureDeep(array);
+    }
+
+    /**
+     * Measures the deep memory usage of the specified strings, the memory used by the collection holding them (if any)
+     * being excluded.
+     *
+     * <p>The strings are measured in a single loop, without going through the object graph traversal: each element is
+     * measured independently, a {@code String} returned several times being measured several times, and the listener
+     * is not notified.</p>
+     *
+     * @param strings the strings to measure
+     * @return the sum of the deep memory usage of the specified strings
+     */
+    public long measureStringsDeep(Iterable<String> strings) {
+
+        if (strings == null)
+            return 0L;
+
+        if (optimizeStrings)
+            return STRING_METER.measureDeep(memoryLayout(), strings);
+
+        long size = 0;
+        for (String s : strings)
+            size += measureDeep(s);
+        return size;
+    }
+
     /**
      * Measures the memory usage of the object including referenced objects.
      *
@@ -459,21 +698,194 @@ public final class MemoryMeter {
         if (classFilter.ignore(object.getClass()))
             return 0;
 
-        MemoryMeterListener listener = listenerFactory.newInstance();
+        return measureDeep(object, bbMode, listenerFactory.newInstance());
+    }
+
+    /**
+     * Measures the memory usage of the object including referenced objects and notifies the specified listener of the
+     * object graph traversal instead of the one provided by the {@code MemoryMeter} listener factory.
+     *
+     * <p>This method allows to run an analysis, such as a {@link org.github.jamm.listeners.FieldHistogram}, on a
+     * specific measurement.</p>
+     * <p>Calling this method is equivalent to calling {@code measureDeep(object, ByteBufferMode, listener)} with a {@code NORMAL} {@code ByteBufferMode}.</p>
+     *
+     * @param object the object to measure
+     * @param listener the listener to notify
+     * @return the memory usage of @param object including referenced objects
+     */
+    public long measureDeep(Object object, MemoryMeterListener listener) {
+        return measureDeep(object, ByteBufferMode.NORMAL, listener);
+    }
+
+    /**
+     * Measures the memory usage of the object including referenced objects and notifies the specified listener of the
+     * object graph traversal instead of the one provided by the {@code MemoryMeter} listener factory.
+     *
+     * <p>If the object is {@code null} or filtered out the value returned will be zero and the listener will not be notified.</p>
+     *
+     * @param object the object to measure
+     * @param bbMode the mode that should be used to measure ByteBuffers.
+     * @param listener the listener to notify
+     * @return the memory usage of @param object including referenced objects
+     */
+    public long measureDeep(Object object, ByteBufferMode bbMode, MemoryMeterListener listener) {
+        return measureDeep(object, (Predicate<ByteBuffer>) bbMode::isSlab, listener);
+    }
+
+    /**
+     * Measures the memory usage of the object including referenced objects, the {@code ByteBuffer}s whose memory
+     * belongs to one of the slabs of the specified registry being charged only their shallow size and, for heap
+     * buffers, their remaining bytes.
+     *
+     * <p>If the object is {@code null} the value returned will be zero.</p>
+     *
+     * @param object the object to measure
+     * @param slabs the registry of the slabs from which the buffers are allocated
+     * @return the memory usage of @param object including referenced objects
+     */
+    public long measureDeep(Object object, SlabRegistry slabs) {
+
+        if (object == null) {
+            return 0L;
+        }
+
+        if (classFilter.ignore(object.getClass()))
+            return 0;
+
+        return measureDeep(object, slabs, listenerFactory.newInstance());
+    }
+
+    /**
+     * Measures the memory usage of the object including referenced objects, the {@code ByteBuffer}s whose memory
+     * belongs to one of the slabs of the specified registry being charged only their shallow size and, for heap
+     * buffers, their remaining bytes. The specified listener is notified of the object graph traversal instead of
+     * the one provided by the {@code MemoryMeter} listener factory.
+     *
+     * <p>If the object is {@code null} or filtered out the value returned will be zero and the listener will not be notified.</p>
+     *
+     * @param object the object to measure
+     * @param slabs the registry of the slabs from which the buffers are allocated
+     * @param listener the listener to notify
+     * @return the memory usage of @param object including referenced objects
+     */
+    public long measureDeep(Object object, SlabRegistry slabs, MemoryMeterListener listener) {
+        return measureDeep(object, (Predicate<ByteBuffer>) slabs::isSlab, listener);
+    }
+
+    private long measureDeep(Object object, Predicate<ByteBuffer> isSlab, MemoryMeterListener listener) {
+
+        if (object == null) {
+            return 0L;
+        }
+
+        if (classFilter.ignore(object.getClass()))
+            return 0;
 
         // track stack manually, so we can handle deeper hierarchies than recursion
         MeasurementStack stack = new MeasurementStack(classFilter, listener);
-        stack.pushRoot(object);
+        stack.pushRoot(this, object);
+
+        long total = measureDeep(stack, isSlab, fieldFilter, null, null);
+        listener.done(total);
+        return total;
+    }
+
+    /**
+     * Measures the memory usage of the object including referenced objects and breaks it down by the strength of the
+     * references through which the objects are reachable: strongly, softly or weakly.
+     *
+     * <p>The graph is traversed once: the strongly reachable objects are measured first, the referents of the
+     * {@code Reference} instances met along the way being deferred. The softly reachable objects are then measured
+     * from the deferred soft referents and finally the weakly reachable ones from the weak and phantom referents.
+     * As each object is only measured once, the objects that are also strongly reachable are attributed to the strong
+     * total. The other {@code Reference} fields and the {@code head} field of {@code ReferenceQueue} are ignored,
+     * whatever the {@code measureNonStrongReferences} setting.</p>
+     * <p>If the object is {@code null} or filtered out the returned breakdown will be empty. The {@code MemoryMeter}
+     * listener is not notified of the traversal.</p>
+     * <p>Calling this method is equivalent to calling {@code measureDeepByReachability(object, ByteBufferMode)} with a {@code NORMAL} {@code ByteBufferMode}.</p>
+     *
+     * @param object the object to measure
+     * @return the memory usage of @param object broken down by reachability
+     */
+    public ReachabilityBreakdown measureDeepByReachability(Object object) {
+        return measureDeepByReachability(object, ByteBufferMode.NORMAL);
+    }
 
+    /**
+     * Measures the memory usage of the object including referenced objects and breaks it down by the strength of the
+     * references through which the objects are reachable: strongly, softly or weakly.
+     *
+     * @param object the object to measure
+     * @param bbMode the mode that should be used to measure ByteBuffers.
+     * @return the memory usage of @param object broken down by reachability
+     * @see #measureDeepByReachability(Object)
+     */
+    public ReachabilityBreakdown measureDeepByReachability(Object object, ByteBufferMode bbMode) {
+
+        if (object == null || classFilter.ignore(object.getClass()))
+            return new ReachabilityBreakdown(0, 0, 0);
+
+        MeasurementStack stack = new MeasurementStack(classFilter, NoopMemoryMeterListener.FACTORY.newInstance());
+        stack.pushRoot(this, object);
+
+        Deque<Reference<?>> softReferences = new ArrayDeque<>();
+        Deque<Reference<?>> weakReferences = new ArrayDeque<>();
+
+        Predicate<ByteBuffer> isSlab = bbMode::isSlab;
+        long strongBytes = measureDeep(stack, isSlab, strongFieldFilter, softReferences, weakReferences);
+
+        // Soft referents remain softly reachable while weak ones become weakly reachable
+        long softBytes = 0;
+        while (!softReferences.isEmpty()) {
+            pushReferent(softReferences.pop(), stack);
+            softBytes += measureDeep(stack, isSlab, strongFieldFilter, softReferences, weakReferences);
+        }
+
+        // Beyond a weak reference everything is at most weakly reachable
+        long weakBytes = 0;
+        while (!weakReferences.isEmpty()) {
+            pushReferent(weakReferences.pop(), stack);
+            weakBytes += measureDeep(stack, isSlab, strongFieldFilter, weakReferences, weakReferences);
+        }
+
+        return new ReachabilityBreakdown(strongBytes, softBytes, weakBytes);
+    }
+
+    private void pushReferent(Reference<?> reference, MeasurementStack stack) {
+        // Phantom references always return null from get(), the field must therefore be read directly
+        Object referent = ACCESSOR.getFieldValue(reference, REFERENT_FIELD);
+        if (referent != null && !classFilter.ignore(referent.getClass()))
+            stack.pushField(reference, REFERENT_FIELD, referent);
+    }
+
+    /**
+     * Measures the objects of the specified stack and of the graphs reachable from them.
+     *
+     * @param stack the stack containing the objects to measure
+     * @param isSlab the predicate checking if a ByteBuffer must be measured as a slab
+     * @param fieldFilter the filter used to determine which field should be ignored
+     * @param softReferences the deque to which the soft references met must be added or {@code null} if the
+     * {@code Reference} instances do not need to be tracked
+     * @param weakReferences the deque to which the other references met must be added or {@code null} if the
+     * {@code Reference} instances do not need to be tracked
+     * @return the memory usage of the measured objects
+     */
+    private long measureDeep(MeasurementStack stack,
+                             Predicate<ByteBuffer> isSlab,
+                             FieldFilter fieldFilter,
+                             Deque<Reference<?>> softReferences,
+                             Deque<Reference<?>> weakReferences) {
+
+        MemoryMeterListener listener = stack.listener();
         long total = 0;
         while (!stack.isEmpty()) {
 
             Object current = stack.pop();
 
             // Deal with optimizations first.
-            if (StringMeter.ENABLED && current instanceof String) {
+            if (optimizeStrings && current instanceof String) {
                 String s = (String) current;
-                long size1 = measureDeep(s, listener);
+                long size1 = trackStringValues ? measureDeep(s, stack) : measureDeep(s, listener);
                 total += size1;
                 continue;
             }
@@ -495,7 +907,7 @@ public final class MemoryMeter {
                 if (!cls.getComponentType().isPrimitive())
                     addArrayElements((Object[]) current, stack);
              } else {
-                if (current instanceof ByteBuffer && bbMode.isSlab((ByteBuffer) current)) {
+                if (current instanceof ByteBuffer && isSlab.test((ByteBuffer) current)) {
                     ByteBuffer buffer = (ByteBuffer) current;
                     if (!buffer.isDirect()) { // If direct we should simply not measure the fields
                         long remaining = buffer.remaining();
@@ -504,10 +916,12 @@ public final class MemoryMeter {
                     }
                     continue;
                 }
-                addFields(current, cls, stack);
+                if (softReferences != null && current instanceof Reference)
+                    (current instanceof SoftReference ? softReferences : weakReferences).push((Reference<?>) current);
+
+                addFields(current, cls, stack, fieldFilter);
             }
         } 
-        listener.done(total);
         return total;
     }
 
@@ -517,21 +931,41 @@ public final class MemoryMeter {
         return size;
     }
 
+    /**
+     * Measures the specified String, its value being only measured if it has not already been measured as the value
+     * of another String (e.g. due to {@code -XX:+UseStringDeduplication}).
+     *
+     * @param s the string
+     * @param stack the stack tracking the measured objects
+     * @return the size of the string and of its value if it had not already been measured
+     */
+    private long measureDeep(String s, MeasurementStack stack) {
+        MemoryMeterListener listener = stack.listener();
+        long size = STRING_METER.measureDeep(strategy, s);
+        if (!stack.track(STRING_METER.getValue(s))) {
+            long valueSize = size - StringMeter.STRING_SHALLOW_SIZE;
+            size = StringMeter.STRING_SHALLOW_SIZE;
+            listener.stringValueShared(s, valueSize);
+        }
+        listener.objectMeasured(s, size);
+        return size;
+    }
+
     private long measure(Measurable measurable, MemoryMeterListener listener) {
         long size = measurable.shallowSize(strategy);
         listener.objectMeasured(measurable, size);
         return size;
     }
 
-    private void addFields(Object obj, Class<?> cls, MeasurementStack stack) {
+    private void addFields(Object obj, Class<?> cls, MeasurementStack stack, FieldFilter fieldFilter) {
         Class<?> type = cls;
         while (type != null) {
-            addDeclaredFields(obj, type, stack);
+            addDeclaredFields(obj, type, stack, fieldFilter);
             type = type.getSuperclass();
         }
     }
 
-    private void addDeclaredFields(Object obj, Class<?> type, MeasurementStack stack) {
+    private void addDeclaredFields(Object obj, Class<?> type, MeasurementStack stack, FieldFilter fieldFilter) {
         for (Field field : type.getDeclaredFields()) {
             if (!fieldFilter.ignore(obj.getClass(), field)) {
                 addField(obj, field, stack);
@@ -550,7 +984,7 @@ public final class MemoryMeter {
         Object child = getFieldValue(obj, field, stack.listener());
 
         if (child != null && (!classFilter.ignore(child.getClass()))) {
-            stack.pushObject(obj, field.getName(), child);
+            stack.pushField(obj, field, child);
         }
     }
 
@@ -590,6 +1024,8 @@ public final class MemoryMeter {
         private boolean ignoreOuterClassReference;
         private boolean ignoreKnownSingletons = true;
         private boolean ignoreNonStrongReferences = true;
+        private boolean trackStringValues;
+        private MemoryLayoutSpecification memoryLayout;
         private MemoryMeterListener.Factory listenerFactory = NoopMemoryMeterListener.FACTORY;
 
         private Builder() {
@@ -623,6 +1059,29 @@ public final class MemoryMeter {
             return this;
         }
 
+        /**
+         * Measures the objects as if the JVM was using the specified memory layout, for example to estimate the size
+         * of a cache past the 32 GB limit of the compressed references:
+         * <pre>
+         * MemoryMeter.builder()
+         *            .withMemoryLayout(MemoryLayoutSpecification.builder().withCompressedOops(false).build())
+         *            .build();
+         * </pre>
+         * <p>The live objects are traversed as usual but their sizes are computed by the {@code Specification}
+         * strategy from the specified layout, which replaces the strategies specified through {@code withGuessing}.
+         * The fields are laid out by the algorithm of the running JVM.</p>
+         *
+         * @param memoryLayout the hypothetical memory layout
+         * @return this builder
+         */
+        public Builder withMemoryLayout(MemoryLayoutSpecification memoryLayout) {
+            if (memoryLayout == null)
+                throw new IllegalArgumentException("The memoryLayout parameter should not be null");
+
+            this.memoryLayout = memoryLayout;
+            return this;
+        }
+
         /**
          * Ignores the outer class reference from non-static inner classes.
          * <p>In practice this is only useful if the top class provided to {@code MemoryMeter.measureDeep} is an inner 
@@ -657,6 +1116,21 @@ public final class MemoryMeter {
             return this;
         }
 
+        /**
+         * Measures the values shared by several {@code String} instances only once.
+         * <p>By default, the value of each {@code String} is measured with the {@code String} itself, without checking
+         * if it has already been measured, which is faster but overestimates the size of the strings sharing the same
+         * value, like the strings deduplicated by the garbage collector when {@code -XX:+UseStringDeduplication} is enabled.
+         * When this option is set, the value arrays are tracked like any other object and the listeners are notified
+         * through {@link MemoryMeterListener#stringValueShared} of the values that were not measured again.</p>
+         *
+         * @return this builder
+         */
+        public Builder measureSharedStringValuesOnce() {
+            this.trackStringValues = true;
+            return this;
+        }
+
         /**
          * Prints the classes tree to {@code System.out} when measuring through {@code measureDeep}.
          *
@@ -679,5 +1153,24 @@ public final class MemoryMeter {
             listenerFactory = new TreePrinter.Factory(depth);
             return this;
         }
+
+        /**
+         * Specifies the factory of the listeners that must be notified of the object graph traversal when measuring
+         * through {@code measureDeep}. This replaces any listener set through {@code printVisitedTree}.
+         * <p>For example, the visited tree can be streamed to a file using:</p>
+         * <pre>
+         * MemoryMeter.builder().withListener(new StreamingTreeWriter.Factory(outputStream)).build();
+         * </pre>
+         *
+         * @param factory the listener factory
+         * @return this builder
+         */
+        public Builder withListener(MemoryMeterListener.Factory factory) {
+            if (factory == null)
+                throw new IllegalArgumentException("The factory parameter should not be null");
+
+            listenerFactory = factory;
+            return this;
+        }
     }
 }
\ No newline at end of file
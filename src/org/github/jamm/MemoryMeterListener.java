@@ -1,5 +1,6 @@
 package org.github.jamm;
 
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 
 /**
@@ -21,6 +22,18 @@ public interface MemoryMeterListener {
      */
     void started(Object obj);
 
+    /**
+     * Notification that the specified <code>MemoryMeter</code> as started analyzing the specified object. Listeners
+     * needing the memory layout used for the measurements can retrieve it from the meter.
+     * <p>By default, the notification is forwarded to {@link #started(Object)}.</p>
+     *
+     * @param meter the meter measuring the object
+     * @param obj the object being analyzed
+     */
+    default void started(MemoryMeter meter, Object obj) {
+        started(obj);
+    }
+
     /**
      * Notification that the field from the specified object has been added.
      *
@@ -30,6 +43,19 @@ public interface MemoryMeterListener {
      */
     void fieldAdded(Object obj, String fieldName, Object fieldValue);
 
+    /**
+     * Notification that the field from the specified object has been added. Sent for the fields found through
+     * reflection, the children added by a {@code Measurable} being only known by their name.
+     * <p>By default, the notification is forwarded to {@link #fieldAdded(Object, String, Object)}.</p>
+     *
+     * @param obj the object for which a field has been added
+     * @param field the field
+     * @param fieldValue the field value
+     */
+    default void fieldAdded(Object obj, Field field, Object fieldValue) {
+        fieldAdded(obj, field.getName(), fieldValue);
+    }
+
     /**
      * Notification that the element from the specified array has been added.
      *
@@ -47,6 +73,18 @@ public interface MemoryMeterListener {
      */
     void objectMeasured(Object current, long size);
 
+    /**
+     * Notification that the value of the specified {@code String} has already been measured as the value of another
+     * {@code String} and has therefore not been measured again. Only sent if the {@code MemoryMeter} has been built
+     * with {@code measureSharedStringValuesOnce}. The {@code objectMeasured} notification for the {@code String} will
+     * follow with the {@code String} shallow size.
+     *
+     * @param s the string sharing its value with a previously measured string
+     * @param valueSize the size of the shared value in bytes
+     */
+    default void stringValueShared(String s, long valueSize) {
+    }
+
     /**
      * Notification that the size of the remaining bytes of a {@code ByteBuffer} have been measured.
      *
@@ -0,0 +1,68 @@
+package org.github.jamm;
+
+/**
+ * The memory usage of an object graph broken down by the strength of the references through which the objects can be
+ * reached from the root.
+ *
+ * <p>Each object is attributed to the strongest way it can be reached: objects reachable without going through any
+ * {@link java.lang.ref.Reference} are strongly reachable, objects only reachable through soft references are softly
+ * reachable and objects only reachable through weak or phantom references are weakly reachable. The
+ * {@code Reference} instances themselves are attributed to the way they are reached.</p>
+ *
+ * @see MemoryMeter#measureDeepByReachability(Object)
+ */
+public final class ReachabilityBreakdown {
+
+    private final long strongBytes;
+
+    private final long softBytes;
+
+    private final long weakBytes;
+
+    ReachabilityBreakdown(long strongBytes, long softBytes, long weakBytes) {
+        this.strongBytes = strongBytes;
+        this.softBytes = softBytes;
+        this.weakBytes = weakBytes;
+    }
+
+    /**
+     * Returns the size of the strongly reachable objects.
+     *
+     * @return the size of the strongly reachable objects
+     */
+    public long strongBytes() {
+        return strongBytes;
+    }
+
+    /**
+     * Returns the size of the objects only reachable through soft references.
+     *
+     * @return the size of the softly reachable objects
+     */
+    public long softBytes() {
+        return softBytes;
+    }
+
+    /**
+     * Returns the size of the objects only reachable through weak or phantom references.
+     *
+     * @return the size of the weakly reachable objects
+     */
+    public long weakBytes() {
+        return weakBytes;
+    }
+
+    /**
+     * Returns the size of all the reachable objects.
+     *
+     * @return the size of all the reachable objects
+     */
+    public long totalBytes() {
+        return strongBytes + softBytes + weakBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("strong: %d bytes, soft: %d bytes, weak: %d bytes", strongBytes, softBytes, weakBytes);
+    }
+}
@@ -0,0 +1,164 @@
+package org.github.jamm;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.github.jamm.accessors.FieldAccessor;
+import org.github.jamm.utils.ByteBufferMeasurementUtils;
+
+/**
+ * A registry of the slabs from which an application allocates its {@code ByteBuffer}s, used to measure those buffers
+ * exactly rather than relying on the heuristics of the slab {@code ByteBufferMode}s.
+ *
+ * <p>Heap slabs are registered through their backing arrays and direct slabs through their address ranges. When
+ * measured with a registry, a buffer whose memory belongs to a registered slab is considered as a view of that slab:</p>
+ * <ul>
+ *     <li>a heap buffer is charged its shallow size plus its remaining bytes (its window) instead of the whole backing
+ *     array</li>
+ *     <li>a direct buffer is only charged its shallow size, its attachment and cleaner belonging to the slab</li>
+ * </ul>
+ * <p>Checking if a buffer belongs to a slab costs a hash lookup for heap buffers and a sorted map lookup for direct ones.</p>
+ * <pre>
+ * SlabRegistry slabs = new SlabRegistry();
+ * slabs.register(allocator.slab());
+ * long size = meter.measureDeep(memtable, slabs);
+ * </pre>
+ * <p>This class is thread-safe, slabs can be registered and unregistered while measurements are in progress.</p>
+ */
+public final class SlabRegistry {
+
+    /**
+     * The accessor used to retrieve the buffer arrays and addresses.
+     */
+    private static final FieldAccessor ACCESSOR = FieldAccessor.newInstance();
+
+    /**
+     * The backing arrays of the heap slabs.
+     */
+    private final Set<byte[]> arrays = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The end address (exclusive) of the direct slabs per start address. The ranges never overlap, so that the slab
+     * containing an address is always the one with the greatest start address lower or equal to it.
+     */
+    private final ConcurrentSkipListMap<Long, Long> ranges = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers the specified slab.
+     *
+     * @param slab the slab, either a heap or a direct buffer
+     * @return this registry
+     */
+    public SlabRegistry register(ByteBuffer slab) {
+
+        if (slab.isDirect())
+            return registerAddressRange(ByteBufferMeasurementUtils.address(slab, ACCESSOR), slab.capacity());
+
+        return registerArray(ByteBufferMeasurementUtils.backingArray(slab, ACCESSOR));
+    }
+
+    /**
+     * Registers a heap slab through its backing array.
+     *
+     * @param array the backing array of the slab
+     * @return this registry
+     */
+    public SlabRegistry registerArray(byte[] array) {
+
+        if (array == null)
+            throw new IllegalArgumentException("The array parameter should not be null");
+
+        arrays.add(array);
+        return this;
+    }
+
+    /**
+     * Registers a direct slab through its address range.
+     * <p>Registering the same range twice has no effect, but a range overlapping a different registered range is
+     * rejected: the buffers in the overlapping part could otherwise be attributed to the wrong slab.</p>
+     *
+     * @param address the address of the first byte of the slab
+     * @param size the size of the slab in bytes
+     * @return this registry
+     * @throws IllegalArgumentException if the size is not positive or if the range overlaps a registered range
+     */
+    public SlabRegistry registerAddressRange(long address, long size) {
+
+        if (size <= 0)
+            throw new IllegalArgumentException(String.format("The slab size should be greater than zero (was %s).", size));
+
+        long end = address + size;
+        synchronized (ranges) {
+            // As the registered ranges do not overlap, only the last one starting before the end can overlap the new one
+            Map.Entry<Long, Long> range = ranges.lowerEntry(end);
+            if (range != null && range.getValue() > address) {
+
+                if (range.getKey() == address && range.getValue() == end)
+                    return this;
+
+                throw new IllegalArgumentException(String.format("The slab [%d, %d) overlaps the registered slab [%d, %d).",
+                                                                 address, end, range.getKey(), range.getValue()));
+            }
+            ranges.put(address, end);
+        }
+        return this;
+    }
+
+    /**
+     * Unregisters the specified slab.
+     *
+     * @param slab the slab, either a heap or a direct buffer
+     * @return {@code true} if the slab was registered, {@code false} otherwise.
+     */
+    public boolean unregister(ByteBuffer slab) {
+
+        if (slab.isDirect())
+            return unregisterAddressRange(ByteBufferMeasurementUtils.address(slab, ACCESSOR));
+
+        return unregisterArray(ByteBufferMeasurementUtils.backingArray(slab, ACCESSOR));
+    }
+
+    /**
+     * Unregisters the heap slab backed by the specified array.
+     *
+     * @param array the backing array of the slab
+     * @return {@code true} if the slab was registered, {@code false} otherwise.
+     */
+    public boolean unregisterArray(byte[] array) {
+        return arrays.remove(array);
+    }
+
+    /**
+     * Unregisters the direct slab starting at the specified address.
+     *
+     * @param address the address of the first byte of the slab
+     * @return {@code true} if the slab was registered, {@code false} otherwise.
+     */
+    public boolean unregisterAddressRange(long address) {
+        return ranges.remove(address) != null;
+    }
+
+    /**
+     * Checks if the memory of the specified buffer belongs to a registered slab.
+     *
+     * @param buffer the buffer to check
+     * @return {@code true} if the memory of the specified buffer belongs to a registered slab, {@code false} otherwise.
+     */
+    public boolean isSlab(ByteBuffer buffer) {
+
+        if (buffer.isDirect()) {
+
+            if (ranges.isEmpty())
+                return false;
+
+            long address = ByteBufferMeasurementUtils.address(buffer, ACCESSOR);
+            Map.Entry<Long, Long> range = ranges.floorEntry(address);
+            return range != null && address < range.getValue();
+        }
+
+        return !arrays.isEmpty() && arrays.contains(ByteBufferMeasurementUtils.backingArray(buffer, ACCESSOR));
+    }
+}
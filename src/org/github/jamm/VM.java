@@ -6,9 +6,9 @@ import java.lang.reflect.Modifier;
 import java.util.Map;
 import java.util.TreeMap;
 
-import javax.management.MBeanServer;
-import javax.management.ObjectName;
-import javax.management.openmbean.CompositeDataSupport;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import org.github.jamm.utils.ReflectionUtils;
 
 import sun.misc.Unsafe;
 
@@ -21,10 +21,25 @@ public final class VM
     private static final int DEFAULT_ALIGNMENT_IN_BYTES = 8;
     private static final int DEFAULT_CONTENDED_PADDING_WIDTH = 128;
 
+    private static final int JAVA_VERSION = javaVersion();
+
     private static final boolean IS_PRE_JAVA12_JVM = !supportStringIndentMethod();
 
+    private static final boolean IS_PRE_JAVA19_JVM = !supportThreadIdMethod();
+
+    private static final boolean IS_PRE_JAVA22_JVM = !supportClassForPrimitiveNameMethod();
+
     private static final Unsafe UNSAFE = loadUnsafe();
 
+    /**
+     * Returns the feature version of the running Java version, for example 8 for Java 1.8 or 17 for Java 17.
+     * @return the feature version of the running Java version.
+     */
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
     /**
      * Checks if the JVM support the {@code String#indent} method added in Java 12.
      * @return {@code true} if the JVM support the {@code String#indent} method, {@code false} otherwise. 
@@ -38,6 +53,32 @@ public final class VM
         }
     }
 
+    /**
+     * Checks if the JVM support the {@code Thread#threadId} method added in Java 19.
+     * @return {@code true} if the JVM support the {@code Thread#threadId} method, {@code false} otherwise.
+     */
+    private static boolean supportThreadIdMethod() {
+        try {
+            Thread.class.getMethod("threadId");
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the JVM support the {@code Class#forPrimitiveName} method added in Java 22.
+     * @return {@code true} if the JVM support the {@code Class#forPrimitiveName} method, {@code false} otherwise.
+     */
+    private static boolean supportClassForPrimitiveNameMethod() {
+        try {
+            Class.class.getMethod("forPrimitiveName", String.class);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * Returns the value of the specified VM option
      *
@@ -47,16 +88,33 @@ public final class VM
     private static String getVMOption(String option) {
         try {
 
-            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
-            ObjectName mbean = new ObjectName("com.sun.management:type=HotSpotDiagnostic");
-            CompositeDataSupport data = (CompositeDataSupport) server.invoke(mbean, "getVMOption", new Object[]{option}, new String[]{"java.lang.String"});
-            return data.get("value").toString();
+            HotSpotDiagnosticMXBean bean = HotSpotDiagnostic.BEAN;
+            return bean == null ? null : bean.getVMOption(option).getValue();
 
         } catch (Exception e) {
             return null;
         }
     }
 
+    /**
+     * Holder of the HotSpot diagnostic MXBean, loaded on first use.
+     * <p>The MXBean is retrieved directly rather than through the platform {@code MBeanServer} whose initialization
+     * (the whole JMX subsystem) is significantly more expensive.</p>
+     */
+    private static final class HotSpotDiagnostic {
+
+        private static final HotSpotDiagnosticMXBean BEAN = loadBean();
+
+        private static HotSpotDiagnosticMXBean loadBean() {
+            try {
+                return ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            } catch (Throwable t) {
+                // Not an HotSpot JVM or the jdk.management module is not available
+                return null;
+            }
+        }
+    }
+
     /**
      * Retrieve the object alignment in bytes from the JVM. If the alignment cannot be retrieved
      * the default value will be returned.
@@ -91,6 +149,19 @@ public final class VM
         return useCompressedClassPointers == null ? useCompressedOops() : Boolean.parseBoolean(useCompressedClassPointers);
     }
 
+    /**
+     * Checks if the JVM uses compact object headers (<a href="https://openjdk.org/jeps/450">JEP 450</a>), in which
+     * case the class pointer is stored in the mark word and the object header only uses 8 bytes.
+     * <p>The option was introduced as experimental in Java 24.</p>
+     *
+     * @return {@code true} if the JVM uses compact object headers, {@code false} otherwise.
+     */
+    public static boolean useCompactObjectHeaders() {
+
+        String useCompactObjectHeaders = getVMOption("UseCompactObjectHeaders");
+        return useCompactObjectHeaders == null ? false : Boolean.parseBoolean(useCompactObjectHeaders);
+    }
+
     /**
      * Checks if the JVM uses more aggressive optimizations to avoid unused gaps in instances.
      *
@@ -99,7 +170,8 @@ public final class VM
     public static boolean useEmptySlotsInSuper() {
 
         String useEmptySlotsInSuper = getVMOption("UseEmptySlotsInSupers");
-        return useEmptySlotsInSuper == null ? false : Boolean.parseBoolean(useEmptySlotsInSuper);
+        // The option exists from Java 15 where it is enabled by default
+        return useEmptySlotsInSuper == null ? ReflectionUtils.supportsHiddenClasses() : Boolean.parseBoolean(useEmptySlotsInSuper);
     }
 
     /**
@@ -152,6 +224,38 @@ public final class VM
         return IS_PRE_JAVA12_JVM;
     }
 
+    /**
+     * Checks if the JVM is a pre-Java 16 version.
+     * <p>From Java 16, {@code Instrumentation.getObjectSize} is a JIT intrinsic
+     * (<a href="https://bugs.openjdk.org/browse/JDK-8253525">JDK-8253525</a>).</p>
+     *
+     * @return {@code true} if the JVM is a pre-Java 16 version, {@code false} otherwise.
+     */
+    public static boolean isPreJava16JVM() {
+        return JAVA_VERSION < 16;
+    }
+
+    /**
+     * Checks if the JVM is a pre-Java 19 version.
+     * <p>From Java 19, the JVM injects in {@code Thread} the fields used by the virtual threads support.</p>
+     *
+     * @return {@code true} if the JVM is a pre-Java 19 version, {@code false} otherwise.
+     */
+    public static boolean isPreJava19JVM() {
+        return IS_PRE_JAVA19_JVM;
+    }
+
+    /**
+     * Checks if the JVM is a pre-Java 22 version.
+     * <p>Before Java 22, the base of the arrays was aligned on the heap word size. From Java 22, it is only aligned on
+     * the size of the array elements (<a href="https://bugs.openjdk.org/browse/JDK-8139457">JDK-8139457</a>).</p>
+     *
+     * @return {@code true} if the JVM is a pre-Java 22 version, {@code false} otherwise.
+     */
+    public static boolean isPreJava22JVM() {
+        return IS_PRE_JAVA22_JVM;
+    }
+
     /**
      * Checks if {@code Unsafe} is available.
      * @return {@code true} if unsafe is available, {@code false} otherwise.
@@ -170,6 +274,7 @@ public final class VM
 
     /**
      * Utility method using {@code Unsafe} to print the field offset for debugging.
+     * <p>{@link MemoryMeter#layoutOf(Class)} provides the same information in a structured form.</p>
      *
      * @param obj the object to analyze
      */
@@ -208,7 +313,22 @@ public final class VM
         }
     }
 
+    /**
+     * Checks if {@code Unsafe} should be used.
+     * <p>{@code true} by default. Disabling it ({@code org.github.jamm.UseUnsafe=false}) makes Jamm behave as if
+     * {@code Unsafe} was not available: the {@code UNSAFE} strategy cannot be used and the fields are only read
+     * through {@code MethodHandle}s.</p>
+     * @return {@code true} if {@code Unsafe} should be used, {@code false} otherwise.
+     */
+    private static boolean useUnsafe() {
+        return Boolean.parseBoolean(System.getProperty("org.github.jamm.UseUnsafe", "true"));
+    }
+
     private static Unsafe loadUnsafe() {
+
+        if (!useUnsafe())
+            return null;
+
         try {
             return Unsafe.getUnsafe();
         } catch (final Exception ex) {
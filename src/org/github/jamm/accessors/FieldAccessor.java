@@ -1,12 +1,9 @@
 package org.github.jamm.accessors;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 
 import org.github.jamm.VM;
-
-import static org.github.jamm.utils.MethodHandleUtils.methodHandle;
+import org.github.jamm.utils.ReflectionUtils;
 
 /**
  * Utility to retrieve {@code Field} values.
@@ -22,22 +19,23 @@ public interface FieldAccessor {
      */
     Object getFieldValue(Object object, Field field);
 
+    /**
+     * Prepares the access to the specified field, for the accessors caching some information per field.
+     * <p>Does nothing by default. The access failures are only reported when the field value is retrieved.</p>
+     *
+     * @param field the field that will be accessed
+     */
+    default void prepare(Field field) {
+    }
+
     /**
      * Returns the {@code FieldAccessor} instance suitable for the JDK running this code.
      * @return a {@code FieldAccessor} instance
      */
     static FieldAccessor newInstance() {
 
-        try {
-            Method method = Field.class.getMethod("trySetAccessible", new Class[0]);
-            MethodHandle trySetAccessibleMH = methodHandle(method);
-
-            // If we reached that point we are on a JDK9+ version with a Module System
-            return new JpmsAccessor(trySetAccessibleMH, VM.getUnsafe());
-        }
-        catch (NoSuchMethodException | SecurityException | IllegalAccessException e)
-        {
-            return new PlainReflectionAccessor();
-        }
+        // If the JVM has a Module System (JDK9+) the fields must be accessed through private lookups
+        return ReflectionUtils.supportsModules() ? new JpmsAccessor(VM.getUnsafe())
+                                                 : new PlainReflectionAccessor();
     }
 }
@@ -1,57 +1,314 @@
 package org.github.jamm.accessors;
 
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 
 import org.github.jamm.CannotAccessFieldException;
+import org.github.jamm.utils.ReflectionUtils;
 
 import sun.misc.Unsafe;
 
 /**
- * {@code FieldAccessor} able to deal with the Java Platform Module System by relying on {@code Unsafe} to access object
- * protected by the Module System.
+ * {@code FieldAccessor} able to deal with the Java Platform Module System.
+ *
+ * <p>The fields of the classes whose package is open to Jamm are read through {@code VarHandle}s obtained from a
+ * private lookup in their class. The fields of the other classes, typically the JDK internal ones, are read through
+ * {@code Unsafe} if it is available. The {@code VarHandle} getters and the {@code Unsafe} offsets are computed once per
+ * field and cached, so that a read only costs the cache lookup on top of the access itself
+ * (see {@code BenchmarkFieldAccess}).</p>
  */
 final class JpmsAccessor implements FieldAccessor
 {
     /**
-     * The {@code MethodHandle} for the {@code AccessibleObject.trySetAccessible} method introduced in JDK 9.
+     * The unsafe instance used to access the fields of the classes that are not open to Jamm or {@code null} if
+     * {@code Unsafe} is not available.
      */
-    private final MethodHandle trySetAccessibleMH;
+    private final Unsafe unsafe;
 
     /**
-     * The unsafe instance used to access object protected by the Module System
+     * The fields information per declaring class. Unlike a map keyed by the classes or the fields, the
+     * {@code ClassValue} does not keep the classes, and their class loaders, reachable once they are unloaded.
      */
-    private final Unsafe unsafe;
+    private final ClassValue<DeclaredFields> declaredFields = new ClassValue<DeclaredFields>() {
+        @Override
+        protected DeclaredFields computeValue(Class<?> type) {
+            return new DeclaredFields(privateLookup(type));
+        }
+    };
 
-    public JpmsAccessor(MethodHandle trySetAccessibleMH, Unsafe unsafe) {
-        this.trySetAccessibleMH = trySetAccessibleMH;
+    public JpmsAccessor(Unsafe unsafe) {
         this.unsafe = unsafe;
     }
 
     @Override
     public Object getFieldValue(Object object, Field field) {
         try {
-            // This call will unfortunately emit a warning for some scenario (which was a weird decision from the JVM designer)
-            if ((boolean) trySetAccessibleMH.invoke(field)) {
-                // The field is accessible lets use reflection.
-                return field.get(object);
+            // The fast path is kept small enough to be inlined, the other cases being handled by separate methods
+            DeclaredFields fields = declaredFields.get(field.getDeclaringClass());
+            ReadableField readable = fields.get(field);
+            if (readable == null)
+                readable = readableField(fields, field);
+
+            if (readable.getter == null)
+                return readable.read(unsafe, object);
+
+            try {
+                return (Object) readable.getter.invokeExact(object);
+            } catch (ClassCastException e) {
+                return readMismatchingValue(fields, field, object, e);
             }
 
-            // The access to the field is being restricted by the module system. Let's try to go around it through Unsafe.
-            if (unsafe == null)
-                throw new CannotAccessFieldException("The value of the '" + field.getName() + "' field from " + object.getClass().getName()
+        } catch (CannotAccessFieldException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw cannotRetrieve(object, field, e);
+        }
+    }
+
+    @Override
+    public void prepare(Field field) {
+        try {
+            readableField(declaredFields.get(field.getDeclaringClass()), field);
+        } catch (Throwable e) {
+            // The failure will be reported when the field value is retrieved
+        }
+    }
+
+    /**
+     * Reads through {@code Unsafe} a field whose {@code VarHandle} rejected the value.
+     * <p>The JVM can store in some internal fields values not matching their declared type (e.g. the initialization
+     * lock stored in {@code Class.componentType}). The {@code VarHandle}s reject them, not {@code Unsafe}.</p>
+     *
+     * @param fields the information about the fields of the declaring class of the field
+     * @param field the field
+     * @param object the object from which the field must be read
+     * @param e the exception thrown by the {@code VarHandle} getter
+     * @return the field value
+     */
+    private Object readMismatchingValue(DeclaredFields fields, Field field, Object object, ClassCastException e) {
+
+        if (unsafe == null || !field.getDeclaringClass().isInstance(object))
+            throw e;
+
+        ReadableField readable = new ReadableField(unsafe, field);
+        fields.put(readable);
+        return readable.read(unsafe, object);
+    }
+
+    private static CannotAccessFieldException cannotRetrieve(Object object, Field field, Throwable e) {
+        return new CannotAccessFieldException("The value of the '" + field.getName() + "' field from " + object.getClass().getName() + " cannot be retrieved", e);
+    }
+
+    /**
+     * Returns the way to read the specified field, creating it if needed.
+     *
+     * @param fields the information about the fields of the declaring class of the field
+     * @param field the field
+     * @return the way to read the specified field
+     * @throws IllegalAccessException if the {@code VarHandle} of the field cannot be created
+     */
+    private ReadableField readableField(DeclaredFields fields, Field field) throws IllegalAccessException {
+
+        ReadableField readable = fields.find(field);
+
+        if (readable == null) {
+
+            MethodHandles.Lookup lookup = fields.lookup;
+
+            // Without Unsafe, the package might have been opened after the first access (e.g. by an agent loaded at runtime)
+            if (lookup == null && unsafe == null)
+                fields.lookup = lookup = privateLookup(field.getDeclaringClass());
+
+            if (lookup != null) {
+                readable = new ReadableField(field, ReflectionUtils.varHandleGetter(lookup, field));
+            } else if (unsafe != null) {
+                // The package of the class is not open to Jamm. Let's try to go around it through Unsafe.
+                readable = new ReadableField(unsafe, field);
+            } else {
+                throw new CannotAccessFieldException("The value of the '" + field.getName() + "' field from " + field.getDeclaringClass().getName()
                                                      + " cannot be retrieved as the field cannot be made accessible and Unsafe is unavailable");
+            }
+
+            fields.put(readable);
+        }
+        return readable;
+    }
+
+    /**
+     * Returns a private lookup in the specified class if its package is open to Jamm.
+     *
+     * @param type the class
+     * @return a private lookup in the specified class or {@code null} if its package is not open to Jamm.
+     */
+    private static MethodHandles.Lookup privateLookup(Class<?> type) {
+        try {
+            return ReflectionUtils.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            // The package is not open to Jamm or the class cannot be used as a lookup class (e.g. a primitive type)
+            return null;
+        }
+    }
+
+    /**
+     * The information about the fields declared by a class.
+     */
+    private static final class DeclaredFields {
+
+        /**
+         * The private lookup in the class or {@code null} if its package is not open to Jamm.
+         */
+        private volatile MethodHandles.Lookup lookup;
+
+        /**
+         * The way to read each field already accessed. A class having few fields, they are looked up in a copy-on-write
+         * array, first by identity as the callers usually pass the same {@code Field} instances.
+         */
+        private volatile ReadableField[] readableFields = new ReadableField[0];
+
+        private DeclaredFields(MethodHandles.Lookup lookup) {
+            this.lookup = lookup;
+        }
+
+        /**
+         * Returns the way to read the specified {@code Field} instance.
+         *
+         * @param field the field
+         * @return the way to read the specified field or {@code null} if that instance was not accessed yet
+         */
+        private ReadableField get(Field field) {
+            for (ReadableField readable : readableFields) {
+                if (readable.field == field)
+                    return readable;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the way to read the specified field, which might be a copy of a {@code Field} already accessed.
+         *
+         * @param field the field
+         * @return the way to read the specified field or {@code null} if the field was not accessed yet
+         */
+        private ReadableField find(Field field) {
+            for (ReadableField readable : readableFields) {
+                if (readable.field.equals(field))
+                    return readable;
+            }
+            return null;
+        }
+
+        /**
+         * Records the way to read a field, replacing the previous one if any.
+         *
+         * @param readable the way to read the field
+         */
+        private synchronized void put(ReadableField readable) {
+            ReadableField[] fields = readableFields;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].field.equals(readable.field)) {
+                    fields = fields.clone();
+                    fields[i] = readable;
+                    readableFields = fields;
+                    return;
+                }
+            }
+            fields = Arrays.copyOf(fields, fields.length + 1);
+            fields[fields.length - 1] = readable;
+            readableFields = fields;
+        }
+    }
+
+    /**
+     * The way to read a field: through its {@code VarHandle} getter or through {@code Unsafe} at its offset.
+     */
+    private static final class ReadableField {
+
+        /**
+         * The field.
+         */
+        private final Field field;
+
+        /**
+         * The {@code VarHandle} getter of the field or {@code null} if the field is read through {@code Unsafe}.
+         */
+        private final MethodHandle getter;
+
+        /**
+         * The offset of the field, if it is read through {@code Unsafe}.
+         */
+        private final long offset;
+
+        /**
+         * The type of the field if it is a primitive one, {@code Object} otherwise.
+         */
+        private final Class<?> type;
+
+        /**
+         * {@code true} if the field must be read with volatile semantics, which is the case of the final fields and of
+         * the volatile ones.
+         */
+        private final boolean volatileRead;
+
+        private ReadableField(Field field, MethodHandle getter) {
+            this.field = field;
+            this.getter = getter;
+            this.offset = -1;
+            this.type = null;
+            this.volatileRead = false;
+        }
+
+        private ReadableField(Unsafe unsafe, Field field) {
+            this.field = field;
+            this.getter = null;
+            this.offset = unsafe.objectFieldOffset(field);
+            this.type = field.getType().isPrimitive() ? field.getType() : Object.class;
+            this.volatileRead = Modifier.isFinal(field.getModifiers()) || Modifier.isVolatile(field.getModifiers());
+        }
+
+        /**
+         * Reads the field through {@code Unsafe}.
+         * <p>The primitive fields must be read through the {@code Unsafe} method matching their type, reading them as
+         * references would crash the JVM.</p>
+         *
+         * @param unsafe the {@code Unsafe} instance
+         * @param object the object from which the field must be read
+         * @return the field value, boxed if the field is a primitive one
+         */
+        private Object read(Unsafe unsafe, Object object) {
+
+            if (type == Object.class)
+                return volatileRead ? unsafe.getObjectVolatile(object, offset) : unsafe.getObject(object, offset);
+
+            return readPrimitive(unsafe, object);
+        }
+
+        private Object readPrimitive(Unsafe unsafe, Object object) {
+
+            if (type == int.class)
+                return volatileRead ? unsafe.getIntVolatile(object, offset) : unsafe.getInt(object, offset);
+
+            if (type == long.class)
+                return volatileRead ? unsafe.getLongVolatile(object, offset) : unsafe.getLong(object, offset);
+
+            if (type == boolean.class)
+                return volatileRead ? unsafe.getBooleanVolatile(object, offset) : unsafe.getBoolean(object, offset);
+
+            if (type == byte.class)
+                return volatileRead ? unsafe.getByteVolatile(object, offset) : unsafe.getByte(object, offset);
 
-            long offset = unsafe.objectFieldOffset(field);
+            if (type == short.class)
+                return volatileRead ? unsafe.getShortVolatile(object, offset) : unsafe.getShort(object, offset);
 
-            boolean isFinal = Modifier.isFinal(field.getModifiers());
-            boolean isVolatile = Modifier.isVolatile(field.getModifiers());
+            if (type == char.class)
+                return volatileRead ? unsafe.getCharVolatile(object, offset) : unsafe.getChar(object, offset);
 
-            return isFinal || isVolatile ? unsafe.getObjectVolatile(object, offset) : unsafe.getObject(object, offset);
+            if (type == float.class)
+                return volatileRead ? unsafe.getFloatVolatile(object, offset) : unsafe.getFloat(object, offset);
 
-        }  catch (Throwable e) {
-            throw new CannotAccessFieldException("The value of the '" + field.getName() + "' field from " + object.getClass().getName() + " cannot be retrieved", e);
+            return volatileRead ? unsafe.getDoubleVolatile(object, offset) : unsafe.getDouble(object, offset);
         }
     }
 }
@@ -0,0 +1,322 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.jamm.FootprintEstimator;
+import org.github.jamm.MemoryMeter;
+
+/**
+ * A memory listener estimating, per field path, the bytes that could be saved by storing the boxed primitives held by
+ * collections and maps in primitive-specialized collections.
+ *
+ * <p>Each boxed primitive ({@code Integer}, {@code Long}, ...) held by a {@code Collection} or a {@code Map}, through
+ * its internal arrays or nodes, is attributed to its nearest enclosing collection. The boxes referenced by the fields of
+ * the collection elements are not considered. Once that collection has been fully measured, the cost of its
+ * boxed values, an array of references plus the boxes, is compared with the cost of a primitive array holding the same
+ * values, both computed in the memory layout of the meter. The estimate ignores the other objects of the collections (e.g.
+ * the hash map nodes) that primitive-specialized collections usually get rid of, the real savings being therefore
+ * often greater.</p>
+ * <pre>
+ * BoxingHistogram histogram = new BoxingHistogram();
+ * meter.measureDeep(index, histogram);
+ * System.out.println(histogram);
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class BoxingHistogram extends PathTrackingListener<FieldPath> {
+
+    /**
+     * The primitive types per box type.
+     */
+    private static final Map<Class<?>, Class<?>> PRIMITIVE_TYPES = new IdentityHashMap<>();
+
+    static {
+        PRIMITIVE_TYPES.put(Boolean.class, boolean.class);
+        PRIMITIVE_TYPES.put(Byte.class, byte.class);
+        PRIMITIVE_TYPES.put(Character.class, char.class);
+        PRIMITIVE_TYPES.put(Short.class, short.class);
+        PRIMITIVE_TYPES.put(Integer.class, int.class);
+        PRIMITIVE_TYPES.put(Float.class, float.class);
+        PRIMITIVE_TYPES.put(Long.class, long.class);
+        PRIMITIVE_TYPES.put(Double.class, double.class);
+    }
+
+    /**
+     * The tree aggregating the paths.
+     */
+    private final FieldPathTree tree;
+
+    /**
+     * The collections being measured, the innermost one first.
+     */
+    private final Deque<Container> containers = new ArrayDeque<>();
+
+    /**
+     * The entries per path and box type.
+     */
+    private final Map<FieldPath, Map<Class<?>, Entry>> entries = new IdentityHashMap<>();
+
+    /**
+     * The estimator computing the size of the arrays, in the memory layout of the current meter.
+     */
+    private FootprintEstimator estimator;
+
+    public BoxingHistogram() {
+        this(FieldPathTree.DEFAULT_MAX_DEPTH);
+    }
+
+    public BoxingHistogram(int maxDepth) {
+        this.tree = new FieldPathTree(maxDepth);
+    }
+
+    @Override
+    protected void graphStarted(MemoryMeter meter) {
+        // A previous traversal might have been aborted by an exception, leaving collections open
+        containers.clear();
+        estimator = meter.footprintEstimator();
+    }
+
+    @Override
+    protected FieldPath rootMeasured(Object root, long size) {
+        return measured(tree.root(root.getClass()), null, root, size);
+    }
+
+    @Override
+    protected FieldPath fieldMeasured(FieldPath parent, Object owner, String fieldName, Object value, long size) {
+        return measured(tree.field(parent, owner.getClass(), fieldName), owner, value, size);
+    }
+
+    @Override
+    protected FieldPath arrayElementMeasured(FieldPath parent, Object[] array, int index, Object element, long size) {
+        return measured(tree.arrayElements(parent, array.getClass()), array, element, size);
+    }
+
+    private FieldPath measured(FieldPath path, Object owner, Object value, long size) {
+
+        if (value instanceof Collection || value instanceof Map) {
+            containers.push(new Container(depth() + 1)); // the frame of the value will be pushed after this call
+        } else if (!containers.isEmpty() && isCollectionInternal(owner)) {
+            Class<?> primitiveType = PRIMITIVE_TYPES.get(value.getClass());
+            if (primitiveType != null) {
+                Entry entry = entries.computeIfAbsent(path, p -> new IdentityHashMap<>())
+                                     .computeIfAbsent(value.getClass(), t -> new Entry(path.toString(), t, primitiveType));
+                entry.count++;
+                entry.boxBytes += size;
+                containers.peek().add(entry);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Checks if the specified object is part of the internal structure of a collection: an array, a collection or a
+     * JDK class (e.g. the hash map nodes) rather than an element of the collection.
+     *
+     * @param owner the object owning the box
+     * @return {@code true} if the specified object is part of the internal structure of a collection
+     */
+    private static boolean isCollectionInternal(Object owner) {
+        return owner.getClass().isArray()
+                || owner instanceof Collection
+                || owner instanceof Map
+                || owner.getClass().getName().startsWith("java.");
+    }
+
+    @Override
+    protected void subgraphMeasured(FieldPath path, long size, long totalSize) {
+
+        // The frame has already been removed from the path
+        Container container = containers.peek();
+        if (container != null && container.depth == depth() + 1) {
+            containers.pop();
+            container.close(estimator);
+        }
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the entries sorted by decreasing estimated savings.
+     *
+     * @return the entries sorted by decreasing estimated savings
+     */
+    public List<Entry> entries() {
+        List<Entry> list = new ArrayList<>();
+        for (Map<Class<?>, Entry> byType : entries.values())
+            list.addAll(byType.values());
+        list.sort((e1, e2) -> Long.compare(e2.savedBytes(), e1.savedBytes()));
+        return list;
+    }
+
+    /**
+     * Returns the total estimated savings.
+     *
+     * @return the total estimated savings
+     */
+    public long savedBytes() {
+        long saved = 0;
+        for (Map<Class<?>, Entry> byType : entries.values()) {
+            for (Entry entry : byType.values())
+                saved += entry.savedBytes();
+        }
+        return saved;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("%12s %15s %15s %15s %15s  %s%n",
+                                                                "boxes", "boxes bytes", "boxed layout", "primitive", "saved", "path"));
+        for (Entry entry : entries())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * A collection being measured and the number of boxes it holds per entry.
+     */
+    private static final class Container {
+
+        /**
+         * The depth of the collection frame.
+         */
+        private final int depth;
+
+        /**
+         * The number of boxes per entry.
+         */
+        private final Map<Entry, long[]> counts = new IdentityHashMap<>();
+
+        private Container(int depth) {
+            this.depth = depth;
+        }
+
+        private void add(Entry entry) {
+            counts.computeIfAbsent(entry, e -> new long[1])[0]++;
+        }
+
+        private void close(FootprintEstimator estimator) {
+            for (Map.Entry<Entry, long[]> e : counts.entrySet()) {
+                Entry entry = e.getKey();
+                long count = e.getValue()[0];
+                entry.collections++;
+                entry.referenceBytes += estimator.array(Object.class, (int) count);
+                entry.primitiveBytes += estimator.array(entry.primitiveType, (int) count);
+            }
+        }
+    }
+
+    /**
+     * The boxes of a given type reached through a field path.
+     */
+    public static final class Entry {
+
+        private final String path;
+
+        private final Class<?> boxType;
+
+        private final Class<?> primitiveType;
+
+        private long collections;
+
+        private long count;
+
+        private long boxBytes;
+
+        private long referenceBytes;
+
+        private long primitiveBytes;
+
+        private Entry(String path, Class<?> boxType, Class<?> primitiveType) {
+            this.path = path;
+            this.boxType = boxType;
+            this.primitiveType = primitiveType;
+        }
+
+        /**
+         * Returns the field path through which the boxes have been reached.
+         *
+         * @return the field path through which the boxes have been reached
+         */
+        public String path() {
+            return path;
+        }
+
+        /**
+         * Returns the box type.
+         *
+         * @return the box type
+         */
+        public Class<?> boxType() {
+            return boxType;
+        }
+
+        /**
+         * Returns the number of collections holding the boxes.
+         *
+         * @return the number of collections holding the boxes
+         */
+        public long collections() {
+            return collections;
+        }
+
+        /**
+         * Returns the number of boxes.
+         *
+         * @return the number of boxes
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the size of the boxes.
+         *
+         * @return the size of the boxes
+         */
+        public long boxBytes() {
+            return boxBytes;
+        }
+
+        /**
+         * Returns the estimated size of the boxed layout: for each collection, an array of references to the boxes
+         * plus the boxes.
+         *
+         * @return the estimated size of the boxed layout
+         */
+        public long boxedLayoutBytes() {
+            return referenceBytes + boxBytes;
+        }
+
+        /**
+         * Returns the estimated size of the primitive layout: for each collection, a primitive array holding the values.
+         *
+         * @return the estimated size of the primitive layout
+         */
+        public long primitiveLayoutBytes() {
+            return primitiveBytes;
+        }
+
+        /**
+         * Returns the estimated number of bytes saved by using the primitive layout.
+         *
+         * @return the estimated number of bytes saved by using the primitive layout
+         */
+        public long savedBytes() {
+            return boxedLayoutBytes() - primitiveBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12d %15d %15d %15d %15d  %s (%s)",
+                                 count, boxBytes, boxedLayoutBytes(), primitiveBytes, savedBytes(), path, boxType.getSimpleName());
+        }
+    }
+}
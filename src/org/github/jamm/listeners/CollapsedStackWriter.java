@@ -0,0 +1,153 @@
+package org.github.jamm.listeners;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.github.jamm.MemoryMeterListener;
+
+/**
+ * A memory listener that writes the memory used by the measured graph, aggregated by field path, in the collapsed stack
+ * format used by flame graph tools (e.g. <a href="https://github.com/brendangregg/FlameGraph">flamegraph.pl</a> or
+ * <a href="https://www.speedscope.app/">speedscope</a>).
+ *
+ * <p>Each line contains a semicolon-separated field path from the root followed by the number of bytes used by the
+ * objects reached through that path:</p>
+ * <pre>
+ * org.example.Partition 24
+ * org.example.Partition;org.example.Partition.rows 24
+ * org.example.Partition;org.example.Partition.rows;java.util.ArrayList.elementData 56
+ * org.example.Partition;org.example.Partition.rows;java.util.ArrayList.elementData;java.lang.Object[][*] 320
+ * </pre>
+ * <p>The paths are aggregated on the fly through a {@link FieldPathTree}, recursive fields being folded, so that the
+ * memory used by this listener does not depend on the number of measured objects. The lines are written once the
+ * graph has been fully measured.</p>
+ */
+public final class CollapsedStackWriter extends PathTrackingListener<FieldPath> {
+
+    /**
+     * The writer to write to.
+     */
+    private final Writer writer;
+
+    /**
+     * The tree aggregating the paths.
+     */
+    private final FieldPathTree tree;
+
+    /**
+     * The bytes used by the objects reached through each path, indexed by path identifier.
+     */
+    private long[] bytes = new long[64];
+
+    public CollapsedStackWriter(Writer writer, int maxDepth) {
+        this.writer = writer;
+        this.tree = new FieldPathTree(maxDepth);
+    }
+
+    @Override
+    protected FieldPath rootMeasured(Object root, long size) {
+        return tree.root(root.getClass());
+    }
+
+    @Override
+    protected FieldPath fieldMeasured(FieldPath parent, Object owner, String fieldName, Object value, long size) {
+        return tree.field(parent, owner.getClass(), fieldName);
+    }
+
+    @Override
+    protected FieldPath arrayElementMeasured(FieldPath parent, Object[] array, int index, Object element, long size) {
+        return tree.arrayElements(parent, array.getClass());
+    }
+
+    @Override
+    protected void subgraphMeasured(FieldPath path, long size, long totalSize) {
+        int id = path.id();
+        if (id >= bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, id + 1));
+
+        bytes[id] += size;
+    }
+
+    @Override
+    protected void graphMeasured(long size) {
+        try {
+            for (int id = 0, m = tree.size(); id < m; id++) {
+                if (id < bytes.length && bytes[id] != 0) {
+                    writer.write(tree.get(id).toString(';'));
+                    writer.write(' ');
+                    writer.write(Long.toString(bytes[id]));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Factory for {@code CollapsedStackWriter} instances.
+     * <p>All the listeners created by a factory write to the same {@code Writer}. Therefore, a {@code MemoryMeter}
+     * using this factory should not be used to perform concurrent measurements.</p>
+     */
+    public static class Factory implements MemoryMeterListener.Factory {
+
+        /**
+         * The writer to write to.
+         */
+        private final Writer writer;
+
+        /**
+         * The maximum depth of the paths.
+         */
+        private final int maxDepth;
+
+        /**
+         * Creates a new {@code Factory} instance which create {@code CollapsedStackWriter} writing to the specified writer.
+         *
+         * @param writer the writer to write to
+         */
+        public Factory(Writer writer) {
+            this(writer, FieldPathTree.DEFAULT_MAX_DEPTH);
+        }
+
+        /**
+         * Creates a new {@code Factory} instance which create {@code CollapsedStackWriter} writing to the specified writer
+         * paths up to the specified depth.
+         *
+         * @param writer the writer to write to
+         * @param maxDepth the maximum depth of the paths
+         */
+        public Factory(Writer writer, int maxDepth) {
+            if (maxDepth <= 0)
+                throw new IllegalArgumentException(String.format("the depth must be greater than zero (was %s).", maxDepth));
+
+            this.writer = writer;
+            this.maxDepth = maxDepth;
+        }
+
+        /**
+         * Creates a new {@code Factory} instance which create {@code CollapsedStackWriter} writing, in UTF-8, to the specified stream.
+         *
+         * @param stream the stream to write to
+         */
+        public Factory(OutputStream stream) {
+            this(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public MemoryMeterListener newInstance() {
+            return new CollapsedStackWriter(writer, maxDepth);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package org.github.jamm.listeners;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.MemoryMeterListener;
+import org.github.jamm.string.StringMeter;
+
+/**
+ * A memory listener detecting the values that are duplicated within a measured graph: strings, primitive arrays and
+ * boxed primitives with the same content but a different identity.
+ *
+ * <p>The content of each of those objects is fingerprinted, as it is measured, using a 64-bit hash. The fingerprints
+ * are counted in a table of bounded size so that the memory used by the listener does not depend on the size of the
+ * graph. When the table is full, the fingerprints seen only once are evicted. By consequence, on graphs with more
+ * distinct values than the table capacity, the number of occurrences of some duplicates might be underestimated.</p>
+ * <p>The duplicate groups are reported with the number of bytes that would be saved by keeping a single instance of each
+ * value, which helps to decide where interning or deduplication would pay off:</p>
+ * <pre>
+ * DuplicateHistogram histogram = new DuplicateHistogram();
+ * meter.measureDeep(partition, histogram);
+ * System.out.println(histogram);
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class DuplicateHistogram implements MemoryMeterListener {
+
+    /**
+     * The default maximum number of fingerprints tracked.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The maximum length of the sample values.
+     */
+    private static final int MAX_SAMPLE_LENGTH = 64;
+
+    /**
+     * The maximum number of fingerprints tracked.
+     */
+    private final int capacity;
+
+    /**
+     * The fingerprints (open addressing table), {@code 0} marking an empty slot.
+     */
+    private long[] fingerprints;
+
+    /**
+     * The number of occurrences of each fingerprint.
+     */
+    private long[] counts;
+
+    /**
+     * The size of a single occurrence of each fingerprint.
+     */
+    private long[] sizes;
+
+    /**
+     * The type of the value of each fingerprint.
+     */
+    private Class<?>[] types;
+
+    /**
+     * A sample of the value of each fingerprint.
+     */
+    private String[] samples;
+
+    /**
+     * The number of fingerprints in the table.
+     */
+    private int size;
+
+    /**
+     * {@code true} if the meter performing the current measurement measures the strings with their value.
+     */
+    private boolean optimizeStrings = StringMeter.ENABLED;
+
+    /**
+     * The utility used to access the String values, created lazily as the values cannot be accessed on all JVMs.
+     */
+    private StringMeter stringMeter;
+
+    /**
+     * The string measured last if its value has still to be measured (only used when the string optimization is disabled).
+     */
+    private String pendingString;
+
+    /**
+     * The shallow size of the pending string.
+     */
+    private long pendingStringSize;
+
+    /**
+     * The value of the pending string.
+     */
+    private Object pendingStringValue;
+
+    public DuplicateHistogram() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DuplicateHistogram(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException(String.format("the capacity must be greater than zero (was %s).", capacity));
+
+        this.capacity = capacity;
+        int length = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 2; // keep the load factor under 50%
+        this.fingerprints = new long[length];
+        this.counts = new long[length];
+        this.sizes = new long[length];
+        this.types = new Class<?>[length];
+        this.samples = new String[length];
+    }
+
+    @Override
+    public void started(Object obj) {
+    }
+
+    @Override
+    public void started(MemoryMeter meter, Object obj) {
+        optimizeStrings = meter.isStringOptimizationEnabled();
+        clearPendingString();
+    }
+
+    @Override
+    public void fieldAdded(Object obj, String fieldName, Object fieldValue) {
+        // When the String optimization is disabled the String values are measured separately
+        if (obj == pendingString && "value".equals(fieldName))
+            pendingStringValue = fieldValue;
+    }
+
+    @Override
+    public void arrayElementAdded(Object[] array, int index, Object elementValue) {
+    }
+
+    @Override
+    public void objectMeasured(Object current, long size) {
+
+        if (pendingString != null) {
+            String s = pendingString;
+            long stringSize = pendingStringSize;
+            boolean isValue = current == pendingStringValue;
+            clearPendingString();
+            if (isValue) {
+                add(s, fingerprint(s), stringSize + size);
+                return;
+            }
+            add(s, fingerprint(s), stringSize);
+        }
+
+        Class<?> type = current.getClass();
+        if (type == String.class) {
+            if (optimizeStrings) {
+                String s = (String) current;
+                add(s, fingerprint(s), size);
+            } else {
+                pendingString = (String) current;
+                pendingStringSize = size;
+            }
+        } else if (type.isArray()) {
+            if (type.getComponentType().isPrimitive())
+                add(current, fingerprintArray(current), size);
+        } else if (isBox(type)) {
+            add(current, fingerprintBox(current), size);
+        }
+    }
+
+    private void clearPendingString() {
+        pendingString = null;
+        pendingStringValue = null;
+        pendingStringSize = 0;
+    }
+
+    @Override
+    public void byteBufferRemainingMeasured(ByteBuffer buffer, long size) {
+    }
+
+    @Override
+    public void done(long size) {
+        if (pendingString != null) {
+            add(pendingString, fingerprint(pendingString), pendingStringSize);
+            clearPendingString();
+        }
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Adds an occurrence of the specified fingerprint.
+     *
+     * @param value the value
+     * @param fingerprint the value fingerprint
+     * @param valueSize the value size
+     */
+    private void add(Object value, long fingerprint, long valueSize) {
+
+        int slot = slot(fingerprint);
+        if (fingerprints[slot] == fingerprint) {
+            counts[slot]++;
+            return;
+        }
+
+        if (size == capacity) {
+            evictSingletons();
+            if (size == capacity)
+                return; // all the tracked fingerprints are duplicates, the new one is dropped
+            slot = slot(fingerprint);
+        }
+
+        fingerprints[slot] = fingerprint;
+        counts[slot] = 1;
+        sizes[slot] = valueSize;
+        types[slot] = value.getClass();
+        samples[slot] = sample(value);
+        size++;
+    }
+
+    /**
+     * Returns the slot of the specified fingerprint or the empty slot where it should be inserted.
+     *
+     * @param fingerprint the fingerprint
+     * @return the slot of the specified fingerprint or the empty slot where it should be inserted
+     */
+    private int slot(long fingerprint) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (fingerprints[slot] != 0 && fingerprints[slot] != fingerprint)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Removes from the table the fingerprints seen only once.
+     */
+    private void evictSingletons() {
+
+        long[] oldFingerprints = fingerprints;
+        long[] oldCounts = counts;
+        long[] oldSizes = sizes;
+        Class<?>[] oldTypes = types;
+        String[] oldSamples = samples;
+
+        int length = oldFingerprints.length;
+        fingerprints = new long[length];
+        counts = new long[length];
+        sizes = new long[length];
+        types = new Class<?>[length];
+        samples = new String[length];
+        size = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (oldCounts[i] > 1) {
+                int slot = slot(oldFingerprints[i]);
+                fingerprints[slot] = oldFingerprints[i];
+                counts[slot] = oldCounts[i];
+                sizes[slot] = oldSizes[i];
+                types[slot] = oldTypes[i];
+                samples[slot] = oldSamples[i];
+                size++;
+            }
+        }
+    }
+
+    private static boolean isBox(Class<?> type) {
+        return type == Integer.class || type == Long.class || type == Double.class || type == Float.class
+                || type == Short.class || type == Byte.class || type == Character.class || type == Boolean.class;
+    }
+
+    private long fingerprint(String s) {
+        if (stringMeter == null)
+            stringMeter = StringMeter.newInstance();
+
+        Object value = stringMeter.getValue(s);
+        return value instanceof byte[] ? fingerprint(String.class, (byte[]) value) : fingerprint(String.class, (char[]) value);
+    }
+
+    private static long fingerprintBox(Object box) {
+        long bits;
+        if (box instanceof Double)
+            bits = Double.doubleToRawLongBits((Double) box);
+        else if (box instanceof Float)
+            bits = Float.floatToRawIntBits((Float) box);
+        else if (box instanceof Character)
+            bits = (Character) box;
+        else if (box instanceof Boolean)
+            bits = ((Boolean) box) ? 1 : 0;
+        else
+            bits = ((Number) box).longValue();
+
+        return fmix(mix(seed(box.getClass(), 1), bits));
+    }
+
+    private static long fingerprintArray(Object array) {
+        Class<?> type = array.getClass();
+
+        if (type == byte[].class)
+            return fingerprint(type, (byte[]) array);
+
+        if (type == char[].class)
+            return fingerprint(type, (char[]) array);
+
+        long h;
+        if (type == int[].class) {
+            int[] ints = (int[]) array;
+            h = seed(type, ints.length);
+            for (int i : ints)
+                h = mix(h, i);
+        } else if (type == long[].class) {
+            long[] longs = (long[]) array;
+            h = seed(type, longs.length);
+            for (long l : longs)
+                h = mix(h, l);
+        } else if (type == double[].class) {
+            double[] doubles = (double[]) array;
+            h = seed(type, doubles.length);
+            for (double d : doubles)
+                h = mix(h, Double.doubleToRawLongBits(d));
+        } else if (type == float[].class) {
+            float[] floats = (float[]) array;
+            h = seed(type, floats.length);
+            for (float f : floats)
+                h = mix(h, Float.floatToRawIntBits(f));
+        } else if (type == short[].class) {
+            short[] shorts = (short[]) array;
+            h = seed(type, shorts.length);
+            for (short s : shorts)
+                h = mix(h, s);
+        } else {
+            boolean[] booleans = (boolean[]) array;
+            h = seed(type, booleans.length);
+            for (boolean b : booleans)
+                h = mix(h, b ? 1 : 0);
+        }
+        return fmix(h);
+    }
+
+    private static long fingerprint(Class<?> type, byte[] bytes) {
+        long h = seed(type, bytes.length);
+        int i = 0;
+        // Mix 8 bytes at a time
+        for (int m = bytes.length & ~7; i < m; i += 8) {
+            long word = (bytes[i] & 0xFFL)
+                    | (bytes[i + 1] & 0xFFL) << 8
+                    | (bytes[i + 2] & 0xFFL) << 16
+                    | (bytes[i + 3] & 0xFFL) << 24
+                    | (bytes[i + 4] & 0xFFL) << 32
+                    | (bytes[i + 5] & 0xFFL) << 40
+                    | (bytes[i + 6] & 0xFFL) << 48
+                    | (bytes[i + 7] & 0xFFL) << 56;
+            h = mix(h, word);
+        }
+        for (; i < bytes.length; i++)
+            h = mix(h, bytes[i]);
+        return fmix(h);
+    }
+
+    private static long fingerprint(Class<?> type, char[] chars) {
+        long h = seed(type, chars.length);
+        int i = 0;
+        // Mix 4 chars at a time
+        for (int m = chars.length & ~3; i < m; i += 4) {
+            long word = chars[i] | (long) chars[i + 1] << 16 | (long) chars[i + 2] << 32 | (long) chars[i + 3] << 48;
+            h = mix(h, word);
+        }
+        for (; i < chars.length; i++)
+            h = mix(h, chars[i]);
+        return fmix(h);
+    }
+
+    private static long seed(Class<?> type, int length) {
+        return mix(type.getName().hashCode(), length);
+    }
+
+    private static long mix(long h, long value) {
+        return (h ^ value) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+    }
+
+    /**
+     * Finalizes the hash (MurmurHash3 finalizer), never returning {@code 0} which marks the empty slots.
+     *
+     * @param h the hash to finalize
+     * @return the finalized hash
+     */
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Returns a sample of the specified value for reporting.
+     *
+     * @param value the value
+     * @return a sample of the specified value, truncated if too long
+     */
+    private static String sample(Object value) {
+
+        String s;
+        Class<?> type = value.getClass();
+        if (type == byte[].class)
+            s = Arrays.toString((byte[]) value);
+        else if (type == char[].class)
+            s = Arrays.toString((char[]) value);
+        else if (type == int[].class)
+            s = Arrays.toString((int[]) value);
+        else if (type == long[].class)
+            s = Arrays.toString((long[]) value);
+        else if (type == double[].class)
+            s = Arrays.toString((double[]) value);
+        else if (type == float[].class)
+            s = Arrays.toString((float[]) value);
+        else if (type == short[].class)
+            s = Arrays.toString((short[]) value);
+        else if (type == boolean[].class)
+            s = Arrays.toString((boolean[]) value);
+        else
+            s = value.toString();
+
+        return s.length() <= MAX_SAMPLE_LENGTH ? s : s.substring(0, MAX_SAMPLE_LENGTH) + "...";
+    }
+
+    /**
+     * Returns the duplicate groups sorted by decreasing number of wasted bytes.
+     *
+     * @return the duplicate groups sorted by decreasing number of wasted bytes
+     */
+    public List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (counts[i] > 1)
+                entries.add(new Entry(types[i], samples[i], counts[i], sizes[i]));
+        }
+        entries.sort((e1, e2) -> Long.compare(e2.wastedBytes(), e1.wastedBytes()));
+        return entries;
+    }
+
+    /**
+     * Returns the total number of bytes used by the duplicates.
+     *
+     * @return the total number of bytes used by the duplicates
+     */
+    public long wastedBytes() {
+        long wasted = 0;
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (counts[i] > 1)
+                wasted += (counts[i] - 1) * sizes[i];
+        }
+        return wasted;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("%12s %12s %15s  %s%n", "count", "size", "wasted", "value"));
+        for (Entry entry : entries())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * A group of duplicated values.
+     */
+    public static final class Entry {
+
+        private final Class<?> type;
+
+        private final String sample;
+
+        private final long count;
+
+        private final long size;
+
+        private Entry(Class<?> type, String sample, long count, long size) {
+            this.type = type;
+            this.sample = sample;
+            this.count = count;
+            this.size = size;
+        }
+
+        /**
+         * Returns the type of the duplicated value.
+         *
+         * @return the type of the duplicated value
+         */
+        public Class<?> type() {
+            return type;
+        }
+
+        /**
+         * Returns a sample of the duplicated value: the string representation of the value or of the array content,
+         * truncated if too long.
+         *
+         * @return a sample of the duplicated value
+         */
+        public String sample() {
+            return sample;
+        }
+
+        /**
+         * Returns the number of occurrences of the value.
+         *
+         * @return the number of occurrences of the value
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the size of a single occurrence of the value.
+         *
+         * @return the size of a single occurrence of the value
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Returns the number of bytes that would be saved by keeping a single occurrence of the value.
+         *
+         * @return the number of bytes wasted by the duplicates
+         */
+        public long wastedBytes() {
+            return (count - 1) * size;
+        }
+
+        @Override
+        public String toString() {
+            String value = type == String.class ? '"' + sample + '"'
+                                                : type.isArray() ? type.getComponentType().getName() + "[]" + sample
+                                                                 : type.getSimpleName() + '(' + sample + ')';
+            return String.format("%12d %12d %15d  %s", count, size, wastedBytes(), value);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.github.jamm.listeners;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.jamm.MemoryMeter;
+
+/**
+ * A memory listener aggregating, per declaring class and field, the memory used by the objects reached through each field.
+ *
+ * <p>Each measured object is attributed to the field through which it was first reached (the elements of object arrays
+ * being attributed to the pseudo field {@code [*]} of the array type). The fields are identified by their declaring
+ * class, so that a field shadowing a field of a superclass gets its own entry. The children added by a
+ * {@code Measurable} are attributed to its class. For each field, the histogram provides:</p>
+ * <ul>
+ *     <li>the number of objects reached through the field</li>
+ *     <li>the shallow size of those objects</li>
+ *     <li>the reachable size: the size of those objects and of all the objects measured through them. Nested occurrences
+ *     of a field (e.g. the {@code next} field of a linked list) are only counted once.</li>
+ * </ul>
+ * <p>The root of the measured graph is not reached through any field and is therefore not part of the histogram.</p>
+ *
+ * <p>A {@code FieldHistogram} can be reused across multiple measurements to aggregate their results:</p>
+ * <pre>
+ * FieldHistogram histogram = new FieldHistogram();
+ * for (Partition partition : partitions)
+ *     meter.measureDeep(partition, histogram);
+ * System.out.println(histogram);
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class FieldHistogram extends PathTrackingListener<FieldHistogram.FieldKey> {
+
+    /**
+     * The keys of the fields found through reflection.
+     */
+    private final Map<Field, FieldKey> keysByField = new HashMap<>();
+
+    /**
+     * The keys per declaring class (or array type) and per field name.
+     */
+    private final Map<Class<?>, Map<String, FieldKey>> keys = new HashMap<>();
+
+    /**
+     * The fields by index.
+     */
+    private final List<FieldKey> fields = new ArrayList<>();
+
+    /**
+     * The number of objects reached through each field, indexed by field index.
+     */
+    private long[] counts = new long[32];
+
+    /**
+     * The shallow size of the objects reached through each field, indexed by field index.
+     */
+    private long[] bytes = new long[32];
+
+    /**
+     * The reachable size of the objects reached through each field, indexed by field index.
+     */
+    private long[] reachableBytes = new long[32];
+
+    /**
+     * The number of occurrences of each field in the current path, indexed by field index.
+     */
+    private int[] occurrencesInPath = new int[32];
+
+    @Override
+    protected void graphStarted(MemoryMeter meter) {
+        // A previous traversal might have been aborted by an exception, leaving fields in the path
+        Arrays.fill(occurrencesInPath, 0);
+    }
+
+    @Override
+    protected FieldKey rootMeasured(Object root, long size) {
+        return null;
+    }
+
+    @Override
+    protected FieldKey fieldMeasured(FieldKey parent, Object owner, Field field, Object value, long size) {
+        FieldKey key = keysByField.get(field);
+        if (key == null) {
+            key = key(field.getDeclaringClass(), field.getName());
+            keysByField.put(field, key);
+        }
+        return enter(key);
+    }
+
+    @Override
+    protected FieldKey fieldMeasured(FieldKey parent, Object owner, String fieldName, Object value, long size) {
+        // The children named by a Measurable are attributed to the class of the Measurable
+        return enter(key(owner.getClass(), fieldName));
+    }
+
+    @Override
+    protected FieldKey arrayElementMeasured(FieldKey parent, Object[] array, int index, Object element, long size) {
+        return enter(key(array.getClass(), FieldPath.ARRAY_ELEMENTS));
+    }
+
+    private FieldKey enter(FieldKey key) {
+        occurrencesInPath[key.index]++;
+        return key;
+    }
+
+    @Override
+    protected void subgraphMeasured(FieldKey key, long size, long totalSize) {
+        if (key == null)
+            return;
+
+        int index = key.index;
+        counts[index]++;
+        bytes[index] += size;
+        if (--occurrencesInPath[index] == 0)
+            reachableBytes[index] += totalSize;
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the key of the specified field.
+     *
+     * @param declaringClass the class declaring the field or the array type for the array elements
+     * @param fieldName the field name
+     * @return the key of the specified field
+     */
+    private FieldKey key(Class<?> declaringClass, String fieldName) {
+        Map<String, FieldKey> keysByName = keys.get(declaringClass);
+        if (keysByName == null) {
+            keysByName = new HashMap<>();
+            keys.put(declaringClass, keysByName);
+        }
+
+        FieldKey key = keysByName.get(fieldName);
+        if (key == null) {
+            key = newKey(declaringClass, fieldName);
+            keysByName.put(fieldName, key);
+        }
+        return key;
+    }
+
+    private FieldKey newKey(Class<?> declaringClass, String fieldName) {
+        FieldKey key = new FieldKey(fields.size(), declaringClass, fieldName);
+        fields.add(key);
+
+        if (key.index == counts.length) {
+            int newLength = counts.length << 1;
+            counts = Arrays.copyOf(counts, newLength);
+            bytes = Arrays.copyOf(bytes, newLength);
+            reachableBytes = Arrays.copyOf(reachableBytes, newLength);
+            occurrencesInPath = Arrays.copyOf(occurrencesInPath, newLength);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the histogram entries sorted by decreasing reachable size.
+     *
+     * @return the histogram entries sorted by decreasing reachable size
+     */
+    public List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(fields.size());
+        for (FieldKey key : fields) {
+            int index = key.index;
+            entries.add(new Entry(key.declaringClass, key.fieldName, counts[index], bytes[index], reachableBytes[index]));
+        }
+        entries.sort((e1, e2) -> Long.compare(e2.reachableBytes, e1.reachableBytes));
+        return entries;
+    }
+
+    /**
+     * Returns the histogram entry for the specified field.
+     *
+     * @param declaringClass the class declaring the field or the array type for the array elements
+     * @param fieldName the field name or {@code [*]} for the array elements
+     * @return the histogram entry for the specified field or {@code null} if no object has been reached through that field
+     */
+    public Entry entry(Class<?> declaringClass, String fieldName) {
+        Map<String, FieldKey> keysByName = keys.get(declaringClass);
+        FieldKey key = keysByName == null ? null : keysByName.get(fieldName);
+        if (key == null)
+            return null;
+
+        int index = key.index;
+        return new Entry(key.declaringClass, key.fieldName, counts[index], bytes[index], reachableBytes[index]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("%15s %15s %15s  %s%n", "count", "bytes", "reachable", "field"));
+        for (Entry entry : entries())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * The key identifying a field within the histogram.
+     */
+    static final class FieldKey {
+
+        /**
+         * The field index.
+         */
+        private final int index;
+
+        /**
+         * The class declaring the field.
+         */
+        private final Class<?> declaringClass;
+
+        /**
+         * The field name.
+         */
+        private final String fieldName;
+
+        FieldKey(int index, Class<?> declaringClass, String fieldName) {
+            this.index = index;
+            this.declaringClass = declaringClass;
+            this.fieldName = fieldName;
+        }
+    }
+
+    /**
+     * The memory used by the objects reached through a field.
+     */
+    public static final class Entry {
+
+        private final Class<?> declaringClass;
+
+        private final String fieldName;
+
+        private final long count;
+
+        private final long bytes;
+
+        private final long reachableBytes;
+
+        Entry(Class<?> declaringClass, String fieldName, long count, long bytes, long reachableBytes) {
+            this.declaringClass = declaringClass;
+            this.fieldName = fieldName;
+            this.count = count;
+            this.bytes = bytes;
+            this.reachableBytes = reachableBytes;
+        }
+
+        /**
+         * Returns the class declaring the field or the array type for array elements.
+         *
+         * @return the class declaring the field or the array type for array elements
+         */
+        public Class<?> declaringClass() {
+            return declaringClass;
+        }
+
+        /**
+         * Returns the field name.
+         *
+         * @return the field name or {@code [*]} for array elements
+         */
+        public String fieldName() {
+            return fieldName;
+        }
+
+        /**
+         * Returns the number of objects reached through the field.
+         *
+         * @return the number of objects reached through the field
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the shallow size, in bytes, of the objects reached through the field.
+         *
+         * @return the shallow size of the objects reached through the field
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the size, in bytes, of the objects reached through the field and of all the objects measured through them.
+         *
+         * @return the reachable size of the objects reached through the field
+         */
+        public long reachableBytes() {
+            return reachableBytes;
+        }
+
+        @Override
+        public String toString() {
+            String className = declaringClass.isArray() ? declaringClass.getComponentType().getName() + "[]" : declaringClass.getName();
+            String name = FieldPath.ARRAY_ELEMENTS.equals(fieldName) ? className + fieldName : className + '.' + fieldName;
+            return String.format("%15d %15d %15d  %s", count, bytes, reachableBytes, name);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.github.jamm.listeners;
+
+import java.util.Arrays;
+
+/**
+ * A path, from the root of a measured graph, through which objects have been reached. Each element of the path is a
+ * field of a given class (e.g. {@code java.util.ArrayList.elementData}) or the elements of a given array type
+ * (e.g. {@code java.lang.Object[][*]}), the first element of the path being the root class.
+ *
+ * <p>{@code FieldPath} instances are created and aggregated by a {@link FieldPathTree} and are identified within
+ * their tree by a sequential identifier that can be used as an index to associate some information to them.</p>
+ */
+public final class FieldPath {
+
+    /**
+     * The name used for the array elements.
+     */
+    static final String ARRAY_ELEMENTS = "[*]";
+
+    private static final FieldPath[] EMPTY = new FieldPath[0];
+
+    /**
+     * The path identifier within its tree.
+     */
+    private final int id;
+
+    /**
+     * The parent path or {@code null} for the root.
+     */
+    private final FieldPath parent;
+
+    /**
+     * The class owning the field, the array type or the root class.
+     */
+    private final Class<?> type;
+
+    /**
+     * The field name, {@link #ARRAY_ELEMENTS} for array elements or {@code null} for the root.
+     */
+    private final String fieldName;
+
+    /**
+     * The path depth, the root being at depth {@code 1}.
+     */
+    private final int depth;
+
+    /**
+     * The children paths.
+     */
+    private FieldPath[] children = EMPTY;
+
+    /**
+     * The number of children.
+     */
+    private int childCount;
+
+    FieldPath(int id, FieldPath parent, Class<?> type, String fieldName) {
+        this.id = id;
+        this.parent = parent;
+        this.type = type;
+        this.fieldName = fieldName;
+        this.depth = parent == null ? 1 : parent.depth + 1;
+    }
+
+    /**
+     * Returns the path identifier within its tree.
+     *
+     * @return the path identifier within its tree
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Returns the parent path.
+     *
+     * @return the parent path or {@code null} if this path is a root one
+     */
+    public FieldPath parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the path depth.
+     *
+     * @return the path depth, the root being at depth {@code 1}
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the class owning the last field of this path, the array type if the path ends with array elements or
+     * the root class if this path is a root one.
+     *
+     * @return the class owning the last field of this path
+     */
+    public Class<?> type() {
+        return type;
+    }
+
+    /**
+     * Returns the name of the last field of this path.
+     *
+     * @return the name of the last field of this path, {@code [*]} for array elements or {@code null} if this path is a root one.
+     */
+    public String fieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Checks if this path ends with the specified field.
+     *
+     * @param type the class owning the field or the array type
+     * @param fieldName the field name
+     * @return {@code true} if this path ends with the specified field, {@code false} otherwise
+     */
+    boolean endsWith(Class<?> type, String fieldName) {
+        return this.type == type && fieldName.equals(this.fieldName);
+    }
+
+    /**
+     * Returns the child path for the specified field.
+     *
+     * @param type the class owning the field or the array type
+     * @param fieldName the field name
+     * @return the child path or {@code null} if it does not exist
+     */
+    FieldPath getChild(Class<?> type, String fieldName) {
+        for (int i = 0; i < childCount; i++) {
+            FieldPath child = children[i];
+            if (child.endsWith(type, fieldName))
+                return child;
+        }
+        return null;
+    }
+
+    void addChild(FieldPath child) {
+        if (childCount == children.length)
+            children = Arrays.copyOf(children, Math.max(4, childCount << 1));
+
+        children[childCount++] = child;
+    }
+
+    /**
+     * Returns the last element of this path (e.g. {@code java.util.ArrayList.elementData}).
+     *
+     * @return the last element of this path
+     */
+    public String label() {
+        if (fieldName == null)
+            return className(type);
+
+        return fieldName == ARRAY_ELEMENTS ? className(type) + ARRAY_ELEMENTS
+                                           : className(type) + '.' + fieldName;
+    }
+
+    /**
+     * Returns the elements of this path separated by the specified separator.
+     *
+     * @param separator the separator
+     * @return the elements of this path separated by the specified separator
+     */
+    public String toString(char separator) {
+        return appendTo(new StringBuilder(), separator).toString();
+    }
+
+    private StringBuilder appendTo(StringBuilder builder, char separator) {
+        if (parent != null)
+            parent.appendTo(builder, separator).append(separator);
+
+        return builder.append(label());
+    }
+
+    @Override
+    public String toString() {
+        return toString('/');
+    }
+
+    /**
+     * Returns the name of the specified class.
+     *
+     * @param clazz the class
+     * @return the name of the specified class
+     */
+    private static String className(Class<?> clazz) {
+        return clazz.isArray() ? className(clazz.getComponentType()) + "[]" : clazz.getName();
+    }
+}
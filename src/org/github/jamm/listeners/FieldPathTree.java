@@ -0,0 +1,139 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tree aggregating, by class and field, the paths through which the objects of a graph have been reached.
+ *
+ * <p>Aggregating paths per instance would require as much memory as the graph itself. Instead, the paths are
+ * aggregated by class and field and the tree memory usage is bounded by the following rules:</p>
+ * <ul>
+ *     <li>Recursive fields are folded: if a field already appears in the path, the objects reached through it are
+ *     attributed to the path ending at that first occurrence. For example, all the nodes of a linked list are
+ *     attributed to the same {@code Node.next} path.</li>
+ *     <li>Paths cannot be deeper than the maximum depth: the objects reached beyond it are attributed to the
+ *     deepest path.</li>
+ * </ul>
+ * <p>The number of paths depends therefore on the shape of the classes rather than on the number of instances.</p>
+ */
+public final class FieldPathTree {
+
+    /**
+     * The default maximum depth of the paths.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    /**
+     * The maximum depth of the paths.
+     */
+    private final int maxDepth;
+
+    /**
+     * All the paths by identifier.
+     */
+    private final List<FieldPath> paths = new ArrayList<>();
+
+    public FieldPathTree() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    public FieldPathTree(int maxDepth) {
+        if (maxDepth <= 0)
+            throw new IllegalArgumentException(String.format("the depth must be greater than zero (was %s).", maxDepth));
+
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns the root path for the specified class.
+     *
+     * @param type the root class
+     * @return the root path for the specified class
+     */
+    public FieldPath root(Class<?> type) {
+        for (FieldPath path : paths) {
+            if (path.parent() == null && path.type() == type)
+                return path;
+        }
+        return newPath(null, type, null);
+    }
+
+    /**
+     * Returns the path through which the value of the specified field has been reached.
+     *
+     * @param parent the path of the object owning the field
+     * @param type the class of the object owning the field
+     * @param fieldName the field name
+     * @return the path of the field value
+     */
+    public FieldPath field(FieldPath parent, Class<?> type, String fieldName) {
+        return child(parent, type, fieldName);
+    }
+
+    /**
+     * Returns the path through which the elements of the specified array type have been reached.
+     *
+     * @param parent the path of the array
+     * @param arrayType the array type
+     * @return the path of the array elements
+     */
+    public FieldPath arrayElements(FieldPath parent, Class<?> arrayType) {
+        return child(parent, arrayType, FieldPath.ARRAY_ELEMENTS);
+    }
+
+    private FieldPath child(FieldPath parent, Class<?> type, String fieldName) {
+
+        FieldPath child = parent.getChild(type, fieldName);
+        if (child != null)
+            return child;
+
+        // Fold recursive fields
+        for (FieldPath ancestor = parent; ancestor != null; ancestor = ancestor.parent()) {
+            if (ancestor.endsWith(type, fieldName))
+                return ancestor;
+        }
+
+        if (parent.depth() >= maxDepth)
+            return parent;
+
+        child = newPath(parent, type, fieldName);
+        parent.addChild(child);
+        return child;
+    }
+
+    private FieldPath newPath(FieldPath parent, Class<?> type, String fieldName) {
+        FieldPath path = new FieldPath(paths.size(), parent, type, fieldName);
+        paths.add(path);
+        return path;
+    }
+
+    /**
+     * Returns the number of paths of this tree.
+     *
+     * @return the number of paths of this tree
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Returns the path with the specified identifier.
+     *
+     * @param id the path identifier
+     * @return the path with the specified identifier
+     */
+    public FieldPath get(int id) {
+        return paths.get(id);
+    }
+
+    /**
+     * Returns all the paths of this tree in creation order (parents always come before their children).
+     *
+     * @return all the paths of this tree
+     */
+    public List<FieldPath> paths() {
+        return Collections.unmodifiableList(paths);
+    }
+}
@@ -0,0 +1,679 @@
+package org.github.jamm.listeners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of a measurement holding, per class and per field path, the number and the shallow size of the
+ * measured objects.
+ *
+ * <p>Snapshots are produced by a {@link SnapshotRecorder}, can be stored in a compact binary file and compared with
+ * each other to find out what grew between two measurements:</p>
+ * <pre>
+ * MeasurementSnapshot before = MeasurementSnapshot.read(Paths.get("cache.jamm"));
+ * SnapshotRecorder recorder = new SnapshotRecorder();
+ * meter.measureDeep(cache, recorder);
+ * System.out.println(recorder.snapshot().diff(before));
+ * </pre>
+ *
+ * <p>The file format is a big-endian binary format made of a header ({@code JAMM} magic number, format version,
+ * timestamp and total size), a table of the UTF-8 strings used by the snapshot, the class records (name index, count,
+ * bytes) and the path records (parent path index, label index, count, bytes). The paths being stored as a tree, their
+ * common prefixes are only stored once. Files are memory-mapped and only validated when they are read: the class and
+ * path records are decoded when their entries are first needed and each string is decoded once.</p>
+ * <p>The paths are identified by their elements separated by {@code ';'}, a character that cannot appear in class or
+ * field names, unlike {@code '/'} which is part of the hidden class names.</p>
+ */
+public final class MeasurementSnapshot {
+
+    /**
+     * The magic number identifying the snapshot files: {@code JAMM} in ASCII.
+     */
+    private static final int MAGIC = 0x4A414D4D;
+
+    /**
+     * The current version of the file format.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * The size of a class record: name index, count and bytes.
+     */
+    private static final int CLASS_RECORD_SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * The size of a path record: parent index, label index, count and bytes.
+     */
+    private static final int PATH_RECORD_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * The separator used between the elements of the paths.
+     */
+    private static final char SEPARATOR = ';';
+
+    /**
+     * The encoded snapshot: the mapped file or, for the snapshots recorded in memory, a heap buffer.
+     */
+    private final ByteBuffer buffer;
+
+    private final long timestamp;
+
+    private final long totalBytes;
+
+    /**
+     * The position of each string of the string table.
+     */
+    private final int[] stringPositions;
+
+    /**
+     * The strings of the string table, decoded on first use.
+     */
+    private final String[] strings;
+
+    /**
+     * The position of the first class record.
+     */
+    private final int classTableStart;
+
+    private final int classCount;
+
+    /**
+     * The position of the first path record. The parent of a path always comes before it.
+     */
+    private final int pathTableStart;
+
+    private final int pathCount;
+
+    /**
+     * The per class entries, built on first use.
+     */
+    private volatile Map<String, Entry> classEntries;
+
+    /**
+     * The per path entries, built on first use.
+     */
+    private volatile Map<String, Entry> pathEntries;
+
+    private MeasurementSnapshot(ByteBuffer buffer,
+                                long timestamp,
+                                long totalBytes,
+                                int[] stringPositions,
+                                int classTableStart,
+                                int classCount,
+                                int pathTableStart,
+                                int pathCount) {
+        this.buffer = buffer;
+        this.timestamp = timestamp;
+        this.totalBytes = totalBytes;
+        this.stringPositions = stringPositions;
+        this.strings = new String[stringPositions.length];
+        this.classTableStart = classTableStart;
+        this.classCount = classCount;
+        this.pathTableStart = pathTableStart;
+        this.pathCount = pathCount;
+    }
+
+    /**
+     * Creates a snapshot from the specified records. The paths are given by the index of their parent, or {@code -1}
+     * for the roots, and by their last element, the parents coming before their children.
+     */
+    static MeasurementSnapshot of(long timestamp,
+                                  long totalBytes,
+                                  String[] classNames,
+                                  long[] classCounts,
+                                  long[] classBytes,
+                                  int[] pathParents,
+                                  String[] pathLabels,
+                                  long[] pathCounts,
+                                  long[] pathBytes) {
+
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] classNameIndexes = indexesOf(classNames, indexes, strings);
+        int[] pathLabelIndexes = indexesOf(pathLabels, indexes, strings);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(timestamp);
+            out.writeLong(totalBytes);
+
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+
+            out.writeInt(classNames.length);
+            for (int i = 0; i < classNames.length; i++) {
+                out.writeInt(classNameIndexes[i]);
+                out.writeLong(classCounts[i]);
+                out.writeLong(classBytes[i]);
+            }
+
+            out.writeInt(pathLabels.length);
+            for (int i = 0; i < pathLabels.length; i++) {
+                out.writeInt(pathParents[i]);
+                out.writeInt(pathLabelIndexes[i]);
+                out.writeLong(pathCounts[i]);
+                out.writeLong(pathBytes[i]);
+            }
+
+            return read(ByteBuffer.wrap(bytes.toByteArray()));
+
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid snapshot records", e);
+        }
+    }
+
+    private static int[] indexesOf(String[] values, Map<String, Integer> indexes, List<String> strings) {
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Integer index = indexes.get(values[i]);
+            if (index == null) {
+                index = strings.size();
+                indexes.put(values[i], index);
+                strings.add(values[i]);
+            }
+            result[i] = index;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the time at which the snapshot was taken, in milliseconds since the epoch.
+     *
+     * @return the time at which the snapshot was taken
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the total size of the measured graphs.
+     *
+     * @return the total size of the measured graphs
+     */
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the total number of measured objects.
+     *
+     * @return the total number of measured objects
+     */
+    public long totalCount() {
+        long count = 0;
+        for (int i = 0; i < classCount; i++)
+            count += buffer.getLong(classTableStart + i * CLASS_RECORD_SIZE + Integer.BYTES);
+        return count;
+    }
+
+    /**
+     * Returns the per class entries sorted by decreasing size.
+     *
+     * @return the per class entries sorted by decreasing size
+     */
+    public List<Entry> classes() {
+        return sorted(classEntries());
+    }
+
+    /**
+     * Returns the per path entries sorted by decreasing size.
+     *
+     * @return the per path entries sorted by decreasing size
+     */
+    public List<Entry> paths() {
+        return sorted(pathEntries());
+    }
+
+    /**
+     * Returns the entry of the specified class.
+     *
+     * @param className the class name
+     * @return the entry of the specified class or {@code null} if no instance of that class has been measured
+     */
+    public Entry classEntry(String className) {
+        return classEntries().get(className);
+    }
+
+    /**
+     * Returns the entry of the specified path.
+     *
+     * @param path the path elements separated by {@code ';'} (e.g. {@code java.util.ArrayList;java.util.ArrayList.elementData})
+     * @return the entry of the specified path or {@code null} if no object has been reached through that path
+     */
+    public Entry pathEntry(String path) {
+        return pathEntries().get(path);
+    }
+
+    private Map<String, Entry> classEntries() {
+        Map<String, Entry> entries = classEntries;
+        if (entries == null) {
+            entries = new LinkedHashMap<>();
+            for (int i = 0; i < classCount; i++) {
+                int offset = classTableStart + i * CLASS_RECORD_SIZE;
+                String name = string(buffer.getInt(offset));
+                entries.put(name, new Entry(name,
+                                            buffer.getLong(offset + Integer.BYTES),
+                                            buffer.getLong(offset + Integer.BYTES + Long.BYTES)));
+            }
+            classEntries = entries = Collections.unmodifiableMap(entries);
+        }
+        return entries;
+    }
+
+    private Map<String, Entry> pathEntries() {
+        Map<String, Entry> entries = pathEntries;
+        if (entries == null) {
+            String[] names = new String[pathCount];
+            entries = new LinkedHashMap<>();
+            for (int i = 0; i < pathCount; i++) {
+                int offset = pathTableStart + i * PATH_RECORD_SIZE;
+                int parent = buffer.getInt(offset);
+                String label = string(buffer.getInt(offset + Integer.BYTES));
+                names[i] = parent < 0 ? label : names[parent] + SEPARATOR + label;
+                entries.put(names[i], new Entry(names[i],
+                                                buffer.getLong(offset + 2 * Integer.BYTES),
+                                                buffer.getLong(offset + 2 * Integer.BYTES + Long.BYTES)));
+            }
+            pathEntries = entries = Collections.unmodifiableMap(entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the string of the string table at the specified index, decoding it on first use.
+     */
+    private String string(int index) {
+        String string = strings[index];
+        if (string == null) {
+            int position = stringPositions[index];
+            byte[] encoded = new byte[buffer.getInt(position)];
+            for (int i = 0; i < encoded.length; i++)
+                encoded[i] = buffer.get(position + Integer.BYTES + i);
+            strings[index] = string = new String(encoded, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    private static List<Entry> sorted(Map<String, Entry> entries) {
+        List<Entry> list = new ArrayList<>(entries.values());
+        list.sort((e1, e2) -> Long.compare(e2.bytes, e1.bytes));
+        return list;
+    }
+
+    /**
+     * Compares this snapshot with a previous one.
+     *
+     * @param previous the previous snapshot
+     * @return the differences between the previous snapshot and this one
+     */
+    public Diff diff(MeasurementSnapshot previous) {
+        return new Diff(totalBytes - previous.totalBytes,
+                        deltas(previous.classEntries(), classEntries()),
+                        deltas(previous.pathEntries(), pathEntries()));
+    }
+
+    private static List<Delta> deltas(Map<String, Entry> before, Map<String, Entry> after) {
+        List<Delta> deltas = new ArrayList<>();
+        for (Entry entry : after.values()) {
+            Entry old = before.get(entry.name);
+            deltas.add(old == null ? new Delta(entry.name, 0, 0, entry.count, entry.bytes)
+                                   : new Delta(entry.name, old.count, old.bytes, entry.count, entry.bytes));
+        }
+        for (Entry old : before.values()) {
+            if (!after.containsKey(old.name))
+                deltas.add(new Delta(old.name, old.count, old.bytes, 0, 0));
+        }
+        deltas.sort((d1, d2) -> Long.compare(d2.bytesDelta(), d1.bytesDelta()));
+        return deltas;
+    }
+
+    /**
+     * Writes this snapshot to the specified file, replacing it if it already exists.
+     * <p>The snapshot is written to a temporary file moved over the specified one, so a snapshot can be written to the
+     * file from which it, or another snapshot still in use, was read.</p>
+     *
+     * @param file the file
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(Path file) throws IOException {
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                // The buffer is only read through absolute gets, its position is always 0
+                ByteBuffer bytes = buffer.duplicate();
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the snapshot stored in the specified file.
+     *
+     * @param file the file
+     * @return the snapshot stored in the specified file
+     * @throws IOException if an I/O error occurs or if the file is not a valid snapshot file
+     */
+    public static MeasurementSnapshot read(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(String.format("The snapshot file %s is truncated or corrupted.", file), e);
+        }
+    }
+
+    /**
+     * Validates the specified encoded snapshot and locates its tables, without decoding the strings and the records.
+     * The buffer is only read through absolute gets, so it can be shared by the snapshot.
+     */
+    static MeasurementSnapshot read(ByteBuffer buffer) throws IOException {
+
+        if (buffer.limit() < Integer.BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException("The file is not a jamm measurement snapshot.");
+
+        short version = buffer.getShort(Integer.BYTES);
+        if (version != VERSION)
+            throw new IOException(String.format("Unsupported snapshot format version (was %s).", version));
+
+        int position = Integer.BYTES + Short.BYTES;
+        long timestamp = buffer.getLong(position);
+        long totalBytes = buffer.getLong(position + Long.BYTES);
+        position += 2 * Long.BYTES;
+
+        int[] stringPositions = new int[readLength(buffer, position, "string table", Integer.BYTES)];
+        position += Integer.BYTES;
+        for (int i = 0; i < stringPositions.length; i++) {
+            stringPositions[i] = position;
+            position += Integer.BYTES + readLength(buffer, position, "string", 1);
+        }
+
+        int classCount = readLength(buffer, position, "class table", CLASS_RECORD_SIZE);
+        int classTableStart = position + Integer.BYTES;
+        for (int i = 0; i < classCount; i++)
+            checkIndex(buffer.getInt(classTableStart + i * CLASS_RECORD_SIZE), stringPositions.length);
+        position = classTableStart + classCount * CLASS_RECORD_SIZE;
+
+        int pathCount = readLength(buffer, position, "path table", PATH_RECORD_SIZE);
+        int pathTableStart = position + Integer.BYTES;
+        for (int i = 0; i < pathCount; i++) {
+            int offset = pathTableStart + i * PATH_RECORD_SIZE;
+            int parent = buffer.getInt(offset);
+            if (parent < -1 || parent >= i)
+                throw new IOException(String.format("Invalid parent for the path %s (was %s).", i, parent));
+            checkIndex(buffer.getInt(offset + Integer.BYTES), stringPositions.length);
+        }
+
+        return new MeasurementSnapshot(buffer,
+                                       timestamp,
+                                       totalBytes,
+                                       stringPositions,
+                                       classTableStart,
+                                       classCount,
+                                       pathTableStart,
+                                       pathCount);
+    }
+
+    /**
+     * Reads the length stored at the specified position, checking that it is not negative and that the bytes following
+     * it can hold the elements, given their minimum size.
+     */
+    private static int readLength(ByteBuffer buffer, int position, String name, int elementSize) throws IOException {
+        int length = buffer.getInt(position);
+        if (length < 0 || length > (buffer.limit() - position - Integer.BYTES) / elementSize)
+            throw new IOException(String.format("Invalid %s length (was %s).", name, length));
+        return length;
+    }
+
+    /**
+     * Checks an index in the string table.
+     */
+    private static void checkIndex(int index, int stringCount) throws IOException {
+        if (index < 0 || index >= stringCount)
+            throw new IOException(String.format("Invalid string index (was %s).", index));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("%15s %15s  %s%n", "count", "bytes", "class"));
+        for (Entry entry : classes())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * The number and the shallow size of the objects of a class or reached through a path.
+     */
+    public static final class Entry {
+
+        private final String name;
+
+        private final long count;
+
+        private final long bytes;
+
+        Entry(String name, long count, long bytes) {
+            this.name = name;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the class name or the path elements separated by {@code ';'}.
+         *
+         * @return the class name or the path
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Returns the number of objects.
+         *
+         * @return the number of objects
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the shallow size of the objects.
+         *
+         * @return the shallow size of the objects
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%15d %15d  %s", count, bytes, name);
+        }
+    }
+
+    /**
+     * The differences between two snapshots.
+     */
+    public static final class Diff {
+
+        private final long totalBytesDelta;
+
+        private final List<Delta> classes;
+
+        private final List<Delta> paths;
+
+        Diff(long totalBytesDelta, List<Delta> classes, List<Delta> paths) {
+            this.totalBytesDelta = totalBytesDelta;
+            this.classes = classes;
+            this.paths = paths;
+        }
+
+        /**
+         * Returns the growth of the total size, negative if the total size decreased.
+         *
+         * @return the growth of the total size
+         */
+        public long totalBytesDelta() {
+            return totalBytesDelta;
+        }
+
+        /**
+         * Returns the per class differences sorted by decreasing growth.
+         *
+         * @return the per class differences sorted by decreasing growth
+         */
+        public List<Delta> classes() {
+            return classes;
+        }
+
+        /**
+         * Returns the per path differences sorted by decreasing growth.
+         *
+         * @return the per path differences sorted by decreasing growth
+         */
+        public List<Delta> paths() {
+            return paths;
+        }
+
+        @Override
+        public String toString() {
+            return toString(20);
+        }
+
+        /**
+         * Returns a description of the specified number of largest growths per class and per path.
+         *
+         * @param limit the maximum number of classes and paths to describe
+         * @return a description of the largest growths
+         */
+        public String toString(int limit) {
+            StringBuilder builder = new StringBuilder(String.format("Total: %+d bytes%n", totalBytesDelta));
+            appendTo(builder, "class", classes, limit);
+            appendTo(builder, "path", paths, limit);
+            return builder.toString();
+        }
+
+        private static void appendTo(StringBuilder builder, String header, List<Delta> deltas, int limit) {
+            builder.append(String.format("%15s %15s  %s%n", "count", "bytes", header));
+            for (int i = 0, m = Math.min(limit, deltas.size()); i < m && deltas.get(i).bytesDelta() > 0; i++)
+                builder.append(deltas.get(i)).append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * The difference between the entries of a class or of a path in two snapshots.
+     */
+    public static final class Delta {
+
+        private final String name;
+
+        private final long countBefore;
+
+        private final long bytesBefore;
+
+        private final long countAfter;
+
+        private final long bytesAfter;
+
+        Delta(String name, long countBefore, long bytesBefore, long countAfter, long bytesAfter) {
+            this.name = name;
+            this.countBefore = countBefore;
+            this.bytesBefore = bytesBefore;
+            this.countAfter = countAfter;
+            this.bytesAfter = bytesAfter;
+        }
+
+        /**
+         * Returns the class name or the path elements separated by {@code ';'}.
+         *
+         * @return the class name or the path
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Returns the number of objects in the previous snapshot.
+         *
+         * @return the number of objects in the previous snapshot
+         */
+        public long countBefore() {
+            return countBefore;
+        }
+
+        /**
+         * Returns the shallow size of the objects in the previous snapshot.
+         *
+         * @return the shallow size of the objects in the previous snapshot
+         */
+        public long bytesBefore() {
+            return bytesBefore;
+        }
+
+        /**
+         * Returns the number of objects in the new snapshot.
+         *
+         * @return the number of objects in the new snapshot
+         */
+        public long countAfter() {
+            return countAfter;
+        }
+
+        /**
+         * Returns the shallow size of the objects in the new snapshot.
+         *
+         * @return the shallow size of the objects in the new snapshot
+         */
+        public long bytesAfter() {
+            return bytesAfter;
+        }
+
+        /**
+         * Returns the growth of the number of objects, negative if it decreased.
+         *
+         * @return the growth of the number of objects
+         */
+        public long countDelta() {
+            return countAfter - countBefore;
+        }
+
+        /**
+         * Returns the growth of the size, negative if it decreased.
+         *
+         * @return the growth of the size
+         */
+        public long bytesDelta() {
+            return bytesAfter - bytesBefore;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%+15d %+15d  %s", countDelta(), bytesDelta(), name);
+        }
+    }
+}
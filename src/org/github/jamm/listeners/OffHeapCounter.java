@@ -0,0 +1,288 @@
+package org.github.jamm.listeners;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.github.jamm.MemoryMeterListener;
+import org.github.jamm.accessors.FieldAccessor;
+import org.github.jamm.utils.ByteBufferMeasurementUtils;
+import org.github.jamm.utils.MemorySegmentUtils;
+
+/**
+ * A memory listener summing the native memory used by the direct and file-mapped {@code ByteBuffer}s reachable from
+ * the measured objects, which {@code measureDeep} does not account for as it only measures the heap.
+ *
+ * <p>Slices and duplicates share the native memory of the buffer they have been created from: each buffer is therefore
+ * resolved to the buffer owning the memory, through its attachment, and the capacity of that owner is only counted
+ * once. Direct buffers allocated by the JVM and buffers mapping a file region are reported separately, the heap usage
+ * being the one reported by {@code measureDeep}:</p>
+ * <pre>
+ * OffHeapCounter counter = new OffHeapCounter();
+ * long heapBytes = meter.measureDeep(channels, counter);
+ * System.out.println(counter);
+ * </pre>
+ * <p>From Java 21 onward, the native and file-mapped {@code MemorySegment}s are also accounted for. Segments do not
+ * keep track of the segment they have been sliced from, the memory they cover is therefore counted through the union
+ * of their address ranges: overlapping slices of the same allocation, or of the same arena, are only counted once.
+ * Buffers created from a segment through {@code asByteBuffer()} are accounted for as that segment.</p>
+ * <p>A {@code OffHeapCounter} can be reused across multiple measurements, in which case a buffer reachable from several
+ * measured graphs will only be counted once. This class is not thread-safe.</p>
+ */
+public final class OffHeapCounter implements MemoryMeterListener {
+
+    /**
+     * The accessor used to retrieve the buffer attachments.
+     */
+    private static final FieldAccessor ACCESSOR = FieldAccessor.newInstance();
+
+    /**
+     * The buffers owning the native memory that have already been counted.
+     */
+    private final Set<ByteBuffer> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private long heapBytes;
+
+    private long directBytes;
+
+    private long directBuffers;
+
+    private long mappedBytes;
+
+    private long mappedBuffers;
+
+    /**
+     * The address ranges of the native segments.
+     */
+    private final AddressRanges nativeSegments = new AddressRanges();
+
+    /**
+     * The address ranges of the file-mapped segments.
+     */
+    private final AddressRanges mappedSegments = new AddressRanges();
+
+    @Override
+    public void started(Object obj) {
+    }
+
+    @Override
+    public void fieldAdded(Object obj, String fieldName, Object fieldValue) {
+    }
+
+    @Override
+    public void arrayElementAdded(Object[] array, int index, Object elementValue) {
+    }
+
+    @Override
+    public void objectMeasured(Object current, long size) {
+
+        if (MemorySegmentUtils.isMemorySegment(current)) {
+            segmentMeasured(current);
+            return;
+        }
+
+        if (!(current instanceof ByteBuffer) || !((ByteBuffer) current).isDirect())
+            return;
+
+        ByteBuffer buffer = (ByteBuffer) current;
+        ByteBuffer owner = ByteBufferMeasurementUtils.underlyingBuffer(buffer, ACCESSOR);
+        if (!counted.add(owner))
+            return;
+
+        Object segment = MemorySegmentUtils.bufferSegment(owner, ACCESSOR);
+        if (segment != null) {
+            segmentMeasured(segment);
+            return;
+        }
+
+        if (ByteBufferMeasurementUtils.isFileMapped(owner, ACCESSOR)) {
+            mappedBytes += owner.capacity();
+            mappedBuffers++;
+        } else {
+            directBytes += owner.capacity();
+            directBuffers++;
+        }
+    }
+
+    private void segmentMeasured(Object segment) {
+
+        if (!MemorySegmentUtils.isNative(segment))
+            return; // heap segments are measured by measureDeep
+
+        long address = MemorySegmentUtils.address(segment);
+        long size = MemorySegmentUtils.byteSize(segment);
+        (MemorySegmentUtils.isMapped(segment) ? mappedSegments : nativeSegments).add(address, size);
+    }
+
+    @Override
+    public void byteBufferRemainingMeasured(ByteBuffer buffer, long size) {
+    }
+
+    @Override
+    public void done(long size) {
+        heapBytes += size;
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the heap memory used by the measured objects, as reported by {@code measureDeep}.
+     *
+     * @return the heap memory used by the measured objects
+     */
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the native memory allocated for the reachable direct buffers, file-mapped buffers excluded.
+     *
+     * @return the native memory allocated for the reachable direct buffers
+     */
+    public long directBytes() {
+        return directBytes;
+    }
+
+    /**
+     * Returns the number of distinct native memory blocks allocated for the reachable direct buffers.
+     *
+     * @return the number of distinct native memory blocks allocated for the reachable direct buffers
+     */
+    public long directBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * Returns the size of the file regions mapped by the reachable file-mapped buffers.
+     *
+     * @return the size of the file regions mapped by the reachable file-mapped buffers
+     */
+    public long mappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * Returns the number of distinct file regions mapped by the reachable file-mapped buffers.
+     *
+     * @return the number of distinct file regions mapped by the reachable file-mapped buffers
+     */
+    public long mappedBuffers() {
+        return mappedBuffers;
+    }
+
+    /**
+     * Returns the native memory covered by the reachable native segments, file-mapped segments excluded.
+     *
+     * @return the native memory covered by the reachable native segments
+     */
+    public long nativeSegmentBytes() {
+        return nativeSegments.size();
+    }
+
+    /**
+     * Returns the size of the file regions covered by the reachable file-mapped segments.
+     *
+     * @return the size of the file regions covered by the reachable file-mapped segments
+     */
+    public long mappedSegmentBytes() {
+        return mappedSegments.size();
+    }
+
+    /**
+     * Returns the native memory used by the reachable direct and file-mapped buffers and segments.
+     *
+     * @return the native memory used by the reachable direct and file-mapped buffers and segments
+     */
+    public long offHeapBytes() {
+        return directBytes + mappedBytes + nativeSegmentBytes() + mappedSegmentBytes();
+    }
+
+    @Override
+    public String toString() {
+        String buffers = String.format("heap: %d bytes, direct: %d bytes (%d buffers), mapped: %d bytes (%d buffers)",
+                                       heapBytes, directBytes, directBuffers, mappedBytes, mappedBuffers);
+
+        if (!MemorySegmentUtils.isSupported())
+            return buffers;
+
+        return buffers + String.format(", native segments: %d bytes, mapped segments: %d bytes",
+                                       nativeSegmentBytes(), mappedSegmentBytes());
+    }
+
+    /**
+     * A set of address ranges whose size is the size of their union.
+     */
+    private static final class AddressRanges {
+
+        private long[] starts = new long[16];
+
+        private long[] ends = new long[16];
+
+        private int count;
+
+        /**
+         * Whether the ranges are currently sorted and merged.
+         */
+        private boolean merged = true;
+
+        private void add(long address, long size) {
+            if (size <= 0)
+                return;
+
+            if (count == starts.length) {
+                merge();
+                if (count > starts.length >> 1) {
+                    starts = Arrays.copyOf(starts, starts.length << 1);
+                    ends = Arrays.copyOf(ends, ends.length << 1);
+                }
+            }
+            starts[count] = address;
+            ends[count] = address + size;
+            count++;
+            merged = false;
+        }
+
+        private long size() {
+            merge();
+            long size = 0;
+            for (int i = 0; i < count; i++)
+                size += ends[i] - starts[i];
+            return size;
+        }
+
+        /**
+         * Sorts the ranges by start address and merges the overlapping ones.
+         */
+        private void merge() {
+            if (merged)
+                return;
+
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = i;
+            Arrays.sort(order, (i, j) -> Long.compareUnsigned(starts[i], starts[j]));
+
+            long[] newStarts = new long[starts.length];
+            long[] newEnds = new long[ends.length];
+            int newCount = 0;
+            for (int i : order) {
+                if (newCount > 0 && Long.compareUnsigned(starts[i], newEnds[newCount - 1]) <= 0) {
+                    if (Long.compareUnsigned(ends[i], newEnds[newCount - 1]) > 0)
+                        newEnds[newCount - 1] = ends[i];
+                } else {
+                    newStarts[newCount] = starts[i];
+                    newEnds[newCount] = ends[i];
+                    newCount++;
+                }
+            }
+            starts = newStarts;
+            ends = newEnds;
+            count = newCount;
+            merged = true;
+        }
+    }
+}
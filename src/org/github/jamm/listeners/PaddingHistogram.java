@@ -0,0 +1,278 @@
+package org.github.jamm.listeners;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.jamm.ClassLayout;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.MemoryMeterListener;
+import org.github.jamm.strategies.PaddingBreakdown;
+import org.github.jamm.string.StringMeter;
+
+/**
+ * A memory listener aggregating, per class, the bytes lost to gaps between fields, to {@code @Contended} padding and
+ * to alignment padding across all the measured instances.
+ *
+ * <p>Classes wasting a lot of bytes are good candidates for reordering or narrowing their fields. The breakdown of
+ * each instance is computed through a {@link PaddingBreakdown}, from the class layouts of the {@code MemoryMeter}
+ * performing the measurement. The strings measured at once with their value, when the {@code String} optimization is
+ * enabled, are split between the {@code String} entry and the entry of their value.</p>
+ * <p>A {@code PaddingHistogram} can be reused across multiple measurements to aggregate their results:</p>
+ * <pre>
+ * PaddingHistogram histogram = new PaddingHistogram();
+ * meter.measureDeep(partition, histogram);
+ * System.out.println(histogram);
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class PaddingHistogram implements MemoryMeterListener {
+
+    /**
+     * The statistics per class.
+     */
+    private final Map<Class<?>, Entry> entries = new IdentityHashMap<>();
+
+    /**
+     * The meter performing the current measurement, providing the class layouts and the memory layout.
+     */
+    private MemoryMeter meter;
+
+    /**
+     * The meter used to retrieve the values of the strings measured through the {@code String} optimization, created
+     * lazily.
+     */
+    private StringMeter stringMeter;
+
+    @Override
+    public void started(Object obj) {
+    }
+
+    @Override
+    public void started(MemoryMeter meter, Object obj) {
+        this.meter = meter;
+    }
+
+    @Override
+    public void fieldAdded(Object obj, String fieldName, Object fieldValue) {
+    }
+
+    @Override
+    public void arrayElementAdded(Object[] array, int index, Object elementValue) {
+    }
+
+    @Override
+    public void objectMeasured(Object current, long size) {
+
+        Class<?> type = current.getClass();
+        Entry entry = entry(type, true);
+
+        if (type.isArray()) {
+            entry.add(PaddingBreakdown.ofArray(current, size, meter.memoryLayout()));
+            return;
+        }
+
+        ClassLayout layout = meter.layoutOf(type);
+
+        if (current instanceof String && size > layout.instanceSize()) {
+            // The String optimization measures the String and its value at once
+            long shallowSize = layout.instanceSize();
+            entry.add(entry.breakdown(layout, shallowSize));
+            addStringValue((String) current, size - shallowSize);
+            return;
+        }
+
+        entry.add(entry.breakdown(layout, size));
+    }
+
+    /**
+     * Adds the value of a {@code String} measured through the {@code String} optimization.
+     *
+     * @param s the string
+     * @param size the size of the value
+     */
+    private void addStringValue(String s, long size) {
+
+        if (stringMeter == null)
+            stringMeter = StringMeter.newInstance();
+
+        Object value = stringMeter.getValue(s);
+        entry(value.getClass(), true).add(PaddingBreakdown.ofArray(value, size, meter.memoryLayout()));
+    }
+
+    private Entry entry(Class<?> type, boolean create) {
+        Entry entry = entries.get(type);
+
+        if (entry == null && create) {
+            entry = new Entry(type);
+            entries.put(type, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public void byteBufferRemainingMeasured(ByteBuffer buffer, long size) {
+    }
+
+    @Override
+    public void done(long size) {
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the histogram entries sorted by decreasing number of wasted bytes.
+     *
+     * @return the histogram entries sorted by decreasing number of wasted bytes
+     */
+    public List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        list.sort((e1, e2) -> Long.compare(e2.wastedBytes(), e1.wastedBytes()));
+        return list;
+    }
+
+    /**
+     * Returns the histogram entry for the specified class.
+     *
+     * @param type the class
+     * @return the histogram entry for the specified class or {@code null} if no instance of that class has been measured
+     */
+    public Entry entry(Class<?> type) {
+        return entry(type, false);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("%12s %15s %15s %15s %15s %15s  %s%n",
+                                                                "instances", "bytes", "gaps", "contended", "alignment", "wasted", "class"));
+        for (Entry entry : entries())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * The bytes wasted by the instances of a class.
+     */
+    public static final class Entry {
+
+        private final Class<?> type;
+
+        /**
+         * The layout from which the last breakdown of a non array class has been computed.
+         */
+        private ClassLayout layout;
+
+        /**
+         * The last breakdown computed for a non array class.
+         */
+        private PaddingBreakdown breakdown;
+
+        private long count;
+
+        private long bytes;
+
+        private long gapBytes;
+
+        private long contendedPaddingBytes;
+
+        private long alignmentPaddingBytes;
+
+        private Entry(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Returns the breakdown of the instances of the class, reusing the last one if it has been computed from the
+         * same layout and size.
+         */
+        private PaddingBreakdown breakdown(ClassLayout layout, long size) {
+            if (breakdown == null || this.layout != layout || breakdown.size() != size) {
+                this.layout = layout;
+                breakdown = PaddingBreakdown.of(layout, size);
+            }
+            return breakdown;
+        }
+
+        private void add(PaddingBreakdown breakdown) {
+            count++;
+            bytes += breakdown.size();
+            gapBytes += breakdown.gapsSize();
+            contendedPaddingBytes += breakdown.contendedPaddingSize();
+            alignmentPaddingBytes += breakdown.alignmentPaddingSize();
+        }
+
+        /**
+         * Returns the class.
+         *
+         * @return the class
+         */
+        public Class<?> type() {
+            return type;
+        }
+
+        /**
+         * Returns the number of measured instances.
+         *
+         * @return the number of measured instances
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the shallow size of the measured instances.
+         *
+         * @return the shallow size of the measured instances
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of bytes lost to gaps between fields.
+         *
+         * @return the number of bytes lost to gaps between fields
+         */
+        public long gapBytes() {
+            return gapBytes;
+        }
+
+        /**
+         * Returns the number of bytes lost to {@code @Contended} padding.
+         *
+         * @return the number of bytes lost to {@code @Contended} padding
+         */
+        public long contendedPaddingBytes() {
+            return contendedPaddingBytes;
+        }
+
+        /**
+         * Returns the number of bytes lost to alignment padding.
+         *
+         * @return the number of bytes lost to alignment padding
+         */
+        public long alignmentPaddingBytes() {
+            return alignmentPaddingBytes;
+        }
+
+        /**
+         * Returns the total number of bytes lost to gaps and padding.
+         *
+         * @return the total number of bytes lost to gaps and padding
+         */
+        public long wastedBytes() {
+            return gapBytes + contendedPaddingBytes + alignmentPaddingBytes;
+        }
+
+        @Override
+        public String toString() {
+            String className = type.isArray() ? type.getComponentType().getName() + "[]" : type.getName();
+            return String.format("%12d %15d %15d %15d %15d %15d  %s",
+                                 count, bytes, gapBytes, contendedPaddingBytes, alignmentPaddingBytes, wastedBytes(), className);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.github.jamm.listeners;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.MemoryMeterListener;
+
+/**
+ * Base class for listeners that need to know through which path each object of the graph has been reached and when
+ * the sub-graph reachable from an object has been fully measured.
+ *
+ * <p>{@code MemoryMeter} crawls the object graph depth first: an object is measured when it is popped from the stack
+ * and its children are pushed right after. Therefore, the next object to be measured is always the last child pushed
+ * by the deepest object of the current path that still has some pending children, and the sub-graph of an object is
+ * complete once all of its pending children have been measured. This class relies on that property to track the
+ * current path without keeping any information about the objects that have already been fully measured. Its memory
+ * cost is proportional to the depth of the graph and to the number of pending objects, not to the size of the graph.</p>
+ *
+ * @param <T> the type of the information associated by the subclass to each object of the current path
+ */
+public abstract class PathTrackingListener<T> implements MemoryMeterListener {
+
+    /**
+     * The objects of the current path, the deepest one being on top.
+     */
+    private final Deque<Frame<T>> path = new ArrayDeque<>();
+
+    /**
+     * The edges to the objects that have been pushed on the stack but not measured yet, the last pushed being on top.
+     */
+    private final Deque<Edge> pendingEdges = new ArrayDeque<>();
+
+    @Override
+    public final void started(Object obj) {
+        // A previous traversal might have been aborted by an exception, leaving its state behind
+        path.clear();
+        pendingEdges.clear();
+    }
+
+    @Override
+    public final void started(MemoryMeter meter, Object obj) {
+        started(obj);
+        graphStarted(meter);
+    }
+
+    @Override
+    public final void fieldAdded(Object obj, String fieldName, Object fieldValue) {
+        addEdge(new Edge(obj, fieldName, null, -1));
+    }
+
+    @Override
+    public final void fieldAdded(Object obj, Field field, Object fieldValue) {
+        addEdge(new Edge(obj, field.getName(), field, -1));
+    }
+
+    @Override
+    public final void arrayElementAdded(Object[] array, int index, Object elementValue) {
+        addEdge(new Edge(array, null, null, index));
+    }
+
+    private void addEdge(Edge edge) {
+        path.peek().pendingChildren++;
+        pendingEdges.push(edge);
+    }
+
+    @Override
+    public final void objectMeasured(Object current, long size) {
+
+        if (path.isEmpty()) {
+            path.push(new Frame<>(rootMeasured(current, size), size));
+            return;
+        }
+
+        closeCompletedFrames();
+
+        Frame<T> parent = path.peek();
+        parent.pendingChildren--;
+        Edge edge = pendingEdges.pop();
+        T node;
+        if (edge.field != null)
+            node = fieldMeasured(parent.node, edge.owner, edge.field, current, size);
+        else if (edge.fieldName != null)
+            node = fieldMeasured(parent.node, edge.owner, edge.fieldName, current, size);
+        else
+            node = arrayElementMeasured(parent.node, (Object[]) edge.owner, edge.index, current, size);
+        path.push(new Frame<>(node, size));
+    }
+
+    @Override
+    public final void byteBufferRemainingMeasured(ByteBuffer buffer, long size) {
+        path.peek().size += size;
+    }
+
+    @Override
+    public final void done(long size) {
+        while (!path.isEmpty())
+            closeFrame();
+
+        graphMeasured(size);
+    }
+
+    /**
+     * Closes the frames on top of the path that do not have any pending children anymore.
+     */
+    private void closeCompletedFrames() {
+        Frame<T> top;
+        while ((top = path.peek()) != null && top.pendingChildren == 0)
+            closeFrame();
+    }
+
+    private void closeFrame() {
+        Frame<T> frame = path.pop();
+        long totalSize = frame.size + frame.childrenSize;
+        subgraphMeasured(frame.node, frame.size, totalSize);
+
+        Frame<T> parent = path.peek();
+        if (parent != null)
+            parent.childrenSize += totalSize;
+    }
+
+    /**
+     * Returns the information associated to the deepest object of the current path.
+     *
+     * @return the information associated to the deepest object of the current path or {@code null} if no object has been measured yet.
+     */
+    protected final T current() {
+        Frame<T> frame = path.peek();
+        return frame == null ? null : frame.node;
+    }
+
+    /**
+     * Returns the depth of the current path.
+     *
+     * @return the depth of the current path, the root being at depth {@code 1}
+     */
+    protected final int depth() {
+        return path.size();
+    }
+
+    /**
+     * Notification that the specified meter is about to measure a new object graph.
+     * <p>Does nothing by default. Subclasses needing the memory layout used for the measurements can retrieve it from
+     * the meter.</p>
+     *
+     * @param meter the meter measuring the graph
+     */
+    protected void graphStarted(MemoryMeter meter) {
+    }
+
+    /**
+     * Notification that the root object has been measured.
+     *
+     * @param root the root object
+     * @param size the root shallow size in bytes
+     * @return the information that must be associated to the root
+     */
+    protected abstract T rootMeasured(Object root, long size);
+
+    /**
+     * Notification that an object reached through a field has been measured.
+     *
+     * @param parent the information associated to the object owning the field
+     * @param owner the object owning the field
+     * @param fieldName the field name
+     * @param value the field value
+     * @param size the field value shallow size in bytes
+     * @return the information that must be associated to the field value
+     */
+    protected abstract T fieldMeasured(T parent, Object owner, String fieldName, Object value, long size);
+
+    /**
+     * Notification that an object reached through a field found by reflection has been measured.
+     * <p>By default, the notification is forwarded to {@link #fieldMeasured(Object, Object, String, Object, long)}.</p>
+     *
+     * @param parent the information associated to the object owning the field
+     * @param owner the object owning the field
+     * @param field the field
+     * @param value the field value
+     * @param size the field value shallow size in bytes
+     * @return the information that must be associated to the field value
+     */
+    protected T fieldMeasured(T parent, Object owner, Field field, Object value, long size) {
+        return fieldMeasured(parent, owner, field.getName(), value, size);
+    }
+
+    /**
+     * Notification that an object reached through an array element has been measured.
+     *
+     * @param parent the information associated to the array
+     * @param array the array
+     * @param index the element index
+     * @param element the element
+     * @param size the element shallow size in bytes
+     * @return the information that must be associated to the array element
+     */
+    protected abstract T arrayElementMeasured(T parent, Object[] array, int index, Object element, long size);
+
+    /**
+     * Notification that the sub-graph reachable from an object has been fully measured.
+     *
+     * @param node the information associated to the object
+     * @param size the object shallow size in bytes (including the {@code ByteBuffer} remaining bytes if any)
+     * @param totalSize the size in bytes of the object and of all the objects measured through it
+     */
+    protected void subgraphMeasured(T node, long size, long totalSize) {
+    }
+
+    /**
+     * Notification that the entire graph has been measured. All the sub-graph notifications have been sent at this point.
+     *
+     * @param size the size of the entire graph
+     */
+    protected void graphMeasured(long size) {
+    }
+
+    /**
+     * An object of the current path.
+     */
+    private static final class Frame<T> {
+
+        /**
+         * The information associated by the subclass to the object.
+         */
+        private final T node;
+
+        /**
+         * The object shallow size.
+         */
+        private long size;
+
+        /**
+         * The total size of the children sub-graphs that have already been measured.
+         */
+        private long childrenSize;
+
+        /**
+         * The number of children pushed on the stack but not measured yet.
+         */
+        private int pendingChildren;
+
+        public Frame(T node, long size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The reference through which an object has been pushed on the stack.
+     */
+    private static final class Edge {
+
+        /**
+         * The object or array holding the reference.
+         */
+        private final Object owner;
+
+        /**
+         * The field name or {@code null} if the reference is an array element.
+         */
+        private final String fieldName;
+
+        /**
+         * The field or {@code null} if the reference is an array element or a child named by a {@code Measurable}.
+         */
+        private final Field field;
+
+        /**
+         * The element index if the reference is an array element.
+         */
+        private final int index;
+
+        public Edge(Object owner, String fieldName, Field field, int index) {
+            this.owner = owner;
+            this.fieldName = fieldName;
+            this.field = field;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.github.jamm.listeners;
+
+import java.nio.ByteBuffer;
+
+import org.github.jamm.MemoryMeterListener;
+
+/**
+ * A memory listener counting the {@code String}s sharing their value with another measured {@code String}, for
+ * example due to {@code -XX:+UseStringDeduplication}, and the size of the values that were not measured again.
+ *
+ * <p>The sharing is only reported if the {@code MemoryMeter} has been built with {@code measureSharedStringValuesOnce}:</p>
+ * <pre>
+ * MemoryMeter meter = MemoryMeter.builder().measureSharedStringValuesOnce().build();
+ * SharedStringCounter counter = new SharedStringCounter();
+ * meter.measureDeep(index, counter);
+ * System.out.println(counter);
+ * </pre>
+ * <p>If the string optimization is disabled ({@code org.github.jamm.string.Optimize=false}), the strings are measured
+ * as any other objects: their shared values are only measured once but are not reported.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class SharedStringCounter implements MemoryMeterListener {
+
+    private long strings;
+
+    private long sharedStrings;
+
+    private long sharedBytes;
+
+    @Override
+    public void started(Object obj) {
+    }
+
+    @Override
+    public void fieldAdded(Object obj, String fieldName, Object fieldValue) {
+    }
+
+    @Override
+    public void arrayElementAdded(Object[] array, int index, Object elementValue) {
+    }
+
+    @Override
+    public void stringValueShared(String s, long valueSize) {
+        sharedStrings++;
+        sharedBytes += valueSize;
+    }
+
+    @Override
+    public void objectMeasured(Object current, long size) {
+        if (current instanceof String)
+            strings++;
+    }
+
+    @Override
+    public void byteBufferRemainingMeasured(ByteBuffer buffer, long size) {
+    }
+
+    @Override
+    public void done(long size) {
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the number of measured strings.
+     *
+     * @return the number of measured strings
+     */
+    public long strings() {
+        return strings;
+    }
+
+    /**
+     * Returns the number of strings whose value had already been measured as the value of another string.
+     *
+     * @return the number of strings sharing their value
+     */
+    public long sharedStrings() {
+        return sharedStrings;
+    }
+
+    /**
+     * Returns the size of the shared values that were not measured again: the bytes that would have been counted
+     * if each string was measured with its own value.
+     *
+     * @return the size of the shared values that were not measured again
+     */
+    public long sharedBytes() {
+        return sharedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d strings, %d sharing their value (%d bytes)", strings, sharedStrings, sharedBytes);
+    }
+}
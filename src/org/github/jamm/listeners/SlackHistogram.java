@@ -0,0 +1,395 @@
+package org.github.jamm.listeners;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.github.jamm.CannotAccessFieldException;
+import org.github.jamm.FootprintEstimator;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.accessors.FieldAccessor;
+
+/**
+ * A memory listener reporting the unused capacity of the arrays backing the standard JDK containers.
+ *
+ * <p>The listener recognizes the backing arrays of the following containers and compares the bytes they use with the
+ * bytes that would be needed if their capacity matched their content:</p>
+ * <ul>
+ *     <li>{@code ArrayList}, {@code Vector}, {@code ArrayDeque} and {@code PriorityQueue}: the array is considered
+ *     used up to the collection size.</li>
+ *     <li>{@code HashMap} (and therefore {@code LinkedHashMap} and {@code HashSet}), {@code Hashtable},
+ *     {@code WeakHashMap}, {@code IdentityHashMap} and {@code ConcurrentHashMap}: the table is considered used up to
+ *     the smallest capacity that could hold the map entries without exceeding its load factor, rounded up to a power
+ *     of two for the tables that need one.</li>
+ *     <li>{@code StringBuilder} and {@code StringBuffer}: the array is considered used up to the builder length.</li>
+ *     <li>{@code ByteArrayOutputStream}: the array is considered used up to the stream size.</li>
+ * </ul>
+ * <p>The unused bytes are aggregated per container class and per field path (see {@link FieldPathTree}). They tell
+ * where calling {@code trimToSize} or choosing better initial capacities would pay off.</p>
+ * <pre>
+ * SlackHistogram histogram = new SlackHistogram();
+ * meter.measureDeep(cache, histogram);
+ * System.out.println(histogram);
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class SlackHistogram extends PathTrackingListener<FieldPath> {
+
+    /**
+     * Function returning the number of used elements of a container backing array.
+     */
+    @FunctionalInterface
+    private interface UsedElements {
+
+        /**
+         * Returns the number of used elements of the specified backing array.
+         *
+         * @param container the container
+         * @param array the array backing the container
+         * @return the number of used elements of the specified array
+         */
+        int count(Object container, Object array);
+    }
+
+    /**
+     * The default load factor of the hash tables.
+     */
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The maximum capacity of the hash tables whose capacity is a power of two.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The accessor used to retrieve the load factor of the maps.
+     */
+    private static final FieldAccessor ACCESSOR = FieldAccessor.newInstance();
+
+    /**
+     * The functions returning the number of used elements, per class and name of the field referencing the backing array.
+     */
+    private static final Map<Class<?>, Map<String, UsedElements>> BACKING_ARRAYS = new HashMap<>();
+
+    static {
+        UsedElements collectionSize = (container, array) -> ((Collection<?>) container).size();
+        UsedElements builderLength = (container, array) -> {
+            // Since Java 9, the builders use a byte array with 1 or 2 bytes per character depending on their coder
+            CharSequence builder = (CharSequence) container;
+            int capacity = builder instanceof StringBuilder ? ((StringBuilder) builder).capacity() : ((StringBuffer) builder).capacity();
+            return capacity == 0 ? 0 : builder.length() * (Array.getLength(array) / capacity);
+        };
+
+        addBackingArray(ArrayList.class, "elementData", collectionSize);
+        addBackingArray(Vector.class, "elementData", collectionSize);
+        addBackingArray(ArrayDeque.class, "elements", collectionSize);
+        addBackingArray(PriorityQueue.class, "queue", collectionSize);
+        addBackingArray(HashMap.class, "table", hashTable(HashMap.class, true));
+        addBackingArray(Hashtable.class, "table", hashTable(Hashtable.class, false));
+        addBackingArray(WeakHashMap.class, "table", hashTable(WeakHashMap.class, true));
+        // The keys and values are stored in the table itself, which is kept at most 2/3 full
+        addBackingArray(IdentityHashMap.class, "table", (container, array) -> {
+            int size = ((Map<?, ?>) container).size();
+            return 2 * tableSizeFor(size + ((size + 1) >> 1));
+        });
+        addBackingArray(ConcurrentHashMap.class, "table",
+                        (container, array) -> tableSizeFor(minCapacity(((Map<?, ?>) container).size(), DEFAULT_LOAD_FACTOR)));
+        addBackingArray(StringBuilder.class.getSuperclass(), "value", builderLength);
+        addBackingArray(ByteArrayOutputStream.class, "buf", (container, array) -> ((ByteArrayOutputStream) container).size());
+    }
+
+    private static void addBackingArray(Class<?> type, String fieldName, UsedElements usedElements) {
+        BACKING_ARRAYS.computeIfAbsent(type, t -> new HashMap<>()).put(fieldName, usedElements);
+    }
+
+    /**
+     * Returns the function computing the smallest capacity of the table of a hash map honoring its load factor.
+     *
+     * @param type the map class declaring the {@code loadFactor} field
+     * @param powerOfTwo {@code true} if the table capacity must be a power of two
+     * @return the function computing the smallest capacity of the table
+     */
+    private static UsedElements hashTable(Class<?> type, boolean powerOfTwo) {
+        Field loadFactor = loadFactorField(type);
+        return (container, array) -> {
+            int capacity = minCapacity(((Map<?, ?>) container).size(), loadFactor(loadFactor, container));
+            return powerOfTwo ? tableSizeFor(capacity) : capacity;
+        };
+    }
+
+    /**
+     * Returns the {@code loadFactor} field of the specified class.
+     *
+     * @param type the map class
+     * @return the {@code loadFactor} field or {@code null} if the class does not have one, in which case the default
+     * load factor is assumed
+     */
+    private static Field loadFactorField(Class<?> type) {
+        try {
+            return type.getDeclaredField("loadFactor");
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    private static float loadFactor(Field field, Object map) {
+        try {
+            return field == null ? DEFAULT_LOAD_FACTOR : (Float) ACCESSOR.getFieldValue(map, field);
+        } catch (CannotAccessFieldException e) {
+            return DEFAULT_LOAD_FACTOR;
+        }
+    }
+
+    /**
+     * Returns the smallest capacity holding the specified number of entries without exceeding the load factor.
+     */
+    private static int minCapacity(int size, float loadFactor) {
+        return (int) Math.min(Math.ceil(size / (double) loadFactor), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the smallest power of two greater or equal to the specified capacity, as {@code HashMap.tableSizeFor}.
+     */
+    private static int tableSizeFor(int capacity) {
+        if (capacity <= 1)
+            return capacity;
+
+        return capacity > MAXIMUM_CAPACITY ? MAXIMUM_CAPACITY : Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    /**
+     * The tree aggregating the paths.
+     */
+    private final FieldPathTree tree;
+
+    /**
+     * The functions returning the number of used elements, per class of the object owning the field and per field
+     * name, resolved so far. Fields not referencing a backing array are mapped to {@code null}.
+     */
+    private final Map<Class<?>, Map<String, UsedElements>> resolved = new IdentityHashMap<>();
+
+    /**
+     * The statistics per container class.
+     */
+    private final Map<Class<?>, Entry> entriesByContainer = new IdentityHashMap<>();
+
+    /**
+     * The statistics per path identifier.
+     */
+    private final Map<FieldPath, Entry> entriesByPath = new IdentityHashMap<>();
+
+    /**
+     * The estimator computing the size of the used part of the arrays, in the memory layout of the current meter.
+     */
+    private FootprintEstimator estimator;
+
+    public SlackHistogram() {
+        this(FieldPathTree.DEFAULT_MAX_DEPTH);
+    }
+
+    public SlackHistogram(int maxDepth) {
+        this.tree = new FieldPathTree(maxDepth);
+    }
+
+    @Override
+    protected void graphStarted(MemoryMeter meter) {
+        estimator = meter.footprintEstimator();
+    }
+
+    @Override
+    protected FieldPath rootMeasured(Object root, long size) {
+        return tree.root(root.getClass());
+    }
+
+    @Override
+    protected FieldPath fieldMeasured(FieldPath parent, Object owner, String fieldName, Object value, long size) {
+
+        FieldPath path = tree.field(parent, owner.getClass(), fieldName);
+
+        UsedElements usedElements = usedElements(owner.getClass(), fieldName);
+        if (usedElements != null && value.getClass().isArray()) {
+
+            int used = usedElements.count(owner, value);
+            long usedBytes = Math.min(estimator.array(value.getClass().getComponentType(), used), size);
+
+            entriesByContainer.computeIfAbsent(owner.getClass(), t -> new Entry(className(t))).add(size, usedBytes);
+            entriesByPath.computeIfAbsent(path, p -> new Entry(p.toString())).add(size, usedBytes);
+        }
+        return path;
+    }
+
+    @Override
+    protected FieldPath arrayElementMeasured(FieldPath parent, Object[] array, int index, Object element, long size) {
+        return tree.arrayElements(parent, array.getClass());
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns the function returning the number of used elements of the array referenced by the specified field.
+     *
+     * @param type the class of the object owning the field
+     * @param fieldName the field name
+     * @return the function returning the number of used elements or {@code null} if the field does not reference a
+     * known backing array
+     */
+    private UsedElements usedElements(Class<?> type, String fieldName) {
+
+        Map<String, UsedElements> byName = resolved.get(type);
+        if (byName == null) {
+            byName = new HashMap<>();
+            resolved.put(type, byName);
+        }
+
+        if (byName.containsKey(fieldName))
+            return byName.get(fieldName);
+
+        UsedElements usedElements = null;
+        for (Class<?> cls = type; cls != null && usedElements == null; cls = cls.getSuperclass()) {
+            Map<String, UsedElements> backingArrays = BACKING_ARRAYS.get(cls);
+            if (backingArrays != null)
+                usedElements = backingArrays.get(fieldName);
+        }
+        byName.put(fieldName, usedElements);
+        return usedElements;
+    }
+
+    private static String className(Class<?> type) {
+        return type.isArray() ? type.getComponentType().getName() + "[]" : type.getName();
+    }
+
+    /**
+     * Returns the entries per container class sorted by decreasing number of unused bytes.
+     *
+     * @return the entries per container class sorted by decreasing number of unused bytes
+     */
+    public List<Entry> entriesByContainer() {
+        return sort(entriesByContainer.values());
+    }
+
+    /**
+     * Returns the entries per field path of the backing arrays sorted by decreasing number of unused bytes.
+     *
+     * @return the entries per field path sorted by decreasing number of unused bytes
+     */
+    public List<Entry> entriesByPath() {
+        return sort(entriesByPath.values());
+    }
+
+    /**
+     * Returns the entry for the specified container class.
+     *
+     * @param type the container class
+     * @return the entry for the specified container class or {@code null} if no instance of that class has been measured
+     */
+    public Entry entry(Class<?> type) {
+        return entriesByContainer.get(type);
+    }
+
+    private static List<Entry> sort(Collection<Entry> entries) {
+        List<Entry> list = new ArrayList<>(entries);
+        list.sort((e1, e2) -> Long.compare(e2.unusedBytes(), e1.unusedBytes()));
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        String format = "%12s %15s %15s %15s  %s%n";
+        StringBuilder builder = new StringBuilder(String.format(format, "containers", "allocated", "used", "unused", "container"));
+        for (Entry entry : entriesByContainer())
+            builder.append(entry).append(System.lineSeparator());
+
+        builder.append(System.lineSeparator()).append(String.format(format, "arrays", "allocated", "used", "unused", "path"));
+        for (Entry entry : entriesByPath())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * The bytes allocated and used by the backing arrays of a container class or reached through a field path.
+     */
+    public static final class Entry {
+
+        private final String name;
+
+        private long count;
+
+        private long allocatedBytes;
+
+        private long usedBytes;
+
+        private Entry(String name) {
+            this.name = name;
+        }
+
+        private void add(long allocated, long used) {
+            count++;
+            allocatedBytes += allocated;
+            usedBytes += used;
+        }
+
+        /**
+         * Returns the container class name or the field path of the backing arrays.
+         *
+         * @return the container class name or the field path of the backing arrays
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Returns the number of backing arrays.
+         *
+         * @return the number of backing arrays
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the size of the backing arrays.
+         *
+         * @return the size of the backing arrays
+         */
+        public long allocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns the size that the backing arrays would have if their capacity matched the containers content.
+         *
+         * @return the size needed by the containers content
+         */
+        public long usedBytes() {
+            return usedBytes;
+        }
+
+        /**
+         * Returns the number of bytes allocated for unused capacity.
+         *
+         * @return the number of bytes allocated for unused capacity
+         */
+        public long unusedBytes() {
+            return allocatedBytes - usedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12d %15d %15d %15d  %s", count, allocatedBytes, usedBytes, unusedBytes(), name);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.github.jamm.listeners;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory listener recording, per class and per field path, the number and the shallow size of the measured objects
+ * in order to produce a {@link MeasurementSnapshot}.
+ *
+ * <p>A {@code SnapshotRecorder} can be reused across multiple measurements to aggregate their results:</p>
+ * <pre>
+ * SnapshotRecorder recorder = new SnapshotRecorder();
+ * meter.measureDeep(cache, recorder);
+ * recorder.snapshot().writeTo(Paths.get("cache.jamm"));
+ * </pre>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class SnapshotRecorder extends PathTrackingListener<FieldPath> {
+
+    /**
+     * The tree aggregating the paths.
+     */
+    private final FieldPathTree tree;
+
+    /**
+     * The number and the shallow size of the measured objects per class.
+     */
+    private final Map<Class<?>, long[]> classes = new IdentityHashMap<>();
+
+    /**
+     * The number of objects reached through each path, indexed by path identifier.
+     */
+    private long[] pathCounts = new long[32];
+
+    /**
+     * The shallow size of the objects reached through each path, indexed by path identifier.
+     */
+    private long[] pathBytes = new long[32];
+
+    /**
+     * The total size of the measured graphs.
+     */
+    private long totalBytes;
+
+    public SnapshotRecorder() {
+        this(FieldPathTree.DEFAULT_MAX_DEPTH);
+    }
+
+    public SnapshotRecorder(int maxDepth) {
+        this.tree = new FieldPathTree(maxDepth);
+    }
+
+    @Override
+    protected FieldPath rootMeasured(Object root, long size) {
+        return measured(tree.root(root.getClass()), root, size);
+    }
+
+    @Override
+    protected FieldPath fieldMeasured(FieldPath parent, Object owner, String fieldName, Object value, long size) {
+        return measured(tree.field(parent, owner.getClass(), fieldName), value, size);
+    }
+
+    @Override
+    protected FieldPath arrayElementMeasured(FieldPath parent, Object[] array, int index, Object element, long size) {
+        return measured(tree.arrayElements(parent, array.getClass()), element, size);
+    }
+
+    private FieldPath measured(FieldPath path, Object object, long size) {
+
+        long[] counters = classes.computeIfAbsent(object.getClass(), c -> new long[2]);
+        counters[0]++;
+        counters[1] += size;
+
+        int id = path.id();
+        if (id >= pathCounts.length) {
+            int newLength = Math.max(pathCounts.length << 1, id + 1);
+            pathCounts = Arrays.copyOf(pathCounts, newLength);
+            pathBytes = Arrays.copyOf(pathBytes, newLength);
+        }
+        pathCounts[id]++;
+        pathBytes[id] += size;
+        return path;
+    }
+
+    @Override
+    protected void graphMeasured(long size) {
+        totalBytes += size;
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+    }
+
+    /**
+     * Returns a snapshot of the measurements recorded so far.
+     *
+     * @return a snapshot of the measurements recorded so far
+     */
+    public MeasurementSnapshot snapshot() {
+
+        String[] classNames = new String[classes.size()];
+        long[] classCounts = new long[classNames.length];
+        long[] classBytes = new long[classNames.length];
+        int i = 0;
+        for (Map.Entry<Class<?>, long[]> e : classes.entrySet()) {
+            classNames[i] = e.getKey().getName();
+            classCounts[i] = e.getValue()[0];
+            classBytes[i] = e.getValue()[1];
+            i++;
+        }
+
+        // The tree creates the parents before their children, the parent identifiers are therefore always lower
+        List<FieldPath> paths = tree.paths();
+        int[] parents = new int[paths.size()];
+        String[] labels = new String[paths.size()];
+        for (FieldPath path : paths) {
+            int id = path.id();
+            parents[id] = path.parent() == null ? -1 : path.parent().id();
+            labels[id] = path.label();
+        }
+
+        return MeasurementSnapshot.of(System.currentTimeMillis(),
+                                      totalBytes,
+                                      classNames,
+                                      classCounts,
+                                      classBytes,
+                                      parents,
+                                      labels,
+                                      Arrays.copyOf(pathCounts, paths.size()),
+                                      Arrays.copyOf(pathBytes, paths.size()));
+    }
+}
@@ -0,0 +1,217 @@
+package org.github.jamm.listeners;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.github.jamm.MemoryMeterListener;
+
+/**
+ * A memory listener that writes the visited object tree, as it is being crawled, in the
+ * <a href="https://github.com/ndjson/ndjson-spec">NDJSON</a> format (one JSON record per line).
+ *
+ * <p>Contrary to {@link TreePrinter}, {@code StreamingTreeWriter} does not build the tree in memory. Each object is
+ * written as soon as it has been measured and the total size of its sub-tree is written as soon as the sub-tree has
+ * been fully measured. By consequence, the structure of huge graphs can be dumped with a bounded amount of memory and
+ * analyzed offline.</p>
+ *
+ * <p>The following records are written:</p>
+ * <pre>
+ * {"event":"object","id":0,"class":"org.example.Root","size":24}
+ * {"event":"object","id":1,"parent":0,"field":"values","class":"java.lang.Object[]","size":56}
+ * {"event":"object","id":2,"parent":1,"index":3,"class":"java.lang.Integer","size":16}
+ * {"event":"subtree","id":2,"size":16,"total":16}
+ * {"event":"subtree","id":1,"size":56,"total":72}
+ * {"event":"subtree","id":0,"size":24,"total":96}
+ * {"event":"done","total":96}
+ * </pre>
+ * <p>Objects are identified by their visiting order. The {@code size} of an object is its shallow size and the
+ * {@code total} of a sub-tree is the size of the object and of all the objects measured through it. If a field could
+ * not be accessed an {@code error} record is written instead of the {@code done} one.</p>
+ *
+ * <p>The {@code Writer} is flushed at the end of each measurement but is never closed.</p>
+ */
+public final class StreamingTreeWriter extends PathTrackingListener<Long> {
+
+    /**
+     * The writer to write to.
+     */
+    private final Writer writer;
+
+    /**
+     * The identifier of the next measured object.
+     */
+    private long nextId;
+
+    public StreamingTreeWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    protected Long rootMeasured(Object root, long size) {
+        long id = nextId++;
+        write(new StringBuilder(128).append("{\"event\":\"object\",\"id\":")
+                                    .append(id)
+                                    .append(",\"class\":")
+                                    .append(quote(className(root.getClass())))
+                                    .append(",\"size\":")
+                                    .append(size)
+                                    .append('}'));
+        return id;
+    }
+
+    @Override
+    protected Long fieldMeasured(Long parent, Object owner, String fieldName, Object value, long size) {
+        long id = nextId++;
+        write(new StringBuilder(128).append("{\"event\":\"object\",\"id\":")
+                                    .append(id)
+                                    .append(",\"parent\":")
+                                    .append(parent)
+                                    .append(",\"field\":")
+                                    .append(quote(fieldName))
+                                    .append(",\"class\":")
+                                    .append(quote(className(value.getClass())))
+                                    .append(",\"size\":")
+                                    .append(size)
+                                    .append('}'));
+        return id;
+    }
+
+    @Override
+    protected Long arrayElementMeasured(Long parent, Object[] array, int index, Object element, long size) {
+        long id = nextId++;
+        write(new StringBuilder(128).append("{\"event\":\"object\",\"id\":")
+                                    .append(id)
+                                    .append(",\"parent\":")
+                                    .append(parent)
+                                    .append(",\"index\":")
+                                    .append(index)
+                                    .append(",\"class\":")
+                                    .append(quote(className(element.getClass())))
+                                    .append(",\"size\":")
+                                    .append(size)
+                                    .append('}'));
+        return id;
+    }
+
+    @Override
+    protected void subgraphMeasured(Long node, long size, long totalSize) {
+        write(new StringBuilder(64).append("{\"event\":\"subtree\",\"id\":")
+                                   .append(node)
+                                   .append(",\"size\":")
+                                   .append(size)
+                                   .append(",\"total\":")
+                                   .append(totalSize)
+                                   .append('}'));
+    }
+
+    @Override
+    protected void graphMeasured(long size) {
+        write(new StringBuilder(32).append("{\"event\":\"done\",\"total\":")
+                                   .append(size)
+                                   .append('}'));
+        flush();
+    }
+
+    @Override
+    public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+        StringBuilder builder = new StringBuilder(128).append("{\"event\":\"error\"");
+        Long owner = current();
+        if (owner != null)
+            builder.append(",\"parent\":").append(owner);
+
+        write(builder.append(",\"field\":")
+                     .append(quote(fieldName))
+                     .append(",\"class\":")
+                     .append(quote(className(fieldType)))
+                     .append('}'));
+        flush();
+    }
+
+    private void write(StringBuilder record) {
+        try {
+            writer.write(record.append('\n').toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the specified string as a JSON string.
+     *
+     * @param s the string to quote
+     * @return the JSON string
+     */
+    private static String quote(String s) {
+        StringBuilder builder = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0, m = s.length(); i < m; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Returns the name of the specified class.
+     *
+     * @param clazz the class
+     * @return the name of the specified class
+     */
+    private static String className(Class<?> clazz) {
+        return clazz.isArray() ? className(clazz.getComponentType()) + "[]" : clazz.getName();
+    }
+
+    /**
+     * Factory for {@code StreamingTreeWriter} instances.
+     * <p>All the listeners created by a factory write to the same {@code Writer}. Therefore, a {@code MemoryMeter}
+     * using this factory should not be used to perform concurrent measurements.</p>
+     */
+    public static class Factory implements MemoryMeterListener.Factory {
+
+        /**
+         * The writer to write to.
+         */
+        private final Writer writer;
+
+        /**
+         * Creates a new {@code Factory} instance which create {@code StreamingTreeWriter} writing to the specified writer.
+         *
+         * @param writer the writer to write to
+         */
+        public Factory(Writer writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Creates a new {@code Factory} instance which create {@code StreamingTreeWriter} writing, in UTF-8, to the specified stream.
+         *
+         * @param stream the stream to write to
+         */
+        public Factory(OutputStream stream) {
+            this(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public MemoryMeterListener newInstance() {
+            return new StreamingTreeWriter(writer);
+        }
+    }
+}
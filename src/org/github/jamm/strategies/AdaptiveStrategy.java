@@ -0,0 +1,195 @@
+package org.github.jamm.strategies;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.github.jamm.MemoryMeter.Guess;
+import org.github.jamm.MemoryMeterStrategy;
+
+/**
+ * Strategy selecting, for each class, the fastest strategy measuring its instances exactly.
+ *
+ * <p>The first instance of a class to be measured is used for calibration: it is measured through {@code Instrumentation},
+ * whose answer is exact, and through the strategies computing the sizes from the class layouts ({@code Unsafe} and
+ * {@code Specification}). The first layout based strategy matching the {@code Instrumentation} answer is used for all
+ * the following instances of the class. As the size of the instances of a class only depends on the class, the
+ * selected size is kept with the decision and a measurement costs a class lookup instead of a call into the JVM. For
+ * arrays, the element size is kept instead. If none of them matches, for example for classes whose layout cannot be reproduced,
+ * {@code Instrumentation} is kept for that class.</p>
+ *
+ * <p>From Java 16, {@code Instrumentation.getObjectSize} is an intrinsic cheaper than the class lookup. If it is
+ * available, the {@code ADAPTIVE} guess then uses the {@code Instrumentation} strategy directly instead of this one.
+ * If {@code Instrumentation} is not available, there is nothing to calibrate against: the most accurate layout based
+ * strategy able to measure the class is used.</p>
+ */
+public final class AdaptiveStrategy implements MemoryMeterStrategy {
+
+    /**
+     * The strategy providing the exact sizes or {@code null} if {@code Instrumentation} is not available.
+     */
+    private final MemoryMeterStrategy reference;
+
+    /**
+     * The strategies that can replace the reference one, from the most to the least accurate.
+     */
+    private final Map<Guess, MemoryMeterStrategy> candidates = new EnumMap<>(Guess.class);
+
+    /**
+     * The strategy used to compute the array sizes.
+     */
+    private final MemoryLayoutBasedStrategy arrayStrategy;
+
+    /**
+     * The decisions per class, {@code null} until the class has been calibrated.
+     */
+    private final ClassValue<AtomicReference<Decision>> decisions = new ClassValue<AtomicReference<Decision>>() {
+        @Override
+        protected AtomicReference<Decision> computeValue(Class<?> type) {
+            return new AtomicReference<>();
+        }
+    };
+
+    /**
+     * The strategies selected so far, kept for reporting only.
+     */
+    private final Map<Class<?>, Guess> selected = new WeakHashMap<>();
+
+    AdaptiveStrategy(MemoryMeterStrategy reference,
+                     MemoryMeterStrategy unsafeStrategy,
+                     MemoryLayoutBasedStrategy specStrategy) {
+        this.reference = reference;
+        if (unsafeStrategy != null)
+            candidates.put(Guess.UNSAFE, unsafeStrategy);
+        candidates.put(Guess.SPECIFICATION, specStrategy);
+        this.arrayStrategy = specStrategy;
+    }
+
+    @Override
+    public long measure(Object object) {
+        Class<?> type = object.getClass();
+        AtomicReference<Decision> ref = decisions.get(type);
+        Decision decision = ref.get();
+
+        if (decision == null)
+            decision = select(type, ref, calibrate(object));
+
+        if (decision.instanceSize >= 0)
+            return decision.instanceSize;
+
+        if (decision.elementSize >= 0)
+            return arrayStrategy.computeArraySize(Array.getLength(object), decision.elementSize);
+
+        return decision.strategy.measure(object);
+    }
+
+    @Override
+    public boolean supportComputeArraySize() {
+        return true;
+    }
+
+    @Override
+    public long computeArraySize(int length, int elementSize) {
+        return arrayStrategy.computeArraySize(length, elementSize);
+    }
+
+    /**
+     * Returns the strategy selected for the specified class.
+     *
+     * @param type the class
+     * @return the strategy selected for the specified class or {@code null} if no instance of the class has been
+     * measured yet.
+     */
+    public Guess decisionFor(Class<?> type) {
+        Decision decision = decisions.get(type).get();
+        return decision == null ? null : decision.guess;
+    }
+
+    /**
+     * Returns the strategies selected so far for the measured classes.
+     *
+     * @return a snapshot of the strategies selected per class
+     */
+    public Map<Class<?>, Guess> decisions() {
+        synchronized (selected) {
+            return Collections.unmodifiableMap(new HashMap<>(selected));
+        }
+    }
+
+    private Decision select(Class<?> type, AtomicReference<Decision> ref, Decision decision) {
+        if (!ref.compareAndSet(null, decision))
+            return ref.get(); // Another thread calibrated the class concurrently
+
+        synchronized (selected) {
+            selected.put(type, decision.guess);
+        }
+        return decision;
+    }
+
+    /**
+     * Determines the fastest strategy measuring exactly the instances of the class of the specified object.
+     *
+     * @param object the calibration instance
+     * @return the strategy to use for the class of the specified object
+     */
+    private Decision calibrate(Object object) {
+
+        long expected = reference == null ? -1 : reference.measure(object);
+
+        RuntimeException failure = null;
+        for (Map.Entry<Guess, MemoryMeterStrategy> candidate : candidates.entrySet()) {
+            try {
+                long size = candidate.getValue().measure(object);
+                if (reference == null || size == expected)
+                    return new Decision(candidate.getKey(), candidate.getValue(), object.getClass(), size, arrayStrategy);
+
+            } catch (RuntimeException e) {
+                // The strategy cannot measure this class (e.g. Unsafe.objectFieldOffset on records or hidden classes)
+                failure = e;
+            }
+        }
+
+        if (reference == null)
+            throw failure;
+
+        return new Decision(Guess.INSTRUMENTATION, reference);
+    }
+
+    /**
+     * The strategy selected for a class.
+     */
+    private static final class Decision {
+
+        private final Guess guess;
+
+        private final MemoryMeterStrategy strategy;
+
+        /**
+         * The size of the instances of the class or -1 if it is an array or it is measured by the strategy.
+         */
+        private final long instanceSize;
+
+        /**
+         * The size of the elements of the array class or -1 if it is not an array or it is measured by the strategy.
+         */
+        private final int elementSize;
+
+        Decision(Guess guess, MemoryMeterStrategy strategy) {
+            this.guess = guess;
+            this.strategy = strategy;
+            this.instanceSize = -1;
+            this.elementSize = -1;
+        }
+
+        Decision(Guess guess, MemoryMeterStrategy strategy, Class<?> type, long size, MemoryLayoutBasedStrategy arrayStrategy) {
+            this.guess = guess;
+            this.strategy = strategy;
+            this.instanceSize = type.isArray() ? -1 : size;
+            this.elementSize = type.isArray() ? arrayStrategy.sizeOfField(type.getComponentType()) : -1;
+        }
+    }
+}
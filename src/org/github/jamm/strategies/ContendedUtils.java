@@ -41,6 +41,11 @@ final class ContendedUtils {
      */
     private static final Optional<MethodHandle> MAY_BE_CONTENDED_VALUE_MH = mayBeMethodHandle(CONTENDED_CLASS, "value");
 
+    /**
+     * The hash code of a {@code @Contended} annotation with an empty tag, as specified by {@code Annotation.hashCode}.
+     */
+    private static final int ANONYMOUS_GROUP_HASH_CODE = (127 * "value".hashCode()) ^ "".hashCode();
+
     /**
      * The predicate used to check if a ClassLoader is a platform one.
      */
@@ -110,13 +115,11 @@ final class ContendedUtils {
         }
 
         // We cannot retrieve the contention group tag as the annotation can only be used by internal classes.
-        // Up to Java 17 the only internal java class using @Contended on fields was Thread.
-        if (f.getDeclaringClass().equals(Thread.class))
-            return "tlr"; // for ThreadLocalRandom
-
-        throw new CannotMeasureObjectException("The field " + f.getName() + " from the class " + f.getDeclaringClass() 
-                                                 + "cannot be measured as the @Contended contention group tag cannot be retrieved."
-                                                 + " Consider using: --add-exports java.base/jdk.internal.vm.annotation=ALL-UNNAMED to remove that problem");
+        // The tags are only used to group the fields, which can be done through the annotations themselves: their
+        // string representations are equal if their tags are, and their hash code is specified by Annotation.hashCode
+        // as 127 * "value".hashCode() ^ tag.hashCode(), which identifies the anonymous group.
+        Object annotation = getContendedAnnotation(f);
+        return annotation.hashCode() == ANONYMOUS_GROUP_HASH_CODE ? "" : annotation.toString();
     }
 
     /**
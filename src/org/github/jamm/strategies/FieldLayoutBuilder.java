@@ -0,0 +1,556 @@
+package org.github.jamm.strategies;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.jamm.VM;
+
+import static org.github.jamm.strategies.ContendedUtils.getContentionGroupTag;
+import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
+import static org.github.jamm.strategies.ContendedUtils.isContendedEnabled;
+import static org.github.jamm.strategies.ContendedUtils.isFieldAnnotatedWithContended;
+import static org.github.jamm.strategies.MemoryLayoutBasedStrategy.measureField;
+import static org.github.jamm.utils.MathUtils.roundTo;
+
+/**
+ * Emulation of the algorithm used by HotSpot from Java 15 to lay out the instance fields of a class
+ * ({@code FieldLayoutBuilder}, see <a href="https://bugs.openjdk.org/browse/JDK-8237767">JDK-8237767</a>).
+ *
+ * <p>As in HotSpot, a layout is a list of contiguous blocks: the reserved object header, the fields, the
+ * {@code @Contended} paddings and the empty slots left between them, the last block being an empty slot of unlimited
+ * size. The layout of a class is built from the layout of its super class:</p>
+ * <ol>
+ *     <li>The inherited fields are placed at their offsets and the holes between them become empty slots. If the super
+ *     class has {@code @Contended} annotations, the holes are turned into padding and a padding is added after its
+ *     last field. If {@code UseEmptySlotsInSupers} is disabled, an empty slot aligns the end of the inherited fields
+ *     on the reference size and the fields of the class are only appended after them.</li>
+ *     <li>The primitive fields, sorted by decreasing size, then the reference fields, in declaration order, are each
+ *     allocated in the smallest empty slot in which they fit once aligned on their size, or appended at the end of the
+ *     layout.</li>
+ *     <li>A class annotated with {@code @Contended} starts its fields after a padding. Each {@code @Contended} group
+ *     is appended after a padding. A trailing padding follows the fields if the class or one of its fields is
+ *     annotated.</li>
+ * </ol>
+ * <p>The instance size is the end of the last block aligned on the object alignment.</p>
+ * <p>The fields that the JVM injects in some JDK classes, invisible through reflection, are laid out after the primitive
+ * fields of the same size declared by the class. Only the ones of {@code Thread} and {@code MemberName} are known.</p>
+ */
+final class FieldLayoutBuilder {
+
+    /**
+     * The size of the native pointers stored in the injected fields.
+     */
+    private static final int ADDRESS_SIZE = VM.is32Bits() ? 4 : 8;
+
+    private static final int[] NO_INJECTED_FIELDS = new int[0];
+
+    /**
+     * The size of the object header.
+     */
+    private final int headerSize;
+
+    /**
+     * The size of the references.
+     */
+    private final int referenceSize;
+
+    /**
+     * The size of the {@code @Contended} paddings.
+     */
+    private final int contendedPaddingWidth;
+
+    /**
+     * The object alignment.
+     */
+    private final int objectAlignment;
+
+    /**
+     * {@code true} if the fields of a class can be allocated in the empty slots left by its super classes.
+     */
+    private final boolean useEmptySlotsInSupers;
+
+    FieldLayoutBuilder(int headerSize,
+                       int referenceSize,
+                       int contendedPaddingWidth,
+                       int objectAlignment,
+                       boolean useEmptySlotsInSupers) {
+        this.headerSize = headerSize;
+        this.referenceSize = referenceSize;
+        this.contendedPaddingWidth = contendedPaddingWidth;
+        this.objectAlignment = objectAlignment;
+        this.useEmptySlotsInSupers = useEmptySlotsInSupers;
+    }
+
+    /**
+     * Computes the layout of the instances of the specified class.
+     *
+     * @param type the class
+     * @param superLayout the layout of the super class or {@code null} if the class has no super class
+     * @return the layout of the instances of the specified class
+     */
+    Layout layout(Class<?> type, Layout superLayout) {
+
+        Blocks blocks = superLayout == null ? new Blocks(headerSize) : reconstruct(superLayout);
+
+        boolean isContendedEnabled = isContendedEnabled(type);
+        boolean isContendedClass = isContendedEnabled && isClassAnnotatedWithContended(type);
+
+        // Field sorting: the regular fields and the @Contended groups, in their declaration order
+        FieldGroup root = new FieldGroup();
+        Map<String, FieldGroup> namedGroups = new HashMap<>();
+        List<FieldGroup> contendedGroups = new ArrayList<>();
+        for (Field f : type.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers()))
+                continue;
+
+            FieldGroup group = root;
+            if (isContendedEnabled && isFieldAnnotatedWithContended(f)) {
+                String tag = getContentionGroupTag(f);
+                if (tag.isEmpty()) {
+                    group = new FieldGroup();
+                    contendedGroups.add(group);
+                } else {
+                    group = namedGroups.get(tag);
+                    if (group == null) {
+                        group = new FieldGroup();
+                        namedGroups.put(tag, group);
+                        contendedGroups.add(group);
+                    }
+                }
+            }
+            group.add(f, sizeOf(f));
+        }
+
+        for (int size : injectedFieldSizes(type))
+            root.addInjected(size);
+
+        boolean needTailPadding = false;
+
+        if (isContendedClass) {
+            // The fields of the class cannot share a cache line with the ones of its super classes
+            Block padding = new Block(Kind.PADDING, contendedPaddingWidth, 1, null);
+            blocks.insert(blocks.last, padding);
+            blocks.start = blocks.last;
+            needTailPadding = true;
+        }
+
+        blocks.add(root.primitiveFields(), blocks.start);
+        blocks.add(root.referenceFields(), blocks.start);
+
+        for (FieldGroup group : contendedGroups) {
+            Block start = blocks.last;
+            blocks.insert(start, new Block(Kind.PADDING, contendedPaddingWidth, 1, null));
+            blocks.add(group.primitiveFields(), start);
+            blocks.add(group.referenceFields(), start);
+            needTailPadding = true;
+        }
+
+        if (needTailPadding)
+            blocks.insert(blocks.last, new Block(Kind.PADDING, contendedPaddingWidth, 1, null));
+
+        Map<Field, Long> offsets = new HashMap<>();
+        Map<Integer, Integer> injectedFields = new HashMap<>();
+        boolean hasFields = false;
+        long contendedPaddingSize = 0;
+        for (Block b = blocks.first; b != blocks.last; b = b.next) {
+            if (b.field != null) {
+                offsets.put(b.field, (long) b.offset);
+                hasFields = true;
+            } else if (b.kind == Kind.REGULAR || b.kind == Kind.INHERITED) {
+                injectedFields.put(b.offset, b.size);
+                hasFields = true;
+            } else if (b.kind == Kind.PADDING) {
+                contendedPaddingSize += b.size;
+            }
+        }
+
+        boolean hasContendedAnnotations = isContendedClass
+                                          || !contendedGroups.isEmpty()
+                                          || (superLayout != null && superLayout.hasContendedAnnotations);
+
+        return new Layout(offsets,
+                          injectedFields,
+                          roundTo(blocks.last.offset, objectAlignment),
+                          contendedPaddingSize,
+                          hasFields,
+                          hasContendedAnnotations);
+    }
+
+    /**
+     * Reconstructs the layout of a super class as the starting point of the layout of its sub-class.
+     *
+     * @param superLayout the layout of the super class
+     * @return the blocks from which the layout of the sub-class can be built
+     */
+    private Blocks reconstruct(Layout superLayout) {
+
+        List<Block> fields = new ArrayList<>();
+        for (Map.Entry<Field, Long> field : superLayout.offsets.entrySet()) {
+            int size = sizeOf(field.getKey());
+            Block b = new Block(Kind.INHERITED, size, size, field.getKey());
+            b.offset = field.getValue().intValue();
+            fields.add(b);
+        }
+        for (Map.Entry<Integer, Integer> field : superLayout.injectedFields.entrySet()) {
+            Block b = new Block(Kind.INHERITED, field.getValue(), field.getValue(), null);
+            b.offset = field.getKey();
+            fields.add(b);
+        }
+        fields.sort(Comparator.comparingInt((Block b) -> b.offset));
+
+        Blocks blocks = new Blocks();
+        Block last = new Block(Kind.RESERVED, headerSize, 1, null);
+        blocks.first = last;
+
+        for (Block b : fields)
+            last = link(last, b);
+
+        // Fill the holes between the inherited fields
+        Kind fillingKind = superLayout.hasContendedAnnotations ? Kind.PADDING : Kind.EMPTY;
+        for (Block b = blocks.first; b.next != null; b = b.next) {
+            int end = b.offset + b.size;
+            if (b.next.offset > end) {
+                Block hole = new Block(fillingKind, b.next.offset - end, 1, null);
+                hole.offset = end;
+                hole.next = b.next;
+                b.next.prev = hole;
+                link(b, hole);
+            }
+        }
+
+        // The fields of the sub-classes must not share the cache line of the last field of a @Contended class
+        if (superLayout.hasContendedAnnotations && contendedPaddingWidth > 0) {
+            Block padding = new Block(Kind.PADDING, contendedPaddingWidth, 1, null);
+            padding.offset = last.offset + last.size;
+            last = link(last, padding);
+        }
+
+        // Emulates the previous algorithm which aligned the fields of each class of the hierarchy on the reference size
+        if (!useEmptySlotsInSupers) {
+            int align = (last.offset + last.size) % referenceSize;
+            if (align != 0) {
+                Block alignment = new Block(Kind.EMPTY, referenceSize - align, 1, null);
+                alignment.offset = last.offset + last.size;
+                last = link(last, alignment);
+            }
+        }
+
+        Block end = new Block(Kind.EMPTY, Integer.MAX_VALUE, 1, null);
+        end.offset = last.offset + last.size;
+        blocks.last = link(last, end);
+
+        // The fields can only be allocated in the holes of the super classes if they have fields and no @Contended
+        // annotations and if UseEmptySlotsInSupers is enabled
+        blocks.start = !superLayout.hasFields || (useEmptySlotsInSupers && !superLayout.hasContendedAnnotations) ? blocks.first
+                                                                                                               : blocks.last;
+        return blocks;
+    }
+
+    /**
+     * Returns the size of the specified field.
+     *
+     * @param field the field
+     * @return the size of the specified field
+     */
+    private int sizeOf(Field field) {
+        return field.getType().isPrimitive() ? measureField(field.getType()) : referenceSize;
+    }
+
+    /**
+     * Returns the sizes of the fields injected by the JVM in the specified class, in their injection order.
+     *
+     * @param type the class
+     * @return the sizes of the fields injected by the JVM in the specified class
+     */
+    private static int[] injectedFieldSizes(Class<?> type) {
+
+        // jvmti_thread_state, jvmti_VTMS_transition_disable_count, jvmti_is_in_VTMS_transition and jfr_epoch
+        if (type == Thread.class && !VM.isPreJava19JVM())
+            return new int[] {ADDRESS_SIZE, 4, 1, 2};
+
+        // vmindex
+        if (type.getName().equals("java.lang.invoke.MemberName"))
+            return new int[] {ADDRESS_SIZE};
+
+        return NO_INJECTED_FIELDS;
+    }
+
+    private static Block link(Block previous, Block next) {
+        previous.next = next;
+        next.prev = previous;
+        return next;
+    }
+
+    /**
+     * The layout of the instances of a class.
+     */
+    static final class Layout {
+
+        /**
+         * The offsets of the instance fields of the class and its super classes.
+         */
+        private final Map<Field, Long> offsets;
+
+        /**
+         * The sizes of the fields injected by the JVM in the class and its super classes, per offset.
+         */
+        private final Map<Integer, Integer> injectedFields;
+
+        /**
+         * The instance size.
+         */
+        private final long instanceSize;
+
+        /**
+         * The size of the {@code @Contended} paddings, including the holes of the super classes turned into padding.
+         */
+        private final long contendedPaddingSize;
+
+        /**
+         * {@code true} if the class or one of its super classes has instance fields.
+         */
+        private final boolean hasFields;
+
+        /**
+         * {@code true} if the class or one of its super classes has {@code @Contended} annotations.
+         */
+        private final boolean hasContendedAnnotations;
+
+        private Layout(Map<Field, Long> offsets,
+                       Map<Integer, Integer> injectedFields,
+                       long instanceSize,
+                       long contendedPaddingSize,
+                       boolean hasFields,
+                       boolean hasContendedAnnotations) {
+            this.offsets = offsets;
+            this.injectedFields = injectedFields;
+            this.instanceSize = instanceSize;
+            this.contendedPaddingSize = contendedPaddingSize;
+            this.hasFields = hasFields;
+            this.hasContendedAnnotations = hasContendedAnnotations;
+        }
+
+        /**
+         * Returns the offset of the specified field.
+         *
+         * @param field the field
+         * @return the offset of the specified field
+         */
+        long offsetOf(Field field) {
+            return offsets.get(field);
+        }
+
+        /**
+         * Returns the instance size.
+         *
+         * @return the instance size.
+         */
+        long instanceSize() {
+            return instanceSize;
+        }
+
+        /**
+         * Returns the size of the {@code @Contended} paddings.
+         *
+         * @return the size of the {@code @Contended} paddings.
+         */
+        long contendedPaddingSize() {
+            return contendedPaddingSize;
+        }
+    }
+
+    /**
+     * The kinds of blocks.
+     */
+    private enum Kind {
+        EMPTY, RESERVED, PADDING, REGULAR, INHERITED
+    }
+
+    /**
+     * A block of the layout.
+     */
+    private static final class Block {
+
+        private final Kind kind;
+
+        private final int alignment;
+
+        private final Field field;
+
+        private int offset;
+
+        private int size;
+
+        private Block prev;
+
+        private Block next;
+
+        Block(Kind kind, int size, int alignment, Field field) {
+            this.kind = kind;
+            this.size = size;
+            this.alignment = alignment;
+            this.field = field;
+        }
+
+        /**
+         * Checks if a block of the specified size and alignment fits in this block.
+         */
+        boolean fit(int size, int alignment) {
+            int adjustment = offset % alignment == 0 ? 0 : alignment - (offset % alignment);
+            return this.size >= size + adjustment;
+        }
+    }
+
+    /**
+     * The fields of a group, primitive or reference.
+     */
+    private static final class FieldGroup {
+
+        private final List<Block> primitiveFields = new ArrayList<>();
+
+        private final List<Block> referenceFields = new ArrayList<>();
+
+        void add(Field field, int size) {
+            Block block = new Block(Kind.REGULAR, size, size, field);
+            if (field.getType().isPrimitive())
+                primitiveFields.add(block);
+            else
+                referenceFields.add(block);
+        }
+
+        /**
+         * Adds a field injected by the JVM, which is laid out as a primitive field.
+         */
+        void addInjected(int size) {
+            primitiveFields.add(new Block(Kind.REGULAR, size, size, null));
+        }
+
+        /**
+         * Returns the primitive fields sorted by decreasing size, the fields of the same size keeping their declaration
+         * order.
+         */
+        List<Block> primitiveFields() {
+            List<Block> sorted = new ArrayList<>(primitiveFields);
+            sorted.sort(Comparator.comparingInt((Block b) -> b.size).reversed());
+            return sorted;
+        }
+
+        List<Block> referenceFields() {
+            return Collections.unmodifiableList(referenceFields);
+        }
+    }
+
+    /**
+     * The list of blocks of a layout being built.
+     */
+    private static final class Blocks {
+
+        private Block first;
+
+        private Block last;
+
+        /**
+         * The block from which the fields can be allocated: the empty slots before it cannot be used.
+         */
+        private Block start;
+
+        private Blocks() {
+        }
+
+        /**
+         * Creates the layout of a class without super class: the header followed by an unlimited empty slot.
+         */
+        private Blocks(int headerSize) {
+            Block empty = new Block(Kind.EMPTY, Integer.MAX_VALUE, 1, null);
+            first = last = start = empty;
+            insert(empty, new Block(Kind.RESERVED, headerSize, 1, null));
+        }
+
+        /**
+         * Adds the specified blocks, each one in the smallest empty slot located after {@code start} in which it fits,
+         * or at the end of the layout.
+         */
+        void add(List<Block> list, Block start) {
+
+            boolean lastSearchSuccess = false;
+            int lastSize = 0;
+            int lastAlignment = 0;
+
+            for (Block b : list) {
+
+                Block candidate = null;
+
+                if (start == last) {
+                    candidate = last;
+                } else if (b.size == lastSize && b.alignment == lastAlignment && !lastSearchSuccess) {
+                    // A field with the same requirements did not fit in any slot, this one will not either
+                    candidate = last;
+                } else {
+                    lastSize = b.size;
+                    lastAlignment = b.alignment;
+                    lastSearchSuccess = true;
+                    for (Block cursor = last.prev; cursor != start; cursor = cursor.prev) {
+                        if (cursor.kind == Kind.EMPTY && cursor.fit(b.size, b.alignment)) {
+                            if (candidate == null || cursor.size < candidate.size)
+                                candidate = cursor;
+                        }
+                    }
+                    if (candidate == null) {
+                        candidate = last;
+                        lastSearchSuccess = false;
+                    }
+                }
+                insertField(candidate, b);
+            }
+        }
+
+        /**
+         * Inserts a field block in the specified empty slot, leaving an empty slot before it if needed to align it.
+         */
+        private void insertField(Block slot, Block block) {
+
+            if (slot.offset % block.alignment != 0) {
+                int adjustment = block.alignment - (slot.offset % block.alignment);
+                insert(slot, new Block(Kind.EMPTY, adjustment, 1, null));
+            }
+
+            insert(slot, block);
+
+            if (slot.size == 0)
+                remove(slot);
+        }
+
+        /**
+         * Inserts the specified block at the beginning of the specified empty slot.
+         */
+        void insert(Block slot, Block block) {
+            block.offset = slot.offset;
+            slot.offset += block.size;
+            slot.size -= block.size;
+            block.prev = slot.prev;
+            block.next = slot;
+            slot.prev = block;
+            if (block.prev != null)
+                block.prev.next = block;
+            if (first == slot)
+                first = block;
+        }
+
+        private void remove(Block block) {
+            if (block.prev != null)
+                block.prev.next = block.next;
+            else
+                first = block.next;
+            if (block.next != null)
+                block.next.prev = block.prev;
+            if (start == block)
+                start = block.prev;
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package org.github.jamm.strategies;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.github.jamm.MemoryMeterStrategy;
+import org.github.jamm.VM;
+
+/**
+ * On-disk cache of the instance sizes computed by the layout based strategies, allowing a restarted JVM to skip their
+ * computation.
+ *
+ * <p>The cache is enabled by setting the {@code org.github.jamm.strategies.InstanceSizeCache} system property to the
+ * path of the cache file. The file is memory-mapped when the first size is looked up and the entries are read from the
+ * mapping on demand. The sizes computed during the run are added to the file when the JVM shuts down.</p>
+ *
+ * <p>The file is only used if it was written by a JVM with the same invalidation key: the JVM version and home, the
+ * JVM arguments and layout flags and the memory layout. Any change to them discards the whole file. Each entry is also
+ * keyed by the source of its class file, located through the class loader of the class: a JDK module, identified by the
+ * JDK of the invalidation key, or a JAR or class file, identified by its path, size and modification time. The classes
+ * without a class file in their code source, like the proxies and the other classes generated at runtime, and the
+ * hidden classes are always measured.</p>
+ *
+ * <p>The file format is a big-endian binary format made of a header ({@code JAMC} magic number, format version and
+ * invalidation key), an open addressing hash table whose slots hold the hash of the entry name, the position of the
+ * name and the instance size, followed by the UTF-8 entry names. An entry name is made of the strategy name, the class
+ * name and the source of the class file separated by {@code ';'}.</p>
+ */
+final class InstanceSizeCache {
+
+    /**
+     * The system property holding the path of the cache file.
+     */
+    static final String PROPERTY = "org.github.jamm.strategies.InstanceSizeCache";
+
+    /**
+     * The magic number identifying the cache files: {@code JAMC} in ASCII.
+     */
+    private static final int MAGIC = 0x4A414D43;
+
+    /**
+     * The current version of the file format.
+     */
+    private static final short VERSION = 2;
+
+    /**
+     * The size of a hash table slot: the name hash, the name position and the instance size.
+     */
+    private static final int SLOT_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    /**
+     * The separator used between the parts of the entry names.
+     */
+    private static final char SEPARATOR = ';';
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The source of the class file of each class, {@code null} if the instance size of the class cannot be cached.
+     */
+    private static final ClassValue<String> SOURCES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return source(type);
+        }
+    };
+
+    /**
+     * The fingerprints of the JARs, computed once per JAR.
+     */
+    private static final ConcurrentMap<String, String> JAR_FINGERPRINTS = new ConcurrentHashMap<>();
+
+    /**
+     * The cache file.
+     */
+    private final Path file;
+
+    /**
+     * The invalidation key.
+     */
+    private final String key;
+
+    /**
+     * The entries of the file, {@code null} if the file has not been mapped yet.
+     */
+    private volatile Table table;
+
+    /**
+     * The sizes computed during this run that are not in the file.
+     */
+    private final ConcurrentMap<String, Long> added = new ConcurrentHashMap<>();
+
+    InstanceSizeCache(Path file, String key) {
+        this.file = file;
+        this.key = key;
+    }
+
+    /**
+     * Returns the cache shared by the strategies using the memory layout of the JVM.
+     *
+     * @return the shared cache or {@code null} if the cache is not enabled
+     */
+    static InstanceSizeCache shared() {
+        return SharedCache.INSTANCE;
+    }
+
+    /**
+     * Returns the instance size of the specified class computed by the specified strategy during this run or a
+     * previous one.
+     *
+     * @param strategy the strategy
+     * @param type the class
+     * @return the instance size or {@code -1} if it is not in the cache
+     */
+    long get(MemoryLayoutBasedStrategy strategy, Class<?> type) {
+
+        String name = entryName(strategy, type);
+        if (name == null)
+            return -1;
+
+        Long size = added.get(name);
+        return size != null ? size : table().get(name);
+    }
+
+    /**
+     * Adds the instance size of the specified class computed by the specified strategy.
+     *
+     * @param strategy the strategy
+     * @param type the class
+     * @param size the instance size
+     */
+    void put(MemoryLayoutBasedStrategy strategy, Class<?> type, long size) {
+
+        String name = entryName(strategy, type);
+        if (name != null)
+            added.put(name, size);
+    }
+
+    /**
+     * Writes the entries of the file and the ones added during this run to the file, if some were added.
+     * <p>The entries are written to a temporary file which then replaces the cache file, so that the JVMs mapping the
+     * previous file keep reading consistent data.</p>
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void save() throws IOException {
+
+        if (added.isEmpty())
+            return;
+
+        Map<String, Long> entries = new LinkedHashMap<>(table().entries());
+        entries.putAll(added);
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            write(tmp, key, entries);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Table table() {
+        Table t = table;
+        if (t == null) {
+            synchronized (this) {
+                t = table;
+                if (t == null)
+                    table = t = Table.map(file, key);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Returns the name of the entry of the specified class for the specified strategy.
+     *
+     * @param strategy the strategy
+     * @param type the class
+     * @return the name of the entry or {@code null} if the instance size of the class cannot be cached
+     */
+    private static String entryName(MemoryLayoutBasedStrategy strategy, Class<?> type) {
+
+        String source = SOURCES.get(type);
+        if (source == null)
+            return null;
+
+        return strategy.getClass().getName() + SEPARATOR + type.getName() + SEPARATOR + source;
+    }
+
+    /**
+     * Identifies the source of the class file of the specified class.
+     *
+     * @param type the class
+     * @return {@code jrt} for the classes of the JDK modules, the fingerprint of the JAR or of the class file for the
+     * other classes or {@code null} if the class file cannot be located in the code source of the class
+     */
+    static String source(Class<?> type) {
+
+        // The hidden classes and the VM anonymous classes have a '/' in their names, which are not stable across runs
+        String className = type.getName();
+        if (className.indexOf('/') >= 0)
+            return null;
+
+        String resource = className.replace('.', '/') + ".class";
+        ClassLoader loader = type.getClassLoader();
+        URL url = loader == null ? ClassLoader.getSystemResource(resource) : loader.getResource(resource);
+        if (url == null)
+            return null; // A class generated at runtime
+
+        String location = url.toExternalForm();
+        if (loader != null) {
+            // The class file found must be the one from which the class was defined, which excludes the classes
+            // defined by other means, even if a class file with the same name exists
+            CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null)
+                return null;
+
+            String codeSourceLocation = codeSource.getLocation().toExternalForm();
+            if (!location.startsWith(codeSourceLocation) && !location.startsWith("jar:" + codeSourceLocation + "!/"))
+                return null;
+        }
+
+        try {
+            switch (url.getProtocol()) {
+                case "jrt":
+                    return "jrt"; // The JDK is identified by the invalidation key
+                case "file":
+                    return fingerprint(new File(url.toURI()));
+                case "jar":
+                    // The outermost JAR, which also identifies the nested ones
+                    int separator = location.indexOf("!/");
+                    if (separator < 0 || !location.startsWith("jar:file:"))
+                        return null;
+                    return JAR_FINGERPRINTS.computeIfAbsent(location.substring("jar:".length(), separator),
+                                                            InstanceSizeCache::jarFingerprint);
+                default:
+                    return null;
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String jarFingerprint(String jar) {
+        try {
+            return fingerprint(new File(new URI(jar)));
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the specified file from its path, size and modification time.
+     * <p>The fingerprint is a 64-bit FNV-1a hash, which is enough to detect changes and, unlike a cryptographic hash,
+     * does not require to read the file.</p>
+     *
+     * @param file the file
+     * @return the fingerprint of the file, in hexadecimal
+     */
+    static String fingerprint(File file) {
+        long hash = hash(FNV_OFFSET_BASIS, file.getAbsolutePath());
+        return Long.toHexString(hash(hash(hash, file.length()), file.lastModified()));
+    }
+
+    private static void write(Path path, String key, Map<String, Long> entries) throws IOException {
+
+        int slotCount = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1; // load factor <= 0.5
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int tableStart = Integer.BYTES + Short.BYTES + Integer.BYTES + keyBytes.length + Integer.BYTES;
+        int namesStart = tableStart + slotCount * SLOT_SIZE;
+
+        // Lays out the names after the table and places each entry in the first free slot from its hash
+        int[] hashes = new int[slotCount];
+        int[] positions = new int[slotCount];
+        long[] sizes = new long[slotCount];
+        List<byte[]> names = new ArrayList<>(entries.size());
+        int position = namesStart;
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int hash = entry.getKey().hashCode();
+            int slot = hash & (slotCount - 1);
+            while (positions[slot] != 0)
+                slot = (slot + 1) & (slotCount - 1);
+            hashes[slot] = hash;
+            positions[slot] = position;
+            sizes[slot] = entry.getValue();
+            names.add(name);
+            position += Integer.BYTES + name.length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+
+            out.writeInt(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                out.writeInt(hashes[i]);
+                out.writeInt(positions[i]);
+                out.writeLong(sizes[i]);
+            }
+
+            for (byte[] name : names) {
+                out.writeInt(name.length);
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Computes the invalidation key of the running JVM.
+     *
+     * @return the invalidation key of the running JVM
+     */
+    static String currentKey() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("vm=")
+               .append(System.getProperty("java.vm.vendor")).append(' ')
+               .append(System.getProperty("java.vm.name")).append(' ')
+               .append(System.getProperty("java.vm.version"))
+               .append("\nhome=").append(System.getProperty("java.home"))
+               .append("\narguments=").append(ManagementFactory.getRuntimeMXBean().getInputArguments())
+               .append("\nflags=[UseEmptySlotsInSupers=").append(VM.useEmptySlotsInSuper())
+               .append(", EnableContended=").append(VM.enableContended())
+               .append(", RestrictContended=").append(VM.restrictContended())
+               .append(", UseUnsafe=").append(VM.hasUnsafe())
+               .append("]\nlayout=").append(MemoryMeterStrategy.MEMORY_LAYOUT);
+        return builder.toString();
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0, m = value.length(); i < m; i++)
+            hash = hash(hash, value.charAt(i));
+        return hash;
+    }
+
+    private static long hash(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++, value >>>= 8)
+            hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * The hash table of a mapped cache file.
+     */
+    private static final class Table {
+
+        private static final Table EMPTY = new Table(null, 0, 0);
+
+        /**
+         * The mapped file.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The position of the first slot.
+         */
+        private final int tableStart;
+
+        /**
+         * The number of slots, a power of 2.
+         */
+        private final int slotCount;
+
+        private Table(ByteBuffer buffer, int tableStart, int slotCount) {
+            this.buffer = buffer;
+            this.tableStart = tableStart;
+            this.slotCount = slotCount;
+        }
+
+        /**
+         * Maps the specified file.
+         *
+         * @return the mapped table or an empty table if the file does not exist, is invalid or does not match the
+         * specified invalidation key
+         */
+        static Table map(Path file, String key) {
+
+            if (!Files.isRegularFile(file))
+                return EMPTY;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (buffer.remaining() < Integer.BYTES + Short.BYTES + Integer.BYTES
+                        || buffer.getInt() != MAGIC
+                        || buffer.getShort() != VERSION)
+                    return EMPTY;
+
+                int keyLength = buffer.getInt();
+                if (keyLength < 0 || keyLength > buffer.remaining() - Integer.BYTES)
+                    return EMPTY;
+
+                byte[] keyBytes = new byte[keyLength];
+                buffer.get(keyBytes);
+                if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8)))
+                    return EMPTY;
+
+                int slotCount = buffer.getInt();
+                if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || slotCount > buffer.remaining() / SLOT_SIZE)
+                    return EMPTY;
+
+                return new Table(buffer, buffer.position(), slotCount);
+
+            } catch (IOException e) {
+                return EMPTY;
+            }
+        }
+
+        /**
+         * Returns the size stored for the specified name.
+         *
+         * @param name the entry name
+         * @return the size or {@code -1} if the table has no entry for that name
+         */
+        long get(String name) {
+
+            if (slotCount == 0)
+                return -1;
+
+            int hash = name.hashCode();
+            byte[] nameBytes = null;
+            for (int i = 0, slot = hash & (slotCount - 1); i < slotCount; i++, slot = (slot + 1) & (slotCount - 1)) {
+                int offset = tableStart + slot * SLOT_SIZE;
+                int position = buffer.getInt(offset + Integer.BYTES);
+                if (position == 0)
+                    return -1;
+
+                if (buffer.getInt(offset) == hash) {
+                    if (nameBytes == null)
+                        nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                    if (nameAt(position, nameBytes))
+                        return buffer.getLong(offset + 2 * Integer.BYTES);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Checks if the name stored at the specified position is the specified one.
+         */
+        private boolean nameAt(int position, byte[] name) {
+
+            if (position < 0 || position > buffer.limit() - Integer.BYTES - name.length
+                    || buffer.getInt(position) != name.length)
+                return false;
+
+            for (int i = 0; i < name.length; i++) {
+                if (buffer.get(position + Integer.BYTES + i) != name[i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Decodes all the entries of the table.
+         *
+         * @return the entries of the table
+         */
+        Map<String, Long> entries() {
+
+            Map<String, Long> entries = new LinkedHashMap<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                int offset = tableStart + slot * SLOT_SIZE;
+                int position = buffer.getInt(offset + Integer.BYTES);
+                if (position <= 0 || position > buffer.limit() - Integer.BYTES)
+                    continue;
+
+                int length = buffer.getInt(position);
+                if (length < 0 || length > buffer.limit() - position - Integer.BYTES)
+                    continue;
+
+                byte[] name = new byte[length];
+                for (int i = 0; i < length; i++)
+                    name[i] = buffer.get(position + Integer.BYTES + i);
+                entries.put(new String(name, StandardCharsets.UTF_8), buffer.getLong(offset + 2 * Integer.BYTES));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Holder of the shared cache, created on first use.
+     */
+    private static final class SharedCache {
+
+        private static final InstanceSizeCache INSTANCE = create();
+
+        private static InstanceSizeCache create() {
+
+            String path = System.getProperty(PROPERTY);
+            if (path == null || path.isEmpty())
+                return null;
+
+            InstanceSizeCache cache = new InstanceSizeCache(Paths.get(path), currentKey());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    // The sizes will be computed again by the next run
+                }
+            }, "jamm-instance-size-cache"));
+            return cache;
+        }
+    }
+}
@@ -35,4 +35,9 @@ public class InstrumentationAndSpecStrategy extends MemoryLayoutBasedStrategy {
     public long measureInstance(Object object, Class<?> type) {
         return instrumentation.getObjectSize(object);
     }
+
+    @Override
+    protected boolean cacheInstanceSizes() {
+        return false;
+    }
 }
@@ -1,27 +1,129 @@
 package org.github.jamm.strategies;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
 
+import org.github.jamm.ClassLayout;
+import org.github.jamm.ClassLayout.FieldLayout;
+import org.github.jamm.MemoryLayoutSpecification;
 import org.github.jamm.MemoryMeterStrategy;
+import org.github.jamm.utils.ArrayMeasurementUtils;
 
+import static org.github.jamm.strategies.ContendedUtils.countContentionGroup;
+import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
+import static org.github.jamm.strategies.ContendedUtils.isContendedEnabled;
 import static org.github.jamm.utils.MathUtils.roundTo;
 
 /**
  * Base class for strategies that need access to the {@code MemoryLayoutSpecification} for computing object size.
+ * <p>The sizes are computed with the layout of the running JVM by default. The strategies that do not rely on the JVM
+ * to compute the sizes can also be given a hypothetical layout, to compute the sizes as if the JVM was started with
+ * other options.</p>
  */
 public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
 
-    private final static int ARRAY_BASE_OFFSET = MEMORY_LAYOUT.getArrayHeaderSize();
+    /**
+     * The memory layout used to compute the sizes.
+     */
+    protected final MemoryLayoutSpecification memoryLayout;
+
+    /**
+     * The layouts computed so far.
+     */
+    private final ClassValue<ClassLayout> layouts = new ClassValue<ClassLayout>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return computeLayout(type);
+        }
+    };
+
+    /**
+     * The instance sizes computed so far, for the strategies caching them. The sizes are also looked up in and added to
+     * the on-disk cache, if it is enabled.
+     */
+    private final ClassValue<Long> instanceSizes = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            InstanceSizeCache cache = instanceSizeCache();
+            if (cache == null)
+                return measureInstance(null, type);
+
+            long size = cache.get(MemoryLayoutBasedStrategy.this, type);
+            if (size < 0) {
+                size = measureInstance(null, type);
+                cache.put(MemoryLayoutBasedStrategy.this, type, size);
+            }
+            return size;
+        }
+    };
+
+    protected MemoryLayoutBasedStrategy() {
+        this(MEMORY_LAYOUT);
+    }
+
+    protected MemoryLayoutBasedStrategy(MemoryLayoutSpecification memoryLayout) {
+        this.memoryLayout = memoryLayout;
+    }
+
+    /**
+     * Returns the memory layout used by this strategy to compute the sizes.
+     *
+     * @return the memory layout used by this strategy to compute the sizes
+     */
+    public final MemoryLayoutSpecification memoryLayout() {
+        return memoryLayout;
+    }
 
     @Override
     public final long measure(Object object) {
         Class<?> type = object.getClass();
-         return type.isArray() ? measureArray(object, type) : measureInstance(object, type);
+
+        if (type.isArray())
+            return measureArray(object, type);
+
+        return cacheInstanceSizes() ? instanceSizes.get(type) : measureInstance(object, type);
+    }
+
+    /**
+     * Checks if the instance sizes computed by this strategy only depend on the class and can be computed once per
+     * class and cached.
+     * <p>{@code true} by default. Strategies measuring each instance through the JVM must return {@code false}.</p>
+     *
+     * @return {@code true} if the instance sizes can be cached, {@code false} otherwise.
+     */
+    protected boolean cacheInstanceSizes() {
+        return true;
+    }
+
+    /**
+     * Returns the on-disk cache of the instance sizes used by this strategy.
+     * <p>Only the strategies using the memory layout of the JVM use the cache, which is keyed by the JVM options.</p>
+     *
+     * @return the on-disk cache of the instance sizes or {@code null} if this strategy does not use it
+     */
+    InstanceSizeCache instanceSizeCache() {
+        return memoryLayout == MEMORY_LAYOUT ? InstanceSizeCache.shared() : null;
+    }
+
+    /**
+     * Computes and caches the instance size of the specified class, if this strategy caches the instance sizes.
+     *
+     * @param type the class to warm up
+     */
+    public final void warmUp(Class<?> type) {
+        if (cacheInstanceSizes())
+            instanceSizes.get(type);
     }
 
     @Override
     public long measureArray(Object[] array) {
-        return computeArraySize(array.length, MEMORY_LAYOUT.getReferenceSize());
+        return computeArraySize(array.length, memoryLayout.getReferenceSize());
     }
 
     @Override
@@ -66,6 +168,7 @@ public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
 
     /**
      * Measures the shallow memory used by objects of the specified class.
+     * <p>If the instance sizes are cached, this method is called once per class, with a {@code null} instance.</p>
      *
      * @param instance the object to measure
      * @param type the object type
@@ -82,7 +185,7 @@ public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
      */
     public final long measureArray(Object instance, Class<?> type) {
         int length = Array.getLength(instance);
-        int elementSize = measureField(type.getComponentType());
+        int elementSize = sizeOfField(type.getComponentType());
         return computeArraySize(length, elementSize);
     }
 
@@ -98,7 +201,7 @@ public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
      * @return the array base offset.
      */
     protected int arrayBaseOffset() {
-        return ARRAY_BASE_OFFSET;
+        return memoryLayout.getArrayHeaderSize();
     }
 
     /**
@@ -109,16 +212,26 @@ public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
      * @return the size of the array
      */
     public long computeArraySize(int length, int elementSize) {
-        return roundTo(arrayBaseOffset() + length * (long) elementSize, MEMORY_LAYOUT.getObjectAlignment());
+        return ArrayMeasurementUtils.computeArraySize(arrayBaseOffset(), length, elementSize, memoryLayout.getObjectAlignment());
     }
 
     /**
-     * Returns the size of a field of the specified type.
+     * Returns the size of a field of the specified type in the memory layout used by this strategy.
      *
      * @param type the field type
      * @return The memory size of a field of a class of the provided type; for Objects this is the size of the reference only
      */
-    protected final int measureField(Class<?> type) {
+    public final int sizeOfField(Class<?> type) {
+        return type.isPrimitive() ? measureField(type) : memoryLayout.getReferenceSize();
+    }
+
+    /**
+     * Returns the size of a field of the specified type in the memory layout of the running JVM.
+     *
+     * @param type the field type
+     * @return The memory size of a field of a class of the provided type; for Objects this is the size of the reference only
+     */
+    public static int measureField(Class<?> type) {
 
         if (!type.isPrimitive())
             return MEMORY_LAYOUT.getReferenceSize();
@@ -137,4 +250,145 @@ public abstract class MemoryLayoutBasedStrategy implements MemoryMeterStrategy {
 
         throw new IllegalStateException();
     }
+
+    /**
+     * Returns the memory layout of the instances of the specified class.
+     * <p>The layouts are computed once per class and cached.</p>
+     *
+     * @param type the class
+     * @return the memory layout of the instances of the specified class
+     * @throws IllegalArgumentException if the specified type is an array, a primitive or an interface
+     */
+    public final ClassLayout layoutOf(Class<?> type) {
+
+        if (type.isArray() || type.isPrimitive() || type.isInterface())
+            throw new IllegalArgumentException(String.format("The layout can only be computed for classes (was %s).", type));
+
+        return layouts.get(type);
+    }
+
+    /**
+     * Computes the memory layout of the instances of the specified class.
+     * <p>By default, the field offsets are emulated: the fields of each class of the hierarchy, starting from the top,
+     * are allocated by decreasing size, in the first gap left by the previous fields in which they fit. The instance
+     * size is the one computed by this strategy.</p>
+     *
+     * @param type the class
+     * @return the memory layout of the instances of the specified class
+     */
+    protected ClassLayout computeLayout(Class<?> type) {
+
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass())
+            hierarchy.add(0, cls);
+
+        Map<Field, Long> offsets = new HashMap<>();
+        List<long[]> gaps = new ArrayList<>(); // {start, end} pairs
+        long end = memoryLayout.getObjectHeaderSize();
+
+        for (Class<?> cls : hierarchy) {
+
+            List<Field> fields = new ArrayList<>();
+            for (Field f : cls.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()))
+                    fields.add(f);
+            }
+            fields.sort((f1, f2) -> Integer.compare(sizeOfField(f2.getType()), sizeOfField(f1.getType())));
+
+            for (Field f : fields) {
+                int size = sizeOfField(f.getType());
+                long offset = allocateInGaps(gaps, size);
+                if (offset < 0) {
+                    offset = roundTo(end, size);
+                    if (offset > end)
+                        gaps.add(new long[] {end, offset});
+                    end = offset + size;
+                }
+                offsets.put(f, offset);
+            }
+        }
+        return newClassLayout(type, offsets::get);
+    }
+
+    /**
+     * Allocates a field of the specified size in the first gap in which it fits.
+     *
+     * @param gaps the gaps as {start, end} pairs
+     * @param size the field size
+     * @return the field offset or {@code -1} if the field does not fit in any gap.
+     */
+    private static long allocateInGaps(List<long[]> gaps, int size) {
+
+        for (int i = 0, m = gaps.size(); i < m; i++) {
+            long[] gap = gaps.get(i);
+            long offset = roundTo(gap[0], size);
+            if (offset + size <= gap[1]) {
+                gaps.remove(i);
+                if (offset + size < gap[1])
+                    gaps.add(i, new long[] {offset + size, gap[1]});
+                if (offset > gap[0])
+                    gaps.add(i, new long[] {gap[0], offset});
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the layout of the instances of the specified class from its field offsets.
+     *
+     * @param type the class
+     * @param fieldOffsets the function returning the field offsets
+     * @return the layout of the instances of the specified class
+     */
+    protected final ClassLayout newClassLayout(Class<?> type, ToLongFunction<Field> fieldOffsets) {
+
+        List<FieldLayout> fields = new ArrayList<>();
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+            for (Field f : cls.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()))
+                    fields.add(new FieldLayout(f, fieldOffsets.applyAsLong(f), sizeOfField(f.getType())));
+            }
+        }
+
+        return new ClassLayout(type,
+                               memoryLayout.getObjectHeaderSize(),
+                               fields,
+                               contendedPaddingSize(type),
+                               measureInstance(null, type),
+                               memoryLayout.getObjectAlignment());
+    }
+
+    /**
+     * Computes the size of the padding added by the JVM for the {@code @Contended} annotations of the specified class
+     * and of its super classes.
+     * <p>By default, the pre-Java 15 rules are applied: the classes annotated with {@code @Contended} are padded before
+     * and after their fields and each contention group is preceded by a padding, the last one being followed by
+     * another one. The field level annotations are ignored if {@code @Contended} is disabled.</p>
+     *
+     * @param type the class
+     * @return the size of the padding added for the {@code @Contended} annotations
+     */
+    protected long contendedPaddingSize(Class<?> type) {
+
+        long contendedPaddingSize = 0;
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+
+            if (!isContendedEnabled(cls))
+                continue;
+
+            ContentionGroupsCounter contentionGroupCounter = null;
+            for (Field f : cls.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()))
+                    contentionGroupCounter = countContentionGroup(contentionGroupCounter, f);
+            }
+
+            if (isClassAnnotatedWithContended(cls))
+                contendedPaddingSize += (memoryLayout.getContendedPaddingWidth() << 1);
+
+            if (contentionGroupCounter != null)
+                contendedPaddingSize += (contentionGroupCounter.count() + 1) * memoryLayout.getContendedPaddingWidth(); // 1 padding before each group + 1 at the end
+        }
+        return contendedPaddingSize;
+    }
 }
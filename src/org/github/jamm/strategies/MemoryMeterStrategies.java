@@ -1,18 +1,15 @@
 package org.github.jamm.strategies;
 
 import java.lang.instrument.Instrumentation;
-import java.lang.invoke.MethodHandle;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Optional;
 import java.util.Queue;
 
+import org.github.jamm.MemoryLayoutSpecification;
 import org.github.jamm.MemoryMeter.Guess;
-
-import static org.github.jamm.utils.MethodHandleUtils.mayBeMethodHandle;
-
 import org.github.jamm.MemoryMeterStrategy;
 import org.github.jamm.VM;
+import org.github.jamm.utils.ReflectionUtils;
 
 /**
  * The different strategies that can be used to measure object sizes.
@@ -27,35 +24,38 @@ public final class MemoryMeterStrategies {
     private static MemoryMeterStrategies instance; 
 
     /**
-     * Strategy relying on instrumentation or {@code null} if the instrumentation was not provided
+     * The instrumentation used by the instrumentation based strategies or {@code null} if it was not provided.
+     */
+    private final Instrumentation inst;
+
+    /**
+     * Strategy relying on instrumentation, created on first use.
      */
-    private final MemoryMeterStrategy instrumentationStrategy;
+    private MemoryMeterStrategy instrumentationStrategy;
 
     /**
      * Strategy relying on instrumentation to measure non array object and the {@code Specification} approach to measure arrays.
-     * {@code null} if the instrumentation was not provided
+     * Created on first use.
      */
-    private final MemoryMeterStrategy instrumentationAndSpecStrategy;
+    private MemoryMeterStrategy instrumentationAndSpecStrategy;
 
     /**
-     * Strategy relying on unsafe or {@code null} if unsafe could not be loaded
+     * Strategy relying on unsafe, created on first use.
      */
-    private final MemoryMeterStrategy unsafeStrategy;
+    private MemoryMeterStrategy unsafeStrategy;
 
     /**
-     * Strategy relying on specification 
+     * Strategy relying on specification, created on first use.
      */
-    private final MemoryMeterStrategy specStrategy;
+    private MemoryMeterStrategy specStrategy;
 
-    private MemoryMeterStrategies(MemoryMeterStrategy instrumentationStrategy,
-                                  MemoryMeterStrategy instrumentationAndSpecStrategy,
-                                  MemoryMeterStrategy unsafeStrategy,
-                                  MemoryMeterStrategy specStrategy) {
+    /**
+     * Strategy selecting the fastest exact strategy per class, created on first use.
+     */
+    private MemoryMeterStrategy adaptiveStrategy;
 
-        this.instrumentationStrategy = instrumentationStrategy;
-        this.instrumentationAndSpecStrategy = instrumentationAndSpecStrategy;
-        this.unsafeStrategy = unsafeStrategy;
-        this.specStrategy = specStrategy;
+    private MemoryMeterStrategies(Instrumentation inst) {
+        this.inst = inst;
     }
 
     public static synchronized MemoryMeterStrategies getInstance() {
@@ -68,27 +68,22 @@ public final class MemoryMeterStrategies {
 
     /**
      * Creates the strategies available based on the JVM information.
+     * <p>The strategies themselves are only created when they are first requested, as their creation requires
+     * to read the JVM options, which is costly for the applications that only need one strategy.</p>
      * @return the strategies available
      */
     private static MemoryMeterStrategies createStrategies() {
 
-        Optional<MethodHandle> mayBeIsHiddenMH = mayBeIsHiddenMethodHandle();
-
-        MemoryMeterStrategy instrumentationStrategy = createInstrumentationStrategy();
-        MemoryMeterStrategy instrumentationAndSpecStrategy = createInstrumentationAndSpecStrategy();
-        MemoryMeterStrategy specStrategy = createSpecStrategy(mayBeIsHiddenMH);
-        MemoryMeterStrategy unsafeStrategy = createUnsafeStrategy(mayBeIsHiddenMH, (MemoryLayoutBasedStrategy) specStrategy);
-
         if (logInformationAtStartup()) {
         // Logging important information once at startup for debugging purpose
             System.out.println("Jamm starting with: java.version='" + System.getProperty("java.version")
                                 + "', java.vendor='" + System.getProperty("java.vendor")
-                                + "', instrumentation=" + (instrumentationStrategy != null)
-                                + ", unsafe=" + (unsafeStrategy != null)
+                                + "', instrumentation=" + (instrumentation != null)
+                                + ", unsafe=" + VM.hasUnsafe()
                                 + ", " + MemoryMeterStrategy.MEMORY_LAYOUT);
         }
- 
-        return new MemoryMeterStrategies(instrumentationStrategy, instrumentationAndSpecStrategy, unsafeStrategy, specStrategy);
+
+        return new MemoryMeterStrategies(instrumentation);
     }
 
     /**
@@ -100,66 +95,110 @@ public final class MemoryMeterStrategies {
         return Boolean.parseBoolean(System.getProperty("org.github.jamm.strategies.LogInfoAtStartup", "false"));
     }
 
-    private static MemoryMeterStrategy createSpecStrategy(Optional<MethodHandle> mayBeIsHiddenMH) {
-
-        if (mayBeIsHiddenMH.isPresent() && !VM.useEmptySlotsInSuper())
-            System.out.println("WARNING: Jamm is starting with the UseEmptySlotsInSupers JVM option disabled."
-                               + " The memory layout created when this option is enabled cannot always be reproduced accurately by the Specification or UNSAFE strategies."
-                               + " By consequence the measured sizes when these strategies are used might be off in some cases.");
+    private static MemoryLayoutBasedStrategy createSpecStrategy(MemoryLayoutSpecification memoryLayout) {
 
         // The Field layout was optimized in Java 15. For backward compatibility reasons, in 15+, the optimization can be disabled through the {@code -XX:-UseEmptySlotsInSupers} option.
         // (see https://bugs.openjdk.org/browse/JDK-8237767 and https://bugs.openjdk.org/browse/JDK-8239016)
-        // Unfortunately, when {@code UseEmptySlotsInSupers} is disabled the layout resulting does not match the pre-15 versions
-        return mayBeIsHiddenMH.isPresent() ? VM.useEmptySlotsInSuper() ? new SpecStrategy()
-                                                                       : new DoesNotUseEmptySlotInSuperSpecStrategy()
-                                           : new PreJava15SpecStrategy();
+        // Both layouts are produced by the same algorithm which is emulated by the SpecStrategy.
+        return ReflectionUtils.supportsHiddenClasses() ? new SpecStrategy(memoryLayout, VM.useEmptySlotsInSuper())
+                                                       : new PreJava15SpecStrategy(memoryLayout);
     }
 
-    private static MemoryMeterStrategy createUnsafeStrategy(Optional<MethodHandle> mayBeIsHiddenMH,
-                                                            MemoryLayoutBasedStrategy specStrategy) {
+    private static MemoryMeterStrategy createUnsafeStrategy(MemoryLayoutBasedStrategy specStrategy) {
         if (!VM.hasUnsafe())
             return null;
 
-        Optional<MethodHandle> mayBeIsRecordMH = mayBeIsRecordMethodHandle();
-
         // The hidden method was added in Java 15 so if isHidden exists we are on a version greater or equal to Java 15
-        return mayBeIsHiddenMH.isPresent() ? new UnsafeStrategy(mayBeIsRecordMH.get(), mayBeIsHiddenMH.get(), specStrategy)
-                                           : new PreJava15UnsafeStrategy(mayBeIsRecordMH, specStrategy);
+        return ReflectionUtils.supportsHiddenClasses() ? new UnsafeStrategy(specStrategy)
+                                                       : new PreJava15UnsafeStrategy(specStrategy);
 
     }
 
-    /**
-     * Returns the {@code MethodHandle} for the {@code Class.isHidden} method introduced in Java 15 if we are running
-     * on a Java 15+ JVM.
-     * @return an {@code Optional} for the {@code MethodHandle}
-     */
-    private static Optional<MethodHandle> mayBeIsHiddenMethodHandle() {
-        return mayBeMethodHandle(Class.class, "isHidden");
+    private synchronized MemoryMeterStrategy instrumentationStrategy() {
+
+        if (instrumentationStrategy == null && inst != null)
+            instrumentationStrategy = new InstrumentationStrategy(inst);
+
+        return instrumentationStrategy;
     }
 
-    /**
-     * Returns the {@code MethodHandle} for the {@code Class.isRecord} method introduced in Java 14 if we are running
-     * on a Java 14+ JVM.
-     * @return an {@code Optional} for the {@code MethodHandle}
-     */
-    private static Optional<MethodHandle> mayBeIsRecordMethodHandle() {
-        return mayBeMethodHandle(Class.class, "isRecord");
+    private synchronized MemoryMeterStrategy instrumentationAndSpecStrategy() {
+
+        if (instrumentationAndSpecStrategy == null && inst != null)
+            instrumentationAndSpecStrategy = new InstrumentationAndSpecStrategy(inst);
+
+        return instrumentationAndSpecStrategy;
     }
 
-    private static MemoryMeterStrategy createInstrumentationStrategy() {
-        return instrumentation != null ? new InstrumentationStrategy(instrumentation) : null;
+    private synchronized MemoryMeterStrategy specStrategy() {
+
+        if (specStrategy == null)
+            specStrategy = createSpecStrategy(MemoryMeterStrategy.MEMORY_LAYOUT);
+
+        return specStrategy;
     }
 
-    private static MemoryMeterStrategy createInstrumentationAndSpecStrategy() {
-        return instrumentation != null ? new InstrumentationAndSpecStrategy(instrumentation) : null;
+    private synchronized MemoryMeterStrategy unsafeStrategy() {
+
+        if (unsafeStrategy == null)
+            unsafeStrategy = createUnsafeStrategy((MemoryLayoutBasedStrategy) specStrategy());
+
+        return unsafeStrategy;
+    }
+
+    private synchronized MemoryMeterStrategy adaptiveStrategy() {
+
+        // Instrumentation.getObjectSize became an intrinsic in Java 16, cheaper than any per class lookup, in which
+        // case it is used directly rather than through the adaptive strategy
+        if (hasInstrumentation() && !VM.isPreJava16JVM())
+            return instrumentationStrategy();
+
+        if (adaptiveStrategy == null)
+            adaptiveStrategy = new AdaptiveStrategy(instrumentationStrategy(),
+                                                    unsafeStrategy(),
+                                                    (MemoryLayoutBasedStrategy) specStrategy());
+
+        return adaptiveStrategy;
     }
 
     public boolean hasInstrumentation() {
-        return instrumentationStrategy != null;
+        return inst != null;
     }
 
     public boolean hasUnsafe() {
-        return unsafeStrategy != null;
+        return VM.hasUnsafe();
+    }
+
+    /**
+     * Returns the strategy that should be used to compute class layouts in place of the specified one.
+     * <p>The {@code Instrumentation} based strategies cannot compute class layouts, in which case the {@code Unsafe}
+     * strategy is returned if available or the {@code Specification} one otherwise.</p>
+     *
+     * @param strategy the strategy used to measure objects
+     * @return the strategy that should be used to compute class layouts
+     */
+    public MemoryLayoutBasedStrategy getLayoutStrategy(MemoryMeterStrategy strategy) {
+
+        if (strategy instanceof MemoryLayoutBasedStrategy && !(strategy instanceof InstrumentationAndSpecStrategy))
+            return (MemoryLayoutBasedStrategy) strategy;
+
+        return (MemoryLayoutBasedStrategy) (hasUnsafe() ? unsafeStrategy() : specStrategy());
+    }
+
+    /**
+     * Returns a {@code Specification} strategy computing the sizes as if the JVM was using the specified memory layout.
+     * <p>The fields are laid out by the algorithm of the running JVM, only the sizes of the headers, of the references
+     * and the alignments change. A new strategy is created for each hypothetical layout, with its own caches.</p>
+     *
+     * @param memoryLayout the memory layout
+     * @return a {@code Specification} strategy using the specified memory layout
+     */
+    public MemoryLayoutBasedStrategy getSpecStrategy(MemoryLayoutSpecification memoryLayout) {
+
+        if (memoryLayout == MemoryMeterStrategy.MEMORY_LAYOUT)
+            return (MemoryLayoutBasedStrategy) specStrategy();
+
+        return createSpecStrategy(memoryLayout);
     }
 
     public MemoryMeterStrategy getStrategy(List<Guess> guessList) {
@@ -175,11 +214,15 @@ public final class MemoryMeterStrategies {
 
             Guess guess = guesses.poll();
 
-            if (guess.requireInstrumentation()) {
+            if (guess == Guess.ADAPTIVE) {
+
+                return adaptiveStrategy();
+
+            } else if (guess.requireInstrumentation()) {
 
                 if (hasInstrumentation())
-                    return guess == Guess.INSTRUMENTATION_AND_SPECIFICATION ? instrumentationAndSpecStrategy
-                                                                   : instrumentationStrategy;
+                    return guess == Guess.INSTRUMENTATION_AND_SPECIFICATION ? instrumentationAndSpecStrategy()
+                                                                   : instrumentationStrategy();
 
                 if (guesses.isEmpty())
                     throw new IllegalStateException("Instrumentation is not set; Jamm must be set as -javaagent");
@@ -187,14 +230,14 @@ public final class MemoryMeterStrategies {
             } else if (guess.requireUnsafe()) {
 
                 if (hasUnsafe())
-                    return unsafeStrategy;
+                    return unsafeStrategy();
 
                 if (guesses.isEmpty())
                     throw new IllegalStateException("sun.misc.Unsafe could not be obtained. The SecurityManager must permit access to sun.misc.Unsafe");
 
             } else {
 
-                return specStrategy;
+                return specStrategy();
             }
         }
     }
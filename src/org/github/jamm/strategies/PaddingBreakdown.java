@@ -0,0 +1,166 @@
+package org.github.jamm.strategies;
+
+import java.lang.reflect.Array;
+
+import org.github.jamm.ClassLayout;
+import org.github.jamm.MemoryLayoutSpecification;
+
+import static org.github.jamm.strategies.MemoryLayoutBasedStrategy.measureField;
+
+/**
+ * The breakdown of the shallow size of an object between its header, its fields (or array elements) and the different
+ * kinds of padding added by the JVM.
+ *
+ * <p>The breakdown of the instances of a class is derived from the {@link ClassLayout} computed by the strategy in
+ * use, so that the {@code @Contended} padding and the alignment padding follow the same rules as the measured sizes.
+ * The remaining bytes of the measured size are considered as gaps between the fields (e.g. gaps left by the super
+ * class fields or by the field alignment).</p>
+ * <pre>
+ *  +------------------+-------------+---------------+--------------+-------------------+
+ *  | header (12 bytes)| 4 bytes gap | long (8 bytes)| int (4 bytes)| alignment padding | Total size: 32 bytes
+ *  +------------------+-------------+---------------+--------------+-------------------+
+ * </pre>
+ */
+public final class PaddingBreakdown {
+
+    /**
+     * The size of the object header.
+     */
+    private final long headerSize;
+
+    /**
+     * The size taken by the fields or the array elements.
+     */
+    private final long fieldsSize;
+
+    /**
+     * The size of the gaps between fields.
+     */
+    private final long gapsSize;
+
+    /**
+     * The size of the padding added for the {@code @Contended} annotations.
+     */
+    private final long contendedPaddingSize;
+
+    /**
+     * The size of the padding added to align the object size on the object alignment.
+     */
+    private final long alignmentPaddingSize;
+
+    private PaddingBreakdown(long headerSize, long fieldsSize, long gapsSize, long contendedPaddingSize, long alignmentPaddingSize) {
+        this.headerSize = headerSize;
+        this.fieldsSize = fieldsSize;
+        this.gapsSize = gapsSize;
+        this.contendedPaddingSize = contendedPaddingSize;
+        this.alignmentPaddingSize = alignmentPaddingSize;
+    }
+
+    /**
+     * Returns the breakdown of the shallow size of the instances of a class from their layout.
+     * <p>The measured size might not match the layout instance size (e.g. if the instrumentation strategy is used), in
+     * which case the paddings are capped to what was effectively measured and the remaining bytes are considered as
+     * gaps. The breakdown is the same for all the instances of a given class and can be reused.</p>
+     *
+     * @param layout the layout of the class
+     * @param size the shallow size of the instances as measured by the {@code MemoryMeter}
+     * @return the breakdown of the shallow size of the instances of the class
+     */
+    public static PaddingBreakdown of(ClassLayout layout, long size) {
+
+        long headerSize = layout.headerSize();
+        long fieldsSize = layout.fieldsSize();
+        long paddingSize = Math.max(0, size - headerSize - fieldsSize);
+        long contendedPaddingSize = Math.min(layout.contendedPaddingSize(), paddingSize);
+        long alignmentPaddingSize = Math.min(layout.alignmentPaddingSize(), paddingSize - contendedPaddingSize);
+        long gapsSize = paddingSize - contendedPaddingSize - alignmentPaddingSize;
+
+        return new PaddingBreakdown(headerSize, fieldsSize, gapsSize, contendedPaddingSize, alignmentPaddingSize);
+    }
+
+    /**
+     * Returns the breakdown of the shallow size of the specified array.
+     *
+     * @param array the measured array
+     * @param size the shallow size of the array as measured by the {@code MemoryMeter}
+     * @param memoryLayout the memory layout used to measure the array
+     * @return the breakdown of the shallow size of the specified array
+     */
+    public static PaddingBreakdown ofArray(Object array, long size, MemoryLayoutSpecification memoryLayout) {
+
+        Class<?> componentType = array.getClass().getComponentType();
+        int elementSize = componentType.isPrimitive() ? measureField(componentType) : memoryLayout.getReferenceSize();
+        long headerSize = memoryLayout.getArrayHeaderSize();
+        long elementsSize = Array.getLength(array) * (long) elementSize;
+        return new PaddingBreakdown(headerSize, elementsSize, 0, 0, Math.max(0, size - headerSize - elementsSize));
+    }
+
+    /**
+     * Returns the size of the object header.
+     *
+     * @return the size of the object header
+     */
+    public long headerSize() {
+        return headerSize;
+    }
+
+    /**
+     * Returns the size taken by the fields or by the array elements.
+     *
+     * @return the size taken by the fields or by the array elements
+     */
+    public long fieldsSize() {
+        return fieldsSize;
+    }
+
+    /**
+     * Returns the size of the gaps left between the fields.
+     *
+     * @return the size of the gaps left between the fields
+     */
+    public long gapsSize() {
+        return gapsSize;
+    }
+
+    /**
+     * Returns the size of the padding added for the {@code @Contended} annotations.
+     *
+     * @return the size of the padding added for the {@code @Contended} annotations
+     */
+    public long contendedPaddingSize() {
+        return contendedPaddingSize;
+    }
+
+    /**
+     * Returns the size of the padding added to align the object size on the object alignment.
+     *
+     * @return the size of the padding added to align the object size on the object alignment
+     */
+    public long alignmentPaddingSize() {
+        return alignmentPaddingSize;
+    }
+
+    /**
+     * Returns the number of bytes lost to padding and gaps.
+     *
+     * @return the number of bytes lost to padding and gaps
+     */
+    public long wastedSize() {
+        return gapsSize + contendedPaddingSize + alignmentPaddingSize;
+    }
+
+    /**
+     * Returns the shallow size of the object.
+     *
+     * @return the shallow size of the object
+     */
+    public long size() {
+        return headerSize + fieldsSize + wastedSize();
+    }
+
+    @Override
+    public String toString() {
+        return "PaddingBreakdown [header=" + headerSize + ", fields=" + fieldsSize + ", gaps=" + gapsSize
+                + ", contendedPadding=" + contendedPaddingSize + ", alignmentPadding=" + alignmentPaddingSize + "]";
+    }
+}
@@ -3,6 +3,8 @@ package org.github.jamm.strategies;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
+import org.github.jamm.MemoryLayoutSpecification;
+
 import static org.github.jamm.strategies.ContendedUtils.countContentionGroup;
 import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
 import static org.github.jamm.strategies.ContendedUtils.isContendedEnabled;
@@ -102,6 +104,13 @@ import static org.github.jamm.utils.MathUtils.roundTo;
  */
 class PreJava15SpecStrategy extends MemoryLayoutBasedStrategy {
 
+    PreJava15SpecStrategy() {
+    }
+
+    PreJava15SpecStrategy(MemoryLayoutSpecification memoryLayout) {
+        super(memoryLayout);
+    }
+
     /**
      * Align the size of the fields.
      * <p>Prior to JDK 15 the field blocks for each super class were aligned based using the object reference size.
@@ -111,14 +120,14 @@ class PreJava15SpecStrategy extends MemoryLayoutBasedStrategy {
      * @return the size of the class fields aligned.
      */
     protected long alignFieldBlock(long sizeOfDeclaredFields) {
-        return roundTo(sizeOfDeclaredFields, MEMORY_LAYOUT.getReferenceSize());
+        return roundTo(sizeOfDeclaredFields, memoryLayout.getReferenceSize());
     }
 
     @Override
     public final long measureInstance(Object instance, Class<?> type) {
 
         long size = sizeOfFields(type, false);
-        return roundTo(size, MEMORY_LAYOUT.getObjectAlignment());
+        return roundTo(size, memoryLayout.getObjectAlignment());
     }
 
     private long sizeOfFields(Class<?> type, boolean useFieldBlockAlignment) {
@@ -126,7 +135,7 @@ class PreJava15SpecStrategy extends MemoryLayoutBasedStrategy {
         final boolean isContendedEnabled = isContendedEnabled(type); 
 
         if (type == Object.class)
-            return MEMORY_LAYOUT.getObjectHeaderSize();
+            return memoryLayout.getObjectHeaderSize();
 
         long size = sizeOfFields(type.getSuperclass(), true);
 
@@ -135,7 +144,7 @@ class PreJava15SpecStrategy extends MemoryLayoutBasedStrategy {
         ContentionGroupsCounter contentionGroupCounter = null;
         for (Field f : type.getDeclaredFields()) {
             if (!Modifier.isStatic(f.getModifiers())) {
-                int fieldSize = measureField(f.getType());
+                int fieldSize = sizeOfField(f.getType());
 
                 sizeTakenBy8BytesFields += fieldSize & 8; // count only the 8 bytes fields
                 sizeOfDeclaredField += fieldSize;
@@ -162,10 +171,10 @@ class PreJava15SpecStrategy extends MemoryLayoutBasedStrategy {
          * in a superclass and subclass, represent distinct contention groups.
          */
         if (isContendedEnabled && isClassAnnotatedWithContended(type))
-            size += (MEMORY_LAYOUT.getContendedPaddingWidth() << 1);
+            size += (memoryLayout.getContendedPaddingWidth() << 1);
 
         if (contentionGroupCounter != null)
-            size += (contentionGroupCounter.count() + 1) * MEMORY_LAYOUT.getContendedPaddingWidth(); // 1 padding before each group + 1 at the end
+            size += (contentionGroupCounter.count() + 1) * memoryLayout.getContendedPaddingWidth(); // 1 padding before each group + 1 at the end
 
         return size;
     }
@@ -1,11 +1,10 @@
 package org.github.jamm.strategies;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Optional;
 
 import org.github.jamm.CannotMeasureObjectException;
+import org.github.jamm.ClassLayout;
 import org.github.jamm.VM;
 
 import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
@@ -15,6 +14,7 @@ import static org.github.jamm.strategies.ContendedUtils.isFieldAnnotatedWithCont
 import sun.misc.Unsafe;
 
 import static org.github.jamm.utils.MathUtils.roundTo;
+import static org.github.jamm.utils.ReflectionUtils.isRecord;
 
 /**
  * {@code MemoryMeterStrategy} relying on {@code Unsafe} to measure object sizes for Java version pre-15.
@@ -29,20 +29,12 @@ final class PreJava15UnsafeStrategy extends MemoryLayoutBasedStrategy {
 
     private final static int ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(Object[].class);
 
-    /**
-     * Method Handle for the {@code Class.isRecord} method introduced in Java 14.
-     */
-    private final Optional<MethodHandle> mayBeIsRecordMH;
-
     /**
      * The strategy used for records.
      */
     private final MemoryLayoutBasedStrategy recordsStrategy;
 
-    public PreJava15UnsafeStrategy(Optional<MethodHandle> mayBeIsRecordMH,
-                                   MemoryLayoutBasedStrategy strategy) {
-
-        this.mayBeIsRecordMH = mayBeIsRecordMH;
+    public PreJava15UnsafeStrategy(MemoryLayoutBasedStrategy strategy) {
         this.recordsStrategy = strategy;
     }
 
@@ -53,7 +45,7 @@ final class PreJava15UnsafeStrategy extends MemoryLayoutBasedStrategy {
 
             // If the class is a record 'unsafe.objectFieldOffset(f)' will throw an UnsupportedOperationException
             // In those cases, rather than failing, we rely on the Spec strategy to provide the measurement.
-            if (mayBeIsRecordMH.isPresent() &&  ((Boolean) mayBeIsRecordMH.get().invoke(type)))
+            if (isRecord(type))
                 return recordsStrategy.measureInstance(instance, type);
 
             int annotatedClassesWithoutFields = 0; // Keep track of the @Contended annotated classes without fields
@@ -100,6 +92,22 @@ final class PreJava15UnsafeStrategy extends MemoryLayoutBasedStrategy {
         }
     }
 
+    @Override
+    protected ClassLayout computeLayout(Class<?> type) {
+
+        try {
+
+            // The offsets of the hidden classes and records fields cannot be retrieved through Unsafe
+            if (isRecord(type))
+                return recordsStrategy.layoutOf(type);
+
+            return newClassLayout(type, UNSAFE::objectFieldOffset);
+        }
+        catch (Throwable e) {
+            throw new CannotMeasureObjectException("The layout of " + type + " cannot be computed by the unsafe strategy", e);
+        }
+    }
+
     @Override
     protected int arrayBaseOffset() {
         return ARRAY_BASE_OFFSET;
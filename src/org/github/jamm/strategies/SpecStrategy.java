@@ -1,65 +1,62 @@
 package org.github.jamm.strategies;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-
-import static org.github.jamm.strategies.ContendedUtils.countContentionGroup;
-import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
-import static org.github.jamm.strategies.ContendedUtils.isContendedEnabled;
-import static org.github.jamm.utils.MathUtils.roundTo;
+import org.github.jamm.ClassLayout;
+import org.github.jamm.MemoryLayoutSpecification;
 
 /**
  * {@code MemoryMeterStrategy} that computes the size of the memory occupied by an object, in a Java 15+ JVM, based on 
  * the JVM information.
  * <p>In Java 15 the Field layout computation was optimized (https://bugs.openjdk.org/browse/JDK-8237767) to eliminate 
- * a certain amount of the inefficiency from the previous versions (see {@link PreJava15SpecStrategy}).</p>
+ * a certain amount of the inefficiency from the previous versions (see {@link PreJava15SpecStrategy}).
+ * This strategy reproduces the HotSpot algorithm (see {@link FieldLayoutBuilder}), including the empty slots filled in
+ * the super classes, the {@code @Contended} paddings and the layout produced when {@code UseEmptySlotsInSupers} is
+ * disabled. Hidden classes and records being laid out as any other class, their sizes are exact too.</p>
  */
 class SpecStrategy extends MemoryLayoutBasedStrategy {
 
-    @Override
-    public final long measureInstance(Object instance, Class<?> type) {
-
-        long size = MEMORY_LAYOUT.getObjectHeaderSize() + sizeOfDeclaredFields(type);
-        while ((type = type.getSuperclass()) != Object.class && type != null)
-            size += sizeOfDeclaredFields(type);
+    /**
+     * The builder used to emulate the HotSpot field layouts.
+     */
+    private final FieldLayoutBuilder builder;
 
-        return roundTo(size, MEMORY_LAYOUT.getObjectAlignment());
-    }
+    /**
+     * The emulated field layouts, computed once per class from the layout of the super class.
+     */
+    private final ClassValue<FieldLayoutBuilder.Layout> fieldLayouts = new ClassValue<FieldLayoutBuilder.Layout>() {
+        @Override
+        protected FieldLayoutBuilder.Layout computeValue(Class<?> type) {
+            Class<?> superclass = type.getSuperclass();
+            return builder.layout(type, superclass == null ? null : get(superclass));
+        }
+    };
 
     /**
-     * Returns the size of the declared fields of the specified class.
+     * Creates a new {@code SpecStrategy}.
      *
-     * @param type the class for which the size of its declared fields must be returned
-     * @return the size of the declared fields of the specified class
+     * @param memoryLayout the memory layout used to compute the sizes
+     * @param useEmptySlotsInSupers the value of the {@code UseEmptySlotsInSupers} JVM option
      */
-    private long sizeOfDeclaredFields(Class<?> type) {
-
-        long size = 0;
-        ContentionGroupsCounter contentionGroupCounter = null;
-        for (Field f : type.getDeclaredFields())
-        {
-            if (!Modifier.isStatic(f.getModifiers())) {
-                size += measureField(f.getType());
-                // If some fields are annotated with @Contended we need to count the contention groups to know how much padding needs to be added
-                // In Java 17, disabling Contended has no effect on field level annotations
-                contentionGroupCounter = countContentionGroup(contentionGroupCounter, f);
-            }
-        }
+    SpecStrategy(MemoryLayoutSpecification memoryLayout, boolean useEmptySlotsInSupers) {
+        super(memoryLayout);
+        this.builder = new FieldLayoutBuilder(memoryLayout.getObjectHeaderSize(),
+                                              memoryLayout.getReferenceSize(),
+                                              memoryLayout.getContendedPaddingWidth(),
+                                              memoryLayout.getObjectAlignment(),
+                                              useEmptySlotsInSupers);
+    }
 
-        /* From Contended Javadoc:
-         * The class level {@code @Contended} annotation is not inherited and has
-         * no effect on the fields declared in any sub-classes. The effects of all
-         * {@code @Contended} annotations, however, remain in force for all
-         * subclass instances, providing isolation of all the defined contention
-         * groups. Contention group tags are not inherited, and the same tag used
-         * in a superclass and subclass, represent distinct contention groups.
-         */
-        if (isClassAnnotatedWithContended(type) && isContendedEnabled(type))
-            size += (MEMORY_LAYOUT.getContendedPaddingWidth() << 1); 
+    @Override
+    public final long measureInstance(Object instance, Class<?> type) {
+        return fieldLayouts.get(type).instanceSize();
+    }
 
-        if (contentionGroupCounter != null)
-            size += contentionGroupCounter.count() * (MEMORY_LAYOUT.getContendedPaddingWidth() << 1);
+    @Override
+    protected ClassLayout computeLayout(Class<?> type) {
+        return newClassLayout(type, fieldLayouts.get(type)::offsetOf);
+    }
 
-        return size;
+    @Override
+    protected long contendedPaddingSize(Class<?> type) {
+        return fieldLayouts.get(type).contendedPaddingSize();
     }
 }
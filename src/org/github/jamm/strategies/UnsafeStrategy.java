@@ -1,16 +1,18 @@
 package org.github.jamm.strategies;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
 import org.github.jamm.CannotMeasureObjectException;
+import org.github.jamm.ClassLayout;
 import org.github.jamm.VM;
 
 import static org.github.jamm.strategies.ContendedUtils.isClassAnnotatedWithContended;
 import static org.github.jamm.strategies.ContendedUtils.isContendedEnabled;
 import static org.github.jamm.strategies.ContendedUtils.isFieldAnnotatedWithContended;
 import static org.github.jamm.utils.MathUtils.roundTo;
+import static org.github.jamm.utils.ReflectionUtils.isHidden;
+import static org.github.jamm.utils.ReflectionUtils.isRecord;
 
 import sun.misc.Unsafe;
 
@@ -26,8 +28,8 @@ import sun.misc.Unsafe;
  * and the use of hidden class for lambda. Attempting to use {@code Unsafe.objectFieldOffset} on an hidden class field
  * will result in a {@code UnsupportedOperationException} preventing the {@code UnsafeStrategy} to evaluate correctly
  * the memory used by the class. To avoid that problem {@code UnsafeStrategy} will rely on the {@code SpecStrategy} to
- * measure hidden classes. This can lead to an overestimation of the object size as the {@code SpecStrategy} ignore some 
- * optimizations performed by the JVM</p> 
+ * measure hidden classes. As the {@code SpecStrategy} reproduces the HotSpot field layout algorithm, the sizes of those
+ * classes remain exact.</p>
  */
 public final class UnsafeStrategy extends MemoryLayoutBasedStrategy {
 
@@ -35,26 +37,12 @@ public final class UnsafeStrategy extends MemoryLayoutBasedStrategy {
 
     private final static int ARRAY_BASE_OFFSET = UNSAFE.arrayBaseOffset(Object[].class);
 
-    /**
-     * Method Handle for the {@code Class.isRecord} method introduced in Java 14.
-     */
-    private final MethodHandle isRecordMH;
-
-    /**
-     * Method Handle for the {@code Class.isHidden} method introduced in Java 15.
-     */
-    private final MethodHandle isHiddenMH;
-
     /**
      * The strategy used for hidden classes and records.
      */
     private final MemoryLayoutBasedStrategy hiddenClassesOrRecordsStrategy;
 
-    public UnsafeStrategy(MethodHandle isRecordMH,
-                          MethodHandle isHiddenMH,
-                          MemoryLayoutBasedStrategy strategy) {
-        this.isRecordMH = isRecordMH;
-        this.isHiddenMH = isHiddenMH;
+    public UnsafeStrategy(MemoryLayoutBasedStrategy strategy) {
         this.hiddenClassesOrRecordsStrategy = strategy;
     }
 
@@ -65,7 +53,7 @@ public final class UnsafeStrategy extends MemoryLayoutBasedStrategy {
 
             // If the class is a hidden class ore a record 'unsafe.objectFieldOffset(f)' will throw an UnsupportedOperationException
             // In those cases, rather than failing, we rely on the Spec strategy to provide the measurement.
-            if ((Boolean) isRecordMH.invoke(type) || (Boolean) isHiddenMH.invoke(type))
+            if (isRecord(type) || isHidden(type))
                 return hiddenClassesOrRecordsStrategy.measureInstance(instance, type);
 
             long size = 0;
@@ -101,6 +89,28 @@ public final class UnsafeStrategy extends MemoryLayoutBasedStrategy {
         }
     }
 
+    @Override
+    protected ClassLayout computeLayout(Class<?> type) {
+
+        try {
+
+            // The offsets of the hidden classes and records fields cannot be retrieved through Unsafe
+            if (isRecord(type) || isHidden(type))
+                return hiddenClassesOrRecordsStrategy.layoutOf(type);
+
+            return newClassLayout(type, UNSAFE::objectFieldOffset);
+        }
+        catch (Throwable e) {
+            throw new CannotMeasureObjectException("The layout of " + type + " cannot be computed by the unsafe strategy", e);
+        }
+    }
+
+    @Override
+    protected long contendedPaddingSize(Class<?> type) {
+        // The paddings are the same whatever the strategy used to lay out the fields
+        return hiddenClassesOrRecordsStrategy.contendedPaddingSize(type);
+    }
+
     @Override
     protected int arrayBaseOffset() {
         return ARRAY_BASE_OFFSET;
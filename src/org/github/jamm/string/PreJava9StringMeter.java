@@ -32,4 +32,13 @@ final class PreJava9StringMeter extends  StringMeter {
             throw new CannotAccessFieldException("The value of the 'value' field from java.lang.String cannot be retrieved", e);
         }
     }
+
+    @Override
+    public Object getValue(String s) {
+        try {
+            return valueMH.invoke(s);
+        }  catch (Throwable e) {
+            throw new CannotAccessFieldException("The value of the 'value' field from java.lang.String cannot be retrieved", e);
+        }
+    }
 }
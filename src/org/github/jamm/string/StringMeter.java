@@ -1,18 +1,19 @@
 package org.github.jamm.string;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
-import java.util.Optional;
+import java.util.Arrays;
 
 import sun.misc.Unsafe;
 
 import org.github.jamm.CannotAccessFieldException;
+import org.github.jamm.MemoryLayoutSpecification;
 import org.github.jamm.MemoryMeter;
 import org.github.jamm.MemoryMeterStrategy;
 import org.github.jamm.VM;
 import org.github.jamm.strategies.MemoryMeterStrategies;
-import org.github.jamm.utils.MethodHandleUtils;
+import org.github.jamm.utils.ReflectionUtils;
 
+import static org.github.jamm.utils.ArrayMeasurementUtils.computeArraySize;
 import static org.github.jamm.utils.MethodHandleUtils.methodHandle;
 
 /**
@@ -43,6 +44,53 @@ public abstract class StringMeter {
         return STRING_SHALLOW_SIZE + measureStringValue(strategy, s);
     }
 
+    /**
+     * Measure the deep size of the specified Strings, {@code null} elements being ignored.
+     *
+     * <p>The values are retrieved directly and their sizes computed from their lengths, in a single loop. Each element
+     * is measured independently: a String present several times in the array is measured several times.</p>
+     *
+     * @param memoryLayout the memory layout in which the values are measured
+     * @param strings the strings
+     * @return the sum of the deep sizes of the strings
+     */
+    public long measureDeep(MemoryLayoutSpecification memoryLayout, String[] strings) {
+        return measureDeep(memoryLayout, Arrays.asList(strings));
+    }
+
+    /**
+     * Measure the deep size of the specified Strings, {@code null} elements being ignored.
+     *
+     * <p>The values are retrieved directly and their sizes computed from their lengths, in a single loop. Each element
+     * is measured independently: a String returned several times by the iterable is measured several times.</p>
+     *
+     * @param memoryLayout the memory layout in which the values are measured
+     * @param strings the strings
+     * @return the sum of the deep sizes of the strings
+     */
+    public long measureDeep(MemoryLayoutSpecification memoryLayout, Iterable<String> strings) {
+        long size = 0;
+        for (String s : strings) {
+            if (s != null)
+                size += STRING_SHALLOW_SIZE + measureValue(memoryLayout, getValue(s));
+        }
+        return size;
+    }
+
+    /**
+     * Computes the size of the specified String value.
+     *
+     * @param memoryLayout the memory layout in which the value is measured
+     * @param value the value: a {@code byte} array since Java 9 and a {@code char} array before
+     * @return the size of the specified value
+     */
+    private static long measureValue(MemoryLayoutSpecification memoryLayout, Object value) {
+        if (value instanceof byte[])
+            return computeArraySize(memoryLayout.getArrayHeaderSize(), ((byte[]) value).length, Byte.BYTES, memoryLayout.getObjectAlignment());
+
+        return computeArraySize(memoryLayout.getArrayHeaderSize(), ((char[]) value).length, Character.BYTES, memoryLayout.getObjectAlignment());
+    }
+
     /**
      * Measure the size of the value of the specified String.
      *
@@ -52,6 +100,14 @@ public abstract class StringMeter {
      */
     protected abstract long measureStringValue(MemoryMeterStrategy strategy, String s);
 
+    /**
+     * Returns the value of the specified String.
+     *
+     * @param s the string
+     * @return the value of the specified String: a {@code char} array before Java 9 and a {@code byte} array since
+     */
+    public abstract Object getValue(String s);
+
     /**
      * Creates a new {@code StringMeter} instance.
      * @return a new {@code StringMeter} instance.
@@ -61,15 +117,14 @@ public abstract class StringMeter {
         try {
             Field field = String.class.getDeclaredField("value");
 
-            Optional<MethodHandle> mayBeTrySetAccessible = MethodHandleUtils.mayBeMethodHandle(Field.class, "trySetAccessible"); // Added in Java 9
-            if (mayBeTrySetAccessible.isPresent()) {
+            if (ReflectionUtils.supportsModules()) {
 
                 // Base on the JMH benchmarks, Unsafe is faster than using a MethodHandle so we try to use Unsafe first and default to reflection if it is unavailable.  
                 Unsafe unsafe = VM.getUnsafe();
 
                 if (unsafe == null) {
 
-                    if ((boolean) mayBeTrySetAccessible.get().invoke(field)) {
+                    if (ReflectionUtils.trySetAccessible(field)) {
                         return new PlainReflectionStringMeter(methodHandle(field));
                     }
                     throw new CannotAccessFieldException("The value of the 'value' field from java.lang.String"
@@ -23,4 +23,9 @@ final class UnsafeStringMeter extends StringMeter {
     public long measureStringValue(MemoryMeterStrategy strategy, String s) {
         return strategy.measureArray((byte[]) unsafe.getObjectVolatile(s, valueFieldOffset));
     }
+
+    @Override
+    public Object getValue(String s) {
+        return unsafe.getObjectVolatile(s, valueFieldOffset);
+    }
 }
@@ -9,6 +9,8 @@ public final class ArrayMeasurementUtils {
 
     /**
      * Computes the size of an array from its base offset, length, elementSize and object alignment.
+     * <p>The elements being aligned on their size, the base offset is rounded up to the element size. It only makes
+     * a difference for the arrays of 8 bytes elements, from Java 22 or on 32 bits JVMs.</p>
      *
      * @param arrayBaseOffset the array base offset
      * @param length the array length
@@ -17,7 +19,7 @@ public final class ArrayMeasurementUtils {
      * @return the size of the array
      */
     public static long computeArraySize(int arrayBaseOffset, int length, int elementSize, int objectAlignment) {
-        return roundTo(arrayBaseOffset + length * (long) elementSize, objectAlignment);
+        return roundTo(roundTo(arrayBaseOffset, elementSize) + length * (long) elementSize, objectAlignment);
     }
 
     private ArrayMeasurementUtils() {
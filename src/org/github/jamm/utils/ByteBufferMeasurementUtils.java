@@ -1,7 +1,9 @@
 package org.github.jamm.utils;
 
 import java.lang.reflect.Field;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 
 import org.github.jamm.VM;
 import org.github.jamm.accessors.FieldAccessor;
@@ -21,6 +23,21 @@ public final class ByteBufferMeasurementUtils {
      */
     private static final Field ATT_FIELD = getDeclaredField(ByteBuffer.allocateDirect(0).getClass(), "att");
 
+    /**
+     * The field used to store the file descriptor of file-mapped ByteBuffers.
+     */
+    private static final Field FD_FIELD = getDeclaredField(MappedByteBuffer.class, "fd");
+
+    /**
+     * The field used to store the address of direct ByteBuffers.
+     */
+    private static final Field ADDRESS_FIELD = getDeclaredField(Buffer.class, "address");
+
+    /**
+     * The offset of the address field or {@code -1} if {@code Unsafe} is not available.
+     */
+    private static final long ADDRESS_FIELD_OFFSET = VM.getUnsafe() == null ? -1 : VM.getUnsafe().objectFieldOffset(ADDRESS_FIELD);
+
     /**
      * Retrieves the underlying capacity of the specified buffer.
      *
@@ -30,24 +47,74 @@ public final class ByteBufferMeasurementUtils {
      */
     public static int underlyingCapacity(ByteBuffer buffer, FieldAccessor accessor) {
 
-        if (buffer.isDirect()) {
+        if (buffer.isDirect())
+            return underlyingBuffer(buffer, accessor).capacity();
 
-            if (buffer.isReadOnly() && VM.isPreJava12JVM()) {
-                // Pre-java 12, a DirectByteBuffer created from another DirectByteBuffer was using the source buffer as an attachment
-                // for liveness rather than the source buffer's attachment (https://bugs.openjdk.org/browse/JDK-8208362)
-                // Therefore for checking slices we need to go one level deeper.
-                buffer = (ByteBuffer) accessor.getFieldValue(buffer, ATT_FIELD);
-            }
-            ByteBuffer att = (ByteBuffer) accessor.getFieldValue(buffer, ATT_FIELD);
-            return att == null ? buffer.capacity() : att.capacity();
-        }
+        return backingArray(buffer, accessor).length;
+    }
+
+    /**
+     * Retrieves the array backing the specified heap buffer, even if the buffer is read-only.
+     *
+     * @param buffer the heap buffer
+     * @param accessor the field accessor for this java version
+     * @return the array backing the specified heap buffer
+     */
+    public static byte[] backingArray(ByteBuffer buffer, FieldAccessor accessor) {
+
+        if (buffer.isReadOnly())
+            return (byte[]) accessor.getFieldValue(buffer, HB_FIELD);
+
+        return buffer.array();
+    }
+
+    /**
+     * Retrieves the address of the first byte of the specified direct buffer.
+     *
+     * @param buffer the direct buffer
+     * @param accessor the field accessor for this java version, only used if {@code Unsafe} is not available
+     * @return the address of the first byte of the specified direct buffer
+     */
+    public static long address(ByteBuffer buffer, FieldAccessor accessor) {
+
+        if (ADDRESS_FIELD_OFFSET >= 0)
+            return VM.getUnsafe().getLong(buffer, ADDRESS_FIELD_OFFSET);
+
+        return (Long) accessor.getFieldValue(buffer, ADDRESS_FIELD);
+    }
+
+    /**
+     * Retrieves the direct buffer owning the native memory used by the specified direct buffer. Slices and duplicates
+     * share the native memory of the buffer they have been created from and keep it alive through their attachment.
+     * <p>Pre-java 12, a buffer created from another buffer was using the source buffer as an attachment rather than
+     * the source buffer's attachment (https://bugs.openjdk.org/browse/JDK-8208362), the attachments are therefore
+     * followed until reaching the buffer that owns the memory, whatever the number of slices or duplicates in between.</p>
+     *
+     * @param buffer the direct buffer
+     * @param accessor the field accessor for this java version
+     * @return the buffer owning the native memory used by the specified buffer, which is the buffer itself if it was
+     * not created from another buffer
+     */
+    public static ByteBuffer underlyingBuffer(ByteBuffer buffer, FieldAccessor accessor) {
 
-        if (buffer.isReadOnly()) {
-            byte[] hb = (byte[]) accessor.getFieldValue(buffer, HB_FIELD);
-            return hb.length;
+        Object att = accessor.getFieldValue(buffer, ATT_FIELD);
+        while (att instanceof ByteBuffer) {
+            buffer = (ByteBuffer) att;
+            att = accessor.getFieldValue(buffer, ATT_FIELD);
         }
+        return buffer;
+    }
 
-        return buffer.array().length;
+    /**
+     * Checks if the specified direct buffer maps a file region rather than some memory allocated by the JVM.
+     *
+     * @param buffer the direct buffer
+     * @param accessor the field accessor for this java version
+     * @return {@code true} if the specified buffer maps a file region, {@code false} otherwise.
+     */
+    public static boolean isFileMapped(ByteBuffer buffer, FieldAccessor accessor) {
+        // All direct buffers extend MappedByteBuffer but only the file-mapped ones have a file descriptor
+        return accessor.getFieldValue(underlyingBuffer(buffer, accessor), FD_FIELD) != null;
     }
 
     /**
@@ -0,0 +1,164 @@
+package org.github.jamm.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.github.jamm.CannotMeasureObjectException;
+import org.github.jamm.accessors.FieldAccessor;
+
+import static org.github.jamm.utils.MethodHandleUtils.methodHandle;
+
+/**
+ * Utility methods for the {@code java.lang.foreign.MemorySegment}s of the Foreign Function and Memory API.
+ *
+ * <p>The library being compiled for Java 8, the {@code MemorySegment} methods are invoked through {@code MethodHandle}s
+ * which are only available if the JVM provides the final shape of the API ({@code address()} returning a {@code long}),
+ * which is the case from Java 21 onward.</p>
+ */
+public final class MemorySegmentUtils {
+
+    /**
+     * The {@code MemorySegment} interface or {@code null} if it is not available.
+     */
+    private static final Class<?> MEMORY_SEGMENT_CLASS = getMemorySegmentClass();
+
+    private static final MethodHandle IS_NATIVE_MH = segmentMethodHandle("isNative");
+
+    private static final MethodHandle IS_MAPPED_MH = segmentMethodHandle("isMapped");
+
+    private static final MethodHandle ADDRESS_MH = segmentMethodHandle("address");
+
+    private static final MethodHandle BYTE_SIZE_MH = segmentMethodHandle("byteSize");
+
+    /**
+     * The field used by the buffers created from a segment to store that segment or {@code null} if it does not exist.
+     */
+    private static final Field BUFFER_SEGMENT_FIELD = getBufferSegmentField();
+
+    private static Class<?> getMemorySegmentClass() {
+        try {
+            Class<?> cls = Class.forName("java.lang.foreign.MemorySegment");
+            // Before Java 20, address() was returning a MemoryAddress
+            return cls.getMethod("address").getReturnType() == long.class ? cls : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle segmentMethodHandle(String methodName) {
+        if (MEMORY_SEGMENT_CLASS == null)
+            return null;
+
+        try {
+            Method method = MEMORY_SEGMENT_CLASS.getMethod(methodName);
+            return methodHandle(method);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field getBufferSegmentField() {
+        if (MEMORY_SEGMENT_CLASS == null)
+            return null;
+
+        try {
+            Field field = Buffer.class.getDeclaredField("segment");
+            return field.getType() == MEMORY_SEGMENT_CLASS ? field : null;
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the {@code MemorySegment} API is available.
+     *
+     * @return {@code true} if the {@code MemorySegment} API is available, {@code false} otherwise.
+     */
+    public static boolean isSupported() {
+        return MEMORY_SEGMENT_CLASS != null;
+    }
+
+    /**
+     * Checks if the specified object is a {@code MemorySegment}.
+     *
+     * @param object the object to check
+     * @return {@code true} if the specified object is a {@code MemorySegment}, {@code false} otherwise.
+     */
+    public static boolean isMemorySegment(Object object) {
+        return MEMORY_SEGMENT_CLASS != null && MEMORY_SEGMENT_CLASS.isInstance(object);
+    }
+
+    /**
+     * Checks if the specified segment is a native segment, including the segments mapping a file region.
+     *
+     * @param segment the segment
+     * @return {@code true} if the specified segment is a native segment, {@code false} if it is a heap segment.
+     */
+    public static boolean isNative(Object segment) {
+        try {
+            return (boolean) IS_NATIVE_MH.invoke(segment);
+        } catch (Throwable e) {
+            throw new CannotMeasureObjectException("The native state of the segment could not be retrieved", e);
+        }
+    }
+
+    /**
+     * Checks if the specified segment maps a file region.
+     *
+     * @param segment the segment
+     * @return {@code true} if the specified segment maps a file region, {@code false} otherwise.
+     */
+    public static boolean isMapped(Object segment) {
+        try {
+            return (boolean) IS_MAPPED_MH.invoke(segment);
+        } catch (Throwable e) {
+            throw new CannotMeasureObjectException("The mapped state of the segment could not be retrieved", e);
+        }
+    }
+
+    /**
+     * Returns the address of the specified native segment.
+     *
+     * @param segment the native segment
+     * @return the address of the specified native segment
+     */
+    public static long address(Object segment) {
+        try {
+            return (long) ADDRESS_MH.invoke(segment);
+        } catch (Throwable e) {
+            throw new CannotMeasureObjectException("The address of the segment could not be retrieved", e);
+        }
+    }
+
+    /**
+     * Returns the size in bytes of the specified segment.
+     *
+     * @param segment the segment
+     * @return the size in bytes of the specified segment
+     */
+    public static long byteSize(Object segment) {
+        try {
+            return (long) BYTE_SIZE_MH.invoke(segment);
+        } catch (Throwable e) {
+            throw new CannotMeasureObjectException("The size of the segment could not be retrieved", e);
+        }
+    }
+
+    /**
+     * Returns the segment from which the specified buffer has been created through {@code MemorySegment.asByteBuffer()}.
+     *
+     * @param buffer the buffer
+     * @param accessor the field accessor for this java version
+     * @return the segment from which the specified buffer has been created or {@code null} if the buffer was not
+     * created from a segment.
+     */
+    public static Object bufferSegment(ByteBuffer buffer, FieldAccessor accessor) {
+        return BUFFER_SEGMENT_FIELD == null ? null : accessor.getFieldValue(buffer, BUFFER_SEGMENT_FIELD);
+    }
+
+    private MemorySegmentUtils() {
+    }
+}
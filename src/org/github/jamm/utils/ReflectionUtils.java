@@ -0,0 +1,253 @@
+package org.github.jamm.utils;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.github.jamm.utils.MethodHandleUtils.mayBeMethodHandle;
+import static org.github.jamm.utils.MethodHandleUtils.methodHandle;
+
+/**
+ * Utility methods giving access to the reflection APIs introduced after Java 8.
+ *
+ * <p>This version is the Java 8 one: it reaches those APIs through {@code MethodHandle}s when the JVM provides them.
+ * The multi-release JAR contains versions of this class calling them directly for Java 11
+ * ({@code src-java11}) and Java 17 ({@code src-java17}). The classes must therefore keep the same public methods.</p>
+ */
+public final class ReflectionUtils {
+
+    /**
+     * The {@code MethodHandle} for the {@code AccessibleObject.trySetAccessible} method introduced in Java 9.
+     */
+    private static final Optional<MethodHandle> MAY_BE_TRY_SET_ACCESSIBLE_MH = mayBeMethodHandle(AccessibleObject.class, "trySetAccessible");
+
+    /**
+     * The {@code MethodHandle} for the {@code MethodHandles.privateLookupIn} method introduced in Java 9.
+     */
+    private static final Optional<MethodHandle> MAY_BE_PRIVATE_LOOKUP_IN_MH = mayBePrivateLookupInMethodHandle();
+
+    /**
+     * The {@code MethodHandle} creating the getters of the non-volatile fields from the {@code VarHandle}s introduced
+     * in Java 9: {@code MethodHandles.Lookup.unreflectVarHandle} followed by {@code VarHandle.toMethodHandle(GET)}.
+     */
+    private static final Optional<MethodHandle> MAY_BE_VAR_HANDLE_GETTER_MH = mayBeVarHandleGetterMethodHandle("GET");
+
+    /**
+     * The {@code MethodHandle} creating the getters of the final and volatile fields from the {@code VarHandle}s
+     * introduced in Java 9: {@code MethodHandles.Lookup.unreflectVarHandle} followed by
+     * {@code VarHandle.toMethodHandle(GET_VOLATILE)}.
+     */
+    private static final Optional<MethodHandle> MAY_BE_VOLATILE_VAR_HANDLE_GETTER_MH = mayBeVarHandleGetterMethodHandle("GET_VOLATILE");
+
+    /**
+     * The type of the getters created by {@link #varHandleGetter}.
+     */
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * The {@code MethodHandle} for the {@code Class.isRecord} method introduced in Java 14.
+     */
+    private static final Optional<MethodHandle> MAY_BE_IS_RECORD_MH = mayBeMethodHandle(Class.class, "isRecord");
+
+    /**
+     * The {@code MethodHandle} for the {@code Class.isHidden} method introduced in Java 15.
+     */
+    private static final Optional<MethodHandle> MAY_BE_IS_HIDDEN_MH = mayBeMethodHandle(Class.class, "isHidden");
+
+    /**
+     * Checks if the JVM has a Module System, in which case {@link #trySetAccessible} and {@link #privateLookupIn} can
+     * be used.
+     *
+     * @return {@code true} if the JVM is a Java 9+ one, {@code false} otherwise.
+     */
+    public static boolean supportsModules() {
+        return MAY_BE_TRY_SET_ACCESSIBLE_MH.isPresent() && MAY_BE_PRIVATE_LOOKUP_IN_MH.isPresent();
+    }
+
+    /**
+     * Checks if the JVM supports records.
+     *
+     * @return {@code true} if the JVM is a Java 14+ one, {@code false} otherwise.
+     */
+    public static boolean supportsRecords() {
+        return MAY_BE_IS_RECORD_MH.isPresent();
+    }
+
+    /**
+     * Checks if the JVM supports hidden classes. Hidden classes were introduced in Java 15, at the same time as the new
+     * field layout, which makes this method also a way to detect the field layout used by the JVM.
+     *
+     * @return {@code true} if the JVM is a Java 15+ one, {@code false} otherwise.
+     */
+    public static boolean supportsHiddenClasses() {
+        return MAY_BE_IS_HIDDEN_MH.isPresent();
+    }
+
+    /**
+     * Calls {@code AccessibleObject.trySetAccessible} on the specified object.
+     *
+     * @param object the object to make accessible
+     * @return {@code true} if the object was made accessible, {@code false} otherwise.
+     * @throws UnsupportedOperationException if the JVM does not have a Module System
+     */
+    public static boolean trySetAccessible(AccessibleObject object) {
+        try {
+            return (boolean) MAY_BE_TRY_SET_ACCESSIBLE_MH.orElseThrow(UnsupportedOperationException::new).invoke(object);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calls {@code MethodHandles.privateLookupIn} for the specified class.
+     *
+     * @param targetClass the class for which a private lookup is requested
+     * @param caller the caller lookup
+     * @return a private lookup in the specified class
+     * @throws IllegalAccessException if the package of the class is not open to the caller module
+     * @throws UnsupportedOperationException if the JVM does not have a Module System
+     */
+    public static MethodHandles.Lookup privateLookupIn(Class<?> targetClass, MethodHandles.Lookup caller) throws IllegalAccessException {
+        try {
+            return (MethodHandles.Lookup) MAY_BE_PRIVATE_LOOKUP_IN_MH.orElseThrow(UnsupportedOperationException::new).invoke(targetClass, caller);
+        } catch (IllegalAccessException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a getter reading the specified instance field through a {@code VarHandle}. The final and volatile fields
+     * are read with volatile semantics.
+     *
+     * @param lookup a lookup with private access to the declaring class of the field
+     * @param field the instance field
+     * @return a getter of type {@code (Object)Object}
+     * @throws IllegalAccessException if the lookup does not give access to the field
+     * @throws UnsupportedOperationException if the JVM does not have a Module System
+     */
+    public static MethodHandle varHandleGetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        Optional<MethodHandle> factory = Modifier.isFinal(field.getModifiers()) || Modifier.isVolatile(field.getModifiers()) ? MAY_BE_VOLATILE_VAR_HANDLE_GETTER_MH
+                                                                                                                           : MAY_BE_VAR_HANDLE_GETTER_MH;
+        try {
+            MethodHandle getter = (MethodHandle) factory.orElseThrow(UnsupportedOperationException::new).invoke(lookup, field);
+            return getter.asType(GETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens the packages of the modules of the boot layer to the module of Jamm, so that the fields of the JDK classes
+     * can be read without {@code Unsafe}. Does nothing if the JVM does not have a Module System.
+     *
+     * @param inst the {@code Instrumentation} instance used to redefine the modules
+     */
+    @SuppressWarnings("unchecked")
+    public static void openPackages(Instrumentation inst) {
+
+        if (!supportsModules())
+            return;
+
+        try {
+            Method getModule = Class.class.getMethod("getModule");
+            Class<?> moduleClass = getModule.getReturnType();
+            Class<?> layerClass = Class.forName("java.lang.ModuleLayer");
+            Method getPackages = moduleClass.getMethod("getPackages");
+            Method isOpen = moduleClass.getMethod("isOpen", String.class, moduleClass);
+            Method isModifiableModule = Instrumentation.class.getMethod("isModifiableModule", moduleClass);
+            Method redefineModule = Instrumentation.class.getMethod("redefineModule", moduleClass, Set.class, Map.class, Map.class, Set.class, Map.class);
+
+            Object jamm = getModule.invoke(ReflectionUtils.class);
+            Object bootLayer = layerClass.getMethod("boot").invoke(null);
+            for (Object module : (Set<Object>) layerClass.getMethod("modules").invoke(bootLayer)) {
+
+                if (!(boolean) isModifiableModule.invoke(inst, module))
+                    continue;
+
+                Map<String, Set<Object>> opens = new HashMap<>();
+                for (String pkg : (Set<String>) getPackages.invoke(module)) {
+                    if (!(boolean) isOpen.invoke(module, pkg, jamm))
+                        opens.put(pkg, Collections.singleton(jamm));
+                }
+
+                if (!opens.isEmpty())
+                    redefineModule.invoke(inst, module, Collections.emptySet(), Collections.emptyMap(), opens, Collections.emptySet(), Collections.emptyMap());
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The JDK packages cannot be opened to Jamm", e);
+        }
+    }
+
+    /**
+     * Checks if the specified class is a record.
+     *
+     * @param type the class to check
+     * @return {@code true} if the specified class is a record, {@code false} otherwise or if the JVM does not support
+     * records.
+     */
+    public static boolean isRecord(Class<?> type) {
+        return MAY_BE_IS_RECORD_MH.isPresent() && invoke(MAY_BE_IS_RECORD_MH.get(), type);
+    }
+
+    /**
+     * Checks if the specified class is a hidden class.
+     *
+     * @param type the class to check
+     * @return {@code true} if the specified class is a hidden class, {@code false} otherwise or if the JVM does not
+     * support hidden classes.
+     */
+    public static boolean isHidden(Class<?> type) {
+        return MAY_BE_IS_HIDDEN_MH.isPresent() && invoke(MAY_BE_IS_HIDDEN_MH.get(), type);
+    }
+
+    private static boolean invoke(MethodHandle predicate, Class<?> type) {
+        try {
+            return (boolean) predicate.invoke(type);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Optional<MethodHandle> mayBePrivateLookupInMethodHandle() {
+        try {
+            Method method = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            return Optional.of(methodHandle(method));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<MethodHandle> mayBeVarHandleGetterMethodHandle(String accessMode) {
+        try {
+            Class<?> varHandleClass = Class.forName("java.lang.invoke.VarHandle");
+            Class<?> accessModeClass = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+            MethodHandle unreflectVarHandle = methodHandle(MethodHandles.Lookup.class.getMethod("unreflectVarHandle", Field.class));
+            MethodHandle toMethodHandle = methodHandle(varHandleClass.getMethod("toMethodHandle", accessModeClass));
+            Object mode = accessModeClass.getField(accessMode).get(null);
+            return Optional.of(MethodHandles.filterReturnValue(unreflectVarHandle, MethodHandles.insertArguments(toMethodHandle, 1, mode)));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private ReflectionUtils() {
+    }
+}
@@ -0,0 +1,71 @@
+package org.github.jamm;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter.Guess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AgentOptionsTest {
+
+    @Test
+    public void testNoOptions() {
+        assertFalse(AgentOptions.parse(null).warmUp());
+        assertFalse(AgentOptions.parse("").warmUp());
+        assertFalse(AgentOptions.parse("threads=2").warmUp());
+    }
+
+    @Test
+    public void testParse() {
+        AgentOptions options = AgentOptions.parse("warmup=com.acme.model.:com.acme.cache., threads=2,guess=UNSAFE");
+        assertTrue(options.warmUp());
+        assertEquals(Arrays.asList("com.acme.model.", "com.acme.cache."), options.prefixes());
+        assertEquals(2, options.threads());
+        assertEquals(Guess.UNSAFE, options.guess());
+
+        assertTrue(options.matches("com.acme.model.Order"));
+        assertTrue(options.matches("com/acme/cache/Entry$Node"));
+        assertFalse(options.matches("com.acme.service.OrderService"));
+        assertFalse(options.matches(null));
+
+        options = AgentOptions.parse("warmup=com.acme.");
+        assertEquals(1, options.threads());
+        assertNull(options.guess());
+    }
+
+    @Test
+    public void testInvalidOptions() {
+        assertInvalid("warmup", "The agent options should be key=value pairs (was warmup).");
+        assertInvalid("warmup=:", "The warmup option should specify at least one class name prefix (was :).");
+        assertInvalid("warmup=com.acme.,threads=0", "The threads option should be a positive integer (was 0).");
+        assertInvalid("warmup=com.acme.,threads=two", "The threads option should be a positive integer (was two).");
+        assertInvalid("guess=FAST", "The guess option should be one of [INSTRUMENTATION, INSTRUMENTATION_AND_SPECIFICATION, UNSAFE, SPECIFICATION, ADAPTIVE] (was FAST).");
+    }
+
+    @Test
+    public void testUnknownOptions() {
+        assertEquals(Collections.emptyList(), AgentOptions.parse("warmup=com.acme.").unknownKeys());
+
+        // The options of newer versions are ignored
+        AgentOptions options = AgentOptions.parse("packages=com.acme.,warmup=com.acme.,threads=2,mode=fast");
+        assertEquals(Arrays.asList("packages", "mode"), options.unknownKeys());
+        assertEquals(Collections.singletonList("com.acme."), options.prefixes());
+        assertEquals(2, options.threads());
+    }
+
+    private static void assertInvalid(String options, String message) {
+        try {
+            AgentOptions.parse(options);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
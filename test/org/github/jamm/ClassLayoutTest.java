@@ -0,0 +1,129 @@
+package org.github.jamm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import org.github.jamm.ClassLayout.FieldLayout;
+import org.github.jamm.MemoryMeter.Guess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.github.jamm.MemoryMeterStrategy.MEMORY_LAYOUT;
+
+@RunWith(Parameterized.class)
+public class ClassLayoutTest {
+
+    private final MemoryMeter.Guess guess;
+
+    @Parameterized.Parameters
+    public static Collection<MemoryMeter.Guess> guesses() {
+
+        return Arrays.asList(Guess.INSTRUMENTATION, Guess.INSTRUMENTATION_AND_SPECIFICATION, Guess.UNSAFE, Guess.SPECIFICATION);
+    }
+
+    public ClassLayoutTest(MemoryMeter.Guess guess) {
+        this.guess = guess;
+    }
+
+    @Test
+    public void testLayoutOf() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        checkLayout(meter, Object.class, new Object(), 0);
+        checkLayout(meter, Parent.class, new Parent(), 1);
+        checkLayout(meter, Child.class, new Child(), 4);
+        checkLayout(meter, String.class, "test", -1);
+        checkLayout(meter, Thread.class, new Thread(), -1);
+
+        ClassLayout layout = meter.layoutOf(Child.class);
+        assertSame(layout, meter.layoutOf(Child.class));
+        assertEquals(Parent.class, layout.field(Parent.class, "l").declaringClass());
+        assertEquals(8, layout.field(Parent.class, "l").size());
+        assertEquals(1, layout.field(Child.class, "b").size());
+        assertEquals(MEMORY_LAYOUT.getReferenceSize(), layout.field(Child.class, "o").size());
+        assertTrue(layout.toString().contains(Child.class.getName() + ".i (int)"));
+    }
+
+    @Test
+    public void testUnsafeOffsets() {
+
+        if (!VM.hasUnsafe())
+            return;
+
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(Guess.UNSAFE).build();
+        for (FieldLayout field : meter.layoutOf(Child.class).fields())
+            assertEquals(VM.getUnsafe().objectFieldOffset(field.field()), field.offset());
+    }
+
+    @Test
+    public void testContendedPadding() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        // The ForkJoinPool class is padded on every Java version (the Thread fields are no longer padded since Java 19)
+        assertEquals(MEMORY_LAYOUT.getContendedPaddingWidth() << 1, meter.layoutOf(ForkJoinPool.class).contendedPaddingSize());
+        assertEquals(0, meter.layoutOf(Child.class).contendedPaddingSize());
+    }
+
+    @Test
+    public void testInvalidTypes() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        for (Class<?> type : new Class<?>[] {null, int.class, int[].class, Runnable.class}) {
+            try {
+                meter.layoutOf(type);
+                fail("IllegalArgumentException expected for " + type);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void checkLayout(MemoryMeter meter, Class<?> type, Object instance, int numberOfFields) {
+
+        ClassLayout layout = meter.layoutOf(type);
+        String message = layout.toString();
+
+        assertEquals(message, type, layout.type());
+        assertEquals(message, meter.measure(instance), layout.instanceSize());
+        assertEquals(message, MEMORY_LAYOUT.getObjectHeaderSize(), layout.headerSize());
+        if (numberOfFields >= 0)
+            assertEquals(message, numberOfFields, layout.fields().size());
+
+        long end = layout.headerSize();
+        long fieldsSize = 0;
+        List<FieldLayout> fields = layout.fields();
+        for (FieldLayout field : fields) {
+            assertTrue(message, field.offset() >= end);
+            end = field.offset() + field.size();
+            fieldsSize += field.size();
+        }
+        assertTrue(message, end <= layout.instanceSize());
+        assertEquals(message, fieldsSize, layout.fieldsSize());
+        assertTrue(message, layout.gapsSize() >= 0);
+        assertTrue(message, layout.alignmentPaddingSize() < MEMORY_LAYOUT.getObjectAlignment());
+        assertEquals(message,
+                     layout.instanceSize(),
+                     layout.headerSize() + layout.fieldsSize() + layout.gapsSize() + layout.contendedPaddingSize() + layout.alignmentPaddingSize());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Parent {
+        private long l;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Child extends Parent {
+        private int i;
+        private byte b;
+        private Object o;
+    }
+}
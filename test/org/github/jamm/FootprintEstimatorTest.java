@@ -0,0 +1,174 @@
+package org.github.jamm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the estimates against the measurements of the same collections filled one element at a time.
+ */
+@RunWith(Parameterized.class)
+public class FootprintEstimatorTest {
+
+    /**
+     * The sizes crossing the growth thresholds of the collections.
+     */
+    private static final int[] SIZES = {0, 1, 10, 11, 12, 13, 16, 24, 25, 100, 1000, 5000};
+
+    @Parameterized.Parameters
+    public static Collection<MemoryMeter.Guess> guesses() {
+
+        return Arrays.asList(MemoryMeter.Guess.INSTRUMENTATION,
+                             MemoryMeter.Guess.UNSAFE,
+                             MemoryMeter.Guess.SPECIFICATION);
+    }
+
+    private final MemoryMeter meter;
+
+    private final FootprintEstimator estimator;
+
+    public FootprintEstimatorTest(MemoryMeter.Guess guess) {
+        this.meter = MemoryMeter.builder().withGuessing(guess).build();
+        this.estimator = meter.footprintEstimator();
+    }
+
+    @Test
+    public void testInstanceAndArray() {
+        assertEquals(meter.measure(new Object()), estimator.instance(Object.class));
+        assertEquals(meter.measure(Long.valueOf(1000)), estimator.instance(Long.class));
+        assertEquals(meter.measure(new byte[64]), estimator.array(byte.class, 64));
+        assertEquals(meter.measure(new long[3]), estimator.array(long.class, 3));
+        assertEquals(meter.measure(new String[5]), estimator.array(String.class, 5));
+        assertEquals(meter.measureDeep("test"), estimator.string(4));
+        assertEquals(meter.measureDeep("€1000"), estimator.string(5, false));
+    }
+
+    @Test
+    public void testArrayList() {
+        for (int size : SIZES) {
+            List<Long> list = new ArrayList<>();
+            for (int i = 0; i < size; i++)
+                list.add(1000L + i);
+
+            long expected = meter.measureDeep(list);
+            if (size == 0)
+                expected -= meter.measure(new Object[0]); // The shared empty array is not part of the estimate
+
+            assertEquals("size: " + size, expected, estimator.arrayList(size, estimator.instance(Long.class)));
+        }
+    }
+
+    @Test
+    public void testLinkedList() {
+        for (int size : SIZES) {
+            List<Long> list = new LinkedList<>();
+            for (int i = 0; i < size; i++)
+                list.add(1000L + i);
+
+            assertEquals("size: " + size, meter.measureDeep(list), estimator.linkedList(size, estimator.instance(Long.class)));
+        }
+    }
+
+    @Test
+    public void testHashMaps() {
+        long entryBytes = estimator.instance(Long.class) + estimator.array(byte.class, 64);
+
+        for (int size : SIZES) {
+            Map<Long, byte[]> hashMap = new HashMap<>();
+            Map<Long, byte[]> linkedHashMap = new LinkedHashMap<>();
+            Map<Long, byte[]> concurrentHashMap = new ConcurrentHashMap<>();
+            Map<Long, byte[]> treeMap = new TreeMap<>();
+            fill(hashMap, size);
+            fill(linkedHashMap, size);
+            fill(concurrentHashMap, size);
+            fill(treeMap, size);
+
+            assertEquals("size: " + size, meter.measureDeep(hashMap), estimator.hashMap(size, entryBytes));
+            assertEquals("size: " + size, meter.measureDeep(linkedHashMap), estimator.linkedHashMap(size, entryBytes));
+            assertEquals("size: " + size, meter.measureDeep(concurrentHashMap), estimator.concurrentHashMap(size, entryBytes));
+            assertEquals("size: " + size, meter.measureDeep(treeMap), estimator.treeMap(size, entryBytes));
+        }
+    }
+
+    @Test
+    public void testHashMapWithLoadFactor() {
+        for (float loadFactor : new float[] {0.5f, 0.7f, 1.0f, 2.0f}) {
+            for (int size : SIZES) {
+                Map<Long, byte[]> map = new HashMap<>(16, loadFactor);
+                fill(map, size);
+
+                long entryBytes = estimator.instance(Long.class) + estimator.array(byte.class, 64);
+                assertEquals("load factor: " + loadFactor + ", size: " + size,
+                             meter.measureDeep(map),
+                             estimator.hashMap(size, loadFactor, entryBytes));
+            }
+        }
+    }
+
+    @Test
+    public void testHashSet() {
+        for (int size : SIZES) {
+            Set<Long> set = new HashSet<>();
+            for (int i = 0; i < size; i++)
+                set.add(1000L + i);
+
+            long expected = meter.measureDeep(set);
+            if (size > 0)
+                expected -= meter.measure(new Object()); // The shared value of the entries is not part of the estimate
+
+            assertEquals("size: " + size, expected, estimator.hashSet(size, estimator.instance(Long.class)));
+        }
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        try {
+            estimator.hashMap(-1, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The size parameter should not be negative (was -1).", e.getMessage());
+        }
+
+        try {
+            estimator.arrayList(10, -8);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The elementBytes parameter should not be negative (was -8).", e.getMessage());
+        }
+
+        try {
+            estimator.hashMap(10, 0f, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The load factor should be positive (was 0.0).", e.getMessage());
+        }
+
+        try {
+            estimator.instance(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The type parameter should not be null", e.getMessage());
+        }
+    }
+
+    private static void fill(Map<Long, byte[]> map, int size) {
+        for (int i = 0; i < size; i++)
+            map.put(1000L + i, new byte[64]);
+    }
+}
@@ -0,0 +1,85 @@
+package org.github.jamm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.github.jamm.strategies.MemoryMeterStrategies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LayoutWarmerTest {
+
+    @SuppressWarnings("unused")
+    private static class Loaded {
+        private String name;
+        private long id;
+    }
+
+    @SuppressWarnings("unused")
+    private static class LoadedLater {
+        private Object value;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Ignored {
+        private Object value;
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        new Loaded();
+        new Ignored();
+
+        String prefix = LayoutWarmerTest.class.getName() + "$Loaded";
+        AgentOptions options = AgentOptions.parse("warmup=" + prefix + ",threads=2");
+        LayoutWarmer warmer = LayoutWarmer.start(MemoryMeterStrategies.instrumentation, options);
+        try {
+            // Classes already loaded
+            awaitWarmUp(warmer, Loaded.class);
+
+            // Classes loaded after the start
+            LoadedLater later = new LoadedLater();
+            later.value = new Object();
+            awaitWarmUp(warmer, LoadedLater.class);
+
+            assertFalse(warmer.isWarmedUp(Ignored.class));
+
+            MemoryMeter meter = MemoryMeter.builder().build();
+            assertEquals(meter.measure(later) + meter.measure(new Object()), meter.measureDeep(later));
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    @Test
+    public void testScanBackoff() throws Exception {
+        String prefix = LayoutWarmerTest.class.getName() + "$Missing";
+        LayoutWarmer warmer = LayoutWarmer.start(MemoryMeterStrategies.instrumentation, AgentOptions.parse("warmup=" + prefix));
+        try {
+            // A class reported by the transformer but never defined keeps the scans going, as do classes loaded continuously
+            warmer.transform(null, prefix.replace('.', '/'), null, null, new byte[0]);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (warmer.scanDelayMs() < LayoutWarmer.MAX_SCAN_DELAY_MS && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(LayoutWarmer.MAX_SCAN_DELAY_MS, warmer.scanDelayMs());
+
+            // The delay is bounded
+            Thread.sleep(LayoutWarmer.MAX_SCAN_DELAY_MS + 200);
+            assertEquals(LayoutWarmer.MAX_SCAN_DELAY_MS, warmer.scanDelayMs());
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    private static void awaitWarmUp(LayoutWarmer warmer, Class<?> type) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!warmer.isWarmedUp(type) && System.nanoTime() < deadline)
+            Thread.sleep(10);
+
+        assertTrue(type + " has not been warmed up", warmer.isWarmedUp(type));
+    }
+}
@@ -0,0 +1,229 @@
+package org.github.jamm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.github.jamm.listeners.BoxingHistogram;
+import org.github.jamm.listeners.SlackHistogram;
+import org.github.jamm.strategies.PaddingBreakdown;
+import org.github.jamm.utils.ArrayMeasurementUtils;
+import org.github.jamm.utils.ReflectionUtils;
+
+import sun.misc.Unsafe;
+
+import static org.github.jamm.utils.MathUtils.roundTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the memory layout against the offsets reported by {@code Unsafe}. The compact object headers layout is only
+ * checked against the JVM if the tests are run with {@code -XX:+UseCompactObjectHeaders} on Java 24+.
+ */
+public class MemoryLayoutSpecificationTest {
+
+    private static final MemoryLayoutSpecification MEMORY_LAYOUT = MemoryLayoutSpecification.getEffectiveMemoryLayoutSpecification();
+
+    @SuppressWarnings("unused")
+    private static class WithByte {
+        private byte value;
+    }
+
+    @Test
+    public void testObjectHeaderSize() throws Exception {
+        assumeTrue(VM.hasUnsafe());
+
+        if (VM.useCompactObjectHeaders())
+            assertEquals(8, MEMORY_LAYOUT.getObjectHeaderSize());
+
+        // The first field directly follows the header
+        Unsafe unsafe = VM.getUnsafe();
+        assertEquals(MEMORY_LAYOUT.getObjectHeaderSize(), unsafe.objectFieldOffset(WithByte.class.getDeclaredField("value")));
+    }
+
+    @Test
+    public void testArrayBaseOffsets() {
+        assumeTrue(VM.hasUnsafe());
+
+        Unsafe unsafe = VM.getUnsafe();
+        int arrayHeaderSize = MEMORY_LAYOUT.getArrayHeaderSize();
+
+        assertEquals(unsafe.arrayBaseOffset(byte[].class), roundTo(arrayHeaderSize, Byte.BYTES));
+        assertEquals(unsafe.arrayBaseOffset(short[].class), roundTo(arrayHeaderSize, Short.BYTES));
+        assertEquals(unsafe.arrayBaseOffset(int[].class), roundTo(arrayHeaderSize, Integer.BYTES));
+        assertEquals(unsafe.arrayBaseOffset(long[].class), roundTo(arrayHeaderSize, Long.BYTES));
+        assertEquals(unsafe.arrayBaseOffset(Object[].class), roundTo(arrayHeaderSize, MEMORY_LAYOUT.getReferenceSize()));
+    }
+
+    @Test
+    public void testComputeArraySize() {
+        // Compact object headers: the elements directly follow the length, unless they are 8 bytes long
+        assertEquals(16, ArrayMeasurementUtils.computeArraySize(12, 1, Integer.BYTES, 8));
+        assertEquals(16, ArrayMeasurementUtils.computeArraySize(12, 0, Long.BYTES, 8));
+        assertEquals(24, ArrayMeasurementUtils.computeArraySize(12, 1, Long.BYTES, 8));
+        assertEquals(24, ArrayMeasurementUtils.computeArraySize(12, 12, Byte.BYTES, 8));
+
+        // Heap word aligned array base
+        assertEquals(24, ArrayMeasurementUtils.computeArraySize(16, 1, Long.BYTES, 8));
+        assertEquals(24, ArrayMeasurementUtils.computeArraySize(16, 2, Integer.BYTES, 8));
+    }
+
+    @Test
+    public void testBuilder() {
+        MemoryLayoutSpecification layout = MemoryLayoutSpecification.builder().build();
+        assertEquals(MEMORY_LAYOUT.getObjectHeaderSize(), layout.getObjectHeaderSize());
+        assertEquals(MEMORY_LAYOUT.getArrayHeaderSize(), layout.getArrayHeaderSize());
+        assertEquals(MEMORY_LAYOUT.getObjectAlignment(), layout.getObjectAlignment());
+        assertEquals(MEMORY_LAYOUT.getReferenceSize(), layout.getReferenceSize());
+        assertEquals(MEMORY_LAYOUT.getContendedPaddingWidth(), layout.getContendedPaddingWidth());
+
+        assumeTrue(!VM.is32Bits());
+
+        layout = MemoryLayoutSpecification.builder()
+                                          .withCompressedOops(false)
+                                          .withCompressedClassPointers(true)
+                                          .withCompactObjectHeaders(false)
+                                          .withObjectAlignment(16)
+                                          .withContendedPaddingWidth(64)
+                                          .build();
+
+        assertEquals(8, layout.getReferenceSize());
+        // Prior to Java 15, the compressed class pointers require the compressed references
+        assertEquals(ReflectionUtils.supportsHiddenClasses() ? 12 : 16, layout.getObjectHeaderSize());
+        assertEquals(16, layout.getObjectAlignment());
+        assertEquals(64, layout.getContendedPaddingWidth());
+
+        layout = MemoryLayoutSpecification.builder().withCompactObjectHeaders(true).build();
+        assertEquals(8, layout.getObjectHeaderSize());
+        // The header of the arrays is not rounded, whatever the version of the running JVM
+        assertEquals(12, layout.getArrayHeaderSize());
+    }
+
+    @Test
+    public void testBuilderWithInvalidOptions() {
+        try {
+            MemoryLayoutSpecification.builder().withObjectAlignment(12);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The object alignment should be a power of 2 between 8 and 256 (was 12).", e.getMessage());
+        }
+
+        try {
+            MemoryLayoutSpecification.builder().withObjectAlignment(4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The object alignment should be a power of 2 between 8 and 256 (was 4).", e.getMessage());
+        }
+
+        try {
+            MemoryLayoutSpecification.builder().withContendedPaddingWidth(100);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The contended padding width should be a multiple of 8 between 0 and 8192 (was 100).", e.getMessage());
+        }
+
+        try {
+            MemoryMeter.builder().withMemoryLayout(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The memoryLayout parameter should not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMeasureWithHypotheticalLayout() {
+        assumeTrue(!VM.is32Bits());
+
+        Map<String, Object[]> graph = new HashMap<>();
+        for (int i = 0; i < 100; i++)
+            graph.put("key" + i, new Object[] {i, (long) i, "value" + i});
+
+        // The layout of the running JVM, built again, gives the same results as the Specification strategy
+        MemoryMeter spec = MemoryMeter.builder().withGuessing(MemoryMeter.Guess.SPECIFICATION).build();
+        MemoryMeter same = MemoryMeter.builder().withMemoryLayout(MemoryLayoutSpecification.builder().build()).build();
+        assertEquals(spec.measureDeep(graph), same.measureDeep(graph));
+        assertEquals(spec.measureStringDeep("test"), same.measureStringDeep("test"));
+
+        MemoryLayoutSpecification uncompressed = MemoryLayoutSpecification.builder().withCompressedOops(false).build();
+        MemoryMeter meter = MemoryMeter.builder().withMemoryLayout(uncompressed).build();
+        assertEquals(roundTo(uncompressed.getArrayHeaderSize(), 8) + 3 * 8, meter.measure(new Object[3]));
+        assertTrue(meter.measureDeep(graph) >= spec.measureDeep(graph));
+
+        MemoryLayoutSpecification aligned = MemoryLayoutSpecification.builder().withObjectAlignment(16).build();
+        meter = MemoryMeter.builder().withMemoryLayout(aligned).build();
+        assertEquals(0, meter.measure(new Object()) % 16);
+        assertEquals(0, meter.measure(new int[3]) % 16);
+        assertEquals(0, meter.measureDeep(graph) % 16);
+
+        MemoryLayoutSpecification compact = MemoryLayoutSpecification.builder().withCompactObjectHeaders(true).build();
+        meter = MemoryMeter.builder().withMemoryLayout(compact).build();
+        assertEquals(8, meter.measure(new Object()));
+        assertEquals(roundTo(8 + 3 * Long.BYTES, 8), meter.layoutOf(WithLongs.class).instanceSize());
+        assertEquals(16, meter.measure(new int[1]));
+    }
+
+    @Test
+    public void testDiagnosticsWithHypotheticalLayout() {
+        assumeTrue(!VM.is32Bits());
+
+        // The reference size and the object alignment both differ from the ones of the running JVM
+        MemoryLayoutSpecification memoryLayout = MemoryLayoutSpecification.builder()
+                                                                          .withCompressedOops(MEMORY_LAYOUT.getReferenceSize() != 4)
+                                                                          .withObjectAlignment(MEMORY_LAYOUT.getObjectAlignment() * 2)
+                                                                          .build();
+        assertTrue(memoryLayout.getReferenceSize() != MEMORY_LAYOUT.getReferenceSize());
+        int alignment = memoryLayout.getObjectAlignment();
+
+        MemoryMeter meter = MemoryMeter.builder().withMemoryLayout(memoryLayout).build();
+        FootprintEstimator estimator = meter.footprintEstimator();
+
+        ClassLayout layout = meter.layoutOf(WithByte.class);
+        assertEquals(roundTo(layout.headerSize() + 1, alignment), layout.instanceSize());
+        assertEquals(layout.instanceSize() - layout.headerSize() - 1, layout.alignmentPaddingSize());
+        assertEquals(0, layout.gapsSize());
+        PaddingBreakdown breakdown = PaddingBreakdown.of(layout, meter.measure(new WithByte()));
+        assertEquals(layout.alignmentPaddingSize(), breakdown.alignmentPaddingSize());
+        assertEquals(0, breakdown.gapsSize());
+
+        layout = meter.layoutOf(WithReference.class);
+        assertEquals(memoryLayout.getReferenceSize(), layout.field(WithReference.class, "value").size());
+        assertEquals(layout.instanceSize(), layout.headerSize() + layout.fieldsSize() + layout.gapsSize() + layout.alignmentPaddingSize());
+
+        breakdown = PaddingBreakdown.ofArray(new Object[3], meter.measure(new Object[3]), meter.memoryLayout());
+        assertEquals(3 * memoryLayout.getReferenceSize(), breakdown.fieldsSize());
+        assertEquals(meter.measure(new Object[3]), breakdown.size());
+
+        List<Long> list = new ArrayList<>();
+        for (long i = 0; i < 11; i++)
+            list.add(1000 + i); // the capacity grows to 15
+
+        SlackHistogram slack = new SlackHistogram();
+        meter.measureDeep(list, slack);
+        SlackHistogram.Entry entry = slack.entry(ArrayList.class);
+        assertEquals(estimator.array(Object.class, 11), entry.usedBytes());
+        assertEquals(meter.measure(new Object[15]), entry.allocatedBytes());
+
+        BoxingHistogram boxing = new BoxingHistogram();
+        meter.measureDeep(list, boxing);
+        BoxingHistogram.Entry boxes = boxing.entries().get(0);
+        assertEquals(estimator.array(Object.class, 11) + 11 * meter.measure(1000L), boxes.boxedLayoutBytes());
+        assertEquals(estimator.array(long.class, 11), boxes.primitiveLayoutBytes());
+    }
+
+    @SuppressWarnings("unused")
+    private static class WithReference {
+        private Object value;
+    }
+
+    @SuppressWarnings("unused")
+    private static class WithLongs {
+        private long l1;
+        private long l2;
+        private long l3;
+    }
+}
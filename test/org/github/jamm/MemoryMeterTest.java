@@ -3,9 +3,11 @@ package org.github.jamm;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 
 import org.junit.Assert;
@@ -17,6 +19,7 @@ import org.junit.runners.Parameterized;
 import org.github.jamm.testedclasses.PublicClassWithPackageProtectedClassField;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 
 @RunWith(Parameterized.class)
@@ -33,7 +36,8 @@ public class MemoryMeterTest {
         return Arrays.asList(MemoryMeter.Guess.INSTRUMENTATION,
                              MemoryMeter.Guess.INSTRUMENTATION_AND_SPECIFICATION,
                              MemoryMeter.Guess.UNSAFE,
-                             MemoryMeter.Guess.SPECIFICATION);
+                             MemoryMeter.Guess.SPECIFICATION,
+                             MemoryMeter.Guess.ADAPTIVE);
     }
 
     private final MemoryMeter.Guess guess;
@@ -51,6 +55,42 @@ public class MemoryMeterTest {
         assertEquals(0L, meter.measureDeep(null));
     }
 
+    @Test
+    public void testWarmUp() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        meter.warmUp(Date.class);
+        meter.warmUp(int[].class);
+        meter.warmUp(Runnable.class);
+
+        Date date = new Date();
+        MemoryMeter other = MemoryMeter.builder().withGuessing(guess).build();
+        assertEquals(other.measure(date), meter.measure(date));
+        assertEquals(other.measureDeep(date), meter.measureDeep(date));
+
+        try {
+            meter.warmUp(null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The type parameter should not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMeasureStringsDeep() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        String[] strings = {"", "a", null, "a bit longuer", "with a chinese character: 我"};
+        long expected = 0;
+        for (String s : strings)
+            expected += meter.measureDeep(s);
+
+        assertEquals(meter.measureDeep(strings), meter.measureStringArrayDeep(strings));
+        assertEquals(expected, meter.measureStringsDeep(Arrays.asList(strings)));
+        assertEquals(0, meter.measureStringArrayDeep(null));
+        assertEquals(0, meter.measureStringsDeep(null));
+    }
+
     @Test
     public void testCycle() throws Exception {
         MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
@@ -136,7 +176,18 @@ public class MemoryMeterTest {
     }
 
     @Test
-    public void testIgnoreNonStrongReferences() throws InterruptedException {
+    public void testScopeFieldOutsideMemorySegments() throws Exception {
+        // The MemorySegment scope filter is part of the default filters on every JVM. It must not exclude the 'scope'
+        // fields of the other classes, including when the Foreign Memory API is not available (Java 8, 11 and 17).
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        HasScopeField holder = new HasScopeField(new byte[100]);
+        assertFalse(Filters.IGNORE_MEMORY_SEGMENT_SCOPE.ignore(HasScopeField.class, HasScopeField.class.getDeclaredField("scope")));
+        assertEquals(meter.measure(holder) + meter.measureArray(new byte[100]), meter.measureDeep(holder));
+    }
+
+    @Test
+    public void testIgnoreNonStrongReferences() throws Exception {
         // The Reference fields 'next' and 'discovered' are used by 'ReferenceQueue' instances and are not part of what
         // we want to measure. The 'queue' field is either a singleton 'ReferenceQueue.NULL' or a provided queue that user hold a reference to.
         // Therefore, those fields should be ignored.
@@ -149,7 +200,8 @@ public class MemoryMeterTest {
         assertEquals(refShallowSize,  meterIgnoring.measureDeep(ref));
 
         // SoftReference + deep queue + referent
-        long deepSize = refShallowSize + meterMeasuring.measureDeep(new ReferenceQueue<Object>()) + meterMeasuring.measure(new Date());
+        long nullQueueSize = measureNullQueue(meterMeasuring);
+        long deepSize = refShallowSize + nullQueueSize + meterMeasuring.measure(new Date());
         assertEquals(deepSize,  meterMeasuring.measureDeep(ref));
 
         HasReferenceField hasReferenceField = new HasReferenceField(ref);
@@ -157,7 +209,7 @@ public class MemoryMeterTest {
         assertEquals(refShallowSize + hasReferenceFieldShallowSize, meterIgnoring.measureDeep(hasReferenceField));
 
         // HasReferenceField + SoftReference + deep queue + referent
-        deepSize = hasReferenceFieldShallowSize + refShallowSize + meterMeasuring.measureDeep(new ReferenceQueue<Object>()) + meterMeasuring.measure(new Date());
+        deepSize = hasReferenceFieldShallowSize + refShallowSize + nullQueueSize + meterMeasuring.measure(new Date());
         assertEquals(deepSize,  meterMeasuring.measureDeep(hasReferenceField));
 
         // Test ReferenceQueue measurement with one object
@@ -179,13 +231,53 @@ public class MemoryMeterTest {
 
         Assert.assertTrue(p.isEnqueued());
 
-        long queueShallowSize = meterIgnoring.measure(queue);
-        long lockSize = meterIgnoring.measure(new Object()); // The ReferenceQueue lock field has the same size as an empty object.
-        assertEquals(queueShallowSize + lockSize,  meterIgnoring.measureDeep(queue));
+        // The enqueued references are not part of the queue
+        assertEquals(meterIgnoring.measureDeep(new ReferenceQueue<Object>()),  meterIgnoring.measureDeep(queue));
 
         assertEquals(p, queue.poll());
     }
 
+    /**
+     * Returns the size of the {@code ReferenceQueue.NULL} queue of the references created without a queue. Since Java 21,
+     * the queue lock is a {@code ReentrantLock} that the {@code NULL} queue does not create.
+     */
+    private static long measureNullQueue(MemoryMeter meter) throws NoSuchFieldException {
+        if (ReferenceQueue.class.getDeclaredField("lock").getType() == ReentrantLock.class)
+            return meter.measure(new ReferenceQueue<Object>());
+
+        return meter.measureDeep(new ReferenceQueue<Object>());
+    }
+
+    @Test
+    public void testMeasureDeepByReachability() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        Date shared = new Date();
+        Date softOnly = new Date();
+        long[] weakOnly = new long[10];
+        Object phantomReferent = new Object();
+        WeakReference<long[]> weakRef = new WeakReference<>(weakOnly);
+        Object[] softHolder = {weakRef};
+        MyPhantomReference phantomRef = new MyPhantomReference(phantomReferent, null);
+
+        Object[] root = {shared,
+                         new SoftReference<>(softOnly),
+                         new SoftReference<>(shared), // also strongly reachable
+                         new SoftReference<>(softHolder), // the weak referent remains weakly reachable
+                         phantomRef};
+
+        ReachabilityBreakdown breakdown = meter.measureDeepByReachability(root);
+
+        long softRefSize = meter.measure(new SoftReference<>(null));
+        assertEquals(meter.measure(root) + meter.measure(shared) + 3 * softRefSize + meter.measure(phantomRef), breakdown.strongBytes());
+        assertEquals(meter.measureDeep(root), breakdown.strongBytes());
+        assertEquals(meter.measure(softOnly) + meter.measure(softHolder) + meter.measure(weakRef), breakdown.softBytes());
+        assertEquals(meter.measure(weakOnly) + meter.measure(phantomReferent), breakdown.weakBytes());
+        assertEquals(breakdown.strongBytes() + breakdown.softBytes() + breakdown.weakBytes(), breakdown.totalBytes());
+
+        assertEquals(0, meter.measureDeepByReachability(null).totalBytes());
+    }
+
     private static class MyPhantomReference extends PhantomReference<Object> {
 
         public MyPhantomReference(Object referent, ReferenceQueue<Object> q) {
@@ -202,6 +294,15 @@ public class MemoryMeterTest {
         }
     }
 
+    @SuppressWarnings("unused")
+    private static class HasScopeField {
+        private final Object scope;
+
+        public HasScopeField(Object scope) {
+            this.scope = scope;
+        }
+    }
+
     @SuppressWarnings("unused")
     private static class HasClassField {
         private Class<?> cls = String.class;
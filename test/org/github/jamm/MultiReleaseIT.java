@@ -0,0 +1,112 @@
+package org.github.jamm;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the JVM loads, from the packaged multi-release JAR, the versions of the classes compiled for it
+ * ({@code src-java11} and {@code src-java17}). The surefire executions use the {@code target/classes} directory, in
+ * which the versioned classes are ignored. This test is run by the failsafe executions, on each JDK of the build,
+ * against the JAR.
+ */
+public class MultiReleaseIT {
+
+    /**
+     * The versioned classes entries, the first group being the Java version and the second one the class name.
+     */
+    private static final Pattern VERSIONED_CLASS = Pattern.compile("META-INF/versions/(\\d+)/(.+)\\.class");
+
+    @Test
+    public void testVersionedClassesAreLoaded() throws Exception {
+
+        URL location = MemoryMeter.class.getProtectionDomain().getCodeSource().getLocation();
+        assertTrue("Jamm is not loaded from its JAR: " + location, location.getPath().endsWith(".jar"));
+
+        int javaVersion = javaVersion();
+        Map<String, Integer> expectedVersions = new HashMap<>();
+        try (JarFile jar = new JarFile(new File(location.toURI()))) {
+
+            assertEquals("true", jar.getManifest().getMainAttributes().getValue("Multi-Release"));
+
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                Matcher matcher = VERSIONED_CLASS.matcher(entry.getName());
+                if (matcher.matches()) {
+                    // The JVM must pick the highest version supported, or the base version if there is none
+                    int version = Integer.parseInt(matcher.group(1));
+                    expectedVersions.merge(matcher.group(2), version <= javaVersion ? version : 8, Math::max);
+                }
+            }
+        }
+
+        assertFalse("The JAR has no versioned classes", expectedVersions.isEmpty());
+
+        ClassLoader loader = MemoryMeter.class.getClassLoader();
+        for (Map.Entry<String, Integer> entry : expectedVersions.entrySet()) {
+            String resource = entry.getKey() + ".class";
+
+            // The classes are defined from the entries that the class loader resolves for the resource
+            try (InputStream in = loader.getResourceAsStream(resource)) {
+                assertEquals(resource, classFileVersionOf(entry.getValue()), readClassFileVersion(in));
+            }
+            Class.forName(entry.getKey().replace('/', '.'), true, loader);
+        }
+    }
+
+    @Test
+    public void testMeasureDeep() {
+
+        MemoryMeter meter = MemoryMeter.builder().build();
+        FootprintEstimator estimator = meter.footprintEstimator();
+
+        List<Long> list = new ArrayList<>();
+        Map<Long, byte[]> map = new HashMap<>();
+        for (long i = 0; i < 100; i++) {
+            list.add(1000 + i);
+            map.put(1000 + i, new byte[16]);
+        }
+
+        assertEquals(estimator.string(4), meter.measureDeep("test"));
+        assertEquals(estimator.arrayList(100, estimator.instance(Long.class)), meter.measureDeep(list));
+        assertEquals(estimator.hashMap(100, estimator.instance(Long.class) + estimator.array(byte.class, 16)),
+                     meter.measureDeep(map));
+
+        // Lambdas are hidden classes from Java 15
+        String captured = "test";
+        Supplier<String> lambda = () -> captured;
+        assertEquals(meter.measure(lambda) + meter.measureDeep(captured), meter.measureDeep(lambda));
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    private static int classFileVersionOf(int javaVersion) {
+        return javaVersion + 44;
+    }
+
+    private static int readClassFileVersion(InputStream in) throws Exception {
+        DataInputStream data = new DataInputStream(in);
+        data.readInt(); // magic
+        data.readUnsignedShort(); // minor version
+        return data.readUnsignedShort();
+    }
+}
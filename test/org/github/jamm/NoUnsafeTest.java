@@ -0,0 +1,99 @@
+package org.github.jamm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter.Guess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Checks that Jamm can be used without {@code Unsafe}. The tests are run by the {@code test-jdk17-no-unsafe} executions,
+ * with {@code -Dorg.github.jamm.UseUnsafe=false}, with and without the agent.
+ */
+public class NoUnsafeTest {
+
+    @BeforeClass
+    public static void checkUnsafeIsDisabled() {
+        assumeFalse("Unsafe is used", VM.hasUnsafe());
+    }
+
+    @Test
+    public void testGuesses() {
+        MemoryMeter spec = MemoryMeter.builder().withGuessing(Guess.SPECIFICATION).build();
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Node node = new Node(null);
+        assertEquals(spec.layoutOf(Node.class).instanceSize(), spec.measure(node));
+        assertEquals(spec.measure(node), meter.measure(node));
+        assertEquals(spec.measureArray(new Object[10]), meter.measureArray(new Object[10]));
+
+        try {
+            MemoryMeter.builder().withGuessing(Guess.UNSAFE).build();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("sun.misc.Unsafe could not be obtained. The SecurityManager must permit access to sun.misc.Unsafe", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMeasureDeep() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(Guess.SPECIFICATION).build();
+
+        Node node = new Node(new Node(new Node(null)));
+        assertEquals(3 * meter.measure(node), meter.measureDeep(node));
+    }
+
+    @Test
+    public void testMeasureDeepJdkClasses() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(Guess.SPECIFICATION).build();
+        FootprintEstimator estimator = meter.footprintEstimator();
+
+        List<Long> list = new ArrayList<>();
+        Map<Long, byte[]> map = new HashMap<>();
+        for (long i = 0; i < 100; i++) {
+            list.add(1000 + i);
+            map.put(1000 + i, new byte[16]);
+        }
+
+        if (!MemoryMeter.hasInstrumentation()) {
+
+            // Without the agent, the JDK packages are not open to Jamm
+            assertFalse(meter.isStringOptimizationEnabled());
+            for (Object obj : new Object[] {"test", list, map}) {
+                try {
+                    meter.measureDeep(obj);
+                    fail();
+                } catch (CannotAccessFieldException e) {
+                    // Expected
+                }
+            }
+            return;
+        }
+
+        // The agent opens the JDK packages to Jamm
+        assertTrue(meter.isStringOptimizationEnabled());
+        assertEquals(estimator.string(4), meter.measureDeep("test"));
+        assertEquals(estimator.arrayList(100, estimator.instance(Long.class)), meter.measureDeep(list));
+        assertEquals(estimator.hashMap(100, estimator.instance(Long.class) + estimator.array(byte.class, 16)),
+                     meter.measureDeep(map));
+    }
+
+    @SuppressWarnings("unused")
+    private static class Node {
+        private final Node next;
+
+        public Node(Node next) {
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.github.jamm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import org.github.jamm.utils.ReflectionUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ReflectionUtilsTest {
+
+    @Test
+    public void testIsHidden() {
+        Supplier<String> lambda = () -> "test";
+
+        assertFalse(ReflectionUtils.isHidden(String.class));
+        // From Java 15 onward the lambdas are implemented through hidden classes
+        assertEquals(ReflectionUtils.supportsHiddenClasses(), ReflectionUtils.isHidden(lambda.getClass()));
+    }
+
+    @Test
+    public void testIsRecord() {
+        assertFalse(ReflectionUtils.isRecord(String.class));
+        assertFalse(ReflectionUtils.isRecord(int[].class));
+    }
+
+    @Test
+    public void testTrySetAccessible() throws Exception {
+        assumeTrue(ReflectionUtils.supportsModules());
+
+        Field field = ReflectionUtilsTest.class.getDeclaredField("privateField");
+        assertTrue(ReflectionUtils.trySetAccessible(field));
+        assertEquals("value", field.get(this));
+
+        assertEquals(String.class, ReflectionUtils.privateLookupIn(ReflectionUtilsTest.class, MethodHandles.lookup()).findGetter(ReflectionUtilsTest.class, "privateField", String.class).type().returnType());
+    }
+
+    @SuppressWarnings("unused")
+    private final String privateField = "value";
+}
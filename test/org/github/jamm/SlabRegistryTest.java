@@ -0,0 +1,104 @@
+package org.github.jamm;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlabRegistryTest {
+
+    @Test
+    public void testHeapSlabs() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        ByteBuffer slab = ByteBuffer.allocate(1000);
+        SlabRegistry slabs = new SlabRegistry().register(slab);
+
+        ByteBuffer duplicate = (ByteBuffer) slab.duplicate().position(10).limit(30);
+        ByteBuffer slice = ((ByteBuffer) slab.duplicate().position(100).limit(120)).slice();
+        ByteBuffer readOnly = slice.asReadOnlyBuffer();
+
+        assertTrue(slabs.isSlab(duplicate));
+        assertTrue(slabs.isSlab(slice));
+        assertTrue(slabs.isSlab(readOnly));
+        assertEquals(meter.measure(duplicate) + 20, meter.measureDeep(duplicate, slabs));
+        assertEquals(meter.measure(slice) + 20, meter.measureDeep(slice, slabs));
+        assertEquals(meter.measure(readOnly) + 20, meter.measureDeep(readOnly, slabs));
+
+        ByteBuffer[] buffers = {duplicate, slice};
+        assertEquals(meter.measureArray(buffers) + meter.measure(duplicate) + meter.measure(slice) + 40,
+                     meter.measureDeep(buffers, slabs));
+
+        // Buffers outside of the registered slabs are measured normally
+        ByteBuffer other = ByteBuffer.allocate(20);
+        assertFalse(slabs.isSlab(other));
+        assertEquals(meter.measureDeep(other), meter.measureDeep(other, slabs));
+
+        assertTrue(slabs.unregister(slab));
+        assertFalse(slabs.unregister(slab));
+        assertFalse(slabs.isSlab(slice));
+        assertEquals(meter.measureDeep(slice), meter.measureDeep(slice, slabs));
+    }
+
+    @Test
+    public void testDirectSlabs() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(1000);
+        SlabRegistry slabs = new SlabRegistry().register(slab);
+
+        ByteBuffer slice = ((ByteBuffer) slab.duplicate().position(100).limit(200)).slice();
+        ByteBuffer last = ((ByteBuffer) slab.duplicate().position(999)).slice();
+        ByteBuffer other = ByteBuffer.allocateDirect(100);
+
+        assertTrue(slabs.isSlab(slice));
+        assertTrue(slabs.isSlab(last));
+        assertFalse(slabs.isSlab(other));
+
+        // The attachment and the cleaner belong to the slab
+        assertEquals(meter.measure(slice), meter.measureDeep(slice, slabs));
+        assertEquals(meter.measureDeep(other), meter.measureDeep(other, slabs));
+
+        assertTrue(slabs.unregister(slab));
+        assertFalse(slabs.isSlab(slice));
+    }
+
+    @Test
+    public void testInvalidRegistrations() {
+        SlabRegistry slabs = new SlabRegistry();
+        try {
+            slabs.registerAddressRange(1024, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The slab size should be greater than zero (was 0).", e.getMessage());
+        }
+
+        slabs.registerAddressRange(1024, 1024);
+        slabs.registerAddressRange(1024, 1024); // Registering the same slab twice has no effect
+        for (long[] range : new long[][] {{1024, 512}, {512, 1024}, {2047, 10}, {0, 4096}}) {
+            try {
+                slabs.registerAddressRange(range[0], range[1]);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals(String.format("The slab [%d, %d) overlaps the registered slab [1024, 2048).", range[0], range[0] + range[1]),
+                             e.getMessage());
+            }
+        }
+
+        // Adjacent slabs do not overlap
+        slabs.registerAddressRange(512, 512).registerAddressRange(2048, 512);
+        assertTrue(slabs.unregisterAddressRange(1024));
+        assertFalse(slabs.unregisterAddressRange(1024));
+
+        try {
+            slabs.registerArray(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The array parameter should not be null", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.github.jamm.accessors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FieldAccessorTest {
+
+    @Test
+    public void testGetFieldValue() throws Exception {
+        FieldAccessor accessor = FieldAccessor.newInstance();
+
+        WithFields withFields = new WithFields("test", 42);
+        assertEquals("test", accessor.getFieldValue(withFields, WithFields.class.getDeclaredField("name")));
+        assertEquals(42, accessor.getFieldValue(withFields, WithFields.class.getDeclaredField("value")));
+
+        // The getters are cached per field, not per object
+        WithFields other = new WithFields("other", 3);
+        assertEquals("other", accessor.getFieldValue(other, WithFields.class.getDeclaredField("name")));
+        assertEquals("test", accessor.getFieldValue(withFields, WithFields.class.getDeclaredField("name")));
+    }
+
+    @Test
+    public void testGetFieldValueOfLambda() {
+        FieldAccessor accessor = FieldAccessor.newInstance();
+
+        String captured = "captured";
+        Supplier<String> lambda = () -> captured;
+
+        Field field = lambda.getClass().getDeclaredFields()[0];
+        assertSame(captured, accessor.getFieldValue(lambda, field));
+    }
+
+    @Test
+    public void testGetFieldValueOfJdkClass() throws Exception {
+        FieldAccessor accessor = FieldAccessor.newInstance();
+
+        ArrayList<String> list = new ArrayList<>(2);
+        list.add("a");
+        list.add("b");
+
+        Object[] elementData = (Object[]) accessor.getFieldValue(list, ArrayList.class.getDeclaredField("elementData"));
+        assertArrayEquals(new Object[] {"a", "b"}, elementData);
+
+        // The primitive fields are read through the methods matching their type
+        assertEquals(2, accessor.getFieldValue(list, ArrayList.class.getDeclaredField("size")));
+    }
+
+    @Test
+    public void testClassesCanBeUnloaded() throws Exception {
+        FieldAccessor accessor = FieldAccessor.newInstance();
+
+        WeakReference<ClassLoader> loader = readFieldFromIsolatedClass(accessor);
+        for (int i = 0; i < 100 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        // The accessor must not keep the class, and therefore its class loader, reachable
+        assertNull(loader.get());
+        assertEquals("test", accessor.getFieldValue(new WithFields("test", 42), WithFields.class.getDeclaredField("name")));
+    }
+
+    private static WeakReference<ClassLoader> readFieldFromIsolatedClass(FieldAccessor accessor) throws Exception {
+        ClassLoader loader = new IsolatedClassLoader();
+        Class<?> type = loader.loadClass(WithFields.class.getName());
+        Constructor<?> constructor = type.getConstructor(String.class, int.class);
+        constructor.setAccessible(true);
+
+        Object withFields = constructor.newInstance("isolated", 42);
+        for (Field field : type.getDeclaredFields())
+            accessor.prepare(field);
+        assertEquals("isolated", accessor.getFieldValue(withFields, type.getDeclaredField("name")));
+        return new WeakReference<>(loader);
+    }
+
+    /**
+     * A class loader defining its own version of the {@code WithFields} class.
+     */
+    private static final class IsolatedClassLoader extends ClassLoader {
+
+        public IsolatedClassLoader() {
+            super(FieldAccessorTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(WithFields.class.getName()))
+                return super.loadClass(name, resolve);
+
+            try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                    out.write(buffer, 0, n);
+
+                byte[] bytes = out.toByteArray();
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class WithFields {
+
+        private final String name;
+
+        private volatile int value;
+
+        public WithFields(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
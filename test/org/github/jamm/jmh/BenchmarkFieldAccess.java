@@ -0,0 +1,119 @@
+package org.github.jamm.jmh;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.github.jamm.VM;
+import org.github.jamm.accessors.FieldAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sun.misc.Unsafe;
+
+/**
+ * Compares the {@code FieldAccessor} field reads with direct {@code Unsafe} reads (using cached offsets) and plain
+ * reflection, for the fields of an application class and for the fields of a JDK class that is not open to Jamm.
+ */
+@Threads(3)
+@Fork(value = 1, jvmArgsPrepend = {
+        "-javaagent:target/jamm-0.4.1-SNAPSHOT.jar",
+})
+@Warmup(iterations=4, time=5)
+@Measurement(iterations=5, time=5)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchmarkFieldAccess
+{
+    private static final Unsafe UNSAFE = VM.getUnsafe();
+
+    private FieldAccessor accessor;
+
+    private Field[] fields;
+
+    private long[] offsets;
+
+    private Object obj;
+
+    private Field elementDataField;
+
+    private long elementDataOffset;
+
+    private ArrayList<Object> list;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        accessor = FieldAccessor.newInstance();
+
+        obj = new ClassWithFourObjectFields("a", new Object(), new int[3], 5L);
+        fields = ClassWithFourObjectFields.class.getDeclaredFields();
+        offsets = new long[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i].setAccessible(true);
+            offsets[i] = UNSAFE.objectFieldOffset(fields[i]);
+        }
+
+        list = new ArrayList<>();
+        list.add(obj);
+        elementDataField = ArrayList.class.getDeclaredField("elementData");
+        elementDataOffset = UNSAFE.objectFieldOffset(elementDataField);
+    }
+
+    @Benchmark
+    public void accessor(Blackhole bh) {
+        for (Field field : fields)
+            bh.consume(accessor.getFieldValue(obj, field));
+    }
+
+    @Benchmark
+    public void unsafe(Blackhole bh) {
+        for (long offset : offsets)
+            bh.consume(UNSAFE.getObject(obj, offset));
+    }
+
+    @Benchmark
+    public void reflection(Blackhole bh) throws IllegalAccessException {
+        for (Field field : fields)
+            bh.consume(field.get(obj));
+    }
+
+    @Benchmark
+    public void accessorOnJdkClass(Blackhole bh) {
+        bh.consume(accessor.getFieldValue(list, elementDataField));
+    }
+
+    @Benchmark
+    public void unsafeOnJdkClass(Blackhole bh) {
+        bh.consume(UNSAFE.getObject(list, elementDataOffset));
+    }
+
+    public static class ClassWithFourObjectFields {
+
+        private String first;
+
+        private Object second;
+
+        private int[] third;
+
+        private Long fourth;
+
+        public ClassWithFourObjectFields(String first, Object second, int[] third, Long fourth) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+            this.fourth = fourth;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.github.jamm.jmh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.github.jamm.MemoryMeter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the strategies on a graph mixing JDK collections, boxed values, strings, arrays and application classes,
+ * measured as a whole and object by object (the map entries and internal arrays of the collections being only
+ * measured as a whole).
+ */
+@Threads(3)
+@Fork(value = 1, jvmArgsPrepend = {
+        "-javaagent:target/jamm-0.4.1-SNAPSHOT.jar",
+})
+@Warmup(iterations=4, time=5)
+@Measurement(iterations=5, time=5)
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BenchmarkMeasureMixedGraph {
+
+    @Param({"INSTRUMENTATION", "INSTRUMENTATION_AND_SPECIFICATION", "SPECIFICATION", "UNSAFE", "ADAPTIVE"})
+    private String guess;
+
+    private MemoryMeter meter;
+
+    private static Object graph;
+
+    /**
+     * The objects of the graph measured one by one.
+     */
+    private static Object[] objects;
+
+    static
+    {
+        Random random = new Random(42);
+        List<Object> all = new ArrayList<>();
+
+        Map<Long, Order> orders = new HashMap<>();
+        for (long id = 0; id < 200; id++) {
+            List<Line> lines = new ArrayList<>();
+            for (int i = 0, m = random.nextInt(5) + 1; i < m; i++) {
+                Line line = new Line("item-" + random.nextInt(1000), random.nextInt(10), new int[random.nextInt(4) + 1]);
+                lines.add(line);
+                add(all, line, line.item, line.options);
+            }
+            Order order = new Order(id, "customer-" + random.nextInt(50), lines, random.nextDouble());
+            Long key = id;
+            orders.put(key, order);
+            add(all, key, order, order.customer, lines);
+        }
+
+        Map<String, Object> index = new ConcurrentHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            String key = "key-" + i;
+            Object value = i % 3 == 0 ? new byte[i] : i % 3 == 1 ? Integer.valueOf(i) : new Object[] {"value", (long) i};
+            index.put(key, value);
+            add(all, key, value);
+        }
+        add(all, orders, index);
+
+        graph = new Object[] {orders, index};
+        objects = all.toArray();
+    }
+
+    private static void add(List<Object> objects, Object... values) {
+        for (Object value : values)
+            objects.add(value);
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        MemoryMeter.Guess guess = MemoryMeter.Guess.valueOf(this.guess);
+        this.meter = MemoryMeter.builder().withGuessing(guess).build();
+    }
+
+    @Benchmark
+    public void measure(Blackhole bh) {
+        for (Object o : objects)
+            bh.consume(meter.measure(o));
+    }
+
+    @Benchmark
+    public long measureDeep() {
+        return meter.measureDeep(graph);
+    }
+
+    public static class Order {
+        final long id;
+
+        final String customer;
+
+        final List<Line> lines;
+
+        final double discount;
+
+        public Order(long id, String customer, List<Line> lines, double discount) {
+            this.id = id;
+            this.customer = customer;
+            this.lines = lines;
+            this.discount = discount;
+        }
+    }
+
+    public static class Line {
+        final String item;
+
+        final int quantity;
+
+        final int[] options;
+
+        public Line(String item, int quantity, int[] options) {
+            this.item = item;
+            this.quantity = quantity;
+            this.options = options;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.github.jamm.jmh;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -40,6 +42,8 @@ public class BenchmarkMeasureString
 
     private static String[] strings;
 
+    private static List<String> list;
+
     private long emptySize;
 
     static
@@ -56,6 +60,7 @@ public class BenchmarkMeasureString
                                  .toString();
             }
             strings = array;
+            list = Arrays.asList(array);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -87,4 +92,19 @@ public class BenchmarkMeasureString
         for (String s : strings)
             bh.consume(meter.measureDeep(s));
     }
+
+    @Benchmark
+    public void measureStringArrayDeep(Blackhole bh) {
+        bh.consume(meter.measureStringArrayDeep(strings));
+    }
+
+    @Benchmark
+    public void measureDeepStringArray(Blackhole bh) {
+        bh.consume(meter.measureDeep(strings));
+    }
+
+    @Benchmark
+    public void measureStringsDeep(Blackhole bh) {
+        bh.consume(meter.measureStringsDeep(list));
+    }
 }
@@ -0,0 +1,39 @@
+package org.github.jamm.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.github.jamm.MemoryMeter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to the first measurement in a fresh JVM: the strategies and the memory layout initialization
+ * followed by a deep measurement. Each fork only performs a single measurement.
+ */
+@Fork(value = 20, jvmArgsPrepend = {
+        "-javaagent:target/jamm-0.4.1-SNAPSHOT.jar",
+})
+@Warmup(iterations=0)
+@Measurement(iterations=1)
+@BenchmarkMode(Mode.SingleShotTime)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BenchmarkStartup
+{
+    @Param({"INSTRUMENTATION", "INSTRUMENTATION_AND_SPECIFICATION", "UNSAFE", "SPECIFICATION"})
+    private String guess;
+
+    @Benchmark
+    public long timeToFirstMeasureDeep() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(MemoryMeter.Guess.valueOf(guess)).build();
+        return meter.measureDeep(new Object[] {"test", new int[10], Long.valueOf(12)});
+    }
+}
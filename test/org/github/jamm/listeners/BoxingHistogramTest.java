@@ -0,0 +1,130 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.github.jamm.Measurable;
+import org.github.jamm.MeasurementStack;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.utils.ArrayMeasurementUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.github.jamm.MemoryMeterStrategy.MEMORY_LAYOUT;
+
+public class BoxingHistogramTest {
+
+    @Test
+    public void testBoxingHistogram() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Holder[] holders = new Holder[3];
+        for (int i = 0; i < 3; i++) {
+            Holder holder = new Holder();
+            for (int j = 0; j < 100; j++)
+                holder.list.add(1000L * i + j + 1000);
+            for (int j = 0; j < 10; j++)
+                holder.map.put(1000 * i + j + 1000, (double) j);
+            holders[i] = holder;
+        }
+
+        BoxingHistogram histogram = new BoxingHistogram();
+        meter.measureDeep(holders, histogram);
+
+        List<BoxingHistogram.Entry> entries = histogram.entries();
+        assertEquals(3, entries.size());
+
+        BoxingHistogram.Entry entry = entry(entries, Long.class);
+        assertTrue(entry.path().endsWith(Holder.class.getName() + ".list/java.util.ArrayList.elementData/java.lang.Object[][*]"));
+        assertEquals(3, entry.collections());
+        assertEquals(300, entry.count());
+        assertEquals(300 * meter.measure(1000L), entry.boxBytes());
+        assertEquals(3 * (arraySize(100, MEMORY_LAYOUT.getReferenceSize()) + 100 * meter.measure(1000L)), entry.boxedLayoutBytes());
+        assertEquals(3 * arraySize(100, 8), entry.primitiveLayoutBytes());
+        assertEquals(entry.boxedLayoutBytes() - entry.primitiveLayoutBytes(), entry.savedBytes());
+
+        entry = entry(entries, Integer.class);
+        assertTrue(entry.path().endsWith("java.util.HashMap$Node.key"));
+        assertEquals(3, entry.collections());
+        assertEquals(30, entry.count());
+        assertEquals(3 * arraySize(10, 4), entry.primitiveLayoutBytes());
+
+        entry = entry(entries, Double.class);
+        assertTrue(entry.path().endsWith("java.util.HashMap$Node.value"));
+        assertEquals(30, entry.count());
+
+        long saved = 0;
+        for (BoxingHistogram.Entry e : entries)
+            saved += e.savedBytes();
+        assertEquals(saved, histogram.savedBytes());
+    }
+
+    @Test
+    public void testBoxesInElementFieldsAreIgnored() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        List<Holder> holders = new ArrayList<>();
+        holders.add(new Holder());
+
+        BoxingHistogram histogram = new BoxingHistogram();
+        meter.measureDeep(holders, histogram);
+
+        // Holder.id is reached through the list but is not held by it
+        assertEquals(0, histogram.entries().size());
+        assertEquals(0, histogram.savedBytes());
+    }
+
+    @Test
+    public void testReuseAfterAbortedTraversal() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        List<Object> list = new ArrayList<>();
+        list.add(new Failing());
+
+        BoxingHistogram histogram = new BoxingHistogram();
+        try {
+            meter.measureDeep(list, histogram);
+            fail();
+        } catch (IllegalStateException e) {
+            // The traversal has been aborted while the list was open
+        }
+
+        // The array is not held by a collection
+        meter.measureDeep(new Object[] {1000L}, histogram);
+        assertEquals(0, histogram.entries().size());
+    }
+
+    private static BoxingHistogram.Entry entry(List<BoxingHistogram.Entry> entries, Class<?> boxType) {
+        for (BoxingHistogram.Entry entry : entries) {
+            if (entry.boxType() == boxType)
+                return entry;
+        }
+        throw new AssertionError("No entry found for " + boxType + " in " + entries);
+    }
+
+    private static long arraySize(int length, int elementSize) {
+        return ArrayMeasurementUtils.computeArraySize(MEMORY_LAYOUT.getArrayHeaderSize(), length, elementSize, MEMORY_LAYOUT.getObjectAlignment());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Holder {
+        // Boxes outside of collections are ignored
+        private final Long id = 123456L;
+        private final List<Long> list = new ArrayList<>();
+        private final Map<Integer, Double> map = new HashMap<>();
+    }
+
+    private static class Failing implements Measurable {
+
+        @Override
+        public void addChildrenTo(MeasurementStack stack) {
+            throw new IllegalStateException();
+        }
+    }
+}
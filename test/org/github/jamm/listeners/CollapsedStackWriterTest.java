@@ -0,0 +1,71 @@
+package org.github.jamm.listeners;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.testedclasses.Partition;
+import org.github.jamm.testedclasses.Partition.Row;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CollapsedStackWriterTest {
+
+    @Test
+    public void testCollapsedStacks() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Partition partition = new Partition();
+        for (int i = 0; i < 1000; i++)
+            partition.rows.add(new Row(3));
+
+        Map<String, Long> lines = collapsedStacks(partition, FieldPathTree.DEFAULT_MAX_DEPTH);
+
+        String partitionName = Partition.class.getName();
+        String rowName = Row.class.getName();
+        String rows = partitionName + ';' + partitionName + ".rows";
+        String elements = rows + ";java.util.ArrayList.elementData;java.lang.Object[][*]";
+
+        assertEquals(Long.valueOf(meter.measure(partition)), lines.get(partitionName));
+        assertEquals(Long.valueOf(meter.measure(partition.rows)), lines.get(rows));
+        assertEquals(Long.valueOf(1000 * meter.measure(partition.rows.get(0))), lines.get(elements));
+        assertEquals(Long.valueOf(1000 * meter.measure(new byte[8])), lines.get(elements + ';' + rowName + ".data"));
+        // The linked lists are folded into a single path
+        assertEquals(Long.valueOf(3000 * meter.measure(new Row(0))), lines.get(elements + ';' + rowName + ".next"));
+        assertEquals(Long.valueOf(3000 * meter.measure(new byte[8])), lines.get(elements + ';' + rowName + ".next;" + rowName + ".data"));
+        assertEquals(7, lines.size());
+        assertEquals(meter.measureDeep(partition), lines.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testMaxDepth() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Partition partition = new Partition();
+        partition.rows.add(new Row(0));
+
+        Map<String, Long> lines = collapsedStacks(partition, 2);
+
+        String partitionName = Partition.class.getName();
+        assertEquals(2, lines.size());
+        assertEquals(Long.valueOf(meter.measureDeep(partition) - meter.measure(partition)), lines.get(partitionName + ';' + partitionName + ".rows"));
+    }
+
+    private static Map<String, Long> collapsedStacks(Object root, int maxDepth) {
+        StringWriter writer = new StringWriter();
+        MemoryMeter meter = MemoryMeter.builder().withListener(new CollapsedStackWriter.Factory(writer, maxDepth)).build();
+        meter.measureDeep(root);
+
+        Map<String, Long> lines = new LinkedHashMap<>();
+        for (String line : writer.toString().split("\n")) {
+            int index = line.lastIndexOf(' ');
+            assertTrue(line, index > 0);
+            lines.put(line.substring(0, index), Long.parseLong(line.substring(index + 1)));
+        }
+        return lines;
+    }
+}
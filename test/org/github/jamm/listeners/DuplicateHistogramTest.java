@@ -0,0 +1,101 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryLayoutSpecification;
+import org.github.jamm.MemoryMeter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateHistogramTest {
+
+    @Test
+    public void testDuplicates() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            values.add(new String("duplicated"));
+            values.add(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+            values.add(Long.valueOf(1000L + (i % 2))); // not cached, each call returns a new instance
+        }
+        values.add("unique");
+        values.add(new byte[] {1, 2, 3});
+        String shared = new String("shared");
+        values.add(shared);
+        values.add(shared);
+
+        DuplicateHistogram histogram = new DuplicateHistogram();
+        meter.measureDeep(values, histogram);
+
+        List<DuplicateHistogram.Entry> entries = histogram.entries();
+        assertEquals(4, entries.size());
+
+        long stringSize = meter.measureDeep("duplicated");
+        long arraySize = meter.measureArray(new byte[9]);
+        long longSize = meter.measure(1000L);
+
+        assertEntry(entries, String.class, "duplicated", 10, stringSize);
+        assertEntry(entries, byte[].class, "[1, 2, 3, 4, 5, 6, 7, 8, 9]", 10, arraySize);
+        assertEntry(entries, Long.class, "1000", 5, longSize);
+        assertEntry(entries, Long.class, "1001", 5, longSize);
+
+        assertEquals(9 * stringSize + 9 * arraySize + 8 * longSize, histogram.wastedBytes());
+        assertTrue(histogram.toString().contains("\"duplicated\""));
+    }
+
+    @Test
+    public void testStringsWithoutOptimization() {
+        MemoryLayoutSpecification layout = MemoryLayoutSpecification.builder().withCompressedOops(false).build();
+        MemoryMeter meter = MemoryMeter.builder().withMemoryLayout(layout).build();
+        assertFalse(meter.isStringOptimizationEnabled());
+
+        // The strings must not share their value for all of them to be measured with their value
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            values.add(new String("duplicated".toCharArray()));
+
+        DuplicateHistogram histogram = new DuplicateHistogram();
+        meter.measureDeep(values, histogram);
+
+        List<DuplicateHistogram.Entry> entries = histogram.entries();
+        assertEquals(1, entries.size());
+        assertEntry(entries, String.class, "duplicated", 10, meter.measureDeep(values.get(0)));
+    }
+
+    @Test
+    public void testBoundedTable() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(new String("duplicated"));
+            values.add(Integer.toString(i)); // unique values
+        }
+
+        DuplicateHistogram histogram = new DuplicateHistogram(16);
+        meter.measureDeep(values, histogram);
+
+        List<DuplicateHistogram.Entry> entries = histogram.entries();
+        assertEquals(1, entries.size());
+        assertEquals("duplicated", entries.get(0).sample());
+        assertEquals(1000, entries.get(0).count());
+    }
+
+    private static void assertEntry(List<DuplicateHistogram.Entry> entries, Class<?> type, String sample, long count, long size) {
+        for (DuplicateHistogram.Entry entry : entries) {
+            if (entry.type() == type && entry.sample().equals(sample)) {
+                assertEquals(count, entry.count());
+                assertEquals(size, entry.size());
+                assertEquals((count - 1) * size, entry.wastedBytes());
+                return;
+            }
+        }
+        throw new AssertionError("No entry found for " + type + ' ' + sample + " in " + entries);
+    }
+}
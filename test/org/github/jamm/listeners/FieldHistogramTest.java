@@ -0,0 +1,134 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import org.github.jamm.Measurable;
+import org.github.jamm.MeasurementStack;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.testedclasses.Partition;
+import org.github.jamm.testedclasses.Partition.Row;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FieldHistogramTest {
+
+    @Test
+    public void testFieldHistogram() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Partition partition = new Partition();
+        for (int i = 0; i < 1000; i++)
+            partition.rows.add(new Row(3));
+
+        FieldHistogram histogram = new FieldHistogram();
+        long size = meter.measureDeep(partition, histogram);
+        assertEquals(meter.measureDeep(partition), size);
+
+        long rowSize = meter.measure(new Row(0));
+        long dataSize = meter.measure(new byte[8]);
+
+        assertEntry(histogram, Partition.class, "rows", 1, meter.measure(partition.rows), size - meter.measure(partition));
+        assertEntry(histogram, ArrayList.class, "elementData", 1, size - meter.measure(partition) - meter.measure(partition.rows) - 4000 * (rowSize + dataSize), size - meter.measure(partition) - meter.measure(partition.rows));
+        assertEntry(histogram, Object[].class, "[*]", 1000, 1000 * rowSize, 4000 * (rowSize + dataSize));
+        // The nested rows must only be counted once in the reachable size
+        assertEntry(histogram, Row.class, "next", 3000, 3000 * rowSize, 3000 * (rowSize + dataSize));
+        assertEntry(histogram, Row.class, "data", 4000, 4000 * dataSize, 4000 * dataSize);
+        assertEquals(5, histogram.entries().size());
+        assertEquals("rows", histogram.entries().get(0).fieldName());
+        assertNull(histogram.entry(Partition.class, "missing"));
+    }
+
+    @Test
+    public void testInheritedFieldsAndAggregation() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        FieldHistogram histogram = new FieldHistogram();
+        meter.measureDeep(new Row(0), histogram);
+        meter.measureDeep(new SubRow(), histogram);
+
+        // The fields inherited from Row are attributed to Row
+        assertEntry(histogram, Row.class, "data", 2, 2 * meter.measure(new byte[8]), 2 * meter.measure(new byte[8]));
+        assertEntry(histogram, SubRow.class, "name", 1, meter.measureDeep("name"), meter.measureDeep("name"));
+        assertEquals(2, histogram.entries().size());
+    }
+
+    @Test
+    public void testShadowedFields() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        FieldHistogram histogram = new FieldHistogram();
+        meter.measureDeep(new Shadowing(), histogram);
+
+        assertEntry(histogram, Shadowed.class, "value", 1, meter.measure(new byte[8]), meter.measure(new byte[8]));
+        assertEntry(histogram, Shadowing.class, "value", 1, meter.measure(new long[4]), meter.measure(new long[4]));
+        assertEquals(2, histogram.entries().size());
+    }
+
+    @Test
+    public void testReuseAfterAbortedTraversal() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        FieldHistogram histogram = new FieldHistogram();
+        try {
+            meter.measureDeep(new Holder(new Failing()), histogram);
+            fail();
+        } catch (IllegalStateException e) {
+            // The traversal has been aborted while Holder.child was in the path
+        }
+
+        Holder holder = new Holder(new byte[8]);
+        meter.measureDeep(holder, histogram);
+
+        long dataSize = meter.measure(new byte[8]);
+        assertEquals(dataSize, histogram.entry(Holder.class, "child").reachableBytes());
+    }
+
+    private static void assertEntry(FieldHistogram histogram, Class<?> declaringClass, String fieldName, long count, long bytes, long reachableBytes) {
+        FieldHistogram.Entry entry = histogram.entry(declaringClass, fieldName);
+        assertEquals(declaringClass, entry.declaringClass());
+        assertEquals(fieldName, entry.fieldName());
+        assertEquals(count, entry.count());
+        assertEquals(bytes, entry.bytes());
+        assertEquals(reachableBytes, entry.reachableBytes());
+    }
+
+    @SuppressWarnings("unused")
+    private static class SubRow extends Row {
+        private final String name = "name";
+
+        public SubRow() {
+            super(0);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Shadowed {
+        private final byte[] value = new byte[8];
+    }
+
+    @SuppressWarnings("unused")
+    private static class Shadowing extends Shadowed {
+        private final long[] value = new long[4];
+    }
+
+    @SuppressWarnings("unused")
+    private static class Holder {
+        private final Object child;
+
+        public Holder(Object child) {
+            this.child = child;
+        }
+    }
+
+    private static class Failing implements Measurable {
+
+        @Override
+        public void addChildrenTo(MeasurementStack stack) {
+            throw new IllegalStateException();
+        }
+    }
+}
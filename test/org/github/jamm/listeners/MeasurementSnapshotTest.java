@@ -0,0 +1,213 @@
+package org.github.jamm.listeners;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MeasurementSnapshotTest {
+
+    @Test
+    public void testSnapshot() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Holder holder = new Holder();
+        for (int i = 0; i < 10; i++)
+            holder.values.add(new long[] {i});
+
+        SnapshotRecorder recorder = new SnapshotRecorder();
+        meter.measureDeep(holder, recorder);
+        MeasurementSnapshot snapshot = recorder.snapshot();
+
+        assertEquals(meter.measureDeep(holder), snapshot.totalBytes());
+        assertEquals(13, snapshot.totalCount());
+
+        MeasurementSnapshot.Entry entry = snapshot.classEntry(long[].class.getName());
+        assertEquals(10, entry.count());
+        assertEquals(10 * meter.measure(new long[1]), entry.bytes());
+        assertEquals(1, snapshot.classEntry(Holder.class.getName()).count());
+        assertNull(snapshot.classEntry(String.class.getName()));
+
+        String holderName = Holder.class.getName();
+        String listPath = holderName + ';' + holderName + ".values";
+        entry = snapshot.pathEntry(listPath + ";java.util.ArrayList.elementData;java.lang.Object[][*]");
+        assertEquals(10, entry.count());
+        assertEquals(10 * meter.measure(new long[1]), entry.bytes());
+        assertEquals(meter.measure(holder.values), snapshot.pathEntry(listPath).bytes());
+        assertEquals(meter.measure(holder), snapshot.pathEntry(holderName).bytes());
+        assertEquals(4, snapshot.paths().size());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Holder holder = new Holder();
+        for (int i = 0; i < 10; i++)
+            holder.values.add(new long[] {i});
+
+        SnapshotRecorder recorder = new SnapshotRecorder();
+        meter.measureDeep(holder, recorder);
+        MeasurementSnapshot snapshot = recorder.snapshot();
+
+        Path file = Files.createTempFile("jamm", ".snapshot");
+        try {
+            snapshot.writeTo(file);
+            MeasurementSnapshot read = MeasurementSnapshot.read(file);
+
+            assertEquals(snapshot.timestamp(), read.timestamp());
+            assertEquals(snapshot.totalBytes(), read.totalBytes());
+            assertEntriesEquals(snapshot.classes(), read.classes());
+            assertEntriesEquals(snapshot.paths(), read.paths());
+
+            // The file is mapped by the snapshot read from it
+            read.writeTo(file);
+            assertEntriesEquals(snapshot.classes(), read.classes());
+            assertEntriesEquals(snapshot.paths(), MeasurementSnapshot.read(file).paths());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertEntriesEquals(List<MeasurementSnapshot.Entry> expected, List<MeasurementSnapshot.Entry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+    }
+
+    @Test
+    public void testReadInvalidFile() throws IOException {
+        Path file = Files.createTempFile("jamm", ".snapshot");
+        try {
+            Files.write(file, new byte[] {'J', 'A', 'M'});
+            assertReadFails(file);
+
+            Files.write(file, new byte[] {'J', 'A', 'M', 'M', 0, 1, 0});
+            assertReadFails(file);
+
+            Files.write(file, new byte[] {'J', 'A', 'M', 'M', 0, 2});
+            assertReadFails(file);
+
+            Files.write(file, snapshotBytes(-1, -1, 0)); // negative string length
+            assertReadFails(file);
+
+            Files.write(file, snapshotBytes(1, -2, 0)); // negative parent other than -1
+            assertReadFails(file);
+
+            Files.write(file, snapshotBytes(1, -1, 1)); // out of range string index
+            assertReadFails(file);
+
+            byte[] bytes = snapshotBytes(1, -1, 0);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 1)); // truncated
+            assertReadFails(file);
+
+            Files.write(file, bytes);
+            assertEquals(8, MeasurementSnapshot.read(file).pathEntry("a").bytes());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Builds the content of a snapshot file holding the string {@code "a"} and a single path.
+     */
+    private static byte[] snapshotBytes(int stringLength, int parent, int labelIndex) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putInt(0x4A414D4D).putShort((short) 1).putLong(0).putLong(8);
+        buffer.putInt(1).putInt(stringLength).put((byte) 'a');
+        buffer.putInt(0);
+        buffer.putInt(1).putInt(parent).putInt(labelIndex).putLong(1).putLong(8);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void assertReadFails(Path file) {
+        try {
+            MeasurementSnapshot.read(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHiddenClassNamesInPaths() {
+        // The path elements can contain '/', as the hidden class names
+        MeasurementSnapshot snapshot = MeasurementSnapshot.of(0,
+                                                              24,
+                                                              new String[0],
+                                                              new long[0],
+                                                              new long[0],
+                                                              new int[] {-1, 0},
+                                                              new String[] {"a.Lambda/0x01", "a.Lambda/0x01.f"},
+                                                              new long[] {1, 1},
+                                                              new long[] {16, 8});
+
+        assertEquals(16, snapshot.pathEntry("a.Lambda/0x01").bytes());
+        assertEquals(8, snapshot.pathEntry("a.Lambda/0x01;a.Lambda/0x01.f").bytes());
+        assertNull(snapshot.pathEntry("a.Lambda/0x01/a.Lambda/0x01.f"));
+
+        // The entries are only built once
+        assertSame(snapshot.paths().get(0), snapshot.paths().get(0));
+    }
+
+    @Test
+    public void testDiff() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Holder holder = new Holder();
+        for (int i = 0; i < 10; i++)
+            holder.values.add(new long[] {i});
+        holder.name = "holder";
+
+        SnapshotRecorder recorder = new SnapshotRecorder();
+        meter.measureDeep(holder, recorder);
+        MeasurementSnapshot before = recorder.snapshot();
+
+        for (int i = 0; i < 10; i++)
+            holder.values.add(new long[] {i, i, i, i});
+        holder.name = null;
+
+        recorder = new SnapshotRecorder();
+        meter.measureDeep(holder, recorder);
+        MeasurementSnapshot after = recorder.snapshot();
+
+        MeasurementSnapshot.Diff diff = after.diff(before);
+        assertEquals(after.totalBytes() - before.totalBytes(), diff.totalBytesDelta());
+
+        MeasurementSnapshot.Delta delta = diff.classes().get(0);
+        assertEquals(long[].class.getName(), delta.name());
+        assertEquals(10, delta.countDelta());
+        assertEquals(10 * meter.measure(new long[4]), delta.bytesDelta());
+
+        delta = diff.classes().get(diff.classes().size() - 1);
+        assertEquals(String.class.getName(), delta.name());
+        assertEquals(-1, delta.countDelta());
+        assertEquals(0, delta.countAfter());
+
+        String holderName = Holder.class.getName();
+        delta = diff.paths().get(0);
+        assertEquals(holderName + ';' + holderName + ".values;java.util.ArrayList.elementData;java.lang.Object[][*]", delta.name());
+        assertEquals(10, delta.countBefore());
+        assertEquals(20, delta.countAfter());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Holder {
+
+        private final List<long[]> values = new ArrayList<>();
+
+        private String name;
+    }
+}
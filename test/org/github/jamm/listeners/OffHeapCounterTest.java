@@ -0,0 +1,136 @@
+package org.github.jamm.listeners;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.utils.MemorySegmentUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class OffHeapCounterTest {
+
+    @Test
+    public void testDirectBuffers() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+        direct.position(100);
+        ByteBuffer[] buffers = {direct.slice(),
+                                direct.duplicate(),
+                                direct.asReadOnlyBuffer(),
+                                direct.asReadOnlyBuffer().slice(),
+                                ByteBuffer.allocateDirect(50),
+                                ByteBuffer.allocate(2000)};
+
+        OffHeapCounter counter = new OffHeapCounter();
+        long heapBytes = meter.measureDeep(buffers, counter);
+
+        assertEquals(heapBytes, counter.heapBytes());
+        assertEquals(1050, counter.directBytes());
+        assertEquals(2, counter.directBuffers());
+        assertEquals(0, counter.mappedBytes());
+        assertEquals(1050, counter.offHeapBytes());
+
+        // The buffers already counted are not counted again
+        meter.measureDeep(direct, counter);
+        assertEquals(1050, counter.directBytes());
+
+        // In slab mode the buffer fields are not measured but the buffers still are
+        counter = new OffHeapCounter();
+        meter.measureDeep(buffers, MemoryMeter.ByteBufferMode.SLAB_ALLOCATION_SLICE, counter);
+        assertEquals(1050, counter.directBytes());
+    }
+
+    @Test
+    public void testChainedSlices() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        // Before Java 12, each slice or duplicate is attached to the buffer it has been created from
+        ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+        ByteBuffer slice = direct.slice();
+        ByteBuffer[] buffers = {slice.slice(),
+                                slice.slice().duplicate(),
+                                slice.duplicate().asReadOnlyBuffer().slice(),
+                                direct.asReadOnlyBuffer().duplicate()};
+
+        OffHeapCounter counter = new OffHeapCounter();
+        meter.measureDeep(buffers, counter);
+
+        assertEquals(1000, counter.directBytes());
+        assertEquals(1, counter.directBuffers());
+    }
+
+    @Test
+    public void testMappedBuffers() throws IOException {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Path file = Files.createTempFile("jamm", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 4096);
+            MappedByteBuffer readOnly = channel.map(FileChannel.MapMode.READ_ONLY, 0, 100);
+            mapped.position(10);
+
+            Object[] buffers = {mapped.slice(), mapped.duplicate(), readOnly, ByteBuffer.allocateDirect(10)};
+
+            OffHeapCounter counter = new OffHeapCounter();
+            meter.measureDeep(buffers, counter);
+
+            assertEquals(4196, counter.mappedBytes());
+            assertEquals(2, counter.mappedBuffers());
+            assertEquals(10, counter.directBytes());
+            assertEquals(1, counter.directBuffers());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMemorySegments() throws Exception {
+        assumeTrue(MemorySegmentUtils.isSupported());
+
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        // The library and its tests are compiled for Java 8, the API is therefore used through reflection
+        Class<?> arenaClass = Class.forName("java.lang.foreign.Arena");
+        Class<?> segmentClass = Class.forName("java.lang.foreign.MemorySegment");
+        Method asSlice = segmentClass.getMethod("asSlice", long.class, long.class);
+
+        try (AutoCloseable arena = (AutoCloseable) arenaClass.getMethod("ofConfined").invoke(null)) {
+            Method allocate = arenaClass.getMethod("allocate", long.class);
+            Object segment = allocate.invoke(arena, 1000L);
+            Object other = allocate.invoke(arena, 24L);
+            Object[] segments = {asSlice.invoke(segment, 0L, 600L),
+                                 asSlice.invoke(segment, 400L, 600L),
+                                 asSlice.invoke(segment, 100L, 10L),
+                                 segmentClass.getMethod("asByteBuffer").invoke(other),
+                                 other};
+
+            OffHeapCounter counter = new OffHeapCounter();
+            meter.measureDeep(segments, counter);
+
+            assertEquals(1024, counter.nativeSegmentBytes());
+            assertEquals(0, counter.mappedSegmentBytes());
+            assertEquals(0, counter.directBytes());
+            assertEquals(1024, counter.offHeapBytes());
+        }
+
+        // The scope of the heap segments is not part of their measurement
+        byte[] array = new byte[100];
+        Object heapSegment = segmentClass.getMethod("ofArray", byte[].class).invoke(null, (Object) array);
+        assertEquals(meter.measure(heapSegment) + meter.measureArray(array), meter.measureDeep(heapSegment));
+
+        OffHeapCounter counter = new OffHeapCounter();
+        meter.measureDeep(heapSegment, counter);
+        assertEquals(0, counter.offHeapBytes());
+    }
+}
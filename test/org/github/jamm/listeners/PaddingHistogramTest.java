@@ -0,0 +1,144 @@
+package org.github.jamm.listeners;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import org.github.jamm.ClassLayout;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.MemoryMeter.Guess;
+
+import static org.junit.Assert.assertEquals;
+
+import static org.github.jamm.MemoryMeterStrategy.MEMORY_LAYOUT;
+import static org.github.jamm.utils.MathUtils.roundTo;
+
+@RunWith(Parameterized.class)
+public class PaddingHistogramTest {
+
+    private final MemoryMeter.Guess guess;
+
+    @Parameterized.Parameters
+    public static Collection<MemoryMeter.Guess> guesses() {
+
+        return Arrays.asList(Guess.INSTRUMENTATION, Guess.INSTRUMENTATION_AND_SPECIFICATION, Guess.UNSAFE, Guess.SPECIFICATION);
+    }
+
+    public PaddingHistogramTest(MemoryMeter.Guess guess) {
+        this.guess = guess;
+    }
+
+    @Test
+    public void testPaddingHistogram() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        Holder holder = new Holder();
+        PaddingHistogram histogram = new PaddingHistogram();
+        long size = meter.measureDeep(holder, histogram);
+
+        long total = 0;
+        for (PaddingHistogram.Entry entry : histogram.entries()) {
+            total += entry.bytes();
+            assertEquals(entry.gapBytes() + entry.contendedPaddingBytes() + entry.alignmentPaddingBytes(), entry.wastedBytes());
+        }
+        assertEquals(size, total);
+
+        long headerSize = MEMORY_LAYOUT.getObjectHeaderSize();
+        int alignment = MEMORY_LAYOUT.getObjectAlignment();
+
+        PaddingHistogram.Entry entry = histogram.entry(ByteHolder.class);
+        assertEquals(10, entry.count());
+        assertEquals(10 * meter.measure(new ByteHolder()), entry.bytes());
+        assertEquals(0, entry.gapBytes());
+        assertEquals(0, entry.contendedPaddingBytes());
+        assertEquals(10 * (roundTo(headerSize + 1, alignment) - (headerSize + 1)), entry.alignmentPaddingBytes());
+
+        entry = histogram.entry(Child.class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measure(new Child()), headerSize + 12 + entry.wastedBytes());
+        // The gaps and the alignment padding depend on the way the JVM laid out the fields
+        ClassLayout layout = meter.layoutOf(Child.class);
+        assertEquals(layout.gapsSize(), entry.gapBytes());
+        assertEquals(layout.alignmentPaddingSize(), entry.alignmentPaddingBytes());
+
+        entry = histogram.entry(byte[].class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measure(new byte[5]) - MEMORY_LAYOUT.getArrayHeaderSize() - 5, entry.alignmentPaddingBytes());
+    }
+
+    @Test
+    public void testStrings() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        String[] strings = {"padding", "histogram"};
+        PaddingHistogram histogram = new PaddingHistogram();
+        long size = meter.measureDeep(strings, histogram);
+
+        // The strings are recorded with their shallow size, even if they have been measured with their value
+        PaddingHistogram.Entry entry = histogram.entry(String.class);
+        assertEquals(2, entry.count());
+        assertEquals(2 * meter.measure(strings[0]), entry.bytes());
+        assertEquals(meter.layoutOf(String.class).alignmentPaddingSize() * 2, entry.alignmentPaddingBytes());
+
+        entry = histogram.entry(String[].class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measure(strings), entry.bytes());
+
+        // The values are recorded under their own entry
+        assertEquals(3, histogram.entries().size());
+        for (PaddingHistogram.Entry e : histogram.entries()) {
+            if (e.type().isArray() && e.type().getComponentType().isPrimitive()) {
+                assertEquals(2, e.count());
+                assertEquals(size - meter.measure(strings) - 2 * meter.measure(strings[0]), e.bytes());
+            }
+        }
+    }
+
+    @Test
+    public void testContendedPadding() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(guess).build();
+
+        PaddingHistogram histogram = new PaddingHistogram();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            meter.measureDeep(pool, histogram);
+        } finally {
+            pool.shutdown();
+        }
+
+        // The ForkJoinPool class is padded on every Java version (the Thread fields are no longer padded since Java 19)
+        PaddingHistogram.Entry entry = histogram.entry(ForkJoinPool.class);
+        assertEquals(entry.count() * (MEMORY_LAYOUT.getContendedPaddingWidth() << 1), entry.contendedPaddingBytes());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Holder {
+        private final ByteHolder[] bytes = new ByteHolder[10];
+        private final Child child = new Child();
+        private final byte[] data = new byte[5];
+
+        public Holder() {
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = new ByteHolder();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class ByteHolder {
+        private byte b;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Parent {
+        private long l;
+    }
+
+    @SuppressWarnings("unused")
+    private static class Child extends Parent {
+        private int i;
+    }
+}
@@ -0,0 +1,84 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.github.jamm.Measurable;
+import org.github.jamm.MeasurementStack;
+import org.github.jamm.MemoryMeter;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PathTrackingListenerTest {
+
+    @Test
+    public void testReuseAfterAbortedTraversal() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+        PathRecorder recorder = new PathRecorder();
+
+        try {
+            meter.measureDeep(new Failing(), recorder);
+            fail();
+        } catch (IllegalStateException e) {
+            // The traversal has been aborted after pushing a child
+        }
+
+        recorder.paths.clear();
+        Node root = new Node(new Node(new Node(null)));
+        long size = meter.measureDeep(root, recorder);
+
+        assertEquals(meter.measureDeep(root), size);
+        assertEquals(asList("root", "root/child", "root/child/child"), recorder.paths);
+    }
+
+    private static final class PathRecorder extends PathTrackingListener<String> {
+
+        private final List<String> paths = new ArrayList<>();
+
+        @Override
+        protected String rootMeasured(Object root, long size) {
+            return record("root");
+        }
+
+        @Override
+        protected String fieldMeasured(String parent, Object owner, String fieldName, Object value, long size) {
+            return record(parent + '/' + fieldName);
+        }
+
+        @Override
+        protected String arrayElementMeasured(String parent, Object[] array, int index, Object element, long size) {
+            return record(parent + '[' + index + ']');
+        }
+
+        @Override
+        public void failedToAccessField(Object obj, String fieldName, Class<?> fieldType) {
+        }
+
+        private String record(String path) {
+            paths.add(path);
+            return path;
+        }
+    }
+
+    private static class Failing implements Measurable {
+
+        @Override
+        public void addChildrenTo(MeasurementStack stack) {
+            stack.pushObject(this, "pending", new Object());
+            throw new IllegalStateException();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class Node {
+        private final Node child;
+
+        public Node(Node child) {
+            this.child = child;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.github.jamm.listeners;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+
+import static org.junit.Assert.assertEquals;
+
+public class SharedStringCounterTest {
+
+    @Test
+    public void testSharedStringValues() {
+        String original = "some content shared by several strings";
+        String other = "some other content";
+
+        // The String(String) constructor shares the value of the original string
+        String[] strings = {original, new String(original), new String(original), other};
+
+        MemoryMeter meter = MemoryMeter.builder().build();
+        long valueSize = meter.measureDeep(original) - meter.measure(original);
+        long expected = meter.measureArray(strings) + 4 * meter.measure(original) + valueSize + meter.measureDeep(other) - meter.measure(other);
+        assertEquals(expected + 2 * valueSize, meter.measureDeep(strings));
+
+        MemoryMeter sharingMeter = MemoryMeter.builder().measureSharedStringValuesOnce().build();
+        SharedStringCounter counter = new SharedStringCounter();
+        assertEquals(expected, sharingMeter.measureDeep(strings, counter));
+        assertEquals(4, counter.strings());
+        assertEquals(2, counter.sharedStrings());
+        assertEquals(2 * valueSize, counter.sharedBytes());
+
+        // The values are only tracked within a single measurement
+        assertEquals(meter.measureDeep(original), sharingMeter.measureDeep(original));
+        assertEquals(meter.measureDeep(original), sharingMeter.measureDeep(new String(original)));
+    }
+}
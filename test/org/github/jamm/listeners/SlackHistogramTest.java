@@ -0,0 +1,144 @@
+package org.github.jamm.listeners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryLayoutSpecification;
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.utils.ArrayMeasurementUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import static org.github.jamm.MemoryMeterStrategy.MEMORY_LAYOUT;
+
+public class SlackHistogramTest {
+
+    @Test
+    public void testSlackHistogram() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        Holder holder = new Holder();
+        for (int i = 0; i < 10; i++)
+            holder.list.add(i);
+        for (int i = 0; i < 1000; i++)
+            holder.map.put(i, i);
+        for (int i = 10; i < 1000; i++)
+            holder.map.remove(i);
+        holder.builder.append("abc");
+
+        SlackHistogram histogram = new SlackHistogram();
+        meter.measureDeep(holder, histogram);
+
+        SlackHistogram.Entry entry = histogram.entry(ArrayList.class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measureArray(new Object[100]), entry.allocatedBytes());
+        assertEquals(meter.measureArray(new Object[10]), entry.usedBytes());
+
+        // 10 entries fit in a table of 16 buckets with the default load factor
+        entry = histogram.entry(HashMap.class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measureArray(new Object[2048]), entry.allocatedBytes());
+        assertEquals(meter.measureArray(new Object[16]), entry.usedBytes());
+
+        // Since Java 9 the builder value is a byte array with one byte per latin 1 character
+        entry = histogram.entry(StringBuilder.class);
+        assertEquals(1, entry.count());
+        assertEquals(meter.measureDeep(holder.builder) - meter.measure(holder.builder), entry.allocatedBytes());
+        int elementSize = entry.allocatedBytes() > meter.measureArray(new byte[1000]) ? 2 : 1;
+        assertEquals(ArrayMeasurementUtils.computeArraySize(MEMORY_LAYOUT.getArrayHeaderSize(), 3, elementSize, MEMORY_LAYOUT.getObjectAlignment()),
+                     entry.usedBytes());
+
+        assertNull(histogram.entry(Holder.class));
+        assertEquals(3, histogram.entriesByContainer().size());
+        assertEquals(HashMap.class.getName(), histogram.entriesByContainer().get(0).name());
+
+        List<SlackHistogram.Entry> entriesByPath = histogram.entriesByPath();
+        assertEquals(3, entriesByPath.size());
+        String holderName = Holder.class.getName();
+        assertEquals(holderName + '/' + holderName + ".map/" + HashMap.class.getName() + ".table", entriesByPath.get(0).name());
+    }
+
+    @Test
+    public void testHashTables() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        // The used capacity does not depend on the way the keys are distributed between the buckets
+        List<Map<Integer, Integer>> maps = new ArrayList<>();
+        maps.add(new HashMap<>(256, 0.5f));
+        maps.add(new Hashtable<>(256));
+        maps.add(new IdentityHashMap<>(256));
+        maps.add(new ConcurrentHashMap<>(256));
+        for (Map<Integer, Integer> map : maps) {
+            for (int i = 0; i < 10; i++)
+                map.put(i * 64, i);
+        }
+
+        SlackHistogram histogram = new SlackHistogram();
+        meter.measureDeep(maps, histogram);
+
+        // 10 entries need 20 buckets with a 0.5 load factor
+        assertEquals(meter.measureArray(new Object[32]), histogram.entry(HashMap.class).usedBytes());
+        // The Hashtable capacity does not need to be a power of 2
+        assertEquals(meter.measureArray(new Object[14]), histogram.entry(Hashtable.class).usedBytes());
+        // The keys and the values are stored in the table, which can hold 16 entries once resized for 10 entries
+        assertEquals(meter.measureArray(new Object[32]), histogram.entry(IdentityHashMap.class).usedBytes());
+        assertEquals(meter.measureArray(new Object[16]), histogram.entry(ConcurrentHashMap.class).usedBytes());
+    }
+
+    @Test
+    public void testHypotheticalLayout() {
+        MemoryLayoutSpecification layout = MemoryLayoutSpecification.builder()
+                                                                    .withCompressedOops(false)
+                                                                    .withObjectAlignment(16)
+                                                                    .build();
+        MemoryMeter meter = MemoryMeter.builder().withMemoryLayout(layout).build();
+
+        List<Integer> list = new ArrayList<>(100);
+        list.add(1);
+
+        SlackHistogram histogram = new SlackHistogram();
+        meter.measureDeep(list, histogram);
+
+        SlackHistogram.Entry entry = histogram.entry(ArrayList.class);
+        assertEquals(meter.measureArray(new Object[100]), entry.allocatedBytes());
+        assertEquals(meter.measureArray(new Object[1]), entry.usedBytes());
+    }
+
+    @Test
+    public void testAggregationPerPath() {
+        MemoryMeter meter = MemoryMeter.builder().build();
+
+        List<List<String>> lists = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<String> list = new ArrayList<>(20);
+            list.add("a");
+            lists.add(list);
+        }
+
+        SlackHistogram histogram = new SlackHistogram();
+        meter.measureDeep(lists, histogram);
+
+        // The recursive ArrayList.elementData paths are folded
+        List<SlackHistogram.Entry> entries = histogram.entriesByPath();
+        assertEquals(1, entries.size());
+        SlackHistogram.Entry entry = entries.get(0);
+        assertEquals(6, entry.count());
+        assertEquals(5 * meter.measureArray(new Object[20]) + meter.measureArray(new Object[10]), entry.allocatedBytes());
+        assertEquals(5 * meter.measureArray(new Object[1]) + meter.measureArray(new Object[5]), entry.usedBytes());
+        assertEquals(entry.allocatedBytes() - entry.usedBytes(), entry.unusedBytes());
+    }
+
+    private static class Holder {
+        private final List<Integer> list = new ArrayList<>(100);
+        private final Map<Integer, Integer> map = new HashMap<>();
+        private final StringBuilder builder = new StringBuilder(1000);
+    }
+}
@@ -0,0 +1,88 @@
+package org.github.jamm.listeners;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingTreeWriterTest {
+
+    private static final Pattern OBJECT = Pattern.compile("\\{\"event\":\"object\",\"id\":(\\d+)(,\"parent\":(\\d+))?.*,\"size\":(\\d+)\\}");
+
+    private static final Pattern SUBTREE = Pattern.compile("\\{\"event\":\"subtree\",\"id\":(\\d+),\"size\":(\\d+),\"total\":(\\d+)\\}");
+
+    private static final Pattern DONE = Pattern.compile("\\{\"event\":\"done\",\"total\":(\\d+)\\}");
+
+    @Test
+    public void testSubtreeTotals() {
+        StringWriter writer = new StringWriter();
+        MemoryMeter meter = MemoryMeter.builder().withListener(new StreamingTreeWriter.Factory(writer)).build();
+        MemoryMeter plainMeter = MemoryMeter.builder().build();
+
+        Node left = new Node(new Node(null, null, new int[10]), null, new int[3]);
+        Node right = new Node(null, new Object[] {"a", new Node(null, null, null), "a"}, new int[100]);
+        Node root = new Node(left, new Object[] {right, null, left}, null);
+
+        long total = meter.measureDeep(root);
+        assertEquals(plainMeter.measureDeep(root), total);
+
+        Map<Long, Long> parents = new HashMap<>();
+        Map<Long, Long> sizes = new HashMap<>();
+        Map<Long, Long> totals = new HashMap<>();
+        long done = -1;
+
+        for (String line : writer.toString().split("\n")) {
+            Matcher matcher = OBJECT.matcher(line);
+            if (matcher.matches()) {
+                long id = Long.parseLong(matcher.group(1));
+                // Each object must be written before its sub-tree is completed and after its parent
+                assertTrue(matcher.group(3) == null || (sizes.containsKey(Long.parseLong(matcher.group(3))) && !totals.containsKey(Long.parseLong(matcher.group(3)))));
+                if (matcher.group(3) != null)
+                    parents.put(id, Long.parseLong(matcher.group(3)));
+                sizes.put(id, Long.parseLong(matcher.group(4)));
+                continue;
+            }
+            matcher = SUBTREE.matcher(line);
+            if (matcher.matches()) {
+                long id = Long.parseLong(matcher.group(1));
+                assertEquals(sizes.get(id), Long.valueOf(matcher.group(2)));
+                totals.put(id, Long.parseLong(matcher.group(3)));
+                continue;
+            }
+            matcher = DONE.matcher(line);
+            assertTrue(line, matcher.matches());
+            done = Long.parseLong(matcher.group(1));
+        }
+
+        assertEquals(total, done);
+        assertEquals(sizes.keySet(), totals.keySet());
+        assertEquals(Long.valueOf(total), totals.get(0L));
+
+        // The total of each sub-tree must be the sum of its size and of the totals of its children
+        Map<Long, Long> computed = new HashMap<>(sizes);
+        for (Map.Entry<Long, Long> entry : parents.entrySet())
+            computed.merge(entry.getValue(), totals.get(entry.getKey()), Long::sum);
+        assertEquals(totals, computed);
+    }
+
+    @SuppressWarnings("unused")
+    private static class Node {
+        private final Node child;
+        private final Object[] elements;
+        private final int[] values;
+
+        public Node(Node child, Object[] elements, int[] values) {
+            this.child = child;
+            this.elements = elements;
+            this.values = values;
+        }
+    }
+}
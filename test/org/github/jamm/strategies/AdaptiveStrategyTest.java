@@ -0,0 +1,85 @@
+package org.github.jamm.strategies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeter;
+import org.github.jamm.MemoryMeter.Guess;
+import org.github.jamm.MemoryMeterStrategy;
+import org.github.jamm.VM;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveStrategyTest {
+
+    @SuppressWarnings("unused")
+    private static class Calibrated {
+        private long id;
+        private Object value;
+    }
+
+    @Test
+    public void testDecisions() {
+        MemoryMeterStrategies strategies = MemoryMeterStrategies.getInstance();
+        MemoryMeterStrategy strategy = strategies.getStrategy(Collections.singletonList(Guess.ADAPTIVE));
+        MemoryMeterStrategy instrumentation = strategies.getStrategy(Collections.singletonList(Guess.INSTRUMENTATION));
+
+        if (!VM.isPreJava16JVM()) {
+            // Instrumentation is an intrinsic and is used for all classes
+            assertSame(instrumentation, strategy);
+            return;
+        }
+
+        assertTrue(strategy instanceof AdaptiveStrategy);
+        AdaptiveStrategy adaptive = (AdaptiveStrategy) strategy;
+
+        for (Object object : Arrays.asList(new Calibrated(), new int[5], new Object[3], "test", Guess.ADAPTIVE)) {
+            Class<?> type = object.getClass();
+            assertEquals(instrumentation.measure(object), adaptive.measure(object));
+
+            // The layout based strategies are exact for the classes and arrays above
+            Guess decision = adaptive.decisionFor(type);
+            assertTrue(type + " measured through " + decision, decision == Guess.UNSAFE || decision == Guess.SPECIFICATION);
+            assertEquals(decision, adaptive.decisions().get(type));
+        }
+
+        assertEquals(instrumentation.measure(new Calibrated()), adaptive.measure(new Calibrated()));
+    }
+
+    @Test
+    public void testWithoutInstrumentation() {
+        MemoryMeterStrategies strategies = MemoryMeterStrategies.getInstance();
+        MemoryLayoutBasedStrategy spec = (MemoryLayoutBasedStrategy) strategies.getStrategy(Collections.singletonList(Guess.SPECIFICATION));
+        AdaptiveStrategy adaptive = new AdaptiveStrategy(null, null, spec);
+
+        // There is nothing to calibrate against, the layout based strategy is used on all versions
+        assertEquals(spec.measure(new Calibrated()), adaptive.measure(new Calibrated()));
+        assertEquals(Guess.SPECIFICATION, adaptive.decisionFor(Calibrated.class));
+        assertEquals(spec.measureArray(new long[3]), adaptive.measureArray(new long[3]));
+    }
+
+    @Test
+    public void testDecisionsNotYetTaken() {
+        MemoryMeter meter = MemoryMeter.builder().withGuessing(Guess.ADAPTIVE).build();
+
+        class NeverMeasured {
+        }
+        assertFalse(meter.adaptiveDecisions().containsKey(NeverMeasured.class));
+
+        meter.measure(new NeverMeasured());
+        Map<Class<?>, Guess> decisions = meter.adaptiveDecisions();
+
+        if (VM.isPreJava16JVM()) {
+            assertTrue(decisions.containsKey(NeverMeasured.class));
+        } else {
+            // Instrumentation is used for all classes, no decision is taken
+            assertTrue(decisions.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.github.jamm.strategies;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the emulated layouts against the offsets reported by HotSpot 17 for the same classes. The layouts only depend
+ * on the {@code FieldLayoutBuilder} parameters, not on the JVM running the tests.
+ */
+public class FieldLayoutBuilderTest {
+
+    @SuppressWarnings("unused")
+    static class A1 { byte a; }
+    @SuppressWarnings("unused")
+    static class B1 extends A1 { byte b; int i; }
+
+    @SuppressWarnings("unused")
+    static class A2 { byte a; long l; }
+    @SuppressWarnings("unused")
+    static class B2 extends A2 { byte b; }
+
+    @SuppressWarnings("unused")
+    static class A3 { int i; byte a; }
+    @SuppressWarnings("unused")
+    static class B3 extends A3 { byte b; short s; }
+
+    @SuppressWarnings("unused")
+    static class A4 { long l; }
+    @SuppressWarnings("unused")
+    static class B4 extends A4 { byte b; }
+
+    @SuppressWarnings("unused")
+    static class A5 { Object o; byte a; }
+    @SuppressWarnings("unused")
+    static class B5 extends A5 { byte b; }
+
+    @Test
+    public void testCompressedLayout() throws Exception {
+        FieldLayoutBuilder builder = new FieldLayoutBuilder(12, 4, 128, 8, true);
+
+        assertOffsets(builder, B1.class, "a", 12, "b", 13, "i", 16);
+        assertOffsets(builder, B2.class, "a", 12, "b", 13, "l", 16);
+        assertOffsets(builder, B3.class, "i", 12, "a", 16, "b", 17, "s", 18);
+        assertOffsets(builder, B4.class, "b", 12, "l", 16);
+        assertOffsets(builder, B5.class, "a", 12, "b", 13, "o", 16);
+
+        assertEquals(24, layout(builder, B1.class).instanceSize());
+        assertEquals(24, layout(builder, B2.class).instanceSize());
+        assertEquals(24, layout(builder, B3.class).instanceSize());
+        assertEquals(24, layout(builder, B4.class).instanceSize());
+        assertEquals(24, layout(builder, B5.class).instanceSize());
+    }
+
+    @Test
+    public void testUncompressedLayout() throws Exception {
+        FieldLayoutBuilder builder = new FieldLayoutBuilder(16, 8, 128, 8, true);
+
+        assertOffsets(builder, B1.class, "a", 16, "b", 17, "i", 20);
+        assertOffsets(builder, B2.class, "l", 16, "a", 24, "b", 25);
+        assertOffsets(builder, B3.class, "i", 16, "a", 20, "b", 21, "s", 22);
+        assertOffsets(builder, B4.class, "l", 16, "b", 24);
+        assertOffsets(builder, B5.class, "a", 16, "b", 17, "o", 24);
+
+        assertEquals(32, layout(builder, B5.class).instanceSize());
+    }
+
+    @Test
+    public void testLayoutWithoutEmptySlotsInSupers() throws Exception {
+        FieldLayoutBuilder builder = new FieldLayoutBuilder(12, 4, 128, 8, false);
+
+        assertOffsets(builder, B1.class, "a", 12, "i", 16, "b", 20);
+        assertOffsets(builder, B2.class, "a", 12, "l", 16, "b", 24);
+        assertOffsets(builder, B3.class, "i", 12, "a", 16, "s", 20, "b", 22);
+        assertOffsets(builder, B4.class, "l", 16, "b", 24);
+        assertOffsets(builder, B5.class, "a", 12, "o", 16, "b", 20);
+
+        assertEquals(32, layout(builder, B2.class).instanceSize());
+
+        // Compressed class pointers without compressed references
+        builder = new FieldLayoutBuilder(12, 8, 128, 8, false);
+
+        assertOffsets(builder, B3.class, "i", 12, "a", 16, "s", 24, "b", 26);
+        assertOffsets(builder, B5.class, "a", 12, "o", 16, "b", 24);
+    }
+
+    @Test
+    public void testContendedClass() throws Exception {
+        // ConcurrentHashMap.CounterCell is a JDK class annotated with @Contended, which is always honored
+        Class<?> counterCell = Class.forName("java.util.concurrent.ConcurrentHashMap$CounterCell");
+
+        FieldLayoutBuilder builder = new FieldLayoutBuilder(12, 4, 128, 8, true);
+        assertOffsets(builder, counterCell, "value", 144);
+        assertEquals(280, layout(builder, counterCell).instanceSize());
+
+        builder = new FieldLayoutBuilder(12, 4, 64, 8, true);
+        assertOffsets(builder, counterCell, "value", 80);
+        assertEquals(152, layout(builder, counterCell).instanceSize());
+    }
+
+    private static void assertOffsets(FieldLayoutBuilder builder, Class<?> type, Object... namesAndOffsets) throws Exception {
+        FieldLayoutBuilder.Layout layout = layout(builder, type);
+        for (int i = 0; i < namesAndOffsets.length; i += 2) {
+            Field field = field(type, (String) namesAndOffsets[i]);
+            assertEquals(type.getSimpleName() + "." + field.getName(),
+                         ((Integer) namesAndOffsets[i + 1]).longValue(),
+                         layout.offsetOf(field));
+        }
+    }
+
+    private static FieldLayoutBuilder.Layout layout(FieldLayoutBuilder builder, Class<?> type) {
+        Class<?> superclass = type.getSuperclass();
+        return builder.layout(type, superclass == null ? null : layout(builder, superclass));
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // look in the super class
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
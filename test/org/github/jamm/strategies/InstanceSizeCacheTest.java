@@ -0,0 +1,265 @@
+package org.github.jamm.strategies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.github.jamm.MemoryMeterStrategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceSizeCacheTest {
+
+    private static final List<Class<?>> CLASSES = Arrays.asList(Object.class,
+                                                                String.class,
+                                                                ArrayList.class,
+                                                                HashMap.class,
+                                                                Thread.class,
+                                                                ConcurrentHashMap.class,
+                                                                Holder.class,
+                                                                SubHolder.class);
+
+    @Test
+    public void testCacheHits() throws IOException {
+        Path file = Files.createTempFile("jamm", ".cache");
+        try {
+            Files.delete(file);
+
+            // The sizes computed by a first run are written when it ends
+            InstanceSizeCache cache = new InstanceSizeCache(file, "key");
+            CachedStrategy strategy = new CachedStrategy(cache);
+            for (Class<?> type : CLASSES)
+                assertEquals(measure(type), strategy.measure(newInstance(type)));
+            cache.save();
+
+            // and read from the file by the following one
+            InstanceSizeCache restarted = new InstanceSizeCache(file, "key");
+            for (Class<?> type : CLASSES)
+                assertEquals(measure(type), restarted.get(strategy, type));
+
+            // The strategies use the sizes of the file instead of computing them
+            InstanceSizeCache modified = new InstanceSizeCache(file, "key");
+            modified.put(strategy, Holder.class, 1000);
+            modified.save();
+            assertEquals(1000, new CachedStrategy(new InstanceSizeCache(file, "key")).measure(new Holder()));
+
+            // The sizes of the other strategies are kept apart
+            assertEquals(-1, new InstanceSizeCache(file, "key").get(new OtherCachedStrategy(null), Holder.class));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        Path file = Files.createTempFile("jamm", ".cache");
+        try {
+            InstanceSizeCache cache = new InstanceSizeCache(file, "key");
+            CachedStrategy strategy = new CachedStrategy(cache);
+            cache.put(strategy, Holder.class, 1000);
+            cache.save();
+
+            // A JVM with another key ignores the file and replaces it
+            InstanceSizeCache otherJvm = new InstanceSizeCache(file, "other key");
+            assertEquals(-1, otherJvm.get(strategy, Holder.class));
+            assertEquals(measure(Holder.class), new CachedStrategy(otherJvm).measure(new Holder()));
+            otherJvm.save();
+
+            assertEquals(measure(Holder.class), new InstanceSizeCache(file, "other key").get(strategy, Holder.class));
+            assertEquals(-1, new InstanceSizeCache(file, "key").get(strategy, Holder.class));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testInvalidFiles() throws IOException {
+        Path file = Files.createTempFile("jamm", ".cache");
+        try {
+            CachedStrategy strategy = new CachedStrategy(null);
+            for (byte[] bytes : new byte[][] {new byte[0],
+                                              new byte[] {'J', 'A', 'M'},
+                                              new byte[] {'J', 'A', 'M', 'M', 0, 1, 0, 0, 0, 0},
+                                              new byte[] {'J', 'A', 'M', 'C', 0, 1, 0, 0, 0, 3, 'k', 'e', 'y', 0, 0, 0, 1}, // previous version
+                                              new byte[] {'J', 'A', 'M', 'C', 0, 2, 0, 0, 0, 3, 'k', 'e', 'y', 0, 0, 0, 3}, // not a power of 2
+                                              new byte[] {'J', 'A', 'M', 'C', 0, 2, 0, 0, 0, 3, 'k', 'e', 'y', 0, 0, 0, 4}}) { // truncated
+                Files.write(file, bytes);
+                InstanceSizeCache cache = new InstanceSizeCache(file, "key");
+                assertEquals(-1, cache.get(strategy, Holder.class));
+
+                // The file is replaced by a valid one
+                cache.put(strategy, Holder.class, 1000);
+                cache.save();
+                assertEquals(1000, new InstanceSizeCache(file, "key").get(strategy, Holder.class));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testUncachedClasses() throws IOException {
+        Path file = Files.createTempFile("jamm", ".cache");
+        try {
+            InstanceSizeCache cache = new InstanceSizeCache(file, "key");
+            CachedStrategy strategy = new CachedStrategy(cache);
+
+            // The lambdas are hidden or VM anonymous classes whose names change from one run to another
+            Supplier<String> lambda = () -> "test";
+            assertEquals(new CachedStrategy(null).measure(lambda), strategy.measure(lambda));
+
+            // The proxies have no class file
+            ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+            Class<?> type = Proxy.newProxyInstance(loader, new Class<?>[] {Runnable.class}, (p, m, a) -> null).getClass();
+            cache.put(strategy, type, 1000);
+            assertEquals(-1, cache.get(strategy, type));
+
+            // A class defined from bytes is not the class file found by its loader, which might have changed since
+            Class<?> defined = new BytesClassLoader(getClass().getClassLoader()).define(Holder.class);
+            cache.put(strategy, defined, 1000);
+            assertEquals(-1, cache.get(strategy, defined));
+
+            cache.save();
+            assertEquals(-1, new InstanceSizeCache(file, "key").get(strategy, lambda.getClass()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSources() {
+        assertEquals(InstanceSizeCache.source(String.class), InstanceSizeCache.source(Object.class));
+        assertNotNull(InstanceSizeCache.source(String.class));
+        assertNotNull(InstanceSizeCache.source(Holder.class));
+        assertEquals(InstanceSizeCache.source(Holder.class), InstanceSizeCache.source(Holder.class));
+
+        // Each class file of a directory has its own source
+        assertNotEquals(InstanceSizeCache.source(Holder.class), InstanceSizeCache.source(SubHolder.class));
+
+        // The classes of a JAR share the fingerprint of the JAR
+        assertEquals(InstanceSizeCache.source(Test.class), InstanceSizeCache.source(Assert.class));
+        assertNotEquals(InstanceSizeCache.source(Test.class), InstanceSizeCache.source(Holder.class));
+
+        assertNull(InstanceSizeCache.source(new BytesClassLoader(getClass().getClassLoader()).define(Holder.class)));
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        Path file = Files.createTempFile("jamm", ".jar");
+        try {
+            Files.write(file, new byte[] {1, 2, 3});
+            String fingerprint = InstanceSizeCache.fingerprint(file.toFile());
+            assertEquals(fingerprint, InstanceSizeCache.fingerprint(file.toFile()));
+
+            // A file modified
+            Files.write(file, new byte[] {1, 2, 3, 4});
+            String modified = InstanceSizeCache.fingerprint(file.toFile());
+            assertNotEquals(fingerprint, modified);
+
+            // A file rebuilt with the same size
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10_000));
+            assertNotEquals(modified, InstanceSizeCache.fingerprint(file.toFile()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCurrentKey() {
+        String key = InstanceSizeCache.currentKey();
+        assertEquals(key, InstanceSizeCache.currentKey());
+        assertTrue(key, key.contains(System.getProperty("java.vm.version")));
+        assertTrue(key, key.contains(MemoryMeterStrategy.MEMORY_LAYOUT.toString()));
+    }
+
+    private static long measure(Class<?> type) {
+        return new CachedStrategy(null).measure(newInstance(type));
+    }
+
+    private static Object newInstance(Class<?> type) {
+        try {
+            return type == Thread.class ? new Thread() : type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * A {@code SpecStrategy} using the specified cache instead of the shared one.
+     */
+    private static class CachedStrategy extends SpecStrategy {
+
+        private final InstanceSizeCache cache;
+
+        CachedStrategy(InstanceSizeCache cache) {
+            super(MemoryMeterStrategy.MEMORY_LAYOUT, true);
+            this.cache = cache;
+        }
+
+        @Override
+        InstanceSizeCache instanceSizeCache() {
+            return cache;
+        }
+    }
+
+    /**
+     * A class loader defining classes from the bytes of existing class files.
+     */
+    private static class BytesClassLoader extends ClassLoader {
+
+        BytesClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(Class<?> type) {
+            String resource = type.getName().replace('.', '/') + ".class";
+            try (InputStream in = type.getClassLoader().getResourceAsStream(resource)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0; )
+                    out.write(buffer, 0, n);
+                byte[] bytes = out.toByteArray();
+                return defineClass(type.getName(), bytes, 0, bytes.length);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static class OtherCachedStrategy extends CachedStrategy {
+
+        OtherCachedStrategy(InstanceSizeCache cache) {
+            super(cache);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public static class Holder {
+        private long l;
+        private Object o;
+    }
+
+    @SuppressWarnings("unused")
+    public static class SubHolder extends Holder {
+        private byte b;
+    }
+}
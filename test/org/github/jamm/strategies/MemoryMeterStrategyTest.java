@@ -48,7 +48,7 @@ public class MemoryMeterStrategyTest {
     @Parameterized.Parameters
     public static Collection<MemoryMeter.Guess> guesses() {
 
-        return Arrays.asList(MemoryMeter.Guess.INSTRUMENTATION_AND_SPECIFICATION, MemoryMeter.Guess.UNSAFE, MemoryMeter.Guess.SPECIFICATION);
+        return Arrays.asList(MemoryMeter.Guess.INSTRUMENTATION_AND_SPECIFICATION, MemoryMeter.Guess.UNSAFE, MemoryMeter.Guess.SPECIFICATION, MemoryMeter.Guess.ADAPTIVE);
     }
 
     public MemoryMeterStrategyTest(MemoryMeter.Guess guess) {
@@ -789,6 +789,20 @@ public class MemoryMeterStrategyTest {
         Thread thread = new Thread();
         assertEquals(reference.measure(thread), tested.measure(thread));
         assertEquals(reference.measureDeep(thread), tested.measureDeep(thread));
+
+        // From Java 19, the fields of the sub-classes must not be allocated in the slots of the fields injected by the JVM
+        if (!VM.isPreJava19JVM()) {
+            Thread subclass = new ThreadWithFields();
+            assertEquals(reference.measure(subclass), tested.measure(subclass));
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static class ThreadWithFields extends Thread {
+        private byte b;
+        private short s;
+        private int i;
+        private Object o;
     }
 
     @Test
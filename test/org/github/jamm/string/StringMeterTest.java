@@ -10,6 +10,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import org.github.jamm.MemoryLayoutSpecification;
 import org.github.jamm.MemoryMeter;
 import org.github.jamm.MemoryMeter.Guess;
 import org.github.jamm.MemoryMeterStrategy;
@@ -68,4 +69,35 @@ public class StringMeterTest {
             assertEquals(reference.measureDeep(string), stringMeter.measureDeep(strategy, string));
         }
      }
+
+    @Test
+    public void testMeasureDeepStrings() {
+
+        String[] strings = new String[] {"",
+                                         "a",
+                                         null,
+                                         "significantly longuer",
+                                         "with a chinese character: 我"};
+
+        MemoryMeter reference = MemoryMeter.builder().withGuessing(MemoryMeter.Guess.INSTRUMENTATION).build();
+        StringMeter stringMeter = StringMeter.newInstance();
+
+        long expected = 0;
+        for (String string : strings)
+            expected += reference.measureDeep(string);
+
+        assertEquals(expected, stringMeter.measureDeep(MemoryMeterStrategy.MEMORY_LAYOUT, strings));
+        assertEquals(expected, stringMeter.measureDeep(MemoryMeterStrategy.MEMORY_LAYOUT, Arrays.asList(strings)));
+
+        // The values are measured in the specified memory layout
+        MemoryLayoutSpecification memoryLayout = MemoryLayoutSpecification.builder().withObjectAlignment(32).build();
+        MemoryMeter hypothetical = MemoryMeter.builder().withMemoryLayout(memoryLayout).build();
+        expected = 0;
+        for (String string : strings) {
+            if (string != null)
+                expected += StringMeter.STRING_SHALLOW_SIZE + hypothetical.measure(stringMeter.getValue(string));
+        }
+        assertEquals(expected, stringMeter.measureDeep(memoryLayout, strings));
+        assertEquals(expected, stringMeter.measureDeep(memoryLayout, Arrays.asList(strings)));
+    }
 }
@@ -0,0 +1,28 @@
+package org.github.jamm.testedclasses;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partition holding rows chained through their {@code next} field, used by the listener tests
+ *
+ */
+public class Partition
+{
+    public final List<Row> rows = new ArrayList<>();
+
+    @SuppressWarnings("unused")
+    public static class Row
+    {
+        private final byte[] data = new byte[8];
+
+        private final Row next;
+
+        /**
+         * @param length the number of rows chained after this one
+         */
+        public Row(int length) {
+            this.next = length == 0 ? null : new Row(length - 1);
+        }
+    }
+}